@@ -82,6 +82,7 @@ import org.voltdb.catalog.Table;
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientFactory;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.PartitionedBulkLoader;
 import org.voltdb.client.ProcCallException;
 import org.voltdb.client.StatsUploaderSettings;
 import org.voltdb.sysprocs.LoadMultipartitionTable;
@@ -100,6 +101,7 @@ import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.profilers.ProfileMeasurement;
 import edu.brown.statistics.Histogram;
+import edu.brown.statistics.LatencyHistogram;
 import edu.brown.statistics.ObjectHistogram;
 import edu.brown.statistics.TableStatistics;
 import edu.brown.statistics.WorkloadStatistics;
@@ -256,6 +258,19 @@ public abstract class BenchmarkComponent {
      */
     final double m_txnsPerMillisecond;
 
+    /**
+     * If true, then the ControlWorker will submit requests at a fixed arrival
+     * rate of m_txnRate and the latencies are measured from when each request
+     * was supposed to be sent.
+     */
+    final boolean m_openLoop;
+
+    /**
+     * If true, then the open-loop arrivals follow a Poisson process.
+     * Otherwise they are evenly spaced.
+     */
+    final boolean m_openLoopPoisson;
+
     /**
      * Additional parameters (benchmark specific)
      */
@@ -323,6 +338,7 @@ public abstract class BenchmarkComponent {
     private final boolean m_noUploading;
     private final ReentrantLock m_loaderBlock = new ReentrantLock();
     private final ClientResponse m_dummyResponse = new ClientResponseImpl(-1, -1, -1, Status.OK, HStoreConstants.EMPTY_RESULT, "");
+    private PartitionedBulkLoader m_partitionedLoader = null;
     
     /**
      * Keep track of the number of tuples loaded so that we can generate table statistics
@@ -351,6 +367,7 @@ public abstract class BenchmarkComponent {
      * Configuration
      */
     private final HStoreConf m_hstoreConf;
+    private final boolean m_nanosecondLatencies;
     private final ObjectHistogram<String> m_txnWeights = new ObjectHistogram<String>();
     private Integer m_txnWeightsDefault = null;
     private final boolean m_isLoader;
@@ -370,6 +387,8 @@ public abstract class BenchmarkComponent {
         m_isLoader = false;
         m_blocking = false;
         m_txnsPerMillisecond = 0;
+        m_openLoop = false;
+        m_openLoopPoisson = false;
         m_catalogPath = null;
         m_projectName = null;
         m_id = 0;
@@ -395,6 +414,7 @@ public abstract class BenchmarkComponent {
         
         // FIXME
         m_hstoreConf = null;
+        m_nanosecondLatencies = false;
     }
 
     /**
@@ -429,6 +449,7 @@ public abstract class BenchmarkComponent {
             }
         } // SYNCH
         m_hstoreConf = HStoreConf.singleton();
+        m_nanosecondLatencies = m_hstoreConf.global.nanosecond_latencies;
         if (trace.val) LOG.trace("HStore Conf\n" + m_hstoreConf.toString(true));
         
         int transactionRate = m_hstoreConf.client.txnrate;
@@ -581,6 +602,12 @@ public abstract class BenchmarkComponent {
         m_password = password;
         m_txnRate = (isLoader ? -1 : transactionRate);
         m_txnsPerMillisecond = (isLoader ? -1 : transactionRate / 1000.0);
+        m_openLoop = (isLoader == false && m_hstoreConf.client.open_loop);
+        m_openLoopPoisson = m_hstoreConf.client.open_loop_poisson;
+        if (m_openLoop && blocking) {
+            LOG.warn("Disabling BlockingClient because open-loop load generation is enabled");
+            blocking = false;
+        }
         m_blocking = blocking;
         m_tickInterval = tickInterval;
         m_noUploading = noUploading;
@@ -936,23 +963,28 @@ public abstract class BenchmarkComponent {
 
             // LATENCIES COUNTERS
             // Ignore zero latencies... Not sure why this happens...
-            int latency = cresponse.getClusterRoundtrip();
-            if (latency > 0) {
-                Map<Integer, ObjectHistogram<Integer>> latenciesMap = (is_dtxn ? m_txnStats.dtxnLatencies :
-                                                                                 m_txnStats.spLatencies); 
-                Histogram<Integer> latencies = latenciesMap.get(txn_idx);
+            // The histograms are in microseconds. We only get that resolution
+            // if the cluster is reporting latencies in nanoseconds.
+            // In open-loop mode we have to use the client roundtrip (in ms) because
+            // that is measured from when the request was supposed to be sent. We can't
+            // throw away anything here because that would hide the very stalls that
+            // we are trying to measure.
+            int latency = (m_openLoop ? cresponse.getClientRoundtrip() : cresponse.getClusterRoundtrip());
+            if (latency > 0 || (m_openLoop && latency == 0)) {
+                long micros = (m_openLoop == false && m_nanosecondLatencies ? latency / 1000l : latency * 1000l);
+                Map<Integer, LatencyHistogram> latenciesMap = (is_dtxn ? m_txnStats.dtxnLatencies :
+                                                                         m_txnStats.spLatencies); 
+                LatencyHistogram latencies = latenciesMap.get(txn_idx);
                 if (latencies == null) {
                     synchronized (latenciesMap) {
                         latencies = latenciesMap.get(txn_idx);
                         if (latencies == null) {
-                            latencies = new ObjectHistogram<Integer>();
-                            latenciesMap.put(txn_idx, (ObjectHistogram<Integer>)latencies);
+                            latencies = new LatencyHistogram(true);
+                            latenciesMap.put(txn_idx, latencies);
                         }
                     } // SYNCH
                 }
-                synchronized (latencies) {
-                    latencies.put(latency);
-                } // SYNCH
+                latencies.record(micros);
             }
             
             // RESPONSE ENTRIES
@@ -1018,7 +1050,16 @@ public abstract class BenchmarkComponent {
         
         // Load up this dirty mess...
         ClientResponse cr = null;
-        if (m_noUploading == false) {
+        if (m_noUploading == false && m_hstoreConf.client.partitioned_loader && m_hstoreConf.client.blocking_loader == false) {
+            // The rows are sent asynchronously. Any errors will come out of drainPartitionedLoader()
+            try {
+                this.getPartitionedLoader().load(tableName, vt);
+            } catch (Throwable ex) {
+                throw new RuntimeException("Error when trying load data for '" + tableName + "'", ex);
+            }
+            cr = m_dummyResponse;
+        }
+        else if (m_noUploading == false) {
             boolean locked = m_hstoreConf.client.blocking_loader;
             if (locked) m_loaderBlock.lock();
             try {
@@ -1086,6 +1127,39 @@ public abstract class BenchmarkComponent {
         return (cr);
     }
     
+    private synchronized PartitionedBulkLoader getPartitionedLoader() {
+        if (m_partitionedLoader == null) {
+            // The loader does its own throttling, so we don't want to go through the BlockingClient
+            Client client = m_voltClient;
+            if (client instanceof BlockingClient) {
+                client = ((BlockingClient)client).getClient();
+            }
+            m_partitionedLoader = new PartitionedBulkLoader(client, this.getCatalogContext(),
+                                                            m_hstoreConf.client.partitioned_loader_concurrent);
+        }
+        return (m_partitionedLoader);
+    }
+
+    /**
+     * Block until all of the rows queued with loadVoltTable() have been loaded.
+     * This is only needed when ${client.partitioned_loader} is enabled.
+     */
+    public void drainPartitionedLoader() {
+        PartitionedBulkLoader loader = null;
+        synchronized (this) {
+            loader = m_partitionedLoader;
+        } // SYNCH
+        if (loader == null) return;
+        try {
+            loader.drain();
+        } catch (Throwable ex) {
+            throw new RuntimeException("Failed to load data", ex);
+        }
+        if (debug.val)
+            LOG.debug(String.format("Partitioned loader finished [rows=%d, txns=%d]",
+                      loader.getRowsLoaded(), loader.getTransactionsSent()));
+    }
+
     /**
      * Return an overridden transaction weight
      * @param txnName
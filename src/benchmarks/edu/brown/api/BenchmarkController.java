@@ -1071,7 +1071,10 @@ public class BenchmarkController {
         String debugOpts = String.format("[hosts=%d, perhost=%d, txnrate=%s", m_config.clients.length,
                                                                               threadsPerHost,
                                                                               hstore_conf.client.txnrate);
-        if (hstore_conf.client.blocking) {
+        if (hstore_conf.client.open_loop) {
+            debugOpts += ", openLoop=" + (hstore_conf.client.open_loop_poisson ? "poisson" : "constant");
+        }
+        else if (hstore_conf.client.blocking) {
             debugOpts += ", concurrent=" + hstore_conf.client.blocking_concurrent; 
         }
         debugOpts += "]";
@@ -1080,7 +1083,7 @@ public class BenchmarkController {
         LOG.info(String.format("Starting %s execution with %d %sclient%s %s",
                  this.projectBuilder.getProjectName().toUpperCase(),
                  m_clientThreads.size(), 
-                 (hstore_conf.client.blocking ? "blocking " : ""),
+                 (hstore_conf.client.open_loop ? "open-loop " : (hstore_conf.client.blocking ? "blocking " : "")),
                  (m_clientThreads.size() > 1 ? "s" : ""),
                  debugOpts));
         if (m_config.statsDatabaseURL != null) {
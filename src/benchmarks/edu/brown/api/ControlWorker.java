@@ -1,9 +1,12 @@
 package edu.brown.api;
 
 import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.log4j.Logger;
 import org.voltdb.client.Client;
+import org.voltdb.client.IntendedStartTime;
 
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
@@ -32,6 +35,12 @@ class ControlWorker extends Thread {
      */
     private long m_lastRequestTime;
 
+    /**
+     * When the open-loop scheduler is less than this many nanoseconds away from
+     * the next request, it will stop parking and just spin until it is time.
+     */
+    private static final long OPEN_LOOP_SPIN_NANOS = 50000;
+
     private boolean profiling = false;
     private ProfileMeasurement execute_time = new ProfileMeasurement("EXECUTE");
     private ProfileMeasurement block_time = new ProfileMeasurement("BLOCK");
@@ -57,6 +66,11 @@ class ControlWorker extends Thread {
                     cmp.m_sampler.start();
                 }
                 cmp.runLoop();
+                // Make sure that everything the loader queued up made it into the database
+                cmp.drainPartitionedLoader();
+            } else if (cmp.m_openLoop) {
+                if (debug.val) LOG.debug(String.format("Running open-loop [m_txnRate=%d, poisson=%s]", cmp.m_txnRate, cmp.m_openLoopPoisson));
+                this.openLoopRunLoop();
             } else {
                 if (debug.val) LOG.debug(String.format("Running rate controlled [m_txnRate=%d, m_txnsPerMillisecond=%f]", cmp.m_txnRate, cmp.m_txnsPerMillisecond));
                 this.rateControlledRunLoop();
@@ -144,6 +158,82 @@ class ControlWorker extends Thread {
             m_lastRequestTime = now;
         } // WHILE
     }
+
+    /**
+     * Submit txn requests at a fixed arrival rate. Unlike rateControlledRunLoop(),
+     * we never skip requests if we fall behind (either because the client driver
+     * is slow or because of backpressure). Every request is tagged with the time that
+     * it was supposed to be sent, so the time that it spent waiting shows up in its latency.
+     */
+    private void openLoopRunLoop() throws InterruptedException {
+        final Client client = cmp.getClientHandle();
+        final double interval = 1000000000d / cmp.m_txnRate; // nanoseconds
+        final Random rand = (cmp.m_openLoopPoisson ? new Random() : null);
+        
+        long baseNanos = System.nanoTime();
+        long baseMillis = System.currentTimeMillis();
+        double offset = 0;
+        boolean hadErrors = false;
+        try {
+            while (true) {
+                // Check whether we are currently being paused
+                // We will block until we're allowed to go again. We don't want
+                // the time that we were paused to count against the next requests
+                if (cmp.m_controlState == ControlState.PAUSED) {
+                    if (debug.val) LOG.debug("Pausing until control lock is released");
+                    cmp.m_pauseLock.acquire();
+                    if (debug.val) LOG.debug("Control lock is released! Resuming execution!");
+                    baseNanos = System.nanoTime();
+                    baseMillis = System.currentTimeMillis();
+                    offset = 0;
+                }
+                assert(cmp.m_controlState != ControlState.PAUSED) : "Unexpected " + cmp.m_controlState;
+                
+                // Wait until it is time to send the next request
+                final long next = baseNanos + (long)offset;
+                long remaining;
+                while ((remaining = next - System.nanoTime()) > 0) {
+                    if (remaining > OPEN_LOOP_SPIN_NANOS) {
+                        LockSupport.parkNanos(remaining - OPEN_LOOP_SPIN_NANOS);
+                    } else {
+                        Thread.yield();
+                    }
+                } // WHILE
+                IntendedStartTime.set(baseMillis + (long)(offset / 1000000d));
+                
+                if (this.profiling) execute_time.start();
+                try {
+                    // If the request wasn't queued because of backpressure, then
+                    // we'll keep trying with the same intended start time
+                    while (cmp.runOnce() == false) {
+                        if (this.profiling) this.block_time.start();
+                        try {
+                            client.backpressureBarrier();
+                        } finally {
+                            if (this.profiling) this.block_time.stop();
+                        }
+                        if (cmp.m_controlState != ControlState.RUNNING) break;
+                    } // WHILE
+                } catch (final IOException e) {
+                    if (hadErrors) return;
+                    hadErrors = true;
+                    LOG.error("Failed to execute transaction: " + e.getMessage(), e);
+                    ThreadUtil.sleep(5000);
+                } finally {
+                    if (this.profiling) execute_time.stop();
+                }
+                
+                // Figure out when the next request should be sent
+                if (rand != null) {
+                    offset += -Math.log(1.0 - rand.nextDouble()) * interval;
+                } else {
+                    offset += interval;
+                }
+            } // WHILE
+        } finally {
+            IntendedStartTime.clear();
+        }
+    }
  
     public void enableProfiling(boolean val) {
         this.profiling = val;
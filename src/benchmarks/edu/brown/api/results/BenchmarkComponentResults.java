@@ -14,7 +14,7 @@ import org.voltdb.catalog.Database;
 
 import edu.brown.hstore.Hstoreservice.Status;
 import edu.brown.statistics.FastIntHistogram;
-import edu.brown.statistics.ObjectHistogram;
+import edu.brown.statistics.LatencyHistogram;
 import edu.brown.utils.JSONSerializable;
 import edu.brown.utils.JSONUtil;
 
@@ -40,10 +40,10 @@ public class BenchmarkComponentResults implements JSONSerializable {
     public FastIntHistogram dtxns = new FastIntHistogram(true);
     
     /**
-     * Transaction Name Index -> Latencies
+     * Transaction Name Index -> Latencies (microseconds)
      */
-    public final Map<Integer, ObjectHistogram<Integer>> spLatencies = new HashMap<Integer, ObjectHistogram<Integer>>();
-    public final Map<Integer, ObjectHistogram<Integer>> dtxnLatencies = new HashMap<Integer, ObjectHistogram<Integer>>();
+    public final Map<Integer, LatencyHistogram> spLatencies = new HashMap<Integer, LatencyHistogram>();
+    public final Map<Integer, LatencyHistogram> dtxnLatencies = new HashMap<Integer, LatencyHistogram>();
     
     public FastIntHistogram basePartitions = new FastIntHistogram(true);
     private boolean enableBasePartitions = false;
@@ -75,23 +75,17 @@ public class BenchmarkComponentResults implements JSONSerializable {
         
         copy.spLatencies.clear();
         synchronized (this.spLatencies) {
-            for (Entry<Integer, ObjectHistogram<Integer>> e : this.spLatencies.entrySet()) {
-                ObjectHistogram<Integer> h = new ObjectHistogram<Integer>();
-                synchronized (e.getValue()) {
-                    h.put(e.getValue());
-                } // SYNCH
-                copy.spLatencies.put(e.getKey(), h);
+            for (Entry<Integer, LatencyHistogram> e : this.spLatencies.entrySet()) {
+                if (e.getValue().isEmpty()) continue;
+                copy.spLatencies.put(e.getKey(), e.getValue().copy());
             } // FOR
         } // SYNCH
         
         copy.dtxnLatencies.clear();
         synchronized (this.dtxnLatencies) {
-            for (Entry<Integer, ObjectHistogram<Integer>> e : this.dtxnLatencies.entrySet()) {
-                ObjectHistogram<Integer> h = new ObjectHistogram<Integer>();
-                synchronized (e.getValue()) {
-                    h.put(e.getValue());
-                } // SYNCH
-                copy.dtxnLatencies.put(e.getKey(), h);
+            for (Entry<Integer, LatencyHistogram> e : this.dtxnLatencies.entrySet()) {
+                if (e.getValue().isEmpty()) continue;
+                copy.dtxnLatencies.put(e.getKey(), e.getValue().copy());
             } // FOR
         } // SYNCH
         
@@ -124,8 +118,18 @@ public class BenchmarkComponentResults implements JSONSerializable {
             this.specexecs.clearValues();
             this.dtxns.clearValues();
         }
-        this.spLatencies.clear();
-        this.dtxnLatencies.clear();
+        // We keep the histograms around so that the client threads
+        // can keep recording into them without having to synchronize
+        synchronized (this.spLatencies) {
+            for (LatencyHistogram h : this.spLatencies.values()) {
+                h.clear();
+            } // FOR
+        } // SYNCH
+        synchronized (this.dtxnLatencies) {
+            for (LatencyHistogram h : this.dtxnLatencies.values()) {
+                h.clear();
+            } // FOR
+        } // SYNCH
         this.basePartitions.clearValues();
         this.responseStatuses.clearValues();
     }
@@ -34,6 +34,7 @@ import edu.brown.hstore.Hstoreservice.Status;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.statistics.Histogram;
+import edu.brown.statistics.LatencyHistogram;
 import edu.brown.statistics.ObjectHistogram;
 import edu.brown.utils.CollectionUtil;
 import edu.brown.utils.StringUtil;
@@ -65,6 +66,9 @@ public class BenchmarkResults {
         public final long dtxnCount;
         public final Histogram<Integer> spLatencies = new ObjectHistogram<Integer>();
         public final Histogram<Integer> dtxnLatencies = new ObjectHistogram<Integer>();
+        /** The same latencies as above but in microseconds */
+        public final LatencyHistogram spLatencyHistogram = new LatencyHistogram();
+        public final LatencyHistogram dtxnLatencyHistogram = new LatencyHistogram();
         
         public Result(long timestamp, long benchmarkTimeDelta, long transactionCount, long specexecCount, long dtxnCount) {
             this.timestamp = timestamp;
@@ -292,6 +296,66 @@ public class BenchmarkResults {
         return this.getTransactionLatencies(txnName, true);
     }
     
+    // ----------------------------------------------------------------------------
+    // MICROSECOND LATENCY HISTOGRAMS
+    // ----------------------------------------------------------------------------
+    
+    private LatencyHistogram getLastLatencyHistogram(boolean singlep, boolean dtxn) {
+        LatencyHistogram latencies = new LatencyHistogram();
+        for (Map<String, List<Result>> clientResults : data.values()) {
+            for (List<Result> txnResults : clientResults.values()) {
+                Result r = CollectionUtil.last(txnResults);
+                if (r != null) {
+                    if (singlep) latencies.put(r.spLatencyHistogram);
+                    if (dtxn) latencies.put(r.dtxnLatencyHistogram);
+                }
+            } // FOR
+        } // FOR
+        return (latencies);
+    }
+    
+    public LatencyHistogram getLastTotalLatencyHistogram() {
+        return this.getLastLatencyHistogram(true, true);
+    }
+    public LatencyHistogram getLastSinglePartitionLatencyHistogram() {
+        return this.getLastLatencyHistogram(true, false);
+    }
+    
+    /**
+     * Return the merged microsecond latencies for all of the given client's txns
+     * @param clientName
+     * @return
+     */
+    public LatencyHistogram getClientLatencyHistogram(String clientName) {
+        LatencyHistogram latencies = new LatencyHistogram();
+        Map<String, List<Result>> clientResults = data.get(clientName);
+        if (clientResults == null) return (latencies);
+        for (List<Result> results : clientResults.values()) {
+            for (Result r : results) {
+                latencies.put(r.spLatencyHistogram);
+                latencies.put(r.dtxnLatencyHistogram);
+            } // FOR
+        } // FOR
+        return (latencies);
+    }
+    
+    /**
+     * Return the microsecond latencies of the given txn merged across all clients
+     * @param txnName
+     * @return
+     */
+    public LatencyHistogram getTransactionLatencyHistogram(String txnName) {
+        LatencyHistogram latencies = new LatencyHistogram();
+        for (Map<String, List<Result>> clientResults : data.values()) {
+            if (clientResults.containsKey(txnName) == false) continue;
+            for (Result r : clientResults.get(txnName)) {
+                latencies.put(r.spLatencyHistogram);
+                latencies.put(r.dtxnLatencyHistogram);
+            } // FOR
+        } // FOR
+        return (latencies);
+    }
+    
     public Result[] getResultsForClientAndTransaction(String clientName, String txnName) {
         int intervals = getCompletedIntervalCount();
         
@@ -441,19 +505,17 @@ public class BenchmarkResults {
                                       cmpResults.specexecs.get(txnOffset.intValue(), 0),
                                       cmpResults.dtxns.get(txnOffset.intValue(), 0));
                 if (cmpResults.spLatencies != null) {
-                    Histogram<Integer> latencies = cmpResults.spLatencies.get(txnOffset);
+                    LatencyHistogram latencies = cmpResults.spLatencies.get(txnOffset);
                     if (latencies != null) {
-                        synchronized (latencies) {
-                            r.spLatencies.put(latencies);
-                        } // SYNCH
+                        r.spLatencyHistogram.put(latencies);
+                        r.spLatencies.put(latencies.toMillisHistogram());
                     }
                 }
                 if (cmpResults.dtxnLatencies != null) {
-                    Histogram<Integer> latencies = cmpResults.dtxnLatencies.get(txnOffset);
+                    LatencyHistogram latencies = cmpResults.dtxnLatencies.get(txnOffset);
                     if (latencies != null) {
-                        synchronized (latencies) {
-                            r.dtxnLatencies.put(latencies);
-                        } // SYNCH
+                        r.dtxnLatencyHistogram.put(latencies);
+                        r.dtxnLatencies.put(latencies.toMillisHistogram());
                     }
                 }
                 results.add(r);
@@ -15,13 +15,12 @@ import org.voltdb.utils.Pair;
 import org.voltdb.utils.VoltTableUtil;
 
 import edu.brown.api.BenchmarkInterest;
-import edu.brown.statistics.Histogram;
-import edu.brown.statistics.HistogramUtil;
+import edu.brown.statistics.LatencyHistogram;
 
 public class CSVResultsPrinter implements BenchmarkInterest {
     private static final Logger LOG = Logger.getLogger(CSVResultsPrinter.class);
 
-    public static final int[] percentiles = { 50, 95, 99 };
+    public static final double[] percentiles = { 50, 95, 99, 99.9 };
     public static final ColumnInfo COLUMNS[] = {
         new ColumnInfo("INTERVAL", VoltType.INTEGER),
         new ColumnInfo("ELAPSED", VoltType.BIGINT),
@@ -33,7 +32,21 @@ public class CSVResultsPrinter implements BenchmarkInterest {
         new ColumnInfo("LATENCY_50", VoltType.FLOAT),
         new ColumnInfo("LATENCY_95", VoltType.FLOAT),
         new ColumnInfo("LATENCY_99", VoltType.FLOAT),
-
+        new ColumnInfo("LATENCY_999", VoltType.FLOAT),
+        new ColumnInfo("LATENCY_MAX", VoltType.FLOAT),
+    };
+    
+    /**
+     * Per-procedure latency percentiles that are written out at the end of the benchmark
+     */
+    public static final ColumnInfo PROCEDURE_COLUMNS[] = {
+        new ColumnInfo("PROCEDURE", VoltType.STRING),
+        new ColumnInfo("TRANSACTIONS", VoltType.BIGINT),
+        new ColumnInfo("LATENCY", VoltType.FLOAT),
+        new ColumnInfo("LATENCY_50", VoltType.FLOAT),
+        new ColumnInfo("LATENCY_99", VoltType.FLOAT),
+        new ColumnInfo("LATENCY_999", VoltType.FLOAT),
+        new ColumnInfo("LATENCY_MAX", VoltType.FLOAT),
     };
 
     private final List<Object[]> results = new ArrayList<Object[]>(); 
@@ -63,15 +76,48 @@ public class CSVResultsPrinter implements BenchmarkInterest {
             vt.addRow(row);
         }
         
+        this.writeCSV(this.outputPath, vt);
+        
+        // PROCEDURE LATENCIES
+        VoltTable procTable = new VoltTable(PROCEDURE_COLUMNS);
+        for (String txnName : br.getTransactionNames()) {
+            if (txnName == null) continue;
+            LatencyHistogram h = br.getTransactionLatencyHistogram(txnName);
+            if (h.isEmpty()) continue;
+            procTable.addRow(txnName,
+                             h.getSampleCount(),
+                             h.getMean() / 1000d,
+                             h.getValueAtPercentile(50) / 1000d,
+                             h.getValueAtPercentile(99) / 1000d,
+                             h.getValueAtPercentile(99.9) / 1000d,
+                             h.getMax() / 1000d);
+        } // FOR
+        this.writeCSV(this.getProcedureOutputPath(), procTable);
+        return (null);
+    }
+    
+    /**
+     * The per-procedure results go next to the interval results.
+     * For example, "results.csv" -> "results-procedures.csv"
+     * @return
+     */
+    protected File getProcedureOutputPath() {
+        String name = this.outputPath.getName();
+        int idx = name.lastIndexOf('.');
+        String ext = (idx > 0 ? name.substring(idx) : ".csv");
+        if (idx > 0) name = name.substring(0, idx);
+        return (new File(this.outputPath.getParentFile(), name + "-procedures" + ext));
+    }
+    
+    private void writeCSV(File path, VoltTable vt) {
         try {
-            FileWriter writer = new FileWriter(this.outputPath);
+            FileWriter writer = new FileWriter(path);
             VoltTableUtil.csv(writer, vt, true);
             writer.close();
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
-        LOG.info("Wrote CSV results to '" + this.outputPath.getAbsolutePath() + "'");
-        return (null);
+        LOG.info("Wrote CSV results to '" + path.getAbsolutePath() + "'");
     }
     
     @Override
@@ -88,12 +134,12 @@ public class CSVResultsPrinter implements BenchmarkInterest {
         double intervalThroughput = txnDelta / (double)(br.getIntervalDuration()) * 1000.0;
         
         // INTERVAL LATENCY
-        Histogram<Integer> lastLatencies = br.getLastSinglePartitionLatencies();
-        double intervalLatency = HistogramUtil.sum(lastLatencies) / (double)lastLatencies.getSampleCount();
-        double[] latencies = HistogramUtil.percentile(lastLatencies, percentiles);
-        double intervalLatency_50 = latencies[0];
-        double intervalLatency_95 = latencies[1];
-        double intervalLatency_99 = latencies[2];
+        LatencyHistogram lastHistogram = br.getLastSinglePartitionLatencyHistogram();
+        double intervalLatency = lastHistogram.getMean() / 1000d;
+        double intervalLatency_50 = lastHistogram.getValueAtPercentile(percentiles[0]) / 1000d;
+        double intervalLatency_95 = lastHistogram.getValueAtPercentile(percentiles[1]) / 1000d;
+        double intervalLatency_99 = lastHistogram.getValueAtPercentile(percentiles[2]) / 1000d;
+        double intervalLatency_999 = lastHistogram.getValueAtPercentile(percentiles[3]) / 1000d;
         Object row[] = {
             this.intervalCounter++,
             br.getElapsedTime(),
@@ -104,7 +150,9 @@ public class CSVResultsPrinter implements BenchmarkInterest {
             0,
             intervalLatency_50,
             intervalLatency_95,
-            intervalLatency_99
+            intervalLatency_99,
+            intervalLatency_999,
+            lastHistogram.getMax() / 1000d,
         };
         this.results.add(row);
         
@@ -10,6 +10,7 @@ import org.voltdb.catalog.Database;
 
 import edu.brown.api.BenchmarkControllerUtil;
 import edu.brown.statistics.Histogram;
+import edu.brown.statistics.LatencyHistogram;
 import edu.brown.utils.JSONSerializable;
 import edu.brown.utils.JSONUtil;
 
@@ -37,8 +38,14 @@ public class EntityResult implements JSONSerializable {
     public double dtxnMinLatency = 0d;
     public double dtxnMaxLatency = 0d;
     
+    /** Latency percentiles (ms) computed from the microsecond histograms */
+    public double totalP50Latency = 0d;
+    public double totalP99Latency = 0d;
+    public double totalP999Latency = 0d;
+    
     public EntityResult(long totalTxnCount, long duration, long txnCount, long dtxnCount,
-                        Histogram<Integer> totalLatencies, Histogram<Integer> spLatencies, Histogram<Integer> dtxnLatencies) {
+                        Histogram<Integer> totalLatencies, Histogram<Integer> spLatencies, Histogram<Integer> dtxnLatencies,
+                        LatencyHistogram latencyHistogram) {
         this.txnCount = txnCount;
         this.dtxnCount = dtxnCount;
         if (totalTxnCount == 0) {
@@ -84,6 +91,12 @@ public class EntityResult implements JSONSerializable {
                 this.dtxnAvgLatency = x[i++];
                 this.dtxnStdevLatency = x[i++];
             }
+            if (latencyHistogram.isEmpty() == false) {
+                this.totalP50Latency = latencyHistogram.getValueAtPercentile(50) / 1000d;
+                this.totalP99Latency = latencyHistogram.getValueAtPercentile(99) / 1000d;
+                this.totalP999Latency = latencyHistogram.getValueAtPercentile(99.9) / 1000d;
+                this.totalMaxLatency = latencyHistogram.getMax() / 1000d;
+            }
         }
     }
     
@@ -125,6 +138,16 @@ public class EntityResult implements JSONSerializable {
         return this.totalMaxLatency;
     }
     
+    public double getTotalP50Latency() {
+        return this.totalP50Latency;
+    }
+    public double getTotalP99Latency() {
+        return this.totalP99Latency;
+    }
+    public double getTotalP999Latency() {
+        return this.totalP999Latency;
+    }
+    
     public double getSinglePartitionAvgLatency() {
         return this.totalAvgLatency;
     }
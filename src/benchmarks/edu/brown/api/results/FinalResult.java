@@ -18,6 +18,7 @@ import edu.brown.api.results.BenchmarkResults.Result;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.statistics.Histogram;
+import edu.brown.statistics.LatencyHistogram;
 import edu.brown.statistics.ObjectHistogram;
 import edu.brown.utils.JSONSerializable;
 import edu.brown.utils.JSONUtil;
@@ -57,6 +58,10 @@ public class FinalResult implements JSONSerializable {
     public double dtxnMinLatency;
     public double dtxnMaxLatency;
     
+    public double totalP50Latency;
+    public double totalP99Latency;
+    public double totalP999Latency;
+    
     /** TransactionName -> Results */
     public final Map<String, EntityResult> txnResults = new HashMap<String, EntityResult>();
     /** ClientName -> Results */
@@ -132,17 +137,21 @@ public class FinalResult implements JSONSerializable {
         Histogram<Integer> totalLatencies = new ObjectHistogram<Integer>();
         Histogram<Integer> spLatencies = new ObjectHistogram<Integer>();
         Histogram<Integer> dtxnLatencies = new ObjectHistogram<Integer>();
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
         for (String txnName : txnCounts.values()) {
             Histogram<Integer> allTxnLatencies = results.getTransactionTotalLatencies(txnName);
             Histogram<Integer> spTxnLatencies = results.getTransactionSinglePartitionLatencies(txnName);
             Histogram<Integer> dtxnTxnLatencies = results.getTransactionDistributedLatencies(txnName);
+            LatencyHistogram txnLatencyHistogram = results.getTransactionLatencyHistogram(txnName);
             EntityResult er = new EntityResult(this.txnTotalCount, this.duration,
                                                txnCounts.get(txnName), dtxnCounts.get(txnName),
-                                               allTxnLatencies, spTxnLatencies, dtxnTxnLatencies);
+                                               allTxnLatencies, spTxnLatencies, dtxnTxnLatencies,
+                                               txnLatencyHistogram);
             this.txnResults.put(txnName, er);
             totalLatencies.put(allTxnLatencies);
             spLatencies.put(spTxnLatencies);
             dtxnLatencies.put(dtxnTxnLatencies);
+            latencyHistogram.put(txnLatencyHistogram);
         } // FOR
         if (totalLatencies.isEmpty() == false) {
             double x[] = BenchmarkControllerUtil.computeLatencies(totalLatencies);
@@ -168,6 +177,12 @@ public class FinalResult implements JSONSerializable {
             this.dtxnAvgLatency = x[i++];
             this.dtxnStdevLatency = x[i++];
         }
+        if (latencyHistogram.isEmpty() == false) {
+            this.totalP50Latency = latencyHistogram.getValueAtPercentile(50) / 1000d;
+            this.totalP99Latency = latencyHistogram.getValueAtPercentile(99) / 1000d;
+            this.totalP999Latency = latencyHistogram.getValueAtPercentile(99.9) / 1000d;
+            this.totalMaxLatency = latencyHistogram.getMax() / 1000d;
+        }
         
         // CLIENTS RESULTS
         for (String clientName : results.getClientNames()) {
@@ -176,7 +191,8 @@ public class FinalResult implements JSONSerializable {
             dtxnLatencies = results.getClientDistributedLatencies(clientName);
             EntityResult er = new EntityResult(this.txnTotalCount, this.duration,
                                                clientTxnCounts.get(clientName), clientDtxnCounts.get(clientName),
-                                               totalLatencies, spLatencies, dtxnLatencies);
+                                               totalLatencies, spLatencies, dtxnLatencies,
+                                               results.getClientLatencyHistogram(clientName));
             this.clientResults.put(clientName.replace("client-", ""), er);
         } // FOR
     }
@@ -227,6 +243,15 @@ public class FinalResult implements JSONSerializable {
     public double getTotalMaxLatency() {
         return this.totalMaxLatency;
     }
+    public double getTotalP50Latency() {
+        return this.totalP50Latency;
+    }
+    public double getTotalP99Latency() {
+        return this.totalP99Latency;
+    }
+    public double getTotalP999Latency() {
+        return this.totalP999Latency;
+    }
 
     public EntityResult getTransactionResult(String txnName) {
         return this.txnResults.get(txnName);
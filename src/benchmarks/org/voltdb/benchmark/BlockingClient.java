@@ -223,6 +223,14 @@ public class BlockingClient extends Semaphore implements Client {
         return this.inner.getIOStatsInterval();
     }
 
+    /* (non-Javadoc)
+     * @see org.voltdb.client.Client#refreshRoutingTable()
+     */
+    @Override
+    public void refreshRoutingTable() throws IOException, ProcCallException {
+        this.inner.refreshRoutingTable();
+    }
+
     /* (non-Javadoc)
      * @see org.voltdb.client.Client#getInstanceId()
      */
@@ -1238,6 +1238,11 @@ void PersistentTable::processRecoveryMessage(RecoveryProtoMsg* message, Pool *po
  * the tuple data.
  */
 size_t PersistentTable::hashCode() {
+    // We need the primary key to visit the tuples in a deterministic order
+    if (m_pkeyIndex == NULL) {
+        throwFatalException("Unable to compute hash code for table '%s' because it does not have a primary key",
+                            name().c_str());
+    }
     TableIndexScheme sourceScheme = m_pkeyIndex->getScheme();
     sourceScheme.setTree();
     boost::scoped_ptr<TableIndex> pkeyIndex(TableIndexFactory::getInstance(sourceScheme));
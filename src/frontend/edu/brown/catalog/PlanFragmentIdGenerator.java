@@ -11,6 +11,7 @@ public abstract class PlanFragmentIdGenerator {
     private static final int READONLY_OFFSET = 16;
     private static final int FASTAGGREGATE_OFFSET = 17;
     private static final int FASTCOMBINE_OFFSET = 18;
+    private static final int INDEX_MASK = (1 << READONLY_OFFSET) - 1;
 
     /**
      * @param next_id
@@ -37,6 +38,16 @@ public abstract class PlanFragmentIdGenerator {
         return (next_id);
     }
     
+    /**
+     * Returns the PlanFragment's id without any of the flags embedded in it.
+     * This is unique per PlanFragment and can be used to index arrays.
+     * @param id
+     * @return
+     */
+    public static int getPlanFragmentIndex(long id) {
+        return ((int)(id & INDEX_MASK));
+    }
+    
     /**
      * Returns true if the PlanFragmnt id is marked as a read only
      * @param id
@@ -9,10 +9,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.log4j.Logger;
@@ -28,7 +28,9 @@ import org.voltdb.exceptions.SerializableException;
 import org.voltdb.jni.ExecutionEngine;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.sysprocs.EvictTuples;
+import org.voltdb.sysprocs.saverestore.SnapshotChangeTracker;
 import org.voltdb.types.AntiCacheEvictionPolicyType;
+import org.voltdb.utils.EstTime;
 import org.voltdb.utils.Pair;
 import org.voltdb.utils.VoltTableUtil;
 
@@ -38,6 +40,7 @@ import edu.brown.catalog.CatalogUtil;
 import edu.brown.hstore.Hstoreservice.Status;
 import edu.brown.hstore.Hstoreservice.UnevictDataResponse;
 import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.hstore.internal.UtilityWorkMessage.EvictBlocksMessage;
 import edu.brown.hstore.internal.UtilityWorkMessage.TableStatsRequestMessage;
 import edu.brown.hstore.txns.AbstractTransaction;
 import edu.brown.hstore.txns.LocalTransaction;
@@ -79,30 +82,68 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
     // INTERNAL QUEUE ENTRY
     // ----------------------------------------------------------------------------
 
+    /**
+     * A batch of evicted blocks that need to be read back in for a single table
+     * at a single partition, along with all of the transactions that are waiting
+     * for any of those blocks. Transactions that need blocks that are already in a
+     * batch piggyback on it instead of asking the EE to read the blocks again.
+     */
     protected class QueueEntry {
-        final AbstractTransaction ts;
         final Table catalog_tbl;
         final int partition;
-        final int block_ids[];
-        final int tuple_offsets[]; 
-
-        public QueueEntry(AbstractTransaction ts, int partition, Table catalog_tbl, int block_ids[], int tuple_offsets[]) {
-            this.ts = ts;
+        /** BlockId -> TupleOffset (the EE only uses the first offset for each block) */
+        final Map<Integer, Integer> blocks = new LinkedHashMap<Integer, Integer>();
+        final List<AbstractTransaction> waiters = new ArrayList<AbstractTransaction>();
+        /** Set once the AntiCacheManager thread has started reading in this batch */
+        boolean dispatched = false;
+        /** Set once all of the waiting transactions have been restarted */
+        boolean finished = false;
+
+        public QueueEntry(int partition, Table catalog_tbl) {
             this.partition = partition;
             this.catalog_tbl = catalog_tbl;
-            this.block_ids = block_ids;
-            this.tuple_offsets = tuple_offsets;
         }
 
-		@Override
+        public QueueEntry(AbstractTransaction ts, int partition, Table catalog_tbl, int block_ids[], int tuple_offsets[]) {
+            this(partition, catalog_tbl);
+            this.waiters.add(ts);
+            for (int i = 0; i < block_ids.length; i++) {
+                this.addBlock(block_ids[i], tuple_offsets[i]);
+            } // FOR
+        }
+
+        private boolean addBlock(int block_id, int tuple_offset) {
+            if (this.blocks.containsKey(block_id)) return (false);
+            this.blocks.put(block_id, tuple_offset);
+            return (true);
+        }
+
+        private boolean containsAll(int block_ids[]) {
+            for (int block_id : block_ids) {
+                if (this.blocks.containsKey(block_id) == false) return (false);
+            } // FOR
+            return (true);
+        }
+
+        @Override
         public String toString() {
             return String.format("%s{%s / Table:%s / Partition:%d / BlockIds:%s}",
-                    this.getClass().getSimpleName(), this.ts,
+                    this.getClass().getSimpleName(), this.waiters,
                     this.catalog_tbl.getName(), this.partition,
-                    Arrays.toString(this.block_ids));
+                    this.blocks.keySet());
         }
     }
 
+    /**
+     * Identifies a single evicted block at a partition
+     */
+    private static long blockKey(int partition, Table catalog_tbl, int block_id) {
+        return (((long)partition << 48) | ((long)(catalog_tbl.getRelativeIndex() & 0xFFFF) << 32) | (block_id & 0xFFFFFFFFL));
+    }
+    private static long tableKey(int partition, Table catalog_tbl) {
+        return (((long)partition << 32) | (catalog_tbl.getRelativeIndex() & 0xFFFFFFFFL));
+    }
+
     // ----------------------------------------------------------------------------
     // INSTANCE MEMBERS
     // ----------------------------------------------------------------------------
@@ -118,11 +159,41 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
     protected boolean pendingStatsUpdates[];
 
     private final AntiCacheManagerProfiler profilers[];
+
+    /**
+     * The batches that are queued but have not been dispatched to the EE yet.
+     * There is at most one open batch per partition+table.
+     * (Partition, Table) -> QueueEntry
+     */
+    private final Map<Long, QueueEntry> openBatches = new HashMap<Long, QueueEntry>();
+
+    /**
+     * The batch that each evicted block is waiting on, whether it is still queued
+     * or is being read in by the EE right now.
+     * (Partition, Table, BlockId) -> QueueEntry
+     */
+    private final Map<Long, QueueEntry> inflightBlocks = new HashMap<Long, QueueEntry>();
     private final AntiCacheEvictionPolicyType evictionDistributionPolicy;
     
     private final double UNEVICTION_RATIO_EMA_ALPHA = .1;
     private final double UNEVICTION_RATIO_CLUSTER_THRESHOLD = .1;
     private final double ACCESS_RATE_CLUSTER_THRESHOLD = .1;
+    
+    /**
+     * If the uneviction ratio at a partition since its last eviction is above
+     * this, then it is evicting blocks that it needs back so we slow down.
+     */
+    private final double PARTITION_UNEVICTION_RATIO_HIGH = .5;
+    /**
+     * If the uneviction ratio at a partition since its last eviction is below
+     * this, then we can evict more blocks per round.
+     */
+    private final double PARTITION_UNEVICTION_RATIO_LOW = .1;
+
+    /**
+     * The eviction state of each local partition when ${site.anticache_partition_eviction} is enabled
+     */
+    private final PartitionEvictionState[] evictionStates;
 
     /**
      * 
@@ -168,7 +239,9 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
                     // check to see if we should start eviction
                     if (debug.val)
                         LOG.warn("Checking and evicting");
-                    if (hstore_conf.site.anticache_enable && checkEviction()) {
+                    if (hstore_conf.site.anticache_enable &&
+                        hstore_conf.site.anticache_partition_eviction == false &&
+                        checkEviction()) {
                         executeEviction();
                     }
                 } catch (Throwable ex) {
@@ -244,8 +317,12 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
         Arrays.fill(pendingStatsUpdates, false);
 
         this.profilers = new AntiCacheManagerProfiler[num_partitions];
+        this.evictionStates = new PartitionEvictionState[num_partitions];
+        int num_local_partitions = hstore_site.getLocalPartitionIds().size();
         for (int partition : hstore_site.getLocalPartitionIds().values()) {
             this.profilers[partition] = new AntiCacheManagerProfiler();
+            this.evictionStates[partition] = new PartitionEvictionState(
+                    Math.max(1, hstore_conf.site.anticache_blocks_per_eviction / num_local_partitions));
         } // FOR
 
         this.statsMessage = new TableStatsRequestMessage(catalogContext.getDataTables());
@@ -273,32 +350,38 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
 
     @Override
     protected void processingCallback(QueueEntry next) {
-        assert(next.ts.isInitialized()) :
-            String.format("Unexpected uninitialized transaction handle: %s", next);
-        if (next.partition != next.ts.getBasePartition()) { // distributed txn
-            LOG.warn(String.format("The base partition for %s is %d but we want to fetch a block for partition %d: %s",
-                     next.ts, next.ts.getBasePartition(), next.partition, next));
-            // if we are the remote site then we should go ahead and continue processing
-            // if no then we should simply requeue the entry? 
-            
-        }
+        // Once the batch is dispatched, no new blocks can be added to it. Any txn that
+        // shows up after this point for a block in this batch will still piggyback
+        // on it because its blocks are in the inflight table until we're done.
+        synchronized (this.openBatches) {
+            next.dispatched = true;
+            long key = tableKey(next.partition, next.catalog_tbl);
+            if (this.openBatches.get(key) == next) this.openBatches.remove(key);
+        } // SYNCH
         if (debug.val)
             LOG.debug("Processing " + next);
 
-        // We need to get the EE handle for the partition that this txn
-        // needs to have read in some blocks from disk
+        // We need to get the EE handle for the partition that these txns
+        // need to have read in some blocks from disk
         PartitionExecutor executor = hstore_site.getPartitionExecutor(next.partition);
         ExecutionEngine ee = executor.getExecutionEngine();
 
-        // boolean merge_needed = true; 
+        int block_ids[] = new int[next.blocks.size()];
+        int tuple_offsets[] = new int[block_ids.length];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> e : next.blocks.entrySet()) {
+            block_ids[i] = e.getKey().intValue();
+            tuple_offsets[i] = e.getValue().intValue();
+            i++;
+        } // FOR
 
-        // We can now tell it to read in the blocks that this txn needs
+        // We can now tell it to read in the blocks that these txns need
         // Note that we are doing this without checking whether another txn is already
         // running. That's because reading in unevicted tuples is a two-stage process.
         // First we read the blocks from disk in a standalone buffer. Then once we
-        // know that all of the tuples that we need are there, we will requeue the txn,
-        // which knows that it needs to tell the EE to merge in the results from this buffer
-        // before it executes anything.
+        // know that all of the tuples that we need are there, we will requeue the txns,
+        // which know that they need to tell the EE to merge in the results from this buffer
+        // before they execute anything.
         //
         // TODO: We may want to create a HStoreConf option that allows to dispatch this
         // request asynchronously per partition. For now we're just going to
@@ -307,65 +390,117 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
             this.profilers[next.partition].retrieval_time.start();
         try {
             if (debug.val)
-                LOG.debug(String.format("Asking EE to read in evicted blocks from table %s on partition %d: %s",
-                          next.catalog_tbl.getName(), next.partition, Arrays.toString(next.block_ids)));
+                LOG.debug(String.format("Asking EE to read in evicted blocks from table %s on partition %d for %d txns: %s",
+                          next.catalog_tbl.getName(), next.partition, next.waiters.size(), Arrays.toString(block_ids)));
 
-            ee.antiCacheReadBlocks(next.catalog_tbl, next.block_ids, next.tuple_offsets);
+            ee.antiCacheReadBlocks(next.catalog_tbl, block_ids, tuple_offsets);
 
             if (debug.val)
                 LOG.debug(String.format("Finished reading blocks from partition %d",
                           next.partition));
         } catch (SerializableException ex) {
             LOG.info("Caught unexpected SerializableException while reading anti-cache block.", ex);
-
-            // merge_needed = false; 
         } finally {
             if (hstore_conf.site.anticache_profiling) 
                 this.profilers[next.partition].retrieval_time.stopIfStarted();
         }
 
-        if (debug.val) LOG.debug("anticache block removal done");
-        // Long oldTxnId = next.ts.getTransactionId();
-        // Now go ahead and requeue our transaction
+        // Take the blocks out of the inflight table before we restart anybody so that a
+        // txn that misses on the same block again will get a new read instead of waiting
+        // on a batch that is already finished.
+        List<AbstractTransaction> waiters = this.finish(next);
+        if (debug.val) LOG.debug(String.format("anticache block removal done, restarting %d txns", waiters.size()));
+
+        // Merge the blocks in ourselves if anybody that is waiting is not going to
+        // execute at this partition as its base partition.
+        boolean merge_needed = false;
+        for (AbstractTransaction ts : waiters) {
+            if (ts instanceof LocalTransaction == false || next.partition != ts.getBasePartition()) {
+                merge_needed = true;
+                break;
+            }
+        } // FOR
+        if (merge_needed) {
+            ee.antiCacheMergeBlocks(next.catalog_tbl);
+            if (hstore_conf.site.snapshot_incremental) {
+                SnapshotChangeTracker.markTablesWritten(next.partition, next.catalog_tbl.getRelativeIndex());
+            }
+        }
 
-        //        if(merge_needed)
-        next.ts.setAntiCacheMergeTable(next.catalog_tbl);
+        // Now go ahead and requeue all of our transactions together
+        for (AbstractTransaction ts : waiters) {
+            this.restartTransaction(ts, next.partition, next.catalog_tbl);
+        } // FOR
+    }
 
-        if (next.ts instanceof LocalTransaction){
+    /**
+     * Remove the given batch's blocks from the inflight table and return
+     * the list of transactions that were waiting for it.
+     * @param next
+     * @return
+     */
+    private List<AbstractTransaction> finish(QueueEntry next) {
+        synchronized (this.openBatches) {
+            next.finished = true;
+            long key = tableKey(next.partition, next.catalog_tbl);
+            if (this.openBatches.get(key) == next) this.openBatches.remove(key);
+            for (Integer block_id : next.blocks.keySet()) {
+                long block_key = blockKey(next.partition, next.catalog_tbl, block_id.intValue());
+                if (this.inflightBlocks.get(block_key) == next) this.inflightBlocks.remove(block_key);
+            } // FOR
+            return (new ArrayList<AbstractTransaction>(next.waiters));
+        } // SYNCH
+    }
+
+    /**
+     * Requeue a transaction after the blocks that it was waiting for have been read in
+     * @param txn
+     * @param partition
+     * @param catalog_tbl
+     */
+    private void restartTransaction(AbstractTransaction txn, int partition, Table catalog_tbl) {
+        assert(txn.isInitialized()) :
+            String.format("Unexpected uninitialized transaction handle: %s", txn);
+        txn.setAntiCacheMergeTable(catalog_tbl);
+
+        if (txn instanceof LocalTransaction){
             // HACK HACK HACK HACK HACK HACK
             // We need to get a new txnId for ourselves, since the one that we
             // were given before is now probably too far in the past
-        	if(next.partition != next.ts.getBasePartition()){
-        		ee.antiCacheMergeBlocks(next.catalog_tbl);
-        	}
-            this.hstore_site.getTransactionInitializer().resetTransactionId(next.ts, next.partition);
+            this.hstore_site.getTransactionInitializer().resetTransactionId((LocalTransaction)txn, partition);
 
             if (debug.val) LOG.debug("restartin on local");
-        	this.hstore_site.transactionInit(next.ts);	
+        	this.hstore_site.transactionInit((LocalTransaction)txn);	
         } else {
-        	ee.antiCacheMergeBlocks(next.catalog_tbl);
-        	RemoteTransaction ts = (RemoteTransaction) next.ts; 
+        	RemoteTransaction ts = (RemoteTransaction)txn; 
         	RpcCallback<UnevictDataResponse> callback = ts.getUnevictCallback();
         	UnevictDataResponse.Builder builder = UnevictDataResponse.newBuilder()
         		.setSenderSite(this.hstore_site.getSiteId())
         		.setTransactionId(ts.getNewTransactionId())
-        		.setPartitionId(next.partition)
+        		.setPartitionId(partition)
         		.setStatus(Status.OK);
         	callback.run(builder.build());        	
-        	
         }
     }
 
     @Override
     protected void removeCallback(QueueEntry next) {
-    	LocalTransaction ts = (LocalTransaction) next.ts;
-        this.hstore_site.transactionReject(ts, Status.ABORT_GRACEFUL);
+        for (AbstractTransaction ts : this.finish(next)) {
+            if (ts instanceof LocalTransaction) {
+                this.hstore_site.transactionReject((LocalTransaction)ts, Status.ABORT_GRACEFUL);
+            }
+        } // FOR
     }
 
     /**
      * Queue a transaction that needs to wait until the evicted blocks at the target Table are read back in at the given
      * partition. This is a non-blocking call. The AntiCacheManager will figure out when it's ready to get these blocks
      * back in <B>Note:</B> The given LocalTransaction handle must not have been already started.
+     * <P>
+     * If every block that the txn needs is already being read in for another txn, then the txn
+     * piggybacks on that request. Otherwise the blocks that are not already being read in are
+     * added to the pending batch for the table at that partition (up to
+     * <code>site.anticache_unevict_batch_size</code> blocks per batch).
      * 
      * @param ts
      *            - A new LocalTransaction handle created from an aborted transaction
@@ -381,15 +516,22 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
     	    LOG.debug(String.format("\nBase partition: %d \nPartition that needs to unevict data: %d",
     	              txn.getBasePartition(), partition));
     	
-    	// HACK
-    	Set<Integer> allBlockIds = new HashSet<Integer>();
-    	for (int block : block_ids) {
-    	    allBlockIds.add(block);
-    	}
-    	block_ids = new int[allBlockIds.size()];
-    	int i = 0;
-    	for (int block : allBlockIds) {
-    	    block_ids[i++] = block;
+    	// Remove duplicate blocks but keep each blockId paired with its tuple offset
+    	Map<Integer, Integer> allBlocks = new LinkedHashMap<Integer, Integer>();
+    	for (int i = 0; i < block_ids.length; i++) {
+    	    if (allBlocks.containsKey(block_ids[i]) == false) {
+    	        allBlocks.put(block_ids[i], tuple_offsets[i]);
+    	    }
+    	} // FOR
+    	if (allBlocks.size() != block_ids.length) {
+        	block_ids = new int[allBlocks.size()];
+        	tuple_offsets = new int[block_ids.length];
+        	int i = 0;
+        	for (Map.Entry<Integer, Integer> e : allBlocks.entrySet()) {
+        	    block_ids[i] = e.getKey().intValue();
+        	    tuple_offsets[i] = e.getValue().intValue();
+        	    i++;
+        	} // FOR
     	}
     	
     	if (txn instanceof LocalTransaction) {
@@ -408,7 +550,12 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
 	    		
 	    	}
 	    	
-	    	if (hstore_conf.site.anticache_profiling) {
+	    	// This txn was probed before it was queued, so it has not actually
+	    	// accessed the evicted tuples yet
+	    	if (ts.getPendingError() == null) {
+	    	    if (hstore_conf.site.anticache_profiling) this.profilers[partition].preunevicted_txns++;
+	    	}
+	    	else if (hstore_conf.site.anticache_profiling) {
 		        assert(ts.getPendingError() != null) :
 		            String.format("Missing original %s for %s", EvictedTupleAccessException.class.getSimpleName(), ts);
 		        assert(ts.getPendingError() instanceof EvictedTupleAccessException) :
@@ -423,13 +570,69 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
     	if (debug.val)
     	    LOG.debug(String.format("AntiCacheManager queuing up an item for uneviction at site %d",
     	              hstore_site.getSiteId()));
-        QueueEntry e = new QueueEntry(txn, partition, catalog_tbl, block_ids, tuple_offsets);
 
-        // TODO: We should check whether there are any other txns that are also blocked waiting
-        // for these blocks. This will ensure that we don't try to read in blocks twice.
+    	int batch_size = Math.max(1, hstore_conf.site.anticache_unevict_batch_size);
+    	long table_key = tableKey(partition, catalog_tbl);
+    	QueueEntry newBatch = null;
+    	synchronized (this.openBatches) {
+    	    // Check whether all of the blocks that we need are already going to be
+    	    // read in by a single batch. If so, then we'll just wait for that one.
+    	    QueueEntry existing = null;
+    	    for (int block_id : block_ids) {
+    	        QueueEntry e = this.inflightBlocks.get(blockKey(partition, catalog_tbl, block_id));
+    	        if (e == null || (existing != null && existing != e)) {
+    	            existing = null;
+    	            break;
+    	        }
+    	        existing = e;
+    	    } // FOR
+    	    if (existing == null) {
+    	        // Otherwise we can only join the open batch if it is not dispatched yet
+    	        // and it still has room for all of our blocks
+    	        QueueEntry open = this.openBatches.get(table_key);
+    	        if (open != null && open.dispatched == false) {
+    	            int needed = 0;
+    	            for (int block_id : block_ids) {
+    	                if (open.blocks.containsKey(block_id) == false) needed++;
+    	            } // FOR
+    	            if (open.blocks.size() + needed <= batch_size || open.containsAll(block_ids)) {
+    	                existing = open;
+    	                for (int i = 0; i < block_ids.length; i++) {
+    	                    if (open.addBlock(block_ids[i], tuple_offsets[i])) {
+    	                        this.inflightBlocks.put(blockKey(partition, catalog_tbl, block_ids[i]), open);
+    	                    }
+    	                } // FOR
+    	            }
+    	        }
+    	    }
+    	    if (existing != null && existing.finished == false) {
+    	        if (debug.val)
+    	            LOG.debug(String.format("%s is piggybacking on %s", txn, existing));
+    	        existing.waiters.add(txn);
+    	        if (hstore_conf.site.anticache_profiling) this.profilers[partition].piggybacked_txns++;
+    	        return (true);
+    	    }
+
+    	    // We need a new batch. Any block that is already being read in by another
+    	    // batch still has to be in ours because the txn only waits on one batch.
+    	    newBatch = new QueueEntry(txn, partition, catalog_tbl, block_ids, tuple_offsets);
+    	    for (int block_id : block_ids) {
+    	        long block_key = blockKey(partition, catalog_tbl, block_id);
+    	        if (this.inflightBlocks.containsKey(block_key) == false) {
+    	            this.inflightBlocks.put(block_key, newBatch);
+    	        }
+    	    } // FOR
+    	    if (newBatch.blocks.size() < batch_size) {
+    	        this.openBatches.put(table_key, newBatch);
+    	    }
+    	} // SYNCH
 
         //LOG.info("Queueing a transaction for partition " + partition);
-        return (this.queue.offer(e));
+        if (this.queue.offer(newBatch) == false) {
+            this.finish(newBatch);
+            return (false);
+        }
+        return (true);
     }
 
     // ----------------------------------------------------------------------------
@@ -565,8 +768,18 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
     }
 
     protected Map<Integer, Map<String, Integer>> getEvictionDistribution(long blocksToEvict) {
+        return (this.getEvictionDistribution(hstore_site.getLocalPartitionIds(), blocksToEvict));
+    }
+    
+    /**
+     * Distribute the given number of blocks to evict across the tables at the given partitions
+     * @param partitions
+     * @param blocksToEvict
+     * @return
+     */
+    protected Map<Integer, Map<String, Integer>> getEvictionDistribution(Iterable<Integer> partitions, long blocksToEvict) {
         Map<Integer, Map<String, Integer>> distribution = new HashMap<Integer, Map<String, Integer>>();
-        for (int partition : hstore_site.getLocalPartitionIds()) {
+        for (int partition : partitions) {
             distribution.put(partition, new HashMap<String, Integer>());
         }
         switch (evictionDistributionPolicy) {
@@ -598,13 +811,13 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
             msg += "\n";
 
         }
-        LOG.warn(msg);
+        if (debug.val) LOG.debug(msg);
         return distribution;
     }
 
     protected void fillEvenEvictionDistribution(Map<Integer, Map<String, Integer>> distribution, long blocksToEvict) {
         // blocks to evict / (#tables * #partitions)
-        int blocks = (int) blocksToEvict / (evictableTables.length * hstore_site.getLocalPartitionIds().size());
+        int blocks = (int) blocksToEvict / (evictableTables.length * distribution.size());
 
         for (Map<String, Integer> tableBlocks : distribution.values()) {
             for (String table : evictableTables) {
@@ -615,8 +828,8 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
 
     protected void fillProportionalEvictionDistribution(Map<Integer, Map<String, Integer>> distribution, long blocksToEvict) {
         float totalEvictableKb = 0;
-        for (PartitionStats stats : this.partitionStats) {
-            for (Stats tstats : stats.getTableStats()) {
+        for (int partition : distribution.keySet()) {
+            for (Stats tstats : this.partitionStats[partition].getTableStats()) {
                 totalEvictableKb += tstats.sizeKb;
             }
         }
@@ -640,8 +853,8 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
     
     private void fillUnevictionRatioEvictionDistribution(Map<Integer, Map<String, Integer>> distribution,
             long blocksToEvict) {
-        for (PartitionStats stats : partitionStats) {
-            for (Stats tstats : stats.getTableStats()) {
+        for (int partition : distribution.keySet()) {
+            for (Stats tstats : partitionStats[partition].getTableStats()) {
                 double blocksFetchedDelta = tstats.blocksFetched - tstats.evictionBlocksFetched;
                 double blocksWrittenDelta = tstats.blocksWritten - tstats.evictionBlocksWritten;
                 double newUnevictionRatio = blocksWrittenDelta == 0 ? 0 : blocksFetchedDelta / blocksWrittenDelta;
@@ -668,8 +881,8 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
     private void fillAccessRateEvictionDistribution(Map<Integer, Map<String, Integer>> distribution,
             long blocksToEvict) {
         double total = 0;
-        for (PartitionStats stats : partitionStats) {
-            for (Stats tstats : stats.getTableStats()) {
+        for (int partition : distribution.keySet()) {
+            for (Stats tstats : partitionStats[partition].getTableStats()) {
                 total += tstats.accesses - tstats.evictionAccesses;
             }
         }
@@ -769,6 +982,137 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
             }
         }
     }
+    // ----------------------------------------------------------------------------
+    // PARTITION EVICTION
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * The adaptive eviction schedule for a single partition
+     */
+    private class PartitionEvictionState {
+        /** The amount of memory that this partition is allowed to use before it evicts */
+        double targetMb = 0;
+        /** The number of blocks that this partition will evict in its next round */
+        int blocksPerRound;
+        /** Whether the partition has not finished its last eviction yet */
+        boolean pending = false;
+        
+        PartitionEvictionState(int blocksPerRound) {
+            this.blocksPerRound = blocksPerRound;
+        }
+    }
+    
+    /**
+     * Check whether the given partition is using more than its share of memory and if so,
+     * ask its PartitionExecutor to evict some blocks the next time that it is idle.
+     * The site's memory threshold is split up between the local partitions based on how
+     * often each partition has to read back the blocks that it evicts, so that partitions
+     * with hot evicted data get to keep more in memory. The number of blocks evicted per round
+     * is cut in half whenever a partition's uneviction ratio is high and grows slowly when it is low.
+     * <B>Note:</B> This must be invoked while holding the lock on this AntiCacheManager
+     * @param partition
+     */
+    protected void checkPartitionEviction(int partition) {
+        PartitionEvictionState state = this.evictionStates[partition];
+        PartitionStats stats = this.partitionStats[partition];
+        if (state == null || state.pending) return;
+        
+        // Update the uneviction ratio for this partition since its last eviction
+        double blocksFetchedDelta = stats.blocksFetched - stats.evictionBlocksFetched;
+        double blocksWrittenDelta = stats.blocksWritten - stats.evictionBlocksWritten;
+        double newUnevictionRatio = blocksWrittenDelta == 0 ? 0 : blocksFetchedDelta / blocksWrittenDelta;
+        double unevictionRatio = (UNEVICTION_RATIO_EMA_ALPHA * newUnevictionRatio) +
+                                 ((1.0 - UNEVICTION_RATIO_EMA_ALPHA) * stats.unevictionRatio);
+        
+        // Figure out this partition's share of the site's memory
+        double totalWeight = 0;
+        long totalBlocksEvicted = 0;
+        for (int p : hstore_site.getLocalPartitionIds().values()) {
+            totalWeight += 1.0 + (p == partition ? unevictionRatio : this.partitionStats[p].unevictionRatio);
+            totalBlocksEvicted += this.partitionStats[p].blocksEvicted;
+        } // FOR
+        state.targetMb = hstore_conf.site.anticache_threshold_mb * ((1.0 + unevictionRatio) / totalWeight);
+        
+        long sizeMb = stats.sizeKb / 1024;
+        long evictableSizeKb = 0;
+        for (Stats tstats : stats.getTableStats()) {
+            evictableSizeKb += tstats.sizeKb;
+        } // FOR
+        if (debug.val)
+            LOG.debug(String.format("Partition %d Memory Usage: %d / %.1f MB [evictableKb=%d, unevictionRatio=%.2f]",
+                      partition, sizeMb, state.targetMb, evictableSizeKb, unevictionRatio));
+        if (sizeMb <= state.targetMb ||
+            evictableSizeKb < (hstore_conf.site.anticache_block_size / 1024) ||
+            totalBlocksEvicted >= hstore_conf.site.anticache_max_evicted_blocks) {
+            return;
+        }
+        
+        // Adapt how much we evict in this round based on what happened after the last one
+        if (blocksWrittenDelta > 0) {
+            stats.unevictionRatio = unevictionRatio;
+            if (newUnevictionRatio > PARTITION_UNEVICTION_RATIO_HIGH) {
+                state.blocksPerRound = Math.max(1, state.blocksPerRound / 2);
+            } else if (newUnevictionRatio < PARTITION_UNEVICTION_RATIO_LOW) {
+                state.blocksPerRound = Math.min(hstore_conf.site.anticache_blocks_per_eviction,
+                                                state.blocksPerRound + Math.max(1, state.blocksPerRound / 4));
+            }
+        }
+        long blocksToEvict = Math.min(state.blocksPerRound,
+                                      hstore_conf.site.anticache_max_evicted_blocks - totalBlocksEvicted);
+        if (blocksToEvict <= 0) return;
+        
+        Map<String, Integer> pdist = this.getEvictionDistribution(Collections.singleton(partition),
+                                                                  blocksToEvict).get(partition);
+        List<Table> tables = new ArrayList<Table>();
+        List<Table> childTables = new ArrayList<Table>();
+        List<Integer> blocks = new ArrayList<Integer>();
+        CatalogContext catalogContext = hstore_site.getCatalogContext();
+        for (Map.Entry<String, Integer> e : pdist.entrySet()) {
+            if (e.getValue() == null || e.getValue().intValue() <= 0) continue;
+            Table catalog_tbl = catalogContext.getTableByName(e.getKey());
+            Table child_tbl = null;
+            if (hstore_conf.site.anticache_batching) {
+                String children[] = CatalogUtil.getChildTables(catalogContext.database, catalog_tbl);
+                if (children != null && children.length > 0 && children[0] != null && children[0].isEmpty() == false) {
+                    child_tbl = catalogContext.getTableByName(children[0]);
+                }
+            }
+            tables.add(catalog_tbl);
+            childTables.add(child_tbl);
+            blocks.add(e.getValue());
+        } // FOR
+        if (tables.isEmpty()) return;
+        
+        int blocksArr[] = new int[blocks.size()];
+        for (int i = 0; i < blocksArr.length; i++) {
+            blocksArr[i] = blocks.get(i).intValue();
+        } // FOR
+        EvictBlocksMessage work = new EvictBlocksMessage(tables.toArray(new Table[tables.size()]),
+                                                         childTables.toArray(new Table[childTables.size()]),
+                                                         blocksArr,
+                                                         hstore_conf.site.anticache_block_size,
+                                                         EstTime.currentTimeMillis());
+        if (debug.val)
+            LOG.debug(String.format("Partition %d is over its memory target [%d / %.1f MB]. Evicting %d blocks: %s",
+                      partition, sizeMb, state.targetMb, blocksToEvict, pdist));
+        stats.setEvicted();
+        state.pending = true;
+        hstore_site.getPartitionExecutor(partition).queueEviction(work);
+    }
+    
+    /**
+     * Callback from a PartitionExecutor when it has finished evicting blocks
+     * @param partition
+     * @param blocksEvicted
+     */
+    protected void evictionFinished(int partition, long blocksEvicted) {
+        synchronized (this) {
+            if (this.evictionStates[partition] != null) this.evictionStates[partition].pending = false;
+        } // SYNCH
+        if (debug.val)
+            LOG.debug(String.format("Partition %d evicted %d blocks", partition, blocksEvicted));
+    }
+
     // ----------------------------------------------------------------------------
     // MEMORY MANAGEMENT METHODS
     // ----------------------------------------------------------------------------
@@ -906,6 +1250,13 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
 //                    partition, stats.sizeKb, oldSizeKb));
 
             pendingStatsUpdates[partition] = false;
+            
+            // Each partition decides whether to evict on its own as soon as it reports back
+            if (hstore_conf.site.anticache_partition_eviction) {
+                if (hstore_conf.site.anticache_enable) this.checkPartitionEviction(partition);
+                return;
+            }
+            
             boolean allBack = true;
             for (int i = 0; i < pendingStatsUpdates.length; i++) {
                 if(pendingStatsUpdates[i]) {
@@ -977,7 +1328,17 @@ public class AntiCacheManager extends AbstractProcessingRunnable<AntiCacheManage
             return (profilers[partition]);
         }
         public boolean isEvicting() {
-            return (pendingEvictions != 0);
+            if (pendingEvictions != 0) return (true);
+            for (PartitionEvictionState state : evictionStates) {
+                if (state != null && state.pending) return (true);
+            } // FOR
+            return (false);
+        }
+        public double getPartitionEvictionTarget(int partition) {
+            return (evictionStates[partition].targetMb);
+        }
+        public int getPartitionEvictionBlocks(int partition) {
+            return (evictionStates[partition].blocksPerRound);
         }
     }
 
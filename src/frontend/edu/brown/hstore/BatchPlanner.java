@@ -28,14 +28,10 @@ package edu.brown.hstore;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
@@ -61,7 +57,6 @@ import edu.brown.statistics.Histogram;
 import edu.brown.utils.PartitionEstimator;
 import edu.brown.utils.PartitionSet;
 import edu.brown.utils.StringUtil;
-import edu.uci.ics.jung.graph.DirectedSparseMultigraph;
 
 /**
  * @author pavlo
@@ -115,15 +110,17 @@ public class BatchPlanner {
     private final boolean force_singlePartition;
     private boolean prefetch = false;
 
-    private final Map<Integer, Set<PlanVertex>> output_dependency_xref = new HashMap<Integer, Set<PlanVertex>>();
-    private final List<Integer> output_dependency_xref_clear = new ArrayList<Integer>();
-    private final List<PlanVertex> sorted_vertices = new ArrayList<PlanVertex>();
-
     // FAST SINGLE-PARTITION LOOKUP CACHE
     private final boolean cache_isSinglePartition[];
     private final int cache_fastLookups[][];
     private final BatchPlan cache_singlePartitionPlans[];
     private Map<Statement, Map<PlanFragment, PartitionSet>> cache_singlePartitionFragmentPartitions;
+    
+    // DISTRIBUTED PLAN CACHE
+    private final int cache_distributedMaxSize;
+    private final int cache_distributedOffsets[];
+    private final PlanSignature cache_distributedSignature;
+    private final Map<PlanSignature, BatchPlan> cache_distributedPlans;
 
     // PROFILING
     private BatchPlannerProfiler profiler;
@@ -175,15 +172,26 @@ public class BatchPlanner {
         }
     } // END CLASS
 
-    protected static class PlanGraph extends DirectedSparseMultigraph<PlanVertex, Integer> {
-        private static final long serialVersionUID = 1L;
-
+    /**
+     * The dependency DAG for a batch. Every PlanVertex has at most one input 
+     * dependency, so we just store the offset of the vertex that produces it.
+     */
+    protected static class PlanGraph {
         /**
          * The number of dispatch rounds that we have in this plan
          */
         private int num_rounds = 0;
         
+        /**
+         * The vertices sorted by their Statement index and then their round
+         */
         private PlanVertex sorted_vertices[];
+        
+        /**
+         * VertexOffset -> The offset of the vertex that produces its input dependency 
+         * This will be -1 if the vertex does not have an input dependency 
+         */
+        private int input_vertices[];
 
         /**
          * Single-Partition
@@ -192,8 +200,62 @@ public class BatchPlanner {
         private int input_ids[];
         private int output_ids[];
 
-        public PlanGraph() {
-            // super(catalog_db);
+        public PlanVertex[] getVertices() {
+            return (this.sorted_vertices);
+        }
+        
+        public int getVertexCount() {
+            return (this.sorted_vertices.length);
+        }
+        
+        /**
+         * Return the vertex that produces the input dependency for the
+         * vertex at the given offset. Returns null if there is no input dependency.
+         * @param offset
+         * @return
+         */
+        public PlanVertex getInputVertex(int offset) {
+            int idx = this.input_vertices[offset];
+            return (idx != -1 ? this.sorted_vertices[idx] : null);
+        }
+        
+        public int getRoundCount() {
+            return (this.num_rounds);
+        }
+    } // END CLASS
+    
+    /**
+     * The partitions that each input parameter used for routing in the batch hashes to.
+     * This is used as the key for the distributed BatchPlan cache.
+     */
+    private static final class PlanSignature {
+        private final int values[];
+        private int hash_code;
+        
+        private PlanSignature(int size) {
+            this.values = new int[size];
+        }
+        private PlanSignature(PlanSignature other) {
+            this.values = other.values.clone();
+            this.hash_code = other.hash_code;
+        }
+        private void rehash() {
+            this.hash_code = Arrays.hashCode(this.values);
+        }
+        @Override
+        public int hashCode() {
+            return (this.hash_code);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return (true);
+            if ((obj instanceof PlanSignature) == false) return (false);
+            PlanSignature other = (PlanSignature)obj;
+            return (this.hash_code == other.hash_code && Arrays.equals(this.values, other.values));
+        }
+        @Override
+        public String toString() {
+            return Arrays.toString(this.values);
         }
     } // END CLASS
 
@@ -237,6 +299,12 @@ public class BatchPlanner {
          * A bitmap of whether each query at the given index in the batch was single-partitioned or not
          */
         private final boolean singlepartition_bitmap[];
+        
+        /**
+         * All of the partitions touched by this plan. This is only populated
+         * when the plan is stored in the distributed plan cache.
+         */
+        private PartitionSet cached_partitions;
 
         /**
          * Whether the fragments of this batch plan consist of read-only operations
@@ -504,6 +572,41 @@ public class BatchPlanner {
             }
         } // FOR
         this.nonReplicatedStmtCount = nonReplicatedStmtCnt;
+        
+        // DISTRIBUTED PLAN CACHE
+        // We can only cache distributed BatchPlans if the PartitionEstimator can give
+        // us a signature for every Statement in the batch. The first element in the 
+        // signature is always the base partition.
+        int signatureSize = -1;
+        int signatureOffsets[] = new int[this.batchSize];
+        if (hstore_conf.site.planner_caching &&
+            hstore_conf.site.planner_distributed_cache_size > 0 &&
+            this.force_singlePartition == false) {
+            signatureSize = 1;
+            for (int i = 0; i < this.batchSize; i++) {
+                signatureOffsets[i] = signatureSize;
+                int size = p_estimator.getStatementSignatureSize(this.catalog_stmts[i]);
+                if (size < 0) {
+                    if (debug.val)
+                        LOG.debug(String.format("Unable to cache distributed BatchPlans for %s because " +
+                                  "of %s", this.catalog_proc.getName(), this.catalog_stmts[i].fullName()));
+                    signatureSize = -1;
+                    break;
+                }
+                signatureSize += size;
+            } // FOR
+        }
+        if (signatureSize > 0) {
+            this.cache_distributedMaxSize = hstore_conf.site.planner_distributed_cache_size;
+            this.cache_distributedOffsets = signatureOffsets;
+            this.cache_distributedSignature = new PlanSignature(signatureSize);
+            this.cache_distributedPlans = new HashMap<PlanSignature, BatchPlan>();
+        } else {
+            this.cache_distributedMaxSize = 0;
+            this.cache_distributedOffsets = null;
+            this.cache_distributedSignature = null;
+            this.cache_distributedPlans = null;
+        }
 
         // Static Cache Members
         if (CACHED_FRAGMENT_PARTITION_MAPS == null) {
@@ -662,6 +765,35 @@ public class BatchPlanner {
                 return (this.cache_singlePartitionPlans[base_partition]);
             }
         }
+        
+        // OPTIMIZATION: Check whether we have already constructed a distributed BatchPlan 
+        // for a previous batch whose parameters route to the same partitions
+        boolean has_signature = false;
+        if (this.cache_distributedPlans != null && predict_singlePartitioned == false) {
+            has_signature = this.computeSignature(base_partition, batchArgs);
+            if (has_signature) {
+                BatchPlan cached = this.cache_distributedPlans.get(this.cache_distributedSignature);
+                if (cached != null && predict_partitions.containsAll(cached.cached_partitions)) {
+                    if (debug.val)
+                        LOG.debug(String.format("[#%d] Using cached distributed BatchPlan %s: %s", txn_id,
+                                  this.cache_distributedSignature, Arrays.toString(this.catalog_stmts)));
+                    for (int stmt_index = 0; stmt_index < this.batchSize; stmt_index++) {
+                        if (cached.singlepartition_bitmap[stmt_index] == false) {
+                            touched_partitions.put(cached.stmt_partitions[stmt_index].values());
+                        }
+                        else if (this.stmt_is_replicatedonly[stmt_index] == false ||
+                                 this.stmt_is_readonly[stmt_index] == false) {
+                            touched_partitions.put(cached.stmt_partitions[stmt_index].get());
+                        }
+                    } // FOR
+                    if (hstore_conf.site.planner_profiling && profiler != null) {
+                        profiler.plan_time.stop();
+                        profiler.cached_distributed.incrementAndGet();
+                    }
+                    return (cached);
+                }
+            }
+        }
 
         // Otherwise we have to construct a new BatchPlan
         this.plan.init(base_partition);
@@ -980,12 +1112,58 @@ public class BatchPlanner {
             this.plan = new BatchPlan(hstore_conf.site.planner_max_round_size);
             return this.cache_singlePartitionPlans[base_partition];
         }
+        // If this is a distributed plan, then we'll store it in our cache so that
+        // the next batch with the same signature can skip all of this
+        else if (has_signature &&
+                 this.plan.isSingledPartitionedAndLocal() == false &&
+                 this.cache_distributedPlans.size() < this.cache_distributedMaxSize) {
+            BatchPlan cached = this.plan;
+            cached.cached_partitions = new PartitionSet();
+            for (int stmt_index = 0; stmt_index < this.batchSize; stmt_index++) {
+                cached.cached_partitions.addAll(cached.stmt_partitions[stmt_index]);
+            } // FOR
+            cached.cached = true;
+            this.cache_distributedPlans.put(new PlanSignature(this.cache_distributedSignature), cached);
+            this.plan = new BatchPlan(hstore_conf.site.planner_max_round_size);
+            if (debug.val)
+                LOG.debug(String.format("[#%d] Cached distributed BatchPlan %s [numCached=%d]",
+                          txn_id, this.cache_distributedSignature, this.cache_distributedPlans.size()));
+            return (cached);
+        }
 
         if (debug.val)
             LOG.debug(String.format("Created BatchPlan for txn #%d:\n%s", txn_id, this.plan.toString()));
         return (this.plan);
     }
 
+    /**
+     * Populate this planner's signature for the given batch parameters.
+     * Returns false if a signature could not be generated.
+     * @param base_partition
+     * @param batchArgs
+     * @return
+     */
+    private boolean computeSignature(int base_partition, ParameterSet[] batchArgs) {
+        if (hstore_conf.site.planner_profiling && profiler != null)
+            ProfileMeasurementUtil.swap(profiler.plan_time, profiler.partest_time);
+        PlanSignature signature = this.cache_distributedSignature;
+        signature.values[0] = base_partition;
+        boolean valid = true;
+        for (int stmt_index = 0; stmt_index < this.batchSize; stmt_index++) {
+            if (this.p_estimator.getStatementSignature(this.catalog_stmts[stmt_index],
+                                                       batchArgs[stmt_index].toArray(),
+                                                       signature.values,
+                                                       this.cache_distributedOffsets[stmt_index]) == false) {
+                valid = false;
+                break;
+            }
+        } // FOR
+        if (valid) signature.rehash();
+        if (hstore_conf.site.planner_profiling && profiler != null)
+            ProfileMeasurementUtil.swap(profiler.partest_time, profiler.plan_time);
+        return (valid);
+    }
+
     /**
      * Utility method for converting a BatchPlan into WorkFragment.Builders.
      * The stmtCounters is a list of the number of times that we have executed each 
@@ -1009,6 +1187,14 @@ public class BatchPlanner {
             		  "[txn_id=#%d, base_partition=%d]",
                       txn_id, plan.base_partition));
 
+        // Cached plans are reused across transactions, so we always need
+        // to clear out the rounds from the last time
+        for (int round = 0; round < plan.rounds_length; round++) {
+            for (int partition = 0; partition < plan.rounds[round].length; partition++) {
+                if (plan.rounds[round][partition] != null) plan.rounds[round][partition].clear();
+            } // FOR
+        } // FOR
+        
         // 2013-05-14: I feel like that we could probably cache this somehow...
         for (PlanVertex v : plan.graph.sorted_vertices) {
             int stmt_index = v.stmt_index;
@@ -1140,95 +1326,63 @@ public class BatchPlanner {
             ProfileMeasurementUtil.swap(profiler.plan_time, profiler.graph_time);
         PlanGraph graph = new PlanGraph();
 
-        this.sorted_vertices.clear();
-        this.output_dependency_xref_clear.clear();
+        int num_vertices = 0;
+        for (int stmt_index = 0; stmt_index < this.batchSize; stmt_index++) {
+            assert (plan.frag_list[stmt_index] != null);
+            num_vertices += plan.frag_list[stmt_index].size();
+        } // FOR
+        graph.sorted_vertices = new PlanVertex[num_vertices];
+        graph.input_vertices = new int[num_vertices];
+        graph.fragmentIds = new long[num_vertices];
+        graph.input_ids = new int[num_vertices];
+        graph.output_ids = new int[num_vertices];
 
+        // The vertices are generated in the order of their Statement index and then 
+        // their round, so we don't need to sort them afterwards. Each PlanFragment in a 
+        // Statement takes as its input the output of the one in the round before it.
         int last_id = FIRST_DEPENDENCY_ID;
+        int i = 0;
         for (int stmt_index = 0; stmt_index < this.batchSize; stmt_index++) {
             Map<PlanFragment, PartitionSet> frag_partitions = plan.frag_partitions[stmt_index];
             assert (frag_partitions != null) : "No Fragment->PartitionIds map for Statement #" + stmt_index;
 
             List<PlanFragment> fragments = plan.frag_list[stmt_index];
-            assert (fragments != null);
             int num_fragments = fragments.size();
             graph.num_rounds = Math.max(num_fragments, graph.num_rounds);
 
             // Generate the synthetic DependencyIds for the query
             int last_output_id = HStoreConstants.NULL_DEPENDENCY_ID;
-            for (int round = 0, cnt = num_fragments; round < cnt; round++) {
+            for (int round = 0; round < num_fragments; round++) {
                 PlanFragment catalog_frag = fragments.get(round);
                 PartitionSet f_partitions = frag_partitions.get(catalog_frag);
                 assert (f_partitions != null) :
                     String.format("No PartitionIds for [%02d] %s in Statement #%d", round,
                                   catalog_frag.fullName(), stmt_index);
                 boolean f_local = (f_partitions.size() == 1 && f_partitions.contains(plan.base_partition));
-                final Integer output_id = Integer.valueOf(this.enable_unique_ids ?
-                            BatchPlanner.NEXT_DEPENDENCY_ID.getAndIncrement() : last_id++);
+                int output_id = (this.enable_unique_ids ?
+                                    BatchPlanner.NEXT_DEPENDENCY_ID.getAndIncrement() : last_id++);
 
                 PlanVertex v = new PlanVertex(catalog_frag,
                                               stmt_index,
                                               round,
                                               last_output_id,
-                                              output_id.intValue(),
+                                              output_id,
                                               f_local);
-                Set<PlanVertex> dependencies = output_dependency_xref.get(output_id);
-                if (dependencies == null) {
-                    dependencies = new HashSet<PlanVertex>();
-                    this.output_dependency_xref.put(output_id, dependencies);
-                } else if (this.output_dependency_xref_clear.contains(output_id) == false) {
-                    dependencies.clear();
-                    this.output_dependency_xref_clear.add(output_id);
-                }
-                dependencies.add(v);
-
-                graph.addVertex(v);
-                this.sorted_vertices.add(v);
+                graph.sorted_vertices[i] = v;
+                graph.input_vertices[i] = (round > 0 ? i - 1 : -1);
+                graph.fragmentIds[i] = v.frag_id;
+                graph.output_ids[i] = v.output_dependency_id;
+                graph.input_ids[i] = v.input_dependency_id;
                 last_output_id = output_id;
-            }
-        } // FOR
-
-        // Setup Edges
-        for (PlanVertex v0 : graph.getVertices()) {
-            if (v0.input_dependency_id == HStoreConstants.NULL_DEPENDENCY_ID)
-                continue;
-            for (PlanVertex v1 : output_dependency_xref.get(v0.input_dependency_id)) {
-                assert (!v0.equals(v1)) : v0;
-                if (!graph.findEdgeSet(v0, v1).isEmpty())
-                    continue;
-                graph.addEdge(v0.input_dependency_id, v0, v1);
-            } // FOR
-        } // FOR
-
-        // Single-Partition Cache
-        Collections.sort(this.sorted_vertices, PLANVERTEX_COMPARATOR);
-        final int num_vertices = this.sorted_vertices.size();
-        graph.fragmentIds = new long[num_vertices];
-        graph.input_ids = new int[num_vertices];
-        graph.output_ids = new int[num_vertices];
-        int i = 0;
-        for (PlanVertex v : this.sorted_vertices) {
-            graph.fragmentIds[i] = v.frag_id;
-            graph.output_ids[i] = v.output_dependency_id;
-            graph.input_ids[i] = v.input_dependency_id;
-            i += 1;
-        } // FOR
-        graph.sorted_vertices = this.sorted_vertices.toArray(new PlanVertex[0]);
+                i += 1;
+            } // FOR (round)
+        } // FOR (stmt)
+        assert(i == num_vertices);
 
         if (hstore_conf.site.planner_profiling && profiler != null)
             ProfileMeasurementUtil.swap(profiler.graph_time, profiler.plan_time);
         return (graph);
     }
-
-    private static Comparator<PlanVertex> PLANVERTEX_COMPARATOR = new Comparator<PlanVertex>() {
-        @Override
-        public int compare(PlanVertex o1, PlanVertex o2) {
-            if (o1.stmt_index != o2.stmt_index)
-                return (o1.stmt_index - o2.stmt_index);
-            if (o1.round != o2.round)
-                return (o1.round - o2.round);
-            return (o1.frag_id - o2.frag_id);
-        }
-    };
     
     // ----------------------------------------------------------------------------
     // DEBUG METHODS
@@ -1253,6 +1407,9 @@ public class BatchPlanner {
         public BatchPlan getCachedSinglePartitionPlan(int stmt_index) {
             return (cache_singlePartitionPlans[stmt_index]);
         }
+        public int getCachedDistributedPlanCount() {
+            return (cache_distributedPlans != null ? cache_distributedPlans.size() : 0);
+        }
         
     }
     
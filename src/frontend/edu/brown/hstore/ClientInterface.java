@@ -24,6 +24,7 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -458,6 +459,17 @@ public class ClientInterface implements Shutdownable, Configurable {
             hstore_site.invocationQueue(message, this, c);
             if (profiler != null) profiler.network_processing.stop();
         }
+        
+        @Override
+        public void handleMessages(List<ByteBuffer> messages, Connection c) {
+            if (profiler != null) profiler.network_processing.start();
+            if (messages.size() == 1) {
+                hstore_site.invocationQueue(messages.get(0), this, c);
+            } else {
+                hstore_site.invocationQueue(messages, this, c);
+            }
+            if (profiler != null) profiler.network_processing.stop();
+        }
 
         @Override
         public void started(final Connection c) {
@@ -590,6 +602,13 @@ public class ClientInterface implements Shutdownable, Configurable {
     private int maxPendingTxnCount;
     private final double maxPendingTxnCountRelease = 0.8;
     
+    /**
+     * If this is true, then the PartitionAdmissionController takes care of limiting
+     * the number of txns at each partition. We will only throttle all of the connections
+     * if the number of pending bytes gets too large.
+     */
+    private boolean partitionAdmissionControl = false;
+    
     
     // ----------------------------------------------------------------------------
     // BACKPRESSURE OBSERVERS
@@ -671,6 +690,7 @@ public class ClientInterface implements Shutdownable, Configurable {
         
         this.maxPendingTxnBytes = (int)(hstore_conf.site.network_incoming_limit_bytes * num_partitions);
         this.maxPendingTxnCount = (int)(hstore_conf.site.network_incoming_limit_txns * num_partitions);
+        this.partitionAdmissionControl = hstore_conf.site.queue_admission_control;
         
         // Backpressure EventObservers
         this.onBackPressure.addObserver(this.onBackPressureObserver);
@@ -688,6 +708,7 @@ public class ClientInterface implements Shutdownable, Configurable {
         int num_partitions = hstore_site.getLocalPartitionIds().size();
         this.maxPendingTxnCount = hstore_conf.site.network_incoming_limit_txns * num_partitions;
         this.maxPendingTxnBytes = hstore_conf.site.network_incoming_limit_bytes * num_partitions;
+        this.partitionAdmissionControl = hstore_conf.site.queue_admission_control;
     }
     
     public void startAcceptingConnections() throws IOException {
@@ -740,16 +761,27 @@ public class ClientInterface implements Shutdownable, Configurable {
     }
     
     public void increaseBackpressure(int messageSize) {
+        this.increaseBackpressure(messageSize, 1);
+    }
+    
+    /**
+     * Add the given number of new txn requests to the pending counters in one shot.
+     * This is used when we get a bunch of requests from a single read off of a connection.
+     * @param messageSize The total number of bytes for all of the requests
+     * @param messageCount The number of requests
+     */
+    public void increaseBackpressure(long messageSize, int messageCount) {
         long pendingBytes = this.currentPendingTxnBytes.addAndGet(messageSize);
-        int pendingTxns = this.currentPendingTxnCount.incrementAndGet();
+        int pendingTxns = this.currentPendingTxnCount.addAndGet(messageCount);
         if (debug.val) 
-            LOG.debug(String.format("Increased Backpressure by %d bytes " +
+            LOG.debug(String.format("Increased Backpressure by %d bytes for %d txns " +
             		  "[BYTES: %d/%d] [TXNS: %d/%d]%s",
-                      messageSize,
+                      messageSize, messageCount,
                       pendingBytes, this.maxPendingTxnBytes, pendingTxns, this.maxPendingTxnCount,
                       (this.hadBackPressure ? " *THROTTLED*" : "")));
         
-        if (pendingBytes > this.maxPendingTxnBytes || pendingTxns > this.maxPendingTxnCount) {
+        if (pendingBytes > this.maxPendingTxnBytes ||
+                (this.partitionAdmissionControl == false && pendingTxns > this.maxPendingTxnCount)) {
             if (!this.hadBackPressure) {
                 if (trace.val) LOG.trace("Incoming txn backpressure began");
                 this.hadBackPressure = true;
@@ -770,7 +802,7 @@ public class ClientInterface implements Shutdownable, Configurable {
                       (hadBackPressure ? " *THROTTLED*" : "")));
         
         if (pendingBytes < (this.maxPendingTxnBytes * this.maxPendingTxnBytesRelease) &&
-            pendingTxns < (this.maxPendingTxnCount * this.maxPendingTxnCountRelease))
+            (this.partitionAdmissionControl || pendingTxns < (this.maxPendingTxnCount * this.maxPendingTxnCountRelease)))
         {
             if (this.hadBackPressure) {
                 if (trace.val) LOG.trace("Incoming txn backpressure ended");
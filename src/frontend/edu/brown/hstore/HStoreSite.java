@@ -53,6 +53,8 @@ import org.voltdb.ClientResponseImpl;
 import org.voltdb.MemoryStats;
 import org.voltdb.ParameterSet;
 import org.voltdb.ProcedureProfiler;
+import org.voltdb.SnapshotRestoreStatus;
+import org.voltdb.SnapshotStatus;
 import org.voltdb.StatsAgent;
 import org.voltdb.StatsSource;
 import org.voltdb.StoredProcedureInvocation;
@@ -111,11 +113,13 @@ import edu.brown.hstore.stats.AntiCacheManagerProfilerStats;
 import edu.brown.hstore.stats.BatchPlannerProfilerStats;
 import edu.brown.hstore.stats.MarkovEstimatorProfilerStats;
 import edu.brown.hstore.stats.PartitionExecutorProfilerStats;
+import edu.brown.hstore.stats.QueryCacheStats;
 import edu.brown.hstore.stats.SiteProfilerStats;
 import edu.brown.hstore.stats.SpecExecProfilerStats;
 import edu.brown.hstore.stats.TransactionCounterStats;
 import edu.brown.hstore.stats.TransactionProfilerStats;
 import edu.brown.hstore.stats.TransactionQueueManagerProfilerStats;
+import edu.brown.hstore.stats.TransactionTracerStats;
 import edu.brown.hstore.txns.AbstractTransaction;
 import edu.brown.hstore.txns.DependencyTracker;
 import edu.brown.hstore.txns.LocalTransaction;
@@ -132,6 +136,7 @@ import edu.brown.logging.RingBufferAppender;
 import edu.brown.markov.EstimationThresholds;
 import edu.brown.plannodes.PlanNodeUtil;
 import edu.brown.profilers.HStoreSiteProfiler;
+import edu.brown.profilers.TransactionTracer;
 import edu.brown.statistics.FastIntHistogram;
 import edu.brown.utils.ClassUtil;
 import edu.brown.utils.CollectionUtil;
@@ -425,6 +430,11 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
      */
     private TransactionProfilerDumper txn_profiler_dumper;
     
+    /**
+     * Sampled Transaction Tracer
+     */
+    private final TransactionTracer txnTracer;
+    
     // ----------------------------------------------------------------------------
     // CACHED STRINGS
     // ----------------------------------------------------------------------------
@@ -644,6 +654,14 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         // TRANSACTION ESTIMATION
         // -------------------------------
         
+        // Sampled Transaction Tracer
+        if (hstore_conf.site.txn_tracing) {
+            this.txnTracer = new TransactionTracer(hstore_conf.site.txn_tracing_sample,
+                                                   hstore_conf.site.txn_tracing_buffer_size);
+        } else {
+            this.txnTracer = null;
+        }
+        
         // Transaction Properties Initializer
         this.txnInitializer = new TransactionInitializer(this);
         
@@ -778,6 +796,20 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             LOG.info(String.format("Transaction profile data will be written to '%s'", csvFile));
         }
         
+        // Transaction Trace Dumper
+        if (this.txnTracer != null && hstore_conf.site.txn_tracing_dump) {
+            File traceFile = new File(hstore_conf.global.log_dir +
+                                      File.separator +
+                                      this.getSiteName().toLowerCase() +
+                                      "-trace.bin");
+            try {
+                this.txnTracer.setOutputFile(traceFile);
+                LOG.info(String.format("Transaction trace events will be written to '%s'", traceFile));
+            } catch (IOException ex) {
+                LOG.warn(String.format("Failed to create transaction trace file '%s'", traceFile), ex);
+            }
+        }
+        
         // Add in our shutdown hook
         // Runtime.getRuntime().addShutdownHook(new Thread(new ShutdownHook()));
         
@@ -900,6 +932,20 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         statsSource = new BatchPlannerProfilerStats(this, this.catalogContext);
         this.statsAgent.registerStatsSource(SysProcSelector.PLANNERPROFILER, 0, statsSource);
         
+        // QUERY CACHE
+        statsSource = new QueryCacheStats(this);
+        this.statsAgent.registerStatsSource(SysProcSelector.QUERYCACHE, 0, statsSource);
+        
+        // TRANSACTION TRACER
+        statsSource = new TransactionTracerStats(this);
+        this.statsAgent.registerStatsSource(SysProcSelector.TXNTRACE, 0, statsSource);
+        
+        // SNAPSHOTS
+        statsSource = new SnapshotStatus("Snapshot Status");
+        this.statsAgent.registerStatsSource(SysProcSelector.SNAPSHOTSTATUS, 0, statsSource);
+        statsSource = new SnapshotRestoreStatus("Snapshot Restore Status");
+        this.statsAgent.registerStatsSource(SysProcSelector.SNAPSHOTRESTORE, 0, statsSource);
+        
     }
     
     // -------------------------------
@@ -1056,6 +1102,29 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
            hstore_conf.site.network_heartbeats_interval, TimeUnit.MILLISECONDS);
         if (debug.val) LOG.debug("heartbeat");
         
+        // Partition Admission Control
+        if (this.txnQueueManager.getAdmissionController() != null) {
+            final PartitionAdmissionController admissionController = this.txnQueueManager.getAdmissionController();
+            this.threadManager.schedulePeriodicWork(new ExceptionHandlingRunnable() {
+                @Override
+                public void runImpl() {
+                    admissionController.update();
+                }
+            }, hstore_conf.site.queue_admission_interval,
+               hstore_conf.site.queue_admission_interval, TimeUnit.MILLISECONDS);
+        }
+        
+        // Transaction Tracer
+        if (this.txnTracer != null) {
+            this.threadManager.schedulePeriodicWork(new ExceptionHandlingRunnable() {
+                @Override
+                public void runImpl() {
+                    HStoreSite.this.txnTracer.drain();
+                }
+            }, hstore_conf.site.txn_tracing_interval,
+               hstore_conf.site.txn_tracing_interval, TimeUnit.MILLISECONDS);
+        }
+        
         // HStoreStatus
         if (hstore_conf.site.status_enable) {
             this.threadManager.schedulePeriodicWork(
@@ -1366,6 +1435,13 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
     public TransactionInitializer getTransactionInitializer() {
         return (this.txnInitializer);
     }
+    /**
+     * Return the sampled TransactionTracer for this site.
+     * This will be null if ${site.txn_tracing} is disabled.
+     */
+    public TransactionTracer getTransactionTracer() {
+        return (this.txnTracer);
+    }
     public PartitionExecutor getPartitionExecutor(int partition) {
         PartitionExecutor es = this.executors[partition]; 
         assert(es != null) : 
@@ -1786,6 +1862,9 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
                 ex.printStackTrace();
             }
         }
+        if (this.txnTracer != null) {
+            this.txnTracer.shutdown();
+        }
         
         if (this.voltNetwork != null) {
             try {
@@ -1825,6 +1904,48 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         }
     }
     
+    /**
+     * Queue all of the requests that were read from a single connection at once.
+     * We only update the backpressure counters once for the entire batch and all of the
+     * single-partition txns are handed to the TransactionQueueManager together. 
+     * @param buffers
+     * @param handler
+     * @param c
+     */
+    protected void invocationQueue(List<ByteBuffer> buffers, ClientInputHandler handler, Connection c) {
+        final int num_buffers = buffers.size();
+        @SuppressWarnings("unchecked")
+        RpcCallback<ClientResponseImpl> callbacks[] = new RpcCallback[num_buffers];
+        long totalSize = 0;
+        for (int i = 0; i < num_buffers; i++) {
+            int messageSize = buffers.get(i).capacity();
+            callbacks[i] = new ClientResponseCallback(this.clientInterface, c, messageSize);
+            totalSize += messageSize;
+        } // FOR
+        this.clientInterface.increaseBackpressure(totalSize, num_buffers);
+        
+        if (this.preProcessorQueue != null) {
+            for (int i = 0; i < num_buffers; i++) {
+                this.preProcessorQueue.add(Pair.of(buffers.get(i), callbacks[i]));
+            } // FOR
+            return;
+        }
+        
+        long timestamp = -1;
+        if (hstore_conf.global.nanosecond_latencies) {
+            timestamp = System.nanoTime();
+        } else {
+            timestamp = System.currentTimeMillis();
+            EstTimeUpdater.update(timestamp);
+        }
+        List<LocalTransaction> batch = new ArrayList<LocalTransaction>(num_buffers);
+        for (int i = 0; i < num_buffers; i++) {
+            LocalTransaction ts = this.invocationInitialize(buffers.get(i), callbacks[i], timestamp);
+            if (ts != null) batch.add(ts);
+        } // FOR
+        if (batch.isEmpty() == false) this.transactionQueue(batch);
+    }
+    
     /**
      * This is legacy method needed for using Evan's VoltProcedureListener.
      */
@@ -1878,7 +1999,28 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             timestamp = System.currentTimeMillis();
             EstTimeUpdater.update(timestamp);
         }
-
+        
+        LocalTransaction ts = this.invocationInitialize(buffer, clientCallback, timestamp);
+        if (ts != null) this.transactionQueue(ts);
+        if (trace.val)
+            LOG.trace(String.format("Finished initial processing of new txn."));
+//        if (hstore_conf.site.network_profiling) {
+//            ProfileMeasurement.swap(this.profiler.network_processing_time, this.profiler.network_idle_time);
+//        }
+    }
+    
+    /**
+     * Deserialize the given request and create a LocalTransaction handle for it.
+     * Returns null if the request was handled here (e.g., it was an error, a special sysproc,
+     * or it was redirected to another site) and the caller does not need to queue anything.
+     * @param buffer
+     * @param clientCallback
+     * @param timestamp
+     * @return
+     */
+    private LocalTransaction invocationInitialize(ByteBuffer buffer,
+                                                  RpcCallback<ClientResponseImpl> clientCallback,
+                                                  long timestamp) {
         // Extract the stuff we need to figure out whether this guy belongs at our site
         // We don't need to create a StoredProcedureInvocation anymore in order to
         // extract out the data that we need in this request
@@ -1906,7 +2048,7 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
                                    msg,
                                    clientCallback,
                                    timestamp);
-                return;
+                return (null);
             }
         }
         boolean sysproc = catalog_proc.getSystemproc();
@@ -1935,7 +2077,7 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         // If this method returns true, then we want to halt processing the
         // request any further and immediately return
         if (sysproc && this.processSysProc(client_handle, catalog_proc, procParams, clientCallback)) {
-            return;
+            return (null);
         }
         
         // If this is the first non-sysproc transaction that we've seen, then
@@ -1972,13 +2114,28 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             // If the base_partition isn't local, then we need to ship it off to
             // the right HStoreSite
             this.transactionRedirect(catalog_proc, buffer, base_partition, clientCallback);
-            return;
+            return (null);
+        }
+        
+        // If this partition is saturated, then we'll reject the request right away
+        // instead of throttling every client connected to this site
+        PartitionAdmissionController admissionController = this.txnQueueManager.getAdmissionController();
+        if (admissionController != null && sysproc == false && admissionController.isSaturated(base_partition)) {
+            if (debug.val)
+                LOG.debug(String.format("Rejecting %s request because partition %d is saturated [handle=%d]",
+                          catalog_proc.getName(), base_partition, client_handle));
+            this.responseError(client_handle,
+                               Status.ABORT_REJECT,
+                               "Partition " + base_partition + " is overloaded",
+                               clientCallback,
+                               timestamp);
+            return (null);
         }
         
         // 2012-12-24 - We always want the network threads to do the initialization
         if (trace.val)
             LOG.trace("Initializing transaction request using network processing thread");
-        LocalTransaction ts = this.txnInitializer.createLocalTransaction(
+        return this.txnInitializer.createLocalTransaction(
                                         buffer,
                                         timestamp,
                                         client_handle,
@@ -1986,12 +2143,6 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
                                         catalog_proc,
                                         procParams,
                                         clientCallback);
-        this.transactionQueue(ts);
-        if (trace.val)
-            LOG.trace(String.format("Finished initial processing of new txn."));
-//        if (hstore_conf.site.network_profiling) {
-//            ProfileMeasurement.swap(this.profiler.network_processing_time, this.profiler.network_idle_time);
-//        }
     }
     
     
@@ -2123,6 +2274,35 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
      * @param ts
      */
     public void transactionQueue(LocalTransaction ts) {
+        if (this.transactionQueueDistributed(ts)) return;
+        this.transactionInit(ts);
+    }
+    
+    /**
+     * Queue a batch of new transactions. All of the single-partition txns in the
+     * batch are added to the local TransactionQueueManager at the same time.
+     * @param batch
+     */
+    public void transactionQueue(List<LocalTransaction> batch) {
+        List<AbstractTransaction> toInit = new ArrayList<AbstractTransaction>(batch.size());
+        for (int i = 0, cnt = batch.size(); i < cnt; i++) {
+            LocalTransaction ts = batch.get(i);
+            if (this.transactionQueueDistributed(ts) == false) {
+                assert(ts.isInitialized()) : "Uninitialized transaction handle [" + ts + "]";
+                toInit.add(ts);
+            }
+        } // FOR
+        if (toInit.isEmpty() == false) this.txnQueueManager.queueTransactionInit(toInit);
+    }
+    
+    /**
+     * Dispatch the given txn if it does not need to be added to the local init queue.
+     * Returns false if this is a single-partition txn that the caller still needs to
+     * pass to transactionInit().
+     * @param ts
+     * @return
+     */
+    private boolean transactionQueueDistributed(LocalTransaction ts) {
         assert(ts.isInitialized()) : "Uninitialized transaction handle [" + ts + "]";
         
         // Make sure that we start the MapReduceHelperThread
@@ -2137,12 +2317,18 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
                       ts.getBasePartition(), ts.getClientHandle()));
         
         if (ts.isPredictSinglePartition()) {
-            this.transactionInit(ts);
+            // If the txn's base partition is going to probe it for evicted tuples first,
+            // then the PartitionExecutor will take care of queuing it for us
+            if (hstore_conf.site.anticache_preunevict && this.txnInitializer.preUnevict(ts)) {
+                return (true);
+            }
+            return (false);
         }
         else {
             LocalInitQueueCallback initCallback = (LocalInitQueueCallback)ts.getInitCallback();
             this.hstore_coordinator.transactionInit(ts, initCallback);
         }
+        return (true);
     }
     
     /**
@@ -2186,6 +2372,7 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             "Unable to start " + ts + " - No PartitionExecutor exists for partition #" + ts.getBasePartition() + " at HStoreSite " + this.site_id;
         
         if (hstore_conf.site.txn_profiling && ts.profiler != null) ts.profiler.startQueueExec();
+        if (ts.isTraced()) this.txnTracer.record(ts.getTransactionId(), TransactionTracer.Phase.QUEUE, ts.getBasePartition());
         final boolean success = this.executors[ts.getBasePartition()].queueStartTransaction(ts);
         
         if (success == false) {
@@ -2667,6 +2854,17 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             predict_touchedPartitions = this.catalogContext.getAllPartitionIds();
         }
         
+        // Restarts are a slow path that we always want to trace, even if we
+        // weren't already tracing this txn. The TransactionInitializer will
+        // make sure that the new txn is traced too.
+        if (this.txnTracer != null && orig_ts.isSysProc() == false) {
+            orig_ts.setTraced(true);
+            this.txnTracer.record(orig_ts.getTransactionId(),
+                                  (status == Status.ABORT_MISPREDICT ? TransactionTracer.Phase.MISPREDICT :
+                                                                       TransactionTracer.Phase.RESTART),
+                                  base_partition);
+        }
+        
         // -------------------------------
         // NEW TXN INITIALIZATION
         // -------------------------------
@@ -2761,6 +2959,13 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             "Trying to send back a client response for " + ts + " but the status is " + status;
         
         if (hstore_conf.site.txn_profiling && ts.profiler != null) ts.profiler.startPostClient();
+        if (ts.isTraced()) this.txnTracer.record(ts.getTransactionId(), TransactionTracer.Phase.RESPONSE, ts.getBasePartition());
+        if (status == Status.OK && ts.isSysProc() == false) {
+            PartitionAdmissionController admissionController = this.txnQueueManager.getAdmissionController();
+            if (admissionController != null) {
+                admissionController.recordLatency(ts.getBasePartition(), ts.getInitiateTime());
+            }
+        }
         boolean sendResponse = true;
         
         // We have to send this txn to the CommandLog if all of the following are true:
@@ -2977,6 +3182,7 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         
         assert(ts.checkDeletableFlag()) :
             String.format("Trying to delete %s before it was marked as ready!", ts);
+        if (ts.isTraced()) this.txnTracer.record(txn_id, TransactionTracer.Phase.DELETE, base_partition);
         
         // Clean-up any extra information that we may have for the txn
         TransactionEstimator t_estimator = null;
@@ -3188,7 +3394,6 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         // poll planner queue
         if (this.asyncCompilerWorkThread != null) {
             this.checkForFinishedCompilerWork();
-            this.asyncCompilerWorkThread.verifyEverthingIsKosher();
         }
         
         // Don't delete anything if we're shutting down
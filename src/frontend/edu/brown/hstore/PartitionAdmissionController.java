@@ -0,0 +1,272 @@
+package edu.brown.hstore;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.log4j.Logger;
+import org.voltdb.utils.EstTime;
+
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.utils.PartitionSet;
+
+/**
+ * Adaptive admission control for the partitions at a single HStoreSite.
+ * We keep track of how long txns wait in each partition's PartitionLockQueue and
+ * how long it takes for them to complete. Every so often we look at the 99th percentile
+ * latency for each partition and then adjust the throttling threshold for its
+ * PartitionLockQueue (i.e., the partition's admission window). If a partition is
+ * missing the target latency, then we shrink its window. If it is comfortably under
+ * the target, then we slowly grow it back.
+ * <P>
+ * When this is enabled, new requests for a partition whose lock queue is throttled are
+ * rejected right away and the ClientInterface stops throttling the entire site based
+ * on the number of pending txns. This means that a single hot partition will not cause
+ * clients to get backpressure for all of the other partitions.
+ * @author pavlo
+ */
+public class PartitionAdmissionController {
+    private static final Logger LOG = Logger.getLogger(PartitionAdmissionController.class);
+    private static final LoggerBoolean debug = new LoggerBoolean();
+    static {
+        LoggerUtil.attachObserver(LOG, debug);
+    }
+
+    // ----------------------------------------------------------------------------
+    // STATIC CONFIGURATION
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Latencies are kept in one millisecond buckets. Anything
+     * greater than this goes in the last bucket.
+     */
+    private static final int MAX_TRACKED_LATENCY = 5000; // ms
+
+    /**
+     * The number of txns that have to complete at a partition in
+     * an interval before we will change its window.
+     */
+    private static final int MIN_SAMPLES = 20;
+
+    /**
+     * How much to shrink a partition's window by when it misses the target
+     */
+    private static final double DECREASE_FACTOR = 0.75;
+
+    /**
+     * The p99 latency has to be below this percentage of the target
+     * before we will grow a partition's window.
+     */
+    private static final double INCREASE_THRESHOLD = 0.8;
+
+    // ----------------------------------------------------------------------------
+    // DATA MEMBERS
+    // ----------------------------------------------------------------------------
+
+    private final TransactionQueueManager queueManager;
+    private final PartitionSet localPartitions;
+    private final boolean nanosecondLatencies;
+    private int targetLatency;
+    private int increaseDelta;
+
+    /**
+     * Latency histogram for each partition since the last update
+     */
+    private final AtomicIntegerArray latencies[];
+    private final AtomicLongArray latencyTotals;
+
+    /**
+     * The total amount of time that txns waited in the lock queue at each
+     * partition since the last update and the number of txns.
+     */
+    private final AtomicLongArray queueTimes;
+    private final AtomicIntegerArray queueCounts;
+
+    /**
+     * The stats from the last update for each partition
+     */
+    private final int lastP99[];
+    private final int lastQueueTime[];
+    private final int lastExecTime[];
+
+    private int updateCounter = 0;
+
+    /**
+     * Constructor
+     * @param queueManager
+     * @param localPartitions
+     * @param numPartitions The total number of partitions in the cluster
+     * @param hstore_conf
+     */
+    public PartitionAdmissionController(TransactionQueueManager queueManager,
+                                        PartitionSet localPartitions,
+                                        int numPartitions,
+                                        HStoreConf hstore_conf) {
+        this.queueManager = queueManager;
+        this.localPartitions = localPartitions;
+        this.nanosecondLatencies = hstore_conf.global.nanosecond_latencies;
+
+        this.latencies = new AtomicIntegerArray[numPartitions];
+        for (int partition : localPartitions.values()) {
+            this.latencies[partition] = new AtomicIntegerArray(MAX_TRACKED_LATENCY + 1);
+        } // FOR
+        this.latencyTotals = new AtomicLongArray(numPartitions);
+        this.queueTimes = new AtomicLongArray(numPartitions);
+        this.queueCounts = new AtomicIntegerArray(numPartitions);
+        this.lastP99 = new int[numPartitions];
+        this.lastQueueTime = new int[numPartitions];
+        this.lastExecTime = new int[numPartitions];
+        this.updateConf(hstore_conf);
+    }
+
+    public void updateConf(HStoreConf hstore_conf) {
+        this.targetLatency = hstore_conf.site.queue_admission_target_latency;
+        this.increaseDelta = Math.max(1, hstore_conf.site.queue_autoscale_delta);
+    }
+
+    // ----------------------------------------------------------------------------
+    // OBSERVATIONS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Returns the number of milliseconds since the given initiate time
+     * @param initiateTime
+     * @return
+     */
+    private long elapsed(long initiateTime) {
+        if (this.nanosecondLatencies) {
+            return ((System.nanoTime() - initiateTime) / 1000000l);
+        }
+        return (EstTime.currentTimeMillis() - initiateTime);
+    }
+
+    /**
+     * Record that a txn that was initiated at the given time was just
+     * released from the given partition's lock queue.
+     * @param partition
+     * @param initiateTime
+     */
+    public void recordQueueDelay(int partition, long initiateTime) {
+        long delay = Math.max(0, this.elapsed(initiateTime));
+        this.queueTimes.addAndGet(partition, delay);
+        this.queueCounts.incrementAndGet(partition);
+    }
+
+    /**
+     * Record that a txn whose base partition is the given partition
+     * and that was initiated at the given time just completed.
+     * @param partition
+     * @param initiateTime
+     */
+    public void recordLatency(int partition, long initiateTime) {
+        long latency = Math.max(0, this.elapsed(initiateTime));
+        this.latencies[partition].incrementAndGet((int)Math.min(latency, MAX_TRACKED_LATENCY));
+        this.latencyTotals.addAndGet(partition, latency);
+    }
+
+    /**
+     * Returns true if new txns for the given partition should not be admitted
+     * @param partition
+     * @return
+     */
+    public boolean isSaturated(int partition) {
+        PartitionLockQueue queue = this.queueManager.getLockQueue(partition);
+        return (queue != null && queue.isThrottled());
+    }
+
+    // ----------------------------------------------------------------------------
+    // WINDOW ADJUSTMENT
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Compute the latency stats for each partition since the last invocation
+     * and then adjust its PartitionLockQueue's throttling threshold.
+     * This should only be invoked by one thread at a time.
+     */
+    public void update() {
+        this.updateCounter++;
+        for (int partition : this.localPartitions.values()) {
+            // Grab the histogram and clear it out for the next round
+            AtomicIntegerArray hist = this.latencies[partition];
+            int counts[] = new int[hist.length()];
+            int total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = hist.getAndSet(i, 0);
+                total += counts[i];
+            } // FOR
+            long latencySum = this.latencyTotals.getAndSet(partition, 0);
+            long queueSum = this.queueTimes.getAndSet(partition, 0);
+            int queueCount = this.queueCounts.getAndSet(partition, 0);
+            if (total < MIN_SAMPLES) continue;
+
+            int p99 = 0;
+            int threshold = (int)Math.ceil(total * 0.99);
+            for (int i = 0, seen = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= threshold) {
+                    p99 = i;
+                    break;
+                }
+            } // FOR
+            int queueTime = (queueCount > 0 ? (int)(queueSum / queueCount) : 0);
+            int execTime = (int)Math.max(0, (latencySum / total) - queueTime);
+            this.lastP99[partition] = p99;
+            this.lastQueueTime[partition] = queueTime;
+            this.lastExecTime[partition] = execTime;
+
+            PartitionLockQueue queue = this.queueManager.getLockQueue(partition);
+            int window = queue.getThrottleThreshold();
+            int newWindow = window;
+            if (p99 > this.targetLatency) {
+                // If the txns themselves take longer than the target, then making
+                // the queue smaller isn't going to help us.
+                if (execTime < this.targetLatency) {
+                    newWindow = Math.max(Math.max(1, queue.getThrottleThresholdMinSize()),
+                                         (int)(window * DECREASE_FACTOR));
+                }
+            }
+            else if (p99 < this.targetLatency * INCREASE_THRESHOLD) {
+                newWindow = Math.min(Math.max(1, queue.getThrottleThresholdMaxSize()),
+                                     window + this.increaseDelta);
+            }
+            if (newWindow != window) {
+                if (debug.val)
+                    LOG.debug(String.format("Changing admission window for partition %d from %d to %d " +
+                              "[p99=%dms / target=%dms / queue=%dms / exec=%dms / txns=%d]",
+                              partition, window, newWindow, p99, this.targetLatency,
+                              queueTime, execTime, total));
+                queue.setThrottleThreshold(newWindow);
+            }
+        } // FOR
+    }
+
+    // ----------------------------------------------------------------------------
+    // STATISTICS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * The 99th percentile latency (ms) at the given partition from the last update
+     */
+    public int getLastP99Latency(int partition) {
+        return (this.lastP99[partition]);
+    }
+    /**
+     * The average time (ms) that txns waited in the given partition's lock queue
+     */
+    public int getLastQueueTime(int partition) {
+        return (this.lastQueueTime[partition]);
+    }
+    /**
+     * The average time (ms) that txns took after leaving the given partition's lock queue
+     */
+    public int getLastExecTime(int partition) {
+        return (this.lastExecTime[partition]);
+    }
+    public int getTargetLatency() {
+        return (this.targetLatency);
+    }
+    public int getUpdateCount() {
+        return (this.updateCounter);
+    }
+}
@@ -58,7 +58,6 @@ import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.TreeSet;
 import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -102,6 +101,7 @@ import org.voltdb.jni.ExecutionEngineJNI;
 import org.voltdb.jni.MockExecutionEngine;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.sysprocs.saverestore.SnapshotChangeTracker;
 import org.voltdb.types.AntiCacheDBType;
 import org.voltdb.types.SpecExecSchedulerPolicyType;
 import org.voltdb.types.SpeculationConflictCheckerType;
@@ -144,6 +144,8 @@ import edu.brown.hstore.internal.PrepareTxnMessage;
 import edu.brown.hstore.internal.SetDistributedTxnMessage;
 import edu.brown.hstore.internal.StartTxnMessage;
 import edu.brown.hstore.internal.UtilityWorkMessage;
+import edu.brown.hstore.internal.UtilityWorkMessage.EvictBlocksMessage;
+import edu.brown.hstore.internal.UtilityWorkMessage.PreUnevictMessage;
 import edu.brown.hstore.internal.UtilityWorkMessage.TableStatsRequestMessage;
 import edu.brown.hstore.internal.UtilityWorkMessage.UpdateMemoryMessage;
 import edu.brown.hstore.internal.WorkFragmentMessage;
@@ -162,6 +164,7 @@ import edu.brown.hstore.txns.RemoteTransaction;
 import edu.brown.hstore.util.ArrayCache.IntArrayCache;
 import edu.brown.hstore.util.ArrayCache.LongArrayCache;
 import edu.brown.hstore.util.ParameterSetArrayCache;
+import edu.brown.hstore.util.QueryCache;
 import edu.brown.hstore.util.TransactionCounter;
 import edu.brown.hstore.util.TransactionUndoTokenComparator;
 import edu.brown.hstore.util.TransactionWorkRequestBuilder;
@@ -171,7 +174,10 @@ import edu.brown.interfaces.Shutdownable;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.markov.EstimationThresholds;
+import edu.brown.profilers.AntiCacheManagerProfiler;
+import edu.brown.profilers.AntiCacheManagerProfiler.EvictionHistory;
 import edu.brown.profilers.PartitionExecutorProfiler;
+import edu.brown.profilers.TransactionTracer;
 import edu.brown.protorpc.NullCallback;
 import edu.brown.statistics.FastIntHistogram;
 import edu.brown.utils.ClassUtil;
@@ -201,6 +207,8 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
     private static final long WORK_QUEUE_POLL_TIME = 10; // 0.5 milliseconds
     private static final TimeUnit WORK_QUEUE_POLL_TIMEUNIT = TimeUnit.MICROSECONDS;
     
+    private static final int QUERY_CACHE_TXN_BUFFER_SIZE = 100;
+    
     private static final UtilityWorkMessage UTIL_WORK_MSG = new UtilityWorkMessage();
     private static final UpdateMemoryMessage STATS_WORK_MSG = new UpdateMemoryMessage();
     
@@ -286,6 +294,14 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
     
     // Each execution site manages snapshot using a SnapshotSiteProcessor
     private final SnapshotSiteProcessor m_snapshotter;
+    
+    /**
+     * Cross-transaction cache of the results of read-only PlanFragments.
+     * This will be null if ${site.exec_query_cache} is disabled.
+     * Anything that modifies the EE without going through executePlanFragments() or
+     * loadTable() has to invoke markUnknownTablesWritten() first.
+     */
+    private final QueryCache queryCache;
 
     /**
      * ProcedureId -> Queue<VoltProcedure>
@@ -298,6 +314,7 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
 
     private HStoreSite hstore_site;
     private HStoreCoordinator hstore_coordinator;
+    private TransactionTracer txnTracer;
     private HStoreConf hstore_conf;
     private TransactionQueueManager queueManager;
     private PartitionLockQueue lockQueue;
@@ -535,6 +552,22 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
     private final ParameterSet[] tmp_def_params = new ParameterSet[1];
     private LocalTransaction tmp_def_txn;
     
+    /**
+     * The following arrays are used by processPreUnevictMessage() to execute
+     * the probe queries for evicted tuples
+     */
+    private final long[] tmp_probe_fragmentIds = new long[1];
+    private final int[] tmp_probe_input_depIds = new int[]{ HStoreConstants.NULL_DEPENDENCY_ID };
+    private final int[] tmp_probe_output_depIds = new int[]{ 1 };
+    private final ParameterSet[] tmp_probe_params = new ParameterSet[1];
+    
+    /**
+     * The eviction that the AntiCacheManager wants us to do the next time
+     * that we are idle. If we don't become idle before ${site.anticache_partition_eviction_maxdelay}
+     * then we will do it in between txns.
+     */
+    private volatile EvictBlocksMessage pendingEviction = null;
+    
     // ----------------------------------------------------------------------------
     // INTERNAL CLASSES
     // ----------------------------------------------------------------------------
@@ -730,6 +763,7 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         this.p_estimator = null;
         this.localTxnEstimator = null;
         this.m_snapshotter = null;
+        this.queryCache = null;
         this.thresholds = null;
         this.site = null;
         this.backend_target = BackendTarget.HSQLDB_BACKEND;
@@ -906,6 +940,21 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         // Initialize temporary data structures
         int num_sites = this.catalogContext.numberOfSites;
         this.tmp_transactionRequestBuilders = new TransactionWorkRequestBuilder[num_sites];
+        
+        // Query Result Cache
+        // We can't use this with read/write set tracking because then the EE
+        // would not know what tuples the cached queries would have read.
+        if (hstore_conf.site.exec_query_cache && hstore_conf.site.exec_readwrite_tracking == false) {
+            this.queryCache = new QueryCache(hstore_conf.site.exec_query_cache_max_entries,
+                                             QUERY_CACHE_TXN_BUFFER_SIZE,
+                                             hstore_conf.site.exec_query_cache_max_size * 1048576l);
+        } else {
+            if (hstore_conf.site.exec_query_cache) {
+                LOG.warn(String.format("Disabling query cache at partition %d because read/write " +
+                         "set tracking is enabled", this.partitionId));
+            }
+            this.queryCache = null;
+        }
     }
 
        
@@ -920,6 +969,7 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         assert(this.hstore_site == null) :
             String.format("Trying to initialize HStoreSite for PartitionExecutor #%d twice!", this.partitionId);
         this.hstore_site = hstore_site;
+        this.txnTracer = hstore_site.getTransactionTracer();
         this.depTracker = hstore_site.getDependencyTracker(this.partitionId);
         this.thresholds = hstore_site.getThresholds();
         this.queueManager = hstore_site.getTransactionQueueManager();
@@ -1159,6 +1209,13 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
                 if (this.currentDtxn == null) {
                     this.tick();
                     
+                    // Don't let an eviction wait forever if we are never idle
+                    if (this.pendingEviction != null &&
+                        EstTime.currentTimeMillis() - this.pendingEviction.getCreateTime() >=
+                            hstore_conf.site.anticache_partition_eviction_maxdelay) {
+                        this.evictionWork();
+                    }
+                    
                     if (hstore_conf.site.exec_profiling) profiler.poll_time.start();
                     try {
                         nextTxn = this.queueManager.checkLockQueue(this.partitionId); // NON-BLOCKING
@@ -1258,7 +1315,7 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
                     if (this.utilityWork()) {
                         nextWork = UTIL_WORK_MSG;
                     }
-                } else {
+                } else if (this.evictionWork() == false) {
                     ThreadUtil.sleep(5);
                 }
             } // WHILE
@@ -1379,8 +1436,84 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
 //                      this.currentDtxn, this.partitionId, this.lockQueue.size(), this.specExecIgnoreCurrent));
 //        }
         
+        // -------------------------------
+        // Anti-Cache Eviction
+        // -------------------------------
+        boolean evicted = (specTxn == null && this.evictionWork());
+        
         if (hstore_conf.site.exec_profiling) this.profiler.util_time.stopIfStarted();
-        return (specTxn != null || work != null);
+        return (specTxn != null || work != null || evicted);
+    }
+    
+    /**
+     * Queue a request from the AntiCacheManager to evict blocks at this partition.
+     * This replaces any eviction that has not been done yet.
+     * @param work
+     */
+    public void queueEviction(EvictBlocksMessage work) {
+        this.pendingEviction = work;
+        if (debug.val)
+            LOG.debug(String.format("Queued eviction of %s blocks at partition %d",
+                      Arrays.toString(work.getBlocks()), this.partitionId));
+    }
+    
+    /**
+     * Evict the blocks that the AntiCacheManager asked us to evict. This can only
+     * be done when there is no distributed txn running at this partition.
+     * @return true if we evicted something
+     */
+    private boolean evictionWork() {
+        EvictBlocksMessage work = this.pendingEviction;
+        if (work == null || this.currentDtxn != null) return (false);
+        this.pendingEviction = null;
+        
+        AntiCacheManagerProfiler profiler = null;
+        long start = EstTime.currentTimeMillis();
+        if (hstore_conf.site.anticache_profiling) {
+            profiler = this.hstore_site.getAntiCacheManager().getDebugContext().getProfiler(this.partitionId);
+            profiler.eviction_time.start();
+        }
+        
+        Table tables[] = work.getTables();
+        Table childTables[] = work.getChildTables();
+        int blocks[] = work.getBlocks();
+        long totalTuplesEvicted = 0;
+        long totalBlocksEvicted = 0;
+        long totalBytesEvicted = 0;
+        try {
+            for (int i = 0; i < tables.length; i++) {
+                VoltTable vt = null;
+                if (childTables[i] != null) {
+                    vt = this.ee.antiCacheEvictBlockInBatch(tables[i], childTables[i], work.getBlockSize(), blocks[i]);
+                } else {
+                    vt = this.ee.antiCacheEvictBlock(tables[i], work.getBlockSize(), blocks[i]);
+                }
+                if (hstore_conf.site.snapshot_incremental) {
+                    SnapshotChangeTracker.markTablesWritten(this.partitionId, tables[i].getRelativeIndex());
+                }
+                if (vt == null || vt.advanceRow() == false) {
+                    LOG.warn(String.format("Failed to evict blocks from %s at partition %d",
+                             tables[i].getName(), this.partitionId));
+                    continue;
+                }
+                totalTuplesEvicted += vt.getLong("ANTICACHE_TUPLES_EVICTED");
+                totalBlocksEvicted += vt.getLong("ANTICACHE_BLOCKS_EVICTED");
+                totalBytesEvicted += vt.getLong("ANTICACHE_BYTES_EVICTED");
+            } // FOR
+        } catch (SerializableException ex) {
+            LOG.warn(String.format("Unexpected error when evicting blocks at partition %d", this.partitionId), ex);
+        } finally {
+            if (profiler != null) {
+                profiler.eviction_history.add(new EvictionHistory(start,
+                                                                  EstTime.currentTimeMillis(),
+                                                                  totalTuplesEvicted,
+                                                                  totalBlocksEvicted,
+                                                                  totalBytesEvicted));
+                profiler.eviction_time.stopIfStarted();
+            }
+            this.hstore_site.getAntiCacheManager().evictionFinished(this.partitionId, totalBlocksEvicted);
+        }
+        return (true);
     }
     
     // ----------------------------------------------------------------------------
@@ -1414,6 +1547,10 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
                 //LOG.info(String.format("Notified ovserver at partition %d", results[0].getLong("PARTITION_ID")));
                 stats_work.getObservable().notifyObservers(results[0]);
             }
+            // PRE-UNEVICTION PROBE
+            else if (work instanceof PreUnevictMessage) {
+                this.processPreUnevictMessage((PreUnevictMessage)work);
+            }
             else {
                 // IGNORE
             }
@@ -1456,6 +1593,60 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         }
     }
 
+    /**
+     * Execute the probe queries for a txn that has not been queued yet to check
+     * whether it is going to access any evicted tuples at this partition. If it is,
+     * then we will hand it off to the AntiCacheManager so that the blocks get read in
+     * before it starts. Otherwise we will go ahead and queue the txn like normal.
+     * The results of the probe queries are thrown away.
+     * @param work
+     */
+    private void processPreUnevictMessage(PreUnevictMessage work) {
+        LocalTransaction ts = work.getTransaction();
+        long fragmentIds[] = work.getFragmentIds();
+        ParameterSet params[] = work.getParameterSets();
+        EvictedTupleAccessException evicted = null;
+        for (int i = 0; i < fragmentIds.length; i++) {
+            tmp_probe_fragmentIds[0] = fragmentIds[i];
+            tmp_probe_params[0] = params[i];
+            try {
+                this.ee.executeQueryPlanFragmentsAndGetDependencySet(
+                            tmp_probe_fragmentIds,
+                            1,
+                            tmp_probe_input_depIds,
+                            tmp_probe_output_depIds,
+                            tmp_probe_params,
+                            1,
+                            ts.getTransactionId().longValue(),
+                            this.lastCommittedTxnId.longValue(),
+                            HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN);
+            } catch (EvictedTupleAccessException ex) {
+                evicted = ex;
+                break;
+            } catch (Throwable ex) {
+                // The txn will hit this again when it actually runs, so
+                // we'll let it deal with it then
+                if (debug.val)
+                    LOG.warn(String.format("%s - Unexpected error when probing for evicted tuples at partition %d",
+                             ts, this.partitionId), ex);
+                break;
+            }
+        } // FOR
+        
+        if (evicted != null) {
+            Table catalog_tbl = evicted.getTable(this.catalogContext.database);
+            if (debug.val)
+                LOG.debug(String.format("%s - Probe accessed evicted tuples in %s at partition %d. " +
+                          "Reading in blocks before queuing txn %s",
+                          ts, catalog_tbl.getName(), this.partitionId, Arrays.toString(evicted.block_ids)));
+            AntiCacheManager manager = this.hstore_site.getAntiCacheManager();
+            if (manager.queue(ts, this.partitionId, catalog_tbl, evicted.block_ids, evicted.tuple_offsets)) {
+                return;
+            }
+        }
+        this.hstore_site.transactionInit(ts);
+    }
+
     /**
      * Process an InternalTxnMessage
      * @param work
@@ -2390,9 +2581,8 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
             ByteString bs = result.getDepData(i);
             VoltTable vt = null;
             if (bs.isEmpty() == false) {
-                FastDeserializer fd = new FastDeserializer(bs.asReadOnlyByteBuffer());
                 try {
-                    vt = fd.readObject(VoltTable.class);
+                    vt = VoltTableUtil.fromByteString(bs);
                     if (trace.val)
                         LOG.trace(String.format("Displaying results from partition %d for %s :: \n %s",
                                   result.getPartitionId(), ts, vt.toString()));                    
@@ -2522,6 +2712,7 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         if (hstore_conf.site.txn_profiling && ts.profiler != null) {
             ts.profiler.startExec();
         }
+        if (ts.isTraced()) this.txnTracer.record(ts.getTransactionId(), TransactionTracer.Phase.START, this.partitionId);
         if (hstore_conf.site.exec_profiling) this.profiler.numTransactions++;
         
         // Make sure the dependency tracker knows about us
@@ -3268,6 +3459,29 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
             ts.markExecutedWork(this.partitionId);
         }
         
+        // Query Result Cache + Incremental Snapshots
+        // If this batch modifies any tables, then we have to invalidate all of the cached
+        // results for those tables and let the next snapshot know that they changed.
+        // Otherwise, check whether we already have the results for the entire batch
+        // so that we don't have to go down into the EE.
+        boolean cacheable = false;
+        if (readonly == false) {
+            if (this.queryCache != null || hstore_conf.site.snapshot_incremental) {
+                for (int i = 0; i < batchSize; i++) {
+                    if (PlanFragmentIdGenerator.isPlanFragmentReadOnly(fragmentIds[i]) == false) {
+                        tableIds = catalogContext.getWriteTableIds(Long.valueOf(fragmentIds[i]));
+                        this.markTablesWritten(txn_id, tableIds);
+                    }
+                } // FOR
+            }
+        }
+        else if (this.queryCache != null && (input_deps == null || input_deps.isEmpty())) {
+            cacheable = true;
+            DependencySet cached = this.getCachedQueryResults(ts, batchSize, fragmentIds,
+                                                              parameterSets, output_depIds, input_depIds);
+            if (cached != null) return (cached);
+        }
+        
         DependencySet result = null;
         boolean needs_profiling = false;
         if (ts.isExecLocal(this.partitionId)) {
@@ -3333,9 +3547,86 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
             }
         }
         // *********************************** DEBUG ***********************************
+        
+        if (cacheable && result != null && result.size() == batchSize) {
+            for (int i = 0; i < batchSize; i++) {
+                tableIds = catalogContext.getReadTableIds(Long.valueOf(fragmentIds[i]));
+                if (tableIds == null) continue;
+                this.queryCache.addGlobalQueryResult((int)fragmentIds[i], tableIds,
+                                                     parameterSets[i], result.dependencies[i]);
+            } // FOR
+        }
         return (result);
     }
     
+    /**
+     * Check whether the results for all of the given read-only PlanFragments are available
+     * in our QueryCache. If any one of them is missing, then this will return null and the
+     * entire batch must be executed in the EE.
+     * @param ts
+     * @param batchSize
+     * @param fragmentIds
+     * @param parameterSets
+     * @param output_depIds
+     * @param input_depIds
+     * @return
+     */
+    private DependencySet getCachedQueryResults(AbstractTransaction ts,
+                                                int batchSize,
+                                                long fragmentIds[],
+                                                ParameterSet parameterSets[],
+                                                int output_depIds[],
+                                                int input_depIds[]) {
+        VoltTable results[] = null;
+        for (int i = 0; i < batchSize; i++) {
+            if (input_depIds[i] != HStoreConstants.NULL_DEPENDENCY_ID) return (null);
+            int tableIds[] = catalogContext.getReadTableIds(Long.valueOf(fragmentIds[i]));
+            if (tableIds == null) return (null);
+            
+            VoltTable vt = this.queryCache.getGlobalQueryResult((int)fragmentIds[i], parameterSets[i]);
+            if (vt == null) return (null);
+            if (results == null) results = new VoltTable[batchSize];
+            results[i] = vt;
+        } // FOR
+        if (results == null) return (null);
+        
+        if (debug.val)
+            LOG.debug(String.format("%s - Using cached results for fragments %s at partition %d",
+                      ts, Arrays.toString(Arrays.copyOf(fragmentIds, batchSize)), this.partitionId));
+        return (new DependencySet(Arrays.copyOf(output_depIds, batchSize), results));
+    }
+    
+    /**
+     * Mark the given txn as having modified an unknown set of tables at this partition.
+     * This must be invoked for anything that executes in the EE without going through
+     * executePlanFragments() (e.g., @AdHoc), otherwise the QueryCache could return stale results
+     * and incremental snapshots could skip tables that changed.
+     * <B>NOTE:</B> This should only be invoked by a system stored procedure.
+     * @param ts
+     */
+    public void markUnknownTablesWritten(AbstractTransaction ts) {
+        this.markTablesWritten(ts.getTransactionId(), null);
+    }
+    
+    /**
+     * Mark the given txn as having modified the given tables at this partition.
+     * If tableIds is null, then the txn could have modified any table.
+     * @param txn_id
+     * @param tableIds
+     */
+    private void markTablesWritten(Long txn_id, int tableIds[]) {
+        if (this.queryCache != null) {
+            this.queryCache.markTablesWritten(txn_id, tableIds);
+        }
+        if (hstore_conf.site.snapshot_incremental) {
+            if (tableIds != null) {
+                SnapshotChangeTracker.markTablesWritten(this.partitionId, tableIds);
+            } else {
+                SnapshotChangeTracker.markAllTablesWritten(this.partitionId);
+            }
+        }
+    }
+    
     /**
      * Load a VoltTable directly into the EE at this partition.
      * <B>NOTE:</B> This should only be invoked by a system stored procedure.
@@ -3360,6 +3651,11 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
             LOG.debug(String.format("Loading %d row(s) into %s [txnId=%d]",
                       data.getRowCount(), table.getName(), ts.getTransactionId()));
         ts.markExecutedWork(this.partitionId);
+        this.markTablesWritten(ts.getTransactionId(), new int[]{ table.getRelativeIndex() });
+        if (this.hsql != null) {
+            this.hsql.loadTable(table.getName(), data);
+            return;
+        }
         this.ee.loadTable(table.getRelativeIndex(), data,
                           ts.getTransactionId(),
                           this.lastCommittedTxnId.longValue(),
@@ -3380,6 +3676,16 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         if (debug.val)
             LOG.debug(String.format("Loading %d row(s) into %s [txnId=%d]",
                       data.getRowCount(), table.getName(), txnId));
+        if (this.queryCache != null) {
+            this.queryCache.invalidateTables(table.getRelativeIndex());
+        }
+        if (hstore_conf.site.snapshot_incremental) {
+            SnapshotChangeTracker.markTablesWritten(this.partitionId, table.getRelativeIndex());
+        }
+        if (this.hsql != null) {
+            this.hsql.loadTable(table.getName(), data);
+            return;
+        }
         this.ee.loadTable(table.getRelativeIndex(),
                           data,
                           txnId.longValue(),
@@ -3610,11 +3916,8 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         if (status == Status.OK) {
             for (int i = 0, cnt = result.size(); i < cnt; i++) {
                 builder.addDepId(result.depIds[i]);
-                this.fs.clear();
                 try {
-                    result.dependencies[i].writeExternal(this.fs);
-                    ByteString bs = ByteString.copyFrom(this.fs.getBBContainer().b);
-                    builder.addDepData(bs);
+                    builder.addDepData(VoltTableUtil.toByteString(result.dependencies[i]));
                 } catch (Exception ex) {
                     throw new ServerFaultException(String.format("Failed to serialize output dependency %d for %s", result.depIds[i], ts), ex);
                 }
@@ -3622,7 +3925,6 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
                     LOG.trace(String.format("%s - Serialized Output Dependency %d\n%s",
                               ts, result.depIds[i], result.dependencies[i]));  
             } // FOR
-            this.fs.getBBContainer().discard();
         }
         
         return (builder.build());
@@ -3742,11 +4044,9 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
                         LOG.debug(String.format("%s - Attaching %d input dependencies to be sent to %s",
                                   ts, e.getValue().size(), HStoreThreadManager.formatSiteName(target_site)));
                     for (VoltTable vt : e.getValue()) {
-                        this.fs.clear();
                         try {
-                            this.fs.writeObject(vt);
+                            builder.addAttachedData(VoltTableUtil.toByteString(vt));
                             builder.addAttachedDepId(e.getKey().intValue());
-                            builder.addAttachedData(ByteString.copyFrom(this.fs.getBBContainer().b));
                         } catch (Exception ex) {
                             String msg = String.format("Failed to serialize input dependency %d for %s", e.getKey(), ts);
                             throw new ServerFaultException(msg, ts.getTransactionId());
@@ -3759,7 +4059,6 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
                     } // FOR
                     requestBuilder.addInputDependencyId(e.getKey());
                 } // FOR
-                this.fs.getBBContainer().discard();
             }
             builder.addFragments(fragmentBuilder);
         } // FOR (tasks)
@@ -4000,7 +4299,6 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
 
         boolean first = true;
         boolean serializedParams = false;
-        CountDownLatch latch = null;
         boolean all_local = true;
         boolean is_localSite;
         boolean is_localPartition;
@@ -4054,13 +4352,14 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         //  (2) This is our first time in the loop (first == true)
         //  (3) If we know that there are still messages being blocked
         //  (4) If we know that there are still unblocked messages that we need to process
-        //  (5) The latch for this round is still greater than zero
+        //  (5) We are still waiting for results in this round
         while (ts.hasPendingError() == false && 
-              (first == true || this.depTracker.stillHasWorkFragments(ts) || (latch != null && latch.getCount() > 0))) {
+              (first == true || this.depTracker.stillHasWorkFragments(ts) || this.depTracker.getPendingDependencyCount(ts) > 0)) {
             if (trace.val)
-                LOG.trace(String.format("%s - %s loop [first=%s, stillHasWorkFragments=%s, latch=%s]",
+                LOG.trace(String.format("%s - %s loop [first=%s, stillHasWorkFragments=%s, queue=%d, pending=%d]",
                           ts, ClassUtil.getCurrentMethodName(),
-                          first, this.depTracker.stillHasWorkFragments(ts), queue.size(), latch));
+                          first, this.depTracker.stillHasWorkFragments(ts), queue.size(),
+                          this.depTracker.getPendingDependencyCount(ts)));
             
             // If this is the not first time through the loop, then poll the queue
             // to get our list of fragments
@@ -4142,7 +4441,6 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
                 // WorkFragments for execution, since they might start executing locally!
                 if (first) {
                     ts.startRound(this.partitionId);
-                    latch = this.depTracker.getDependencyLatch(ts);
                 }
                 
                 // Execute all of our WorkFragments quickly at our local ExecutionEngine
@@ -4242,7 +4540,6 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
                 // WorkFragments for execution, since they might start executing locally!
                 if (first) {
                     ts.startRound(this.partitionId);
-                    latch = this.depTracker.getDependencyLatch(ts);
                 }
         
                 // Now request the fragments that aren't local
@@ -4312,8 +4609,9 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         this.fs.getBBContainer().discard();
         
         if (trace.val)
-            LOG.trace(String.format("%s - BREAK OUT [first=%s, stillHasWorkFragments=%s, latch=%s]",
-                      ts, first, this.depTracker.stillHasWorkFragments(ts), latch));
+            LOG.trace(String.format("%s - BREAK OUT [first=%s, stillHasWorkFragments=%s, pending=%d]",
+                      ts, first, this.depTracker.stillHasWorkFragments(ts),
+                      this.depTracker.getPendingDependencyCount(ts)));
 //        assert(ts.stillHasWorkFragments() == false) :
 //            String.format("Trying to block %s before all of its WorkFragments have been dispatched!\n%s\n%s",
 //                          ts,
@@ -4321,14 +4619,13 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
 //                          this.getVoltProcedure(ts.getProcedureName()).getLastBatchPlan());
                 
         // Now that we know all of our WorkFragments have been dispatched, we can then
-        // wait for all of the results to come back in.
-        if (latch == null) latch = this.depTracker.getDependencyLatch(ts);
-        assert(latch != null) :
-            String.format("Unexpected null dependency latch for " + ts);
-        if (latch.getCount() > 0) {
+        // wait for all of the results to come back in. The DependencyTracker will push an
+        // empty collection into our queue when the last one arrives, so we block on that
+        // queue whenever we don't have any utility work to do.
+        if (this.depTracker.getPendingDependencyCount(ts) > 0) {
             if (debug.val) {
                 LOG.debug(String.format("%s - All blocked messages dispatched. Waiting for %d dependencies",
-                          ts, latch.getCount()));
+                          ts, this.depTracker.getPendingDependencyCount(ts)));
                 if (trace.val) LOG.trace(ts.toString());
             }
             boolean timeout = false;
@@ -4337,10 +4634,9 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
             if (needs_profiling) ts.profiler.startExecDtxnWork();
             if (hstore_conf.site.exec_profiling) this.profiler.sp1_time.start();
             try {
-                while (latch.getCount() > 0 && ts.hasPendingError() == false) {
+                while (this.depTracker.getPendingDependencyCount(ts) > 0 && ts.hasPendingError() == false) {
                     if (this.utilityWork() == false) {
-                        timeout = latch.await(WORK_QUEUE_POLL_TIME, TimeUnit.MILLISECONDS);
-                        if (timeout == false) break;
+                        queue.poll(WORK_QUEUE_POLL_TIME, TimeUnit.MILLISECONDS);
                     }
                     if ((EstTime.currentTimeMillis() - startTime) > hstore_conf.site.exec_response_timeout) {
                         timeout = true;
@@ -4361,8 +4657,9 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
             }
             
             if (timeout && this.isShuttingDown() == false) {
-                LOG.warn(String.format("Still waiting for responses for %s after %d ms [latch=%d]\n%s",
-                         ts, hstore_conf.site.exec_response_timeout, latch.getCount(), ts.debug()));
+                LOG.warn(String.format("Still waiting for responses for %s after %d ms [pending=%d]\n%s",
+                         ts, hstore_conf.site.exec_response_timeout,
+                         this.depTracker.getPendingDependencyCount(ts), ts.debug()));
                 LOG.warn("Procedure Parameters:\n" + ts.getProcedureParameters());
                 hstore_conf.site.exec_profiling = true;
                 LOG.warn(hstore_site.statusSnapshot());
@@ -4598,6 +4895,7 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
             if (debug.val)
                 LOG.debug(String.format("%s - Preparing to commit txn at partition %d [specBlocked=%d]",
                           ts, this.partitionId, this.specExecBlocked.size()));
+            if (ts.isTraced()) this.txnTracer.record(ts.getTransactionId(), TransactionTracer.Phase.PREPARE, this.partitionId);
             
             ExecutionMode newMode = ExecutionMode.COMMIT_NONE;
             
@@ -4685,6 +4983,7 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
             String.format("Trying to commit uninitialized transaction %s at partition %d", ts, this.partitionId);
         assert(ts.isMarkedFinished(this.partitionId) == false) :
             String.format("Trying to commit %s twice at partition %d", ts, this.partitionId);
+        if (ts.isTraced()) this.txnTracer.record(ts.getTransactionId(), TransactionTracer.Phase.FINISH, this.partitionId);
         
         // Figure out what undoToken we need to process. This can be null if they haven't
         // submitted any work to the EE at this partition.
@@ -4992,10 +5291,7 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
                     
                     // Make sure that we mark the dtxn as finished so that we don't
                     // try to do anything with it later on.
-                    if (hstore_conf.site.exec_readwrite_tracking)
-                        this.markTransactionFinished(ts);
-                    else
-                        ts.markFinished(this.partitionId);
+                    this.markTransactionFinished(ts);
                 
                     // Now make sure that all of the speculative txns are processed without 
                     // committing (since we just committed any change that they could have made
@@ -5004,10 +5300,7 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
                     while ((spec_ts = this.specExecBlocked.pollFirst()) != null) {
                         ClientResponseImpl spec_cr = spec_ts.getClientResponse();
                         assert(spec_cr != null);
-                        if (hstore_conf.site.exec_readwrite_tracking) 
-                            this.markTransactionFinished(spec_ts);
-                        else
-                            spec_ts.markFinished(this.partitionId);
+                        this.markTransactionFinished(spec_ts);
                             
                         try {
                             if (trace.val)
@@ -5037,9 +5330,6 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
                 this.finishTransaction(ts, status);
             }
             
-            // Clear our cached query results that are specific for this transaction
-            // this.queryCache.purgeTransaction(ts.getTransactionId());
-            
             // TODO: Remove anything in our queue for this txn
             // if (ts.hasQueuedWork(this.partitionId)) {
             // }
@@ -5111,6 +5401,9 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         if (hstore_conf.site.exec_readwrite_tracking && ts.hasExecutedWork(this.partitionId)) {
             this.ee.trackingFinish(ts.getTransactionId());
         }
+        if (this.queryCache != null) {
+            this.queryCache.purgeTransaction(ts.getTransactionId());
+        }
         ts.markFinished(this.partitionId);
     }
     
@@ -5136,10 +5429,7 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         for (LocalTransaction ts : batch) {
             // Marking the txn as finished will prevent us from going down
             // into the EE to finish up the transaction.
-            if (hstore_conf.site.exec_readwrite_tracking)
-                this.markTransactionFinished(ts);
-            else
-                ts.markFinished(this.partitionId);
+            this.markTransactionFinished(ts);
             
             // Send out the ClientResponse to whomever wants it!
             if (debug.val)
@@ -5295,6 +5585,9 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         public PartitionExecutorProfiler getProfiler() {
             return (PartitionExecutor.this.profiler);
         }
+        public QueryCache getQueryCache() {
+            return (PartitionExecutor.this.queryCache);
+        }
         public Thread getExecutionThread() {
             return (PartitionExecutor.this.self);
         }
@@ -5365,6 +5658,13 @@ public class PartitionExecutor implements Runnable, Configurable, Shutdownable {
         public void updateMemory() {
             PartitionExecutor.this.updateMemoryStats(EstTime.currentTimeMillis());
         }
+        /**
+         * Return the eviction that the AntiCacheManager queued for this
+         * partition that has not been done yet
+         */
+        public EvictBlocksMessage getPendingEviction() {
+            return (PartitionExecutor.this.pendingEviction);
+        }
         /**
          * Replace the ConflictChecker. This should only be used for testing
          * @param checker
@@ -63,8 +63,10 @@ public class PartitionMessageQueue extends PriorityBlockingQueue<InternalMessage
             Class<?> class0 = msg0.getClass();
             Class<?> class1 = msg1.getClass();
 
-            boolean isUtl0 = class0.equals(UtilityWorkMessage.TableStatsRequestMessage.class);
-            boolean isUtl1 = class1.equals(UtilityWorkMessage.TableStatsRequestMessage.class);
+            boolean isUtl0 = class0.equals(UtilityWorkMessage.TableStatsRequestMessage.class) ||
+                             class0.equals(UtilityWorkMessage.PreUnevictMessage.class);
+            boolean isUtl1 = class1.equals(UtilityWorkMessage.TableStatsRequestMessage.class) ||
+                             class1.equals(UtilityWorkMessage.PreUnevictMessage.class);
             if (isUtl0 && !isUtl1) return -1;
             if (!isUtl0 && isUtl1) return 1;
             
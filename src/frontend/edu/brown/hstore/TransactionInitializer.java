@@ -46,6 +46,8 @@ import edu.brown.hstore.estimators.TransactionEstimator;
 import edu.brown.hstore.estimators.Estimate;
 import edu.brown.hstore.estimators.EstimatorState;
 import edu.brown.hstore.estimators.markov.MarkovEstimatorState;
+import edu.brown.hstore.internal.UtilityWorkMessage.PreUnevictMessage;
+import edu.brown.hstore.specexec.PreUnevictionPlanner;
 import edu.brown.hstore.txns.AbstractTransaction;
 import edu.brown.hstore.txns.LocalTransaction;
 import edu.brown.hstore.txns.MapReduceTransaction;
@@ -56,6 +58,7 @@ import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.markov.EstimationThresholds;
 import edu.brown.profilers.ProfileMeasurement;
 import edu.brown.profilers.TransactionProfiler;
+import edu.brown.profilers.TransactionTracer;
 import edu.brown.utils.EventObservable;
 import edu.brown.utils.PartitionEstimator;
 import edu.brown.utils.PartitionSet;
@@ -91,8 +94,15 @@ public class TransactionInitializer {
     private final TransactionEstimator t_estimators[];
     private final TransactionIdManager txnIdManagers[];
     private final Random rng = new Random();
+    private final TransactionTracer txnTracer;
     private EstimationThresholds thresholds;
     
+    /**
+     * Generates the probe queries for evicted tuples before a txn is queued.
+     * This will be null if ${site.anticache_preunevict} is disabled.
+     */
+    private final PreUnevictionPlanner preUnevictionPlanner;
+    
     /**
      * HACK: This is the internal map used to keep track of TxnId->TxnHandles
      * inside of the HStoreSite.
@@ -118,6 +128,7 @@ public class TransactionInitializer {
     public TransactionInitializer(HStoreSite hstore_site) {
         this.hstore_site = hstore_site;
         this.hstore_conf = hstore_site.getHStoreConf();
+        this.txnTracer = hstore_site.getTransactionTracer();
         this.local_partitions = hstore_site.getLocalPartitionIds();
         this.catalogContext = hstore_site.getCatalogContext();
         this.inflight_txns = hstore_site.getInflightTxns();
@@ -143,6 +154,12 @@ public class TransactionInitializer {
         for (int partition : this.local_partitions.values()) {
             this.txnIdManagers[partition] = hstore_site.getTransactionIdManager(partition);
         } // FOR
+        
+        if (hstore_conf.site.anticache_enable && hstore_conf.site.anticache_preunevict) {
+            this.preUnevictionPlanner = new PreUnevictionPlanner(this.catalogContext);
+        } else {
+            this.preUnevictionPlanner = null;
+        }
     }
     
     public synchronized EventObservable<LocalTransaction> getNewTxnObservable() {
@@ -371,6 +388,12 @@ public class TransactionInitializer {
         // Increase the restart counter in the new transaction
         new_ts.setRestartCounter(orig_ts.getRestartCounter() + 1);
         
+        // Restarted txns are always traced
+        if (this.txnTracer != null && orig_ts.isSysProc() == false && this.txnTracer.sample(true)) {
+            new_ts.setTraced(true);
+            this.txnTracer.record(new_txn_id, TransactionTracer.Phase.INIT, base_partition);
+        }
+        
         // Notify anybody that cares about this new txn
         if (this.newTxnObservable != null) this.newTxnObservable.notifyObservers(new_ts);
         
@@ -462,6 +485,24 @@ public class TransactionInitializer {
     // These don't normally need to be invoked from outside of this class
     // ----------------------------------------------------------------------------
     
+    /**
+     * Probe for any evicted tuples that the given txn will access at its base partition
+     * before it is queued. If this returns true, then the txn's base PartitionExecutor
+     * will queue the txn (either right away or after the blocks are read in) and the
+     * caller must not queue it.
+     * @param ts
+     * @return
+     */
+    public boolean preUnevict(LocalTransaction ts) {
+        if (this.preUnevictionPlanner == null) return (false);
+        if (ts.getRestartCounter() > 0) return (false);
+        
+        PreUnevictMessage work = this.preUnevictionPlanner.plan(ts);
+        if (work == null) return (false);
+        this.hstore_site.getPartitionExecutor(ts.getBasePartition()).queueUtilityWork(work);
+        return (true);
+    }
+    
     /**
      * This method allows you to reset the txnId for an already initialized LocalTransaction handle.
      * This is primarily needed for the AntiCacheManager stuff
@@ -787,6 +828,10 @@ public class TransactionInitializer {
             ts.profiler.setSingledPartitioned(ts.isPredictSinglePartition());
 //            LOG.info("Profiling is enabled for " + ts);
         }
+        if (this.txnTracer != null && this.isSysProc[procId] == false && this.txnTracer.sample(false)) {
+            ts.setTraced(true);
+            this.txnTracer.record(txn_id, TransactionTracer.Phase.INIT, base_partition);
+        }
         
         if (debug.val) {
             Map<String, Object> m = new LinkedHashMap<String, Object>();
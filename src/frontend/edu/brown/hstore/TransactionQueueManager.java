@@ -92,6 +92,12 @@ public class TransactionQueueManager extends ExceptionHandlingRunnable implement
     private final Long[] lockQueueLastTxns;
 
     private final TransactionQueueManagerProfiler[] profilers;
+    
+    /**
+     * Adjusts the throttling thresholds of the lock queues.
+     * This will be null if admission control is disabled.
+     */
+    private final PartitionAdmissionController admissionController;
 
     // ----------------------------------------------------------------------------
     // TRANSACTIONS THAT NEED TO ADDED TO LOCK QUEUES
@@ -148,6 +154,15 @@ public class TransactionQueueManager extends ExceptionHandlingRunnable implement
         } // FOR
         Arrays.fill(this.lockQueueLastTxns, Long.valueOf(-1l));
         
+        if (hstore_conf.site.queue_admission_control) {
+            this.admissionController = new PartitionAdmissionController(this,
+                                                                         this.localPartitions,
+                                                                         catalogContext.numberOfPartitions,
+                                                                         hstore_conf);
+        } else {
+            this.admissionController = null;
+        }
+        
         // Use updateConf() to initialize our internal values from the HStoreConf
         this.updateConf(this.hstore_conf, null);
         
@@ -156,6 +171,8 @@ public class TransactionQueueManager extends ExceptionHandlingRunnable implement
         // to increase their limits if they're empty
         hstore_site.getStartWorkloadObservable().addObserver(new EventObserver<HStoreSite>() {
             public void update(EventObservable<HStoreSite> o, HStoreSite arg) {
+                // The PartitionAdmissionController is in charge of the limits
+                if (admissionController != null) return;
                 for (PartitionLockQueue queue : lockQueues) {
                     if (queue != null) queue.setAllowIncrease(true);
                 } // FOR
@@ -176,8 +193,8 @@ public class TransactionQueueManager extends ExceptionHandlingRunnable implement
             if (queue != null) {
                 queue.setThrottleThreshold(this.initThrottleThreshold);
                 queue.setThrottleReleaseFactor(this.initThrottleRelease);
-                queue.setAllowDecrease(hstore_conf.site.queue_allow_decrease);
-                queue.setAllowIncrease(hstore_conf.site.queue_allow_increase);
+                queue.setAllowDecrease(hstore_conf.site.queue_allow_decrease && this.admissionController == null);
+                queue.setAllowIncrease(hstore_conf.site.queue_allow_increase && this.admissionController == null);
                 queue.setThrottleThresholdMinSize((int)(this.initThrottleThreshold * hstore_conf.site.queue_min_factor));
                 queue.setThrottleThresholdMaxSize((int)(this.initThrottleThreshold * hstore_conf.site.queue_max_factor));
                 queue.setThrottleThresholdAutoDelta(hstore_conf.site.queue_autoscale_delta);
@@ -185,6 +202,9 @@ public class TransactionQueueManager extends ExceptionHandlingRunnable implement
                 queue.reset();
             }
         } // FOR
+        if (this.admissionController != null) {
+            this.admissionController.updateConf(hstore_conf);
+        }
         
     }
     
@@ -202,13 +222,24 @@ public class TransactionQueueManager extends ExceptionHandlingRunnable implement
             if (debug.val)
                 LOG.info(String.format("Starting %s thread", this.getClass().getSimpleName()));
             AbstractTransaction nextTxn = null;
+            List<AbstractTransaction> batch = new ArrayList<AbstractTransaction>();
             while (stop == false) {
+                nextTxn = null;
                 try {
                     nextTxn = initQueue.take();
                 } catch (InterruptedException ex) {
                     // IGNORE
                 }
-                if (nextTxn != null) initTransaction(nextTxn);
+                if (nextTxn == null) continue;
+                initTransaction(nextTxn);
+                
+                // Grab everything else that got queued up while we were waiting
+                // so that we don't have to go back to the queue's lock for each txn
+                initQueue.drainTo(batch);
+                for (int i = 0, cnt = batch.size(); i < cnt; i++) {
+                    initTransaction(batch.get(i));
+                } // FOR
+                batch.clear();
             } // WHILE
         };
     }
@@ -375,6 +406,25 @@ public class TransactionQueueManager extends ExceptionHandlingRunnable implement
         this.initQueue.add(ts);
  }
     
+    /**
+     * Queue a batch of brand new transactions at this HStoreSite to be added into
+     * the appropriate lock queues for the partitions that they need to access.
+     * @param batch
+     */
+    protected void queueTransactionInit(List<? extends AbstractTransaction> batch) {
+        if (debug.val)
+            LOG.debug(String.format("Adding %d txns to initialization queue", batch.size()));
+        if (hstore_conf.site.txn_profiling) {
+            for (AbstractTransaction ts : batch) {
+                if (ts instanceof LocalTransaction) {
+                    LocalTransaction localTxn = (LocalTransaction)ts;
+                    if (localTxn.profiler != null) localTxn.profiler.startInitQueue();
+                }
+            } // FOR
+        }
+        this.initQueue.addAll(batch);
+    }
+    
     /**
      * Add a new transaction to this queue manager.
      * Returns true if the transaction was successfully inserted at all partitions.
@@ -527,6 +577,11 @@ public class TransactionQueueManager extends ExceptionHandlingRunnable implement
                           "Invoking %s.run()",
                           partition, nextTxn, callback.getClass().getSimpleName()));
             this.lockQueueLastTxns[partition] = nextTxn.getTransactionId();
+            if (this.admissionController != null &&
+                    nextTxn instanceof LocalTransaction &&
+                    nextTxn.getBasePartition() == partition) {
+                this.admissionController.recordQueueDelay(partition, ((LocalTransaction)nextTxn).getInitiateTime());
+            }
         }
         
         
@@ -763,6 +818,14 @@ public class TransactionQueueManager extends ExceptionHandlingRunnable implement
         return (this.lockQueues[partition]);
     }
     
+    /**
+     * Returns the PartitionAdmissionController for this site's partitions.
+     * This will be null if ${site.queue_admission_control} is disabled.
+     */
+    public PartitionAdmissionController getAdmissionController() {
+        return (this.admissionController);
+    }
+    
     @Override
     public void prepareShutdown(boolean error) {
         // Nothing for now
@@ -419,6 +419,16 @@ public final class HStoreConf {
         )
         public boolean exec_adhoc_sql;
         
+        @ConfigProperty(
+            description="The maximum amount of time in milliseconds that the HStoreSite will wait for the " +
+                        "planner to generate a plan for an ad hoc query submitted through the @AdHoc sysproc. " +
+                        "If this limit is reached, then the query is rejected and the planner is restarted " +
+                        "for the next query. Set to zero to wait forever.",
+            defaultInt=5000,
+            experimental=false
+        )
+        public int exec_adhoc_planner_timeout;
+        
         @ConfigProperty(
             description="If this parameter is enabled, then the DBMS will attempt to prefetch commutative " +
                         "queries on remote partitions for distributed transactions.",
@@ -435,6 +445,35 @@ public final class HStoreConf {
         )
         public boolean exec_deferrable_queries;
         
+        @ConfigProperty(
+            description="If this parameter is enabled, then each PartitionExecutor will cache the results " +
+                        "of read-only queries and reuse them for other transactions that execute the same " +
+                        "query with the same input parameters. The cached results for a table are " +
+                        "invalidated whenever a transaction modifies that table at the partition. " +
+                        "This is only useful for workloads that repeatedly read tables that rarely change.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean exec_query_cache;
+        
+        @ConfigProperty(
+            description="The maximum number of query results that each PartitionExecutor will store in " +
+                        "its query cache. " +
+                        "The ${site.exec_query_cache} parameter must be set to true.",
+            defaultInt=10000,
+            experimental=true
+        )
+        public int exec_query_cache_max_entries;
+        
+        @ConfigProperty(
+            description="The maximum amount of memory (in MB) that each PartitionExecutor will use " +
+                        "for the query results stored in its query cache. " +
+                        "The ${site.exec_query_cache} parameter must be set to true.",
+            defaultInt=64,
+            experimental=true
+        )
+        public int exec_query_cache_max_size;
+        
         @ConfigProperty(
             description="How often in milliseconds should the HStoreSite check for periodic work. " +
                         "This work includes checking for dead network connections and processing any " +
@@ -723,6 +762,46 @@ public final class HStoreConf {
         )
         public int anticache_blocks_per_eviction;
         
+        @ConfigProperty(
+                description="The maximum number of evicted blocks that the AntiCacheManager will ask the EE " +
+                            "to read in for a single table at a partition in one request. Transactions that " +
+                            "need the same blocks wait for the same request.",
+                defaultInt=64,
+                experimental=true
+        )
+        public int anticache_unevict_batch_size;
+        
+        @ConfigProperty(
+                description="If set to true, then before a new single-partition transaction is queued " +
+                            "the PartitionExecutor will execute the transaction's read-only queries whose " +
+                            "parameters are mapped to the procedure's input parameters to check whether " +
+                            "the transaction will access evicted tuples. If it does, then the blocks are read " +
+                            "in before the transaction starts instead of after it is aborted.",
+                defaultBoolean=false,
+                experimental=true
+        )
+        public boolean anticache_preunevict;
+        
+        @ConfigProperty(
+                description="If set to true, then each partition will decide on its own when to evict blocks " +
+                            "based on its share of ${site.anticache_threshold_mb} and evict them when its " +
+                            "PartitionExecutor is idle. Otherwise the AntiCacheManager will invoke the @EvictTuples " +
+                            "sysproc at all of the partitions at the same time when the whole site is over the threshold.",
+                defaultBoolean=false,
+                experimental=true
+        )
+        public boolean anticache_partition_eviction;
+        
+        @ConfigProperty(
+                description="The maximum amount of time in milliseconds that a PartitionExecutor will wait " +
+                            "to become idle before it evicts the blocks that the AntiCacheManager asked it to. " +
+                            "After this it will evict them in between transactions. " +
+                            "Only used if ${site.anticache_partition_eviction} is enabled.",
+                defaultInt=1000,
+                experimental=true
+        )
+        public int anticache_partition_eviction_maxdelay;
+        
         @ConfigProperty(
                 description="Policy specifying how to distribute eviction load over partitions and tables.",
                 defaultString="UNEVICTION_RATIO",
@@ -871,6 +950,56 @@ public final class HStoreConf {
             )
             public int snapshot_interval;
         
+        @ConfigProperty(
+                description="The number of threads per HStoreSite that write out snapshot data. " +
+                            "The writes for a single snapshot file are always performed in order.",
+                defaultInt=4,
+                experimental=true
+        )
+        public int snapshot_io_threads;
+        
+        @ConfigProperty(
+                description="How often in milliseconds the snapshot sync thread will force " +
+                            "all of the snapshot files with pending writes out to disk.",
+                defaultInt=1000,
+                experimental=true
+        )
+        public int snapshot_sync_interval;
+        
+        @ConfigProperty(
+                description="The number of table chunks that a partition will read and convert ahead " +
+                            "of the chunk that it is currently loading when restoring a snapshot.",
+                defaultInt=8,
+                experimental=true
+        )
+        public int snapshot_restore_readahead;
+        
+        @ConfigProperty(
+                description="If enabled, then each partition will start reading the save file for the " +
+                            "next table in a snapshot restore while it is still loading the current table.",
+                defaultBoolean=true,
+                experimental=true
+        )
+        public boolean snapshot_restore_prefetch;
+        
+        @ConfigProperty(
+                description="The number of threads per HStoreSite that read and convert the table chunks " +
+                            "for all of the partitions when restoring a snapshot.",
+                defaultInt=2,
+                experimental=true
+        )
+        public int snapshot_restore_threads;
+        
+        @ConfigProperty(
+                description="If enabled, then a snapshot will only write out the tables that have changed " +
+                            "at each partition since the last snapshot in the same directory. The files for " +
+                            "unchanged tables are linked to the earlier snapshot in the digest. " +
+                            "Each PartitionExecutor keeps track of which tables its txns have written to.",
+                defaultBoolean=false,
+                experimental=true
+        )
+        public boolean snapshot_incremental;
+        
         // ----------------------------------------------------------------------------
         // MapReduce Options
         // ----------------------------------------------------------------------------
@@ -996,6 +1125,49 @@ public final class HStoreConf {
         )
         public boolean txn_profiling_dump;
         
+        @ConfigProperty(
+            description="Enable sampled transaction tracing. Unlike ${site.txn_profiling}, this is cheap " +
+                        "enough to leave on all the time. One out of every ${site.txn_tracing_sample} " +
+                        "transactions (plus every transaction that is restarted or mispredicted) will record " +
+                        "a timestamp for each phase of its life into a preallocated per-thread ring buffer. " +
+                        "The per-phase latencies can be retrieved using the @Statistics sysproc.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean txn_tracing;
+        
+        @ConfigProperty(
+            description="Trace one out of every N transactions when ${site.txn_tracing} is enabled.",
+            defaultInt=1000,
+            experimental=true
+        )
+        public int txn_tracing_sample;
+        
+        @ConfigProperty(
+            description="The number of trace events that each thread's ring buffer can hold " +
+                        "before the oldest events are overwritten. This is rounded up to the " +
+                        "next power of two.",
+            defaultInt=4096,
+            experimental=true
+        )
+        public int txn_tracing_buffer_size;
+        
+        @ConfigProperty(
+            description="How often (in milliseconds) the HStoreSite will drain the trace ring buffers.",
+            defaultInt=1000,
+            experimental=true
+        )
+        public int txn_tracing_interval;
+        
+        @ConfigProperty(
+            description="If this is set to true, then each HStoreSite will write all of the drained trace " +
+                        "events into a binary file in ${global.log_dir}. " +
+                        "Note that the the ${site.txn_tracing} parameter must also be enabled.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean txn_tracing_dump;
+        
         @ConfigProperty(
             description="Enable transaction execution mode counting. This will cause the HStoreSite to keep " +
                         "track of various properties about tranasctions, such as the number that were speculatively " +
@@ -1105,6 +1277,35 @@ public final class HStoreConf {
         )
         public double queue_release_factor;
         
+        @ConfigProperty(
+            description="Enable adaptive admission control for the partitions at each HStoreSite. " +
+                        "The HStoreSite will periodically adjust the throttling threshold of each partition's " +
+                        "lock queue so that the 99th percentile latency of the transactions at that partition " +
+                        "stays under ${site.queue_admission_target_latency}. Requests for a throttled partition " +
+                        "are rejected right away and the HStoreSite will no longer throttle all of its clients " +
+                        "because of ${site.network_incoming_limit_txns}. " +
+                        "This replaces ${site.queue_allow_increase} and ${site.queue_allow_decrease}.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean queue_admission_control;
+        
+        @ConfigProperty(
+            description="The target 99th percentile latency (in milliseconds) for transactions at each " +
+                        "partition when ${site.queue_admission_control} is enabled.",
+            defaultInt=100,
+            experimental=true
+        )
+        public int queue_admission_target_latency;
+        
+        @ConfigProperty(
+            description="How often (in milliseconds) the HStoreSite will adjust the throttling thresholds " +
+                        "when ${site.queue_admission_control} is enabled.",
+            defaultInt=500,
+            experimental=true
+        )
+        public int queue_admission_interval;
+        
         // ----------------------------------------------------------------------------
         // Parameter Mapping Options
         // ----------------------------------------------------------------------------
@@ -1268,6 +1469,17 @@ public final class HStoreConf {
         )
         public boolean planner_caching;
         
+        @ConfigProperty(
+            description="The maximum number of distributed BatchPlans that each BatchPlanner will cache when " +
+                        "${site.planner_caching} is enabled. A cached plan is reused for any batch whose " +
+                        "input parameters hash to the same partitions, which allows repeated multi-partition " +
+                        "batches to skip the PartitionEstimator and the dependency graph construction. " +
+                        "Set this to zero to only cache single-partition BatchPlans.",
+            defaultInt=64,
+            experimental=true
+        )
+        public int planner_distributed_cache_size;
+        
         @ConfigProperty(
             description="The maximum number of execution rounds allowed per batch.",
             defaultInt=10,
@@ -1634,6 +1846,47 @@ public final class HStoreConf {
         )
         public boolean blocking_loader;
 
+        @ConfigProperty(
+            description="When this parameter is enabled, the benchmark's loaders will split their tables " +
+                        "up by partition on the client side and load each partition's rows with a " +
+                        "single-partition @LoadPartitionTable txn that is sent directly to the site that " +
+                        "owns it. Replicated tables are still loaded with @LoadMultipartitionTable. " +
+                        "This cannot be used with ${client.blocking_loader}.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean partitioned_loader;
+
+        @ConfigProperty(
+            description="The maximum number of load txns that each loader can have outstanding at " +
+                        "the same time when ${client.partitioned_loader} is enabled.",
+            defaultInt=16,
+            experimental=true
+        )
+        public int partitioned_loader_concurrent;
+
+        @ConfigProperty(
+            description="Run the benchmark clients open-loop. Each client thread will submit new " +
+                        "transaction requests at the fixed arrival rate defined by ${client.txnrate}, " +
+                        "regardless of whether the requests that it already sent have completed. " +
+                        "The latencies reported for each transaction are measured from the time that the " +
+                        "request was supposed to be sent, so any time spent waiting for the client to catch " +
+                        "up or for backpressure to clear is counted. This disables ${client.blocking}.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean open_loop;
+
+        @ConfigProperty(
+            description="When ${client.open_loop} is enabled, the time between transaction requests " +
+                        "will be drawn from an exponential distribution (i.e., Poisson arrivals) with " +
+                        "the rate defined by ${client.txnrate}. Otherwise, the requests are sent at a " +
+                        "constant interval.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean open_loop_poisson;
+
         @ConfigProperty(
             description="The scaling factor determines how large to make the target benchmark's data set. " +
                         "A scalefactor greater than one makes the data set larger, while less than one " +
@@ -1724,6 +1977,17 @@ public final class HStoreConf {
         )
         public boolean txn_hints;
         
+        @ConfigProperty(
+            description="If this parameter and ${client.txn_hints} are both set to true, then the client will " +
+                        "retrieve the catalog from the cluster with @GetCatalog when it first connects if it was " +
+                        "not given a catalog. It will also retrieve it again if it connects to a site that it " +
+                        "does not know about. This allows the client to send every single-partition " +
+                        "transaction request directly to the right HStoreSite without needing to be redirected.",
+            defaultBoolean=false,
+            experimental=false
+        )
+        public boolean txn_hints_fetch_catalog;
+        
         @ConfigProperty(
             description="If a node is executing multiple client processes, then the node may become overloaded if " +
                         "all the clients are started at the same time. This parameter defines the threshold for when " +
@@ -29,6 +29,7 @@ import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.markov.MarkovEdge;
 import edu.brown.markov.MarkovGraph;
 import edu.brown.markov.MarkovGraphTimes;
+import edu.brown.markov.MarkovTransitionTable;
 import edu.brown.markov.MarkovUtil;
 import edu.brown.markov.MarkovVertex;
 import edu.brown.markov.containers.MarkovGraphsContainer;
@@ -428,8 +429,10 @@ public class MarkovEstimator extends TransactionEstimator {
             // Update counters
             // We want to update the counters for the entire path right here so that
             // nobody gets incomplete numbers if they recompute probabilities
-            for (MarkovVertex v : state.actual_path) v.incrementInstanceHits();
-            for (MarkovEdge e : state.actual_path_edges) e.incrementInstanceHits();
+            // The counters are striped in the MarkovTransitionTable and get folded back later
+            MarkovTransitionTable table = markov.getTransitionTable();
+            for (MarkovVertex v : state.actual_path) table.incrementInstanceHits(v);
+            for (MarkovEdge e : state.actual_path_edges) table.incrementInstanceHits(e);
             if (this.enable_recomputes) {
                 this.markovTimes.addInstanceTime(next_v, txn_id, state.getExecutionTimeOffset(end_time));
             }
@@ -633,46 +636,48 @@ public class MarkovEstimator extends TransactionEstimator {
         MarkovVertex next_v = null;
         MarkovEdge next_e = null;
         
-        // Synchronize on the single vertex so that it's more fine-grained than the entire graph
-        synchronized (current) {
-            Collection<MarkovEdge> edges = markov.getOutEdges(current);
-            if (edges != null) {
-                if (debug.val)
-                    LOG.debug(String.format("Examining %d edges from %s for txn #%d",
-                              edges.size(), current, state.getTransactionId())); 
-                for (MarkovEdge e : edges) {
-                    MarkovVertex v = markov.getDest(e);
-                    if (v.isEqual(catalog_stmt, partitions, touchedPartitions, queryCounter)) {
-                        if (debug.val)
-                            LOG.debug("Found next vertex " + v + " for Txn #" + state.getTransactionId());
-                        next_v = v;
-                        next_e = e;
-                        break;
-                    }
-                } // FOR
-            }
+        // Walk the edges in the compiled MarkovTransitionTable so that we don't have to
+        // lock anything if the vertex that we need is already in the graph
+        MarkovTransitionTable table = markov.getTransitionTable();
+        int next_idx = this.findNextEdge(table, current, catalog_stmt, partitions, touchedPartitions, queryCounter);
+        if (next_idx >= 0) {
+            next_e = table.getEdge(next_idx);
+            next_v = table.getVertex(table.getEdgeDestination(next_idx));
+        }
         
-            // If we fail to find the next vertex, that means we have to dynamically create a new 
-            // one. The graph is self-managed, so we don't need to worry about whether 
-            // we need to recompute probabilities.
-            if (next_v == null) {
-                next_v = new MarkovVertex(catalog_stmt,
-                                          MarkovVertex.Type.QUERY,
-                                          queryCounter,
-                                          partitions,
-                                          touchedPartitions);
-                assert(markov.containsVertex(current)) :
-                    String.format("%s does not have current vertex %s for %s",
-                                  markov, current,
-                                  TransactionUtil.formatTxnName(markov.getProcedure(), state.getTransactionId())); 
-                markov.addVertex(next_v);
-                next_e = markov.addToEdge(current, next_v);
-                if (debug.val)
-                    LOG.debug(String.format("Created new edge from %s to new vertex %s for txn #%d", 
-                              state.getCurrent(), next_v, state.getTransactionId()));
-                // assert(state.getCurrent().getPartitions().size() <= touchedPartitions.size());
-            }
-        } // SYNCH
+        // If we fail to find the next vertex, that means we have to dynamically create a new 
+        // one. The graph is self-managed, so we don't need to worry about whether 
+        // we need to recompute probabilities.
+        // Synchronize on the single vertex so that it's more fine-grained than the entire graph.
+        // We have to check again once we have the lock because somebody else may have
+        // created the vertex while we were waiting. New vertices and edges get appended to
+        // the graph's current table, so we don't need to go back to the graph itself.
+        if (next_v == null) {
+            synchronized (current) {
+                table = markov.getTransitionTable();
+                next_idx = this.findNextEdge(table, current, catalog_stmt, partitions, touchedPartitions, queryCounter);
+                if (next_idx >= 0) {
+                    next_e = table.getEdge(next_idx);
+                    next_v = table.getVertex(table.getEdgeDestination(next_idx));
+                } else {
+                    next_v = new MarkovVertex(catalog_stmt,
+                                              MarkovVertex.Type.QUERY,
+                                              queryCounter,
+                                              partitions,
+                                              touchedPartitions);
+                    assert(markov.containsVertex(current)) :
+                        String.format("%s does not have current vertex %s for %s",
+                                      markov, current,
+                                      TransactionUtil.formatTxnName(markov.getProcedure(), state.getTransactionId())); 
+                    markov.addVertex(next_v);
+                    next_e = markov.addToEdge(current, next_v);
+                    if (debug.val)
+                        LOG.debug(String.format("Created new edge from %s to new vertex %s for txn #%d", 
+                                  state.getCurrent(), next_v, state.getTransactionId()));
+                    // assert(state.getCurrent().getPartitions().size() <= touchedPartitions.size());
+                }
+            } // SYNCH
+        }
         
         if (current.isStartVertex() && next_v.isCommitVertex()) {
             throw new ServerFaultException("Trying to connect START->COMMIT", state.getTransactionId());
@@ -696,6 +701,39 @@ public class MarkovEstimator extends TransactionEstimator {
     // HELPER METHODS
     // ----------------------------------------------------------------------------
     
+    /**
+     * Return the index of the edge in the MarkovTransitionTable that goes from the
+     * current vertex to the vertex for the given Statement and partitions. Returns -1
+     * if there is no such edge in the table.
+     * @param table
+     * @param current
+     * @param catalog_stmt
+     * @param partitions
+     * @param touchedPartitions
+     * @param queryCounter
+     * @return
+     */
+    private int findNextEdge(MarkovTransitionTable table,
+                             MarkovVertex current,
+                             Statement catalog_stmt,
+                             PartitionSet partitions,
+                             PartitionSet touchedPartitions,
+                             int queryCounter) {
+        int current_idx = table.getVertexIndex(current);
+        if (current_idx < 0) return (-1);
+        int edges[] = table.getOutEdges(current_idx);
+        if (debug.val)
+            LOG.debug(String.format("Examining %d edges from %s", edges.length, current)); 
+        for (int e : edges) {
+            MarkovVertex v = table.getVertex(table.getEdgeDestination(e));
+            if (v.isEqual(catalog_stmt, partitions, touchedPartitions, queryCounter)) {
+                if (debug.val) LOG.debug("Found next vertex " + v);
+                return (e);
+            }
+        } // FOR
+        return (-1);
+    }
+    
     public MarkovEstimatorState processTransactionTrace(TransactionTrace txn_trace) throws Exception {
         Long txn_id = txn_trace.getTransactionId();
         if (debug.val) {
@@ -8,7 +8,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
 import org.voltdb.CatalogContext;
@@ -29,6 +28,7 @@ import edu.brown.mappings.ParameterMapping;
 import edu.brown.mappings.ParameterMappingsSet;
 import edu.brown.markov.MarkovEdge;
 import edu.brown.markov.MarkovGraph;
+import edu.brown.markov.MarkovTransitionTable;
 import edu.brown.markov.MarkovVertex;
 import edu.brown.pools.TypedPoolableObjectFactory;
 import edu.brown.utils.CollectionUtil;
@@ -75,6 +75,11 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
     private MarkovEstimate estimate;
     private int base_partition;
     private Object procParams[];
+    
+    /**
+     * The compiled version of the MarkovGraph that we are traversing
+     */
+    private MarkovTransitionTable table;
 
     private final int num_partitions;
     private final ParameterMappingsSet allMappings;
@@ -114,7 +119,11 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
     
     private final PartitionSet stmt_partitions = new PartitionSet();
     private final PartitionSet past_partitions = new PartitionSet();
-    private final SortedSet<MarkovEdge> candidate_edges = new TreeSet<MarkovEdge>();
+    /**
+     * The MarkovTransitionTable edge offsets that we could take from the current vertex
+     */
+    private int candidate_edges[] = new int[8];
+    private int num_candidates = 0;
     private final Collection<CountedStatement> next_statements = new HashSet<CountedStatement>();
     
     // ----------------------------------------------------------------------------
@@ -144,6 +153,7 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
      */
     public MarkovPathEstimator init(MarkovGraph markov, MarkovEstimate estimate, Object procParams[], int base_partition) {
         this.init(markov, TraverseOrder.DEPTH, Direction.FORWARD);
+        this.table = markov.getTransitionTable();
         this.estimate = estimate;
         this.base_partition = base_partition;
         this.procParams = procParams;
@@ -177,6 +187,7 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
                       this.hashCode()));
         super.finish();
         this.estimate = null;
+        this.table = null;
         this.past_partitions.clear();
         this.stmt_partitions.clear();
         if (this.forced_vertices != null) this.forced_vertices.clear();
@@ -222,8 +233,17 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
     // TRAVERSAL METHODS
     // ----------------------------------------------------------------------------
     
+    private void addCandidateEdge(int edge_idx) {
+        if (this.num_candidates == this.candidate_edges.length) {
+            this.candidate_edges = Arrays.copyOf(this.candidate_edges, this.num_candidates * 2);
+        }
+        this.candidate_edges[this.num_candidates++] = edge_idx;
+    }
+    
     /**
      * This is the main part of where we figure out the path that this transaction will take
+     * We walk the compiled MarkovTransitionTable instead of the MarkovGraph so that we
+     * don't need to hit the graph's adjacency maps or lock any of the vertices.
      */
     protected void populate_children(Children<MarkovVertex> children, MarkovVertex element) {
 //        if (element.isAbortVertex() || element.isCommitVertex()) {
@@ -231,7 +251,7 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
 //        }
         
         // Initialize temporary data
-        this.candidate_edges.clear();
+        this.num_candidates = 0;
         this.next_statements.clear();
         this.past_partitions.addAll(element.getPartitions());
         
@@ -240,19 +260,29 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         int cur_catalog_stmt_index = element.getQueryCounter();
         MarkovGraph markov = (MarkovGraph)this.getGraph();
         
+        // If our current vertex is not in the table, then somebody added it to
+        // the graph after the table was compiled, so we need to get the latest one
+        MarkovTransitionTable table = this.table;
+        int element_idx = table.getVertexIndex(element);
+        if (element_idx < 0) {
+            table = this.table = markov.getTransitionTable();
+            element_idx = table.getVertexIndex(element);
+        }
+        
         // At our current vertex we need to gather all of our neighbors
         // and get unique Statements that we could be executing next
-        Collection<MarkovVertex> next_vertices = markov.getSuccessors(element);
-        if (next_vertices == null || next_vertices.isEmpty()) {
+        int out_edges[] = (element_idx >= 0 ? table.getOutEdges(element_idx) : null);
+        if (out_edges == null || out_edges.length == 0) {
             if (debug.val) LOG.debug("No succesors were found for " + element + ". Halting traversal");
             return;
         }
-        if (trace.val) LOG.trace("Successors: " + next_vertices);
         
         // Step #1
         // Get all of the unique Statement+StatementInstanceIndex pairs for the vertices
         // that are adjacent to our current vertex
-        for (MarkovVertex next : next_vertices) {
+        for (int e : out_edges) {
+            int next_idx = table.getEdgeDestination(e);
+            MarkovVertex next = table.getVertex(next_idx);
             Statement next_catalog_stmt = next.getCatalogItem();
             int next_catalog_stmt_index = next.getQueryCounter();
             
@@ -270,10 +300,8 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
             }
             
             // Check whether it's COMMIT/ABORT
-            if (next.isCommitVertex() || next.isAbortVertex()) {
-                MarkovEdge candidate = markov.findEdge(element, next);
-                assert(candidate != null);
-                this.candidate_edges.add(candidate);
+            if (table.isTerminal(next_idx)) {
+                this.addCandidateEdge(e);
             } else {
                 this.next_statements.add(next.getCountedStatement());
             }
@@ -281,7 +309,7 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
 
         // Now for the unique set of Statement+StatementIndex pairs, figure out which partitions
         // the queries will go to.
-        MarkovEdge candidate_edge;
+        int candidate_edge;
         for (CountedStatement cstmt : this.next_statements) {
             Statement catalog_stmt = cstmt.statement;
             Integer catalog_stmt_index = cstmt.counter;
@@ -400,23 +428,18 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
                 // Now for this given list of partitions, find a Vertex in our next set
                 // that has the same partitions
                 if (this.stmt_partitions.isEmpty() == false) {
-                    candidate_edge = null;
+                    candidate_edge = -1;
                     if (trace.val)
                         LOG.trace("Partitions:" + this.stmt_partitions + " / Past:" + this.past_partitions);
-                    for (MarkovVertex next_v : next_vertices) {
+                    for (int e : out_edges) {
+                        MarkovVertex next_v = table.getVertex(table.getEdgeDestination(e));
                         if (trace.val) LOG.trace("Checking whether " + next_v + " is the correct transition");
                         if (next_v.isEqual(catalog_stmt, this.stmt_partitions, this.past_partitions, catalog_stmt_index, true)) {
                             // BINGO!!!
-                            assert(candidate_edge == null);
-                            try {
-                                candidate_edge = markov.findEdge(element, next_v);
-                            } catch (NullPointerException ex) {
-                                continue;
-                            }
-                            assert(candidate_edge != null);
-                            this.candidate_edges.add(candidate_edge);
+                            candidate_edge = e;
+                            this.addCandidateEdge(candidate_edge);
                             if (trace.val)
-                                LOG.trace("Found candidate edge to " + next_v + " [" + candidate_edge + "]");
+                                LOG.trace("Found candidate edge to " + next_v + " [" + table.getEdge(candidate_edge) + "]");
                             break;
                         } else if (trace.val) { 
                             Map<String, Object> m = new LinkedHashMap<String, Object>();
@@ -426,8 +449,8 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
                             m.put("past", next_v.getPastPartitions().equals(this.past_partitions));
                             LOG.trace("Invalid candidate transition:\n" + StringUtil.formatMaps(m));
                         }
-                    } // FOR (Vertex
-                    if (trace.val && candidate_edge == null)
+                    } // FOR (Edge)
+                    if (trace.val && candidate_edge < 0)
                         LOG.trace(String.format("Failed to find candidate edge from %s to %s [partitions=%s]",
                                   element, catalog_stmt.fullName(), this.stmt_partitions)); 
                 }
@@ -440,9 +463,8 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         
         // If we don't have any candidate edges and the FORCE TRAVERSAL flag is set, then we'll just
         // grab all of the edges from our current vertex
-        int num_candidates = this.candidate_edges.size();
         boolean was_forced = false;
-        if (num_candidates == 0 && this.force_traversal) {
+        if (this.num_candidates == 0 && this.force_traversal) {
             if (debug.val)
                 LOG.debug(String.format("No candidate edges were found. " +
             		      "Checking whether we can create our own. [nextStatements=%s]",
@@ -461,9 +483,15 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
                 // For now we'll set the new edge's probability to 1.0 to just
                 // make the calculations down below work. This will get updated
                 // overtime when we recompute the probabilities in the entire graph.
-                candidate_edge = new MarkovEdge(markov, 1, 1.0f);
-                markov.addEdge(candidate_edge, element, v, EdgeType.DIRECTED);
-                this.candidate_edges.add(candidate_edge);
+                MarkovEdge new_edge = new MarkovEdge(markov, 1, 1.0f);
+                markov.addEdge(new_edge, element, v, EdgeType.DIRECTED);
+                
+                // The new edge was appended to the graph's table, but we may
+                // still be using an older one that was thrown away
+                table = this.table = markov.getTransitionTable();
+                candidate_edge = table.getEdgeIndex(new_edge);
+                assert(candidate_edge >= 0) : "Missing new edge " + new_edge + " in " + table;
+                this.addCandidateEdge(candidate_edge);
                 
                 if (this.created_vertices == null) this.created_vertices = new HashSet<MarkovVertex>();
                 this.created_vertices.add(v);
@@ -485,20 +513,26 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
             else {
                 if (trace.val)
                     LOG.trace("No candidate edges were found. Force travesal flag is set to true, so taking all");
-                Collection<MarkovEdge> out_edges = markov.getOutEdges(element);
-                if (out_edges != null) this.candidate_edges.addAll(out_edges);
+                for (int e : out_edges) {
+                    this.addCandidateEdge(e);
+                } // FOR
             }
-            num_candidates = this.candidate_edges.size();
             was_forced = true;
         }
         
-        // So now we have our list of candidate edges. We can pick the first one
-        // since they will be sorted by their probability
-        if (trace.val) LOG.trace("Candidate Edges: " + this.candidate_edges);
+        // So now we have our list of candidate edges. We pick the one
+        // with the highest probability
+        int num_candidates = this.num_candidates;
         if (num_candidates > 0) {
-            MarkovEdge next_edge = CollectionUtil.first(this.candidate_edges);
-            assert(next_edge != null) : "Unexpected null edge " + this.candidate_edges;
-            MarkovVertex next_vertex = markov.getOpposite(element, next_edge);
+            int next_edge = this.candidate_edges[0];
+            double total_probability = table.getEdgeProbability(next_edge);
+            for (int i = 1; i < num_candidates; i++) {
+                int e = this.candidate_edges[i];
+                float e_prob = table.getEdgeProbability(e);
+                if (e_prob > table.getEdgeProbability(next_edge)) next_edge = e;
+                total_probability += e_prob;
+            } // FOR
+            MarkovVertex next_vertex = table.getVertex(table.getEdgeDestination(next_edge));
             children.addAfter(next_vertex);
             if (was_forced) {
                 if (this.forced_vertices == null) this.forced_vertices = new HashSet<MarkovVertex>();
@@ -508,13 +542,13 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
             if (debug.val) {
                 StringBuilder sb = new StringBuilder();
                 sb.append(String.format("#%02d CANDIDATES:\n", this.getDepth()));
-                int i = 0;
-                for (MarkovEdge e : this.candidate_edges) {
-                    MarkovVertex v = markov.getOpposite(element, e);
+                for (int i = 0; i < num_candidates; i++) {
+                    int e = this.candidate_edges[i];
+                    MarkovVertex v = table.getVertex(table.getEdgeDestination(e));
                     sb.append(String.format("  [%d] %s  --[%s]--> %s%s%s",
-                              i++, element, e, v,
-                              (next_vertex.equals(v) ? " <== SELECTED" : ""),
-                              (trace.val && this.candidate_edges.size() > 1 ? "\n"+StringUtil.addSpacers(v.debug()) : "")));
+                              i, element, table.getEdge(e), v,
+                              (next_edge == e ? " <== SELECTED" : ""),
+                              (trace.val && num_candidates > 1 ? "\n"+StringUtil.addSpacers(v.debug()) : "")));
                 } // FOR
                 LOG.debug(sb.toString());
             } // DEBUG
@@ -529,11 +563,7 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
             // Otherwise, our confidence is based on the total sum of the probabilities for all of the
             // edges that we could have taken in comparison to the one that we did take.
             else {
-                double total_probability = 0.0;
-                for (MarkovEdge e : this.candidate_edges) {
-                    total_probability += e.getProbability();
-                } // FOR
-                this.estimate.confidence *= next_edge.getProbability() / total_probability;
+                this.estimate.confidence *= table.getEdgeProbability(next_edge) / total_probability;
                 if (debug.val) LOG.debug("TOTAL:    " + total_probability);
             }
             
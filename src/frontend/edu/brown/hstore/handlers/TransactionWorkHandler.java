@@ -5,6 +5,7 @@ import org.voltdb.ParameterSet;
 import org.voltdb.VoltTable;
 import org.voltdb.exceptions.ServerFaultException;
 import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.utils.VoltTableUtil;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.RpcCallback;
@@ -92,7 +93,7 @@ public class TransactionWorkHandler extends AbstractTransactionHandler<Transacti
         ts.attachParameterSets(parameterSets);
         
         // Deserialize attached VoltTable input dependencies
-        FastDeserializer fds = null;
+        // These are backed directly by the request's ByteStrings
         VoltTable vt = null;
         for (int i = 0, cnt = request.getAttachedDataCount(); i < cnt; i++) {
             int input_dep_id = request.getAttachedDepId(i);
@@ -102,13 +103,10 @@ public class TransactionWorkHandler extends AbstractTransactionHandler<Transacti
                 LOG.warn(msg + "\n" + request);
                 throw new ServerFaultException(msg, txn_id);
             }
-            
-            if (fds == null) fds = new FastDeserializer(data.asReadOnlyByteBuffer());
-            else fds.setBuffer(data.asReadOnlyByteBuffer());
 
             vt = null;
             try {
-                vt = fds.readObject(VoltTable.class);
+                vt = VoltTableUtil.fromByteString(data);
             } catch (Exception ex) {
                 String msg = String.format("Failed to deserialize VoltTable[%d] for txn #%d", input_dep_id, txn_id); 
                 throw new ServerFaultException(msg, ex, txn_id);
@@ -2,9 +2,11 @@ package edu.brown.hstore.internal;
 
 import java.util.Collection;
 
+import org.voltdb.ParameterSet;
 import org.voltdb.VoltTable;
 import org.voltdb.catalog.Table;
 
+import edu.brown.hstore.txns.LocalTransaction;
 import edu.brown.utils.EventObservable;
 
 /**
@@ -51,5 +53,77 @@ public class UtilityWorkMessage extends InternalMessage {
        }
 
    }
+
+   /**
+    * Probe for evicted tuples that a txn will need before it is queued
+    */
+   public static class PreUnevictMessage extends UtilityWorkMessage {
+       
+       private final LocalTransaction ts;
+       private final long fragmentIds[];
+       private final ParameterSet params[];
+       
+       public PreUnevictMessage(LocalTransaction ts, long fragmentIds[], ParameterSet params[]) {
+           this.ts = ts;
+           this.fragmentIds = fragmentIds;
+           this.params = params;
+       }
+       
+       public LocalTransaction getTransaction() {
+           return (this.ts);
+       }
+       
+       public long[] getFragmentIds() {
+           return (this.fragmentIds);
+       }
+       
+       public ParameterSet[] getParameterSets() {
+           return (this.params);
+       }
+   }
+
+   /**
+    * Evict blocks from tables at a single partition
+    */
+   public static class EvictBlocksMessage extends UtilityWorkMessage {
+       
+       private final Table tables[];
+       private final Table childTables[];
+       private final int blocks[];
+       private final long blockSize;
+       private final long createTime;
+       
+       public EvictBlocksMessage(Table tables[], Table childTables[], int blocks[], long blockSize, long createTime) {
+           this.tables = tables;
+           this.childTables = childTables;
+           this.blocks = blocks;
+           this.blockSize = blockSize;
+           this.createTime = createTime;
+       }
+       
+       public Table[] getTables() {
+           return (this.tables);
+       }
+       
+       /**
+        * The child table to evict along with each table. The entry is null
+        * if the table is not evicted together with a child table.
+        */
+       public Table[] getChildTables() {
+           return (this.childTables);
+       }
+       
+       public int[] getBlocks() {
+           return (this.blocks);
+       }
+       
+       public long getBlockSize() {
+           return (this.blockSize);
+       }
+       
+       public long getCreateTime() {
+           return (this.createTime);
+       }
+   }
     
 }
@@ -0,0 +1,171 @@
+package edu.brown.hstore.specexec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.voltdb.CatalogContext;
+import org.voltdb.ParameterSet;
+import org.voltdb.catalog.PlanFragment;
+import org.voltdb.catalog.ProcParameter;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.catalog.StmtParameter;
+import org.voltdb.catalog.Table;
+
+import edu.brown.catalog.CatalogUtil;
+import edu.brown.hstore.internal.UtilityWorkMessage.PreUnevictMessage;
+import edu.brown.hstore.txns.LocalTransaction;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.utils.CollectionUtil;
+
+/**
+ * Special planner for probing whether a txn is going to access evicted tuples
+ * before it starts running. For each Procedure we pick out the read-only queries
+ * that access an evictable table, execute as a single PlanFragment, and have all of their
+ * input parameters mapped to one of the Procedure's ProcParameters. We can then
+ * build the parameters for these queries from the txn's input parameters and execute
+ * them at the txn's base partition before the txn is queued. If any of them touch an evicted
+ * tuple, then the txn can wait for its blocks to be read in instead of having to
+ * abort and restart once it is already running.
+ * @author pavlo
+ */
+public class PreUnevictionPlanner {
+    private static final Logger LOG = Logger.getLogger(PreUnevictionPlanner.class);
+    private static final LoggerBoolean debug = new LoggerBoolean();
+    private static final LoggerBoolean trace = new LoggerBoolean();
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /**
+     * ProcedureId -> PlanFragmentIds of the probe queries
+     */
+    private final long fragmentIds[][];
+
+    /**
+     * ProcedureId -> Probe Query Offset -> StmtParameter Index -> ProcParameter Index
+     */
+    private final int paramXref[][][];
+
+    /**
+     * Constructor
+     * @param catalogContext
+     */
+    public PreUnevictionPlanner(CatalogContext catalogContext) {
+        int num_procs = catalogContext.procedures.size() + 1;
+        this.fragmentIds = new long[num_procs][];
+        this.paramXref = new int[num_procs][][];
+
+        int proc_ctr = 0;
+        int stmt_ctr = 0;
+        List<Statement> probeStmts = new ArrayList<Statement>();
+        for (Procedure catalog_proc : catalogContext.procedures.values()) {
+            if (catalog_proc.getSystemproc() || catalog_proc.getMapreduce()) continue;
+
+            probeStmts.clear();
+            for (Statement catalog_stmt : catalog_proc.getStatements().values()) {
+                if (this.isProbeable(catalog_stmt)) probeStmts.add(catalog_stmt);
+            } // FOR
+            if (probeStmts.isEmpty()) continue;
+
+            int proc_id = catalog_proc.getId();
+            this.fragmentIds[proc_id] = new long[probeStmts.size()];
+            this.paramXref[proc_id] = new int[probeStmts.size()][];
+            for (int i = 0; i < this.fragmentIds[proc_id].length; i++) {
+                Statement catalog_stmt = probeStmts.get(i);
+                PlanFragment catalog_frag = CollectionUtil.first(catalog_stmt.getFragments());
+                this.fragmentIds[proc_id][i] = catalog_frag.getId();
+
+                int xref[] = new int[catalog_stmt.getParameters().size()];
+                for (StmtParameter catalog_param : catalog_stmt.getParameters().values()) {
+                    xref[catalog_param.getIndex()] = catalog_param.getProcparameter().getIndex();
+                } // FOR
+                this.paramXref[proc_id][i] = xref;
+            } // FOR
+            proc_ctr++;
+            stmt_ctr += probeStmts.size();
+            if (debug.val)
+                LOG.debug(String.format("%s Probe Statements: %s", catalog_proc.getName(), probeStmts));
+        } // FOR (procedure)
+
+        if (debug.val)
+            LOG.debug(String.format("Initialized %s for %d Procedures " +
+                      "with a total of %d probe Statements",
+                      this.getClass().getSimpleName(), proc_ctr, stmt_ctr));
+    }
+
+    /**
+     * Returns true if the given Statement can be used to probe for evicted tuples
+     * @param catalog_stmt
+     * @return
+     */
+    private boolean isProbeable(Statement catalog_stmt) {
+        if (catalog_stmt.getReadonly() == false) return (false);
+        if (catalog_stmt.getHas_singlesited() == false) return (false);
+        if (catalog_stmt.getFragments().size() != 1) return (false);
+
+        boolean evictable = false;
+        for (Table catalog_tbl : CatalogUtil.getReferencedTables(catalog_stmt)) {
+            if (catalog_tbl.getEvictable()) {
+                evictable = true;
+                break;
+            }
+        } // FOR
+        if (evictable == false) return (false);
+
+        for (StmtParameter catalog_param : catalog_stmt.getParameters().values()) {
+            ProcParameter catalog_proc_param = catalog_param.getProcparameter();
+            if (catalog_proc_param == null || catalog_proc_param.getIsarray()) {
+                if (trace.val)
+                    LOG.trace(String.format("Unable to probe with %s because %s is not " +
+                              "mapped to a scalar ProcParameter",
+                              catalog_stmt.fullName(), catalog_param.fullName()));
+                return (false);
+            }
+        } // FOR
+        return (true);
+    }
+
+    /**
+     * Returns true if there are probe queries for the given Procedure
+     * @param catalog_proc
+     * @return
+     */
+    public boolean hasProbes(Procedure catalog_proc) {
+        int proc_id = catalog_proc.getId();
+        return (proc_id < this.fragmentIds.length && this.fragmentIds[proc_id] != null);
+    }
+
+    /**
+     * Generate the PreUnevictMessage that will probe for evicted tuples for
+     * the given txn at its base partition. Returns null if the txn's Procedure
+     * does not have any probe queries.
+     * @param ts
+     * @return
+     */
+    public PreUnevictMessage plan(LocalTransaction ts) {
+        Procedure catalog_proc = ts.getProcedure();
+        if (this.hasProbes(catalog_proc) == false) return (null);
+
+        int proc_id = catalog_proc.getId();
+        Object proc_params[] = ts.getProcedureParameters().toArray();
+        long probeFragmentIds[] = this.fragmentIds[proc_id];
+        ParameterSet probeParams[] = new ParameterSet[probeFragmentIds.length];
+        for (int i = 0; i < probeParams.length; i++) {
+            int xref[] = this.paramXref[proc_id][i];
+            Object stmt_params[] = new Object[xref.length];
+            for (int j = 0; j < xref.length; j++) {
+                if (xref[j] >= proc_params.length) return (null);
+                stmt_params[j] = proc_params[xref[j]];
+            } // FOR
+            probeParams[i] = new ParameterSet(stmt_params);
+        } // FOR
+
+        if (trace.val)
+            LOG.trace(String.format("%s - Probing for evicted tuples with %d queries",
+                      ts, probeFragmentIds.length));
+        return (new PreUnevictMessage(ts, probeFragmentIds, probeParams));
+    }
+}
@@ -62,6 +62,8 @@ public class AntiCacheManagerProfilerStats extends StatsSource {
         assert(profiler != null);
         
         columns.add(new VoltTable.ColumnInfo("RESTARTED_TXNS", VoltType.INTEGER));
+        columns.add(new VoltTable.ColumnInfo("PIGGYBACKED_TXNS", VoltType.INTEGER));
+        columns.add(new VoltTable.ColumnInfo("PREUNEVICTED_TXNS", VoltType.INTEGER));
         for (ProfileMeasurement pm : profiler.getProfileMeasurements()) {
             String name = pm.getName().toUpperCase();
             columns.add(new VoltTable.ColumnInfo(name, VoltType.BIGINT));
@@ -78,6 +80,8 @@ public class AntiCacheManagerProfilerStats extends StatsSource {
         int offset = this.columnNameToIndex.get("PARTITION");
         rowValues[offset++] = partition;
         rowValues[offset++] = profiler.restarted_txns;
+        rowValues[offset++] = profiler.piggybacked_txns;
+        rowValues[offset++] = profiler.preunevicted_txns;
         
         for (ProfileMeasurement pm : profiler.getProfileMeasurements()) {
             rowValues[offset++] = pm.getTotalThinkTime();
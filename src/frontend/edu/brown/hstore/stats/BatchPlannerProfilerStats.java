@@ -66,6 +66,7 @@ public class BatchPlannerProfilerStats extends StatsSource {
         columns.add(new VoltTable.ColumnInfo("NUM_PLANNERS", VoltType.BIGINT));
         columns.add(new VoltTable.ColumnInfo("TRANSACTIONS", VoltType.BIGINT));
         columns.add(new VoltTable.ColumnInfo("CACHED", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("CACHED_DISTRIBUTED", VoltType.BIGINT));
         
         BatchPlannerProfiler profiler = new BatchPlannerProfiler();
         for (ProfileMeasurement pm : profiler.getProfileMeasurements()) {
@@ -99,6 +100,7 @@ public class BatchPlannerProfilerStats extends StatsSource {
             
             total.transactions.addAndGet(profiler.transactions.get());
             total.cached.addAndGet(profiler.cached.get());
+            total.cached_distributed.addAndGet(profiler.cached_distributed.get());
             
             if (debug.val)
                 LOG.debug(String.format("%s/%s -> Txns:%d Cached:%d",
@@ -114,6 +116,7 @@ public class BatchPlannerProfilerStats extends StatsSource {
         rowValues[offset++] = planners.size();
         rowValues[offset++] = total.transactions.get();
         rowValues[offset++] = total.cached.get();
+        rowValues[offset++] = total.cached_distributed.get();
         for (ProfileMeasurement pm : totalPMs) {
             rowValues[offset++] = pm.getTotalThinkTime();
             rowValues[offset++] = pm.getInvocations();
@@ -0,0 +1,74 @@
+package edu.brown.hstore.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.voltdb.StatsSource;
+import org.voltdb.SysProcSelector;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+import edu.brown.hstore.HStoreSite;
+import edu.brown.profilers.TransactionTracer;
+import edu.brown.statistics.LatencyHistogram;
+
+/**
+ * Stats Source for the HStoreSite's sampled TransactionTracer.
+ * There is one row per trace phase. The latencies for each phase are how long
+ * the traced txns took to get to that phase from their previous one.
+ * @author pavlo
+ */
+public class TransactionTracerStats extends StatsSource {
+
+    private final HStoreSite hstore_site;
+
+    public TransactionTracerStats(HStoreSite hstore_site) {
+        super(SysProcSelector.TXNTRACE.name(), false);
+        this.hstore_site = hstore_site;
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        List<Object> phases = new ArrayList<Object>();
+        if (this.hstore_site.getTransactionTracer() != null) {
+            phases.addAll(Arrays.asList(TransactionTracer.Phase.values()));
+        }
+        return (phases.iterator());
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new VoltTable.ColumnInfo("PHASE", VoltType.STRING));
+        columns.add(new VoltTable.ColumnInfo("EVENTS", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("AVG_US", VoltType.FLOAT));
+        columns.add(new VoltTable.ColumnInfo("P50_US", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("P99_US", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("MAX_US", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("SAMPLED_TXNS", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("FORCED_TXNS", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("DROPPED_EVENTS", VoltType.BIGINT));
+    }
+
+    @Override
+    protected synchronized void updateStatsRow(Object rowKey, Object[] rowValues) {
+        TransactionTracer.Phase phase = (TransactionTracer.Phase)rowKey;
+        TransactionTracer tracer = this.hstore_site.getTransactionTracer();
+        LatencyHistogram latencies = tracer.getPhaseLatencies(phase);
+
+        int offset = this.columnNameToIndex.get("PHASE");
+        rowValues[offset++] = phase.name();
+        rowValues[offset++] = tracer.getEventCount(phase);
+        rowValues[offset++] = latencies.getMean();
+        rowValues[offset++] = latencies.getValueAtPercentile(50);
+        rowValues[offset++] = latencies.getValueAtPercentile(99);
+        rowValues[offset++] = latencies.getMax();
+        rowValues[offset++] = tracer.getSampledCount();
+        rowValues[offset++] = tracer.getForcedCount();
+        rowValues[offset++] = tracer.getDroppedCount();
+        super.updateStatsRow(rowKey, rowValues);
+    }
+}
@@ -97,6 +97,11 @@ public abstract class AbstractTransaction implements Poolable, Comparable<Abstra
     private boolean readonly;
     private boolean allow_early_prepare = true;
     
+    /**
+     * If true, then this txn was picked by the TransactionTracer
+     */
+    private boolean traced = false;
+    
     protected Long txn_id = null;
     protected Long last_txn_id = null; // FOR DEBUGGING
     protected long client_handle;
@@ -365,6 +370,7 @@ public abstract class AbstractTransaction implements Poolable, Comparable<Abstra
         this.predict_tState = null;
         
         this.allow_early_prepare = true;
+        this.traced = false;
         this.pending_error = null;
         this.status = null;
         this.parameters = null;
@@ -741,6 +747,17 @@ public abstract class AbstractTransaction implements Poolable, Comparable<Abstra
         this.allow_early_prepare = enable;
     }
     
+    /**
+     * Returns true if the TransactionTracer should record this txn's phases
+     */
+    public final boolean isTraced() {
+        return (this.traced);
+    }
+    
+    public final void setTraced(boolean traced) {
+        this.traced = traced;
+    }
+    
     // ----------------------------------------------------------------------------
     // CALLBACK METHODS
     // ----------------------------------------------------------------------------
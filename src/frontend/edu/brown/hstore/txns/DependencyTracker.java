@@ -2,6 +2,7 @@ package edu.brown.hstore.txns;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -13,7 +14,6 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -25,7 +25,6 @@ import org.voltdb.VoltTableNonBlocking;
 import org.voltdb.catalog.CatalogType;
 import org.voltdb.catalog.PlanFragment;
 import org.voltdb.exceptions.ServerFaultException;
-import org.voltdb.utils.Pair;
 
 import edu.brown.catalog.CatalogUtil;
 import edu.brown.hstore.HStoreConstants;
@@ -57,6 +56,11 @@ public class DependencyTracker {
      * Special set to indicate that there are no more WorkFragments to be executed
      */
     private static final Set<WorkFragment.Builder> EMPTY_FRAGMENT_SET = Collections.emptySet();
+    
+    /**
+     * The initial size of the arrays in TransactionState if we don't know the batch size yet
+     */
+    private static final int INITIAL_ARRAY_SIZE = 8;
 
     /**
      * Internal Dependency Information
@@ -77,29 +81,57 @@ public class DependencyTracker {
         // ----------------------------------------------------------------------------
         
         /**
-         * This latch will block until all the Dependency results have returned
-         * Generated in startRound()
+         * Set to true once startRound() has been called for the current round.
+         * Until then, we don't know how many results the txn is waiting for.
+         */
+        private boolean round_started = false;
+        
+        /**
+         * Set to true if the txn was released by unblock() before all of
+         * its results arrived for the current round.
+         */
+        private volatile boolean round_released = false;
+        
+        /**
+         * The number of results that the txn is still waiting for in the current round.
+         * This is only valid after the round is started. When it reaches zero, we push
+         * EMPTY_FRAGMENT_SET into the unblocked queue to wake up the PartitionExecutor.
          */
-        private CountDownLatch dependency_latch;
+        private volatile int pending_ctr = 0;
         
         /**
-         * Mapping from DependencyId to the corresponding DependencyInfo object
-         * Map<DependencyId, DependencyInfo>
+         * The DependencyInfo objects for the current round, along with their DependencyIds.
+         * These arrays are reused for every round of the txn. There are never more than a
+         * handful of dependencies in a batch, so a linear scan is cheaper than hashing 
+         * boxed DependencyIds.
          */
-        private final Map<Integer, DependencyInfo> dependencies = new HashMap<Integer, DependencyInfo>();
+        private int dependency_ids[];
+        private DependencyInfo dependencies[];
+        private boolean dependency_owned[];
+        private int num_dependencies = 0;
         
         /**
-         * Final result output dependencies. Each position in the list represents a single Statement
+         * DependencyInfo objects from previous rounds that we can reuse
          */
-        private final List<Integer> output_order = new ArrayList<Integer>();
+        private DependencyInfo spare_dependencies[];
+        private int num_spare_dependencies = 0;
+        
+        /**
+         * Final result output dependencies. Each position in the array represents a single Statement
+         */
+        private int output_order[];
+        private int num_outputs = 0;
         
         /**
          * Sometimes we will get results back while we are still queuing up the rest of the tasks and
          * haven't started the next round. So we need a temporary space where we can put these guys until 
-         * we start the round. Otherwise calculating the proper latch count is tricky
-         * Partition-DependencyId Key -> VoltTable
+         * we start the round. Otherwise calculating the proper pending count is tricky
+         * Each queued result is stored at the same offset in these arrays.
          */
-        private final Map<Pair<Integer, Integer>, VoltTable> queued_results = new LinkedHashMap<Pair<Integer,Integer>, VoltTable>();
+        private int queued_partitions[];
+        private int queued_dependency_ids[];
+        private VoltTable queued_results[];
+        private int num_queued = 0;
         
         /**
          * Blocked FragmentTaskMessages
@@ -152,6 +184,16 @@ public class DependencyTracker {
         private TransactionState(LocalTransaction ts) {
             this.txn_id = ts.getTransactionId();
             
+            int size = Math.max(INITIAL_ARRAY_SIZE, ts.getCurrentBatchSize());
+            this.dependency_ids = new int[size * 2];
+            this.dependencies = new DependencyInfo[size * 2];
+            this.dependency_owned = new boolean[size * 2];
+            this.spare_dependencies = new DependencyInfo[size * 2];
+            this.output_order = new int[size];
+            this.queued_partitions = new int[size];
+            this.queued_dependency_ids = new int[size];
+            this.queued_results = new VoltTable[size];
+            
             if (ts.hasPrefetchQueries()) {
 //                this.prefetch_tracker = new QueryTracker();
                 this.prefetch_dependencies = new HashMap<Integer, Map<Integer,DependencyInfo>>();
@@ -165,7 +207,112 @@ public class DependencyTracker {
          * @return
          */
         protected DependencyInfo getDependencyInfo(int d_id) {
-            return (this.dependencies.get(d_id));
+            // Results can show up from other threads while the PartitionExecutor
+            // is still adding dependencies, so we need to be careful if the arrays get resized
+            final int ids[] = this.dependency_ids;
+            final DependencyInfo deps[] = this.dependencies;
+            final int cnt = Math.min(this.num_dependencies, Math.min(ids.length, deps.length));
+            for (int i = 0; i < cnt; i++) {
+                if (ids[i] == d_id) return (deps[i]);
+            } // FOR
+            return (null);
+        }
+        
+        /**
+         * Store the given DependencyInfo for the DependencyId in the current round.
+         * If owned is true, then the DependencyInfo will be reused once the round is over.
+         * @param d_id
+         * @param dinfo
+         * @param owned
+         */
+        protected void putDependencyInfo(int d_id, DependencyInfo dinfo, boolean owned) {
+            for (int i = 0; i < this.num_dependencies; i++) {
+                if (this.dependency_ids[i] == d_id) {
+                    if (this.dependency_owned[i] && this.dependencies[i] != dinfo) {
+                        this.releaseDependencyInfo(this.dependencies[i]);
+                    }
+                    this.dependencies[i] = dinfo;
+                    this.dependency_owned[i] = owned;
+                    return;
+                }
+            } // FOR
+            if (this.num_dependencies == this.dependencies.length) {
+                int size = this.num_dependencies * 2;
+                this.dependency_ids = Arrays.copyOf(this.dependency_ids, size);
+                this.dependency_owned = Arrays.copyOf(this.dependency_owned, size);
+                this.dependencies = Arrays.copyOf(this.dependencies, size);
+            }
+            this.dependency_ids[this.num_dependencies] = d_id;
+            this.dependencies[this.num_dependencies] = dinfo;
+            this.dependency_owned[this.num_dependencies] = owned;
+            this.num_dependencies++;
+        }
+        
+        /**
+         * Return a DependencyInfo that is not being used in this round.
+         * @return
+         */
+        protected DependencyInfo newDependencyInfo() {
+            if (this.num_spare_dependencies > 0) {
+                DependencyInfo dinfo = this.spare_dependencies[--this.num_spare_dependencies];
+                this.spare_dependencies[this.num_spare_dependencies] = null;
+                return (dinfo);
+            }
+            return (new DependencyInfo(catalogContext));
+        }
+        
+        private void releaseDependencyInfo(DependencyInfo dinfo) {
+            dinfo.finish();
+            if (this.num_spare_dependencies == this.spare_dependencies.length) {
+                this.spare_dependencies = Arrays.copyOf(this.spare_dependencies, this.num_spare_dependencies * 2);
+            }
+            this.spare_dependencies[this.num_spare_dependencies++] = dinfo;
+        }
+        
+        protected void addOutputDependency(int d_id) {
+            if (this.num_outputs == this.output_order.length) {
+                this.output_order = Arrays.copyOf(this.output_order, this.num_outputs * 2);
+            }
+            this.output_order[this.num_outputs++] = d_id;
+        }
+        
+        protected boolean hasQueuedResult(int partition, int d_id) {
+            for (int i = 0; i < this.num_queued; i++) {
+                if (this.queued_partitions[i] == partition && this.queued_dependency_ids[i] == d_id) {
+                    return (true);
+                }
+            } // FOR
+            return (false);
+        }
+        
+        protected void addQueuedResult(int partition, int d_id, VoltTable result) {
+            if (this.num_queued == this.queued_results.length) {
+                int size = this.num_queued * 2;
+                this.queued_partitions = Arrays.copyOf(this.queued_partitions, size);
+                this.queued_dependency_ids = Arrays.copyOf(this.queued_dependency_ids, size);
+                this.queued_results = Arrays.copyOf(this.queued_results, size);
+            }
+            this.queued_partitions[this.num_queued] = partition;
+            this.queued_dependency_ids[this.num_queued] = d_id;
+            this.queued_results[this.num_queued] = result;
+            this.num_queued++;
+        }
+        
+        private void clearQueuedResults() {
+            for (int i = 0; i < this.num_queued; i++) {
+                this.queued_results[i] = null;
+            } // FOR
+            this.num_queued = 0;
+        }
+        
+        /**
+         * Make sure that our arrays are big enough for a batch with the given number of Statements
+         * @param batch_size
+         */
+        protected void ensureCapacity(int batch_size) {
+            if (this.output_order.length < batch_size) {
+                this.output_order = Arrays.copyOf(this.output_order, batch_size);
+            }
         }
         
         /**
@@ -177,15 +324,22 @@ public class DependencyTracker {
             if (trace.val)
                 LOG.trace("Clearing out internal state for " + this);
             
-            this.dependencies.clear();
-            this.output_order.clear();
-            this.queued_results.clear();
+            for (int i = 0; i < this.num_dependencies; i++) {
+                if (this.dependency_owned[i]) this.releaseDependencyInfo(this.dependencies[i]);
+                this.dependencies[i] = null;
+            } // FOR
+            this.num_dependencies = 0;
+            this.num_outputs = 0;
+            this.clearQueuedResults();
             this.blocked_tasks.clear();
             this.unblocked_tasks.clear();
             this.still_has_tasks = true;
 
             this.dependency_ctr = 0;
             this.received_ctr = 0;
+            this.round_started = false;
+            this.round_released = false;
+            this.pending_ctr = 0;
         }
         
         @Override
@@ -204,11 +358,26 @@ public class DependencyTracker {
                 }
                 // Skip parent reference
                 if (obj instanceof DependencyTracker) continue;
+                // Skip the parallel arrays that we already include below
+                if (obj == this.dependency_ids || obj == this.dependency_owned ||
+                    obj == this.spare_dependencies || obj == this.queued_partitions ||
+                    obj == this.queued_dependency_ids) continue;
                 
                 if (obj != null && obj == this.dependencies) {
                     Map<Integer, Object> inner = new TreeMap<Integer, Object>();
-                    for (Entry<Integer, DependencyInfo> e : this.dependencies.entrySet()) {
-                        inner.put(e.getKey(), e.getValue().debug());
+                    for (int i = 0; i < this.num_dependencies; i++) {
+                        inner.put(this.dependency_ids[i], this.dependencies[i].debug());
+                    }
+                    obj = inner;
+                }
+                else if (obj != null && obj == this.output_order) {
+                    obj = Arrays.toString(Arrays.copyOf(this.output_order, this.num_outputs));
+                }
+                else if (obj != null && obj == this.queued_results) {
+                    Map<String, Object> inner = new LinkedHashMap<String, Object>();
+                    for (int i = 0; i < this.num_queued; i++) {
+                        inner.put(TransactionUtil.debugPartDep(this.queued_partitions[i], this.queued_dependency_ids[i]),
+                                  this.queued_results[i].getRowCount() + " rows");
                     }
                     obj = inner;
                 }
@@ -268,11 +437,12 @@ public class DependencyTracker {
     
     protected void initRound(LocalTransaction ts) {
         final TransactionState state = this.getState(ts);
-        assert(state.queued_results.isEmpty()) : 
+        assert(state.num_queued == 0) : 
             String.format("Trying to initialize ROUND #%d for %s but there are %d queued results",
                            ts.getCurrentRound(ts.getBasePartition()),
-                           ts, state.queued_results.size());
+                           ts, state.num_queued);
         if (ts.getCurrentRound(ts.getBasePartition()) != 0) state.clear();
+        state.ensureCapacity(ts.getCurrentBatchSize());
     }
     
     protected void startRound(LocalTransaction ts) {
@@ -285,12 +455,13 @@ public class DependencyTracker {
         final int batch_size = ts.getCurrentBatchSize();
         
         // Create our output counters
-        assert(state.output_order.isEmpty());
+        assert(state.num_outputs == 0);
         for (int stmtIndex = 0; stmtIndex < batch_size; stmtIndex++) {
             if (trace.val)
                 LOG.trace(String.format("%s - Examining %d dependencies [stmtIndex=%d, currentRound=%d]",
-                          ts, state.dependencies.size(), stmtIndex, currentRound));
-            for (DependencyInfo dinfo : state.dependencies.values()) {
+                          ts, state.num_dependencies, stmtIndex, currentRound));
+            for (int i = 0; i < state.num_dependencies; i++) {
+                DependencyInfo dinfo = state.dependencies[i];
                 if (trace.val)
                     LOG.trace(String.format("%s - Checking %s", ts, dinfo));
                 
@@ -298,39 +469,41 @@ public class DependencyTracker {
                 // and if it is not an internal dependency
                 if (dinfo.inSameTxnRound(ts.getTransactionId(), currentRound) &&
                         dinfo.isInternal() == false && dinfo.getStatementIndex() == stmtIndex) {
-                    state.output_order.add(dinfo.getDependencyId());
+                    state.addOutputDependency(dinfo.getDependencyId());
                 }
             } // FOR
         } // FOR
         
         // XXX Disable assert - for SnapshotRestore test
         /*
-        assert(batch_size == state.output_order.size()) :
+        assert(batch_size == state.num_outputs) :
             String.format("%s - Expected %d output dependencies but we queued up %d " +
                           "[outputOrder=%s / numDependencies=%d]",
-                          ts, batch_size, state.output_order.size(),
-                          state.output_order, state.dependencies.size());
+                          ts, batch_size, state.num_outputs,
+                          Arrays.toString(state.output_order), state.num_dependencies);
         */
         
         // Release any queued responses/results
-        if (state.queued_results.isEmpty() == false) {
+        if (state.num_queued > 0) {
             if (trace.val)
                 LOG.trace(String.format("%s - Releasing %d queued results",
-                          ts, state.queued_results.size()));
-            for (Entry<Pair<Integer, Integer>, VoltTable> e : state.queued_results.entrySet()) {
-                this.addResult(ts, e.getKey(), e.getValue(), true);
+                          ts, state.num_queued));
+            for (int i = 0; i < state.num_queued; i++) {
+                this.addResult(ts, state.queued_partitions[i], state.queued_dependency_ids[i],
+                               state.queued_results[i], true);
             } // FOR
-            state.queued_results.clear();
+            state.clearQueuedResults();
         }
         
-        // Now create the latch
+        // Now figure out how many results we are still waiting for
         int count = state.dependency_ctr - state.received_ctr;
         assert(count >= 0);
-        assert(state.dependency_latch == null) : "This should never happen!\n" + ts.debug();
-        state.dependency_latch = new CountDownLatch(count);
+        assert(state.round_started == false) : "This should never happen!\n" + ts.debug();
+        state.pending_ctr = count;
+        state.round_started = true;
         if (debug.val)
-            LOG.debug(String.format("%s - Created %s with dependency counter set to %d",
-                      ts, state.dependency_latch.getClass().getSimpleName(), count));
+            LOG.debug(String.format("%s - Started round with pending dependency counter set to %d",
+                      ts, count));
     }
     
     protected void finishRound(LocalTransaction ts) {
@@ -339,18 +512,13 @@ public class DependencyTracker {
             String.format("Trying to finish ROUND #%d on partition %d for %s before it was started",
                           ts.getCurrentRound(ts.getBasePartition()),
                           ts.getBasePartition(), ts);
-        assert(state.queued_results.isEmpty()) :
+        assert(state.num_queued == 0) :
             String.format("Trying to finish ROUND #%d on partition %d for %s but there are %d queued results",
                           ts.getCurrentRound(ts.getBasePartition()),
-                          ts.getBasePartition(), ts, state.queued_results.size());
+                          ts.getBasePartition(), ts, state.num_queued);
+        assert(state.round_started == false || state.pending_ctr == 0 || state.round_released);
         
         // Reset our initialization flag so that we can be ready to run more stuff the next round
-        if (state.dependency_latch != null) {
-            assert(state.dependency_latch.getCount() == 0);
-            if (trace.val)
-                LOG.trace("Setting CountDownLatch to null for " + ts);
-            state.dependency_latch = null;
-        }
         state.clear();
     }
     
@@ -384,8 +552,8 @@ public class DependencyTracker {
                                                      int stmtIndex,
                                                      int paramsHash,
                                                      int fragmentId,
-                                                     Integer dep_id) {
-        DependencyInfo dinfo = state.dependencies.get(dep_id);
+                                                     int dep_id) {
+        DependencyInfo dinfo = state.getDependencyInfo(dep_id);
         
         if (dinfo != null) {
             if (trace.val)
@@ -401,8 +569,8 @@ public class DependencyTracker {
                 dinfo.finish();
             }
         } else {
-            dinfo = new DependencyInfo(this.catalogContext);
-            state.dependencies.put(dep_id, dinfo);
+            dinfo = state.newDependencyInfo();
+            state.putDependencyInfo(dep_id, dinfo, true);
             if (trace.val)
                 LOG.trace(String.format("%s - Created new DependencyInfo for %s " +
                 		  "[stmtIndex=%d, fragmentId=%d, paramsHash=%d]",
@@ -415,7 +583,7 @@ public class DependencyTracker {
                           "[stmtIndex=%d, fragmentId=%d, paramsHash=%d]",
                           ts, TransactionUtil.debugStmtDep(stmtCounter, dep_id),
                           stmtIndex, fragmentId, paramsHash));
-            dinfo.init(state.txn_id, currentRound, stmtCounter, stmtIndex, paramsHash, dep_id.intValue());
+            dinfo.init(state.txn_id, currentRound, stmtCounter, stmtIndex, paramsHash, dep_id);
         }
         
         return (dinfo);
@@ -485,7 +653,7 @@ public class DependencyTracker {
                       state, dinfo.getClass().getSimpleName(), dinfo));
         }
         dinfo.prefetchOverride(round, dependencyId, stmtIndex);
-        state.dependencies.put(dependencyId, dinfo);
+        state.putDependencyInfo(dependencyId, dinfo, false);
         
         return (dinfo);
     }
@@ -520,16 +688,15 @@ public class DependencyTracker {
                       ts, dinfo.getDependencyId(), state.blocked_tasks.size(), dinfo.hasTasksReady()));
         }
     
-        if (state.dependency_latch != null) {    
-            state.dependency_latch.countDown();
+        if (state.round_started) {
+            int pending = (state.pending_ctr > 0 ? --state.pending_ctr : 0);
             if (debug.val)
-                LOG.debug(String.format("%s - Decremented %s to %d for partition %d ",
-                          ts, state.dependency_latch.getClass().getSimpleName(),
-                          state.dependency_latch.getCount(), ts.getBasePartition()));
+                LOG.debug(String.format("%s - Decremented pending dependency counter to %d for partition %d ",
+                          ts, pending, ts.getBasePartition()));
                 
-            // HACK: If the latch is now zero, then push an EMPTY set into the unblocked queue
+            // If the counter is now zero, then push an EMPTY set into the unblocked queue
             // This will cause the blocked PartitionExecutor thread to wake up and realize that he's done
-            if (state.dependency_latch.getCount() == 0) {
+            if (pending == 0) {
                 if (debug.val)
                     LOG.debug(String.format("%s - Pushing EMPTY_FRAGMENT_SET to PartitionExecutor " +
                     		  "at partition %d because all of the dependencies have arrived!",
@@ -554,7 +721,7 @@ public class DependencyTracker {
      */
     public VoltTable[] getResults(LocalTransaction ts) {
         final TransactionState state = this.getState(ts);
-        final VoltTable results[] = new VoltTable[state.output_order.size()];
+        final VoltTable results[] = new VoltTable[state.num_outputs];
         if (debug.val)
             LOG.debug(String.format("%s - Generating output results with %d tables",
                       ts, results.length));
@@ -564,14 +731,13 @@ public class DependencyTracker {
                                ts.isSysProc() == false &&
                                ts.profiler != null);
         for (int stmtIndex = 0; stmtIndex < results.length; stmtIndex++) {
-            Integer dependency_id = state.output_order.get(stmtIndex);
-            assert(dependency_id != null) :
-                "Null output dependency id for Statement index " + stmtIndex + " in txn #" + state.txn_id;
-            assert(state.dependencies.containsKey(dependency_id)) :
+            int dependency_id = state.output_order[stmtIndex];
+            DependencyInfo dinfo = state.getDependencyInfo(dependency_id);
+            assert(dinfo != null) :
                 String.format("Missing info for %s in %s",
                               TransactionUtil.debugStmtDep(stmtIndex, dependency_id), ts); 
             
-            VoltTable vt = state.dependencies.get(dependency_id).getResult();
+            VoltTable vt = dinfo.getResult();
 
             // Special Non-Blocking Wrapper
             if (nonblocking) {
@@ -730,7 +896,8 @@ public class DependencyTracker {
                 int output_ctr = 0;
                 int dep_ctr = 0;
                 Map<String, Object> m = new LinkedHashMap<String, Object>();
-                for (DependencyInfo dinfo : state.dependencies.values()) {
+                for (int j = 0; j < state.num_dependencies; j++) {
+                    DependencyInfo dinfo = state.dependencies[j];
                     if (dinfo.getStatementCounter() == stmtCounter) dep_ctr++;
                     if (dinfo.isInternal() == false) {
                         m.put(String.format("Output[%02d]", output_ctr++), dinfo.debug());
@@ -784,19 +951,19 @@ public class DependencyTracker {
         assert(result != null) :
             String.format("%s - The result for DependencyId %d from partition %d is null",
                           ts, dependency_id, partition);
-        this.addResult(ts, Pair.of(partition, dependency_id), result, false);
+        this.addResult(ts, partition, dependency_id, result, false);
     }
 
     /**
      * Store a VoltTable result that this transaction is waiting for.
-     * @param key The hackish partition+dependency key
-     * @param result The actual data for the result
-     * @param force If false, then we will check to make sure the result isn't a duplicate
      * @param partition The partition id that generated the result
      * @param dependency_id The dependency id that this result corresponds to
+     * @param result The actual data for the result
+     * @param force If false, then we will check to make sure the result isn't a duplicate
      */
     private void addResult(final LocalTransaction ts,
-                           final Pair<Integer, Integer> key,
+                           final int partition,
+                           final int dependency_id,
                            final VoltTable result,
                            final boolean force) {
         final TransactionState state = this.getState(ts);
@@ -804,8 +971,6 @@ public class DependencyTracker {
         
         final ReentrantLock txnLock = ts.getTransactionLock();
         final int base_partition = ts.getBasePartition();
-        final int partition = key.getFirst().intValue();
-        final int dependency_id = key.getSecond().intValue();
         final RoundState roundState = ts.getCurrentRoundState(base_partition); 
         final boolean singlePartitioned = ts.isPredictSinglePartition();
         
@@ -824,10 +989,10 @@ public class DependencyTracker {
             if (singlePartitioned == false) txnLock.lock();
             try {
                 if (roundState == RoundState.INITIALIZED) {
-                    assert(state.queued_results.containsKey(key) == false) : 
+                    assert(state.hasQueuedResult(partition, dependency_id) == false) : 
                         String.format("%s - Duplicate result %s",
                                       ts, TransactionUtil.debugPartDep(partition, dependency_id));
-                    state.queued_results.put(key, result);
+                    state.addQueuedResult(partition, dependency_id, result);
                     if (debug.val)
                         LOG.debug(String.format("%s - Queued result %s until the round is started",
                                   ts, TransactionUtil.debugPartDep(partition, dependency_id)));
@@ -872,7 +1037,7 @@ public class DependencyTracker {
             m.put("Blocked Tasks", (state != null ? state.blocked_tasks.size() : null));
             m.put("DependencyInfo", dinfo.debug());
             m.put("hasTasksReady", dinfo.hasTasksReady());
-            m.put("Dependency Latch", state.dependency_latch);
+            m.put("Pending Dependencies", state.pending_ctr);
             LOG.trace(this + " - Status Information\n" + StringUtil.formatMaps(m));
             // if (trace.val) LOG.trace(ts.debug());
         }
@@ -951,15 +1116,11 @@ public class DependencyTracker {
     public void unblock(LocalTransaction ts) {
         final TransactionState state = this.getState(ts);
         try {
-            // And then shove an empty result at them
+            // Mark the round as released so that the waiting thread stops waiting for
+            // results and then shove an empty result at them so that it wakes up
+            // and sees that they got an error
+            state.round_released = true;
             state.unblocked_tasks.addLast(EMPTY_FRAGMENT_SET);
-            
-            // Spin through this so that the waiting thread wakes up and sees that they got an error
-            if (state.dependency_latch != null) {
-                while (state.dependency_latch.getCount() > 0) {
-                    state.dependency_latch.countDown();
-                } // WHILE
-            }
         } catch (NullPointerException ex) {
             // HACK!
         }
@@ -973,13 +1134,17 @@ public class DependencyTracker {
     
     
     /**
-     * Return the latch that will block the PartitionExecutor's thread until
-     * all of the query results have been retrieved for this transaction's
-     * current SQLStmt batch
+     * Return the number of query results that the PartitionExecutor's thread still
+     * needs to wait for in this transaction's current SQLStmt batch. This will be zero
+     * if the current round has not been started yet or if the txn was unblocked.
+     * Once this reaches zero, an empty collection is pushed into the txn's 
+     * unblocked WorkFragments queue, so the PartitionExecutor can block on that 
+     * queue instead of polling this counter.
      */
-    public CountDownLatch getDependencyLatch(LocalTransaction ts) {
+    public int getPendingDependencyCount(LocalTransaction ts) {
         final TransactionState state = this.getState(ts);
-        return state.dependency_latch;
+        if (state.round_released) return (0);
+        return (state.pending_ctr);
     }
     
     /**
@@ -1162,11 +1327,15 @@ public class DependencyTracker {
         }
         public DependencyInfo getDependencyInfo(LocalTransaction ts, int d_id) {
             final TransactionState state = getState(ts);
-            return (state.dependencies.get(d_id));
+            return (state.getDependencyInfo(d_id));
         }
         public Collection<DependencyInfo> getAllDependencies(LocalTransaction ts) {
             final TransactionState state = getState(ts);
-            return (state.dependencies.values());
+            List<DependencyInfo> dinfos = new ArrayList<DependencyInfo>();
+            for (int i = 0; i < state.num_dependencies; i++) {
+                dinfos.add(state.dependencies[i]);
+            } // FOR
+            return (dinfos);
         }
         public int getDependencyCount(LocalTransaction ts) { 
             final TransactionState state = getState(ts);
@@ -1178,11 +1347,23 @@ public class DependencyTracker {
         }
         public List<Integer> getOutputOrder(LocalTransaction ts) {
             final TransactionState state = getState(ts);
-            return (state.output_order);
+            List<Integer> order = new ArrayList<Integer>();
+            for (int i = 0; i < state.num_outputs; i++) {
+                order.add(state.output_order[i]);
+            } // FOR
+            return (order);
         }
         public Map<Integer, DependencyInfo> getStatementDependencies(LocalTransaction ts, int stmtIndex) {
             final TransactionState state = getState(ts);
-            return (state.dependencies);
+            Map<Integer, DependencyInfo> m = new HashMap<Integer, DependencyInfo>();
+            for (int i = 0; i < state.num_dependencies; i++) {
+                m.put(state.dependency_ids[i], state.dependencies[i]);
+            } // FOR
+            return (m);
+        }
+        public boolean isRoundStarted(LocalTransaction ts) {
+            final TransactionState state = getState(ts);
+            return (state.round_started);
         }
         public int getPrefetchCounter(LocalTransaction ts) {
             final TransactionState state = getState(ts);
@@ -1,8 +1,12 @@
 package edu.brown.hstore.util;
 
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,6 +22,21 @@ import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.pools.FastObjectPool;
 import edu.brown.utils.StringUtil;
 
+/**
+ * Partition-local cache of query results. There are two separate caches:
+ * <ol>
+ *  <li><B>Transaction Cache:</B> Results that are specific to a single transaction and
+ *      are purged as soon as that transaction finishes.</li>
+ *  <li><B>Global Cache:</B> Results of read-only PlanFragments that can be shared 
+ *      across transactions. Entries are keyed by (fragmentId, paramsHash) and are 
+ *      invalidated whenever a transaction writes to a table that the PlanFragment reads.
+ *      The cache is bounded by both the number of entries and the total number of bytes 
+ *      of the cached results and uses LRU eviction.</li>
+ * </ol>
+ * This class is not thread-safe. It should only be accessed by the PartitionExecutor
+ * thread that owns it.
+ * @author pavlo
+ */
 public class QueryCache {
     private static final Logger LOG = Logger.getLogger(QueryCache.class);
     private static final LoggerBoolean debug = new LoggerBoolean();
@@ -135,7 +154,6 @@ public class QueryCache {
     // INITIALIZATION
     // ----------------------------------------------------------------------------
 
-    private final Cache globalCache;
     private final Cache txnCache;
     
     /**
@@ -143,24 +161,315 @@ public class QueryCache {
      */
     private final Map<Long, List<Integer>> txnCacheXref = new HashMap<Long, List<Integer>>();
     
+    // ----------------------------------------------------------------------------
+    // GLOBAL CACHE MEMBERS
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * A cached result for a read-only PlanFragment that can be shared by
+     * all of the transactions that execute at this partition.
+     */
+    private static class GlobalCacheEntry {
+        final int fragmentId;
+        final Object params[];
+        final int tableIds[];
+        final long tableVersions[];
+        final long epoch;
+        final ByteBuffer data;
+        int accessCounter = 0;
+        long accessTimestamp = 0;
+        
+        public GlobalCacheEntry(int fragmentId, Object params[], int tableIds[], long tableVersions[], long epoch, ByteBuffer data) {
+            this.fragmentId = fragmentId;
+            this.params = params;
+            this.tableIds = tableIds;
+            this.tableVersions = tableVersions;
+            this.epoch = epoch;
+            this.data = data;
+        }
+        
+        public int size() {
+            return (this.data.limit());
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("Fragment:%d / Params:%s / Tables:%s / Size:%d / Accesses:%d",
+                                 this.fragmentId, Arrays.toString(this.params),
+                                 Arrays.toString(this.tableIds), this.size(), this.accessCounter);
+        }
+    } // CLASS
+    
+    /**
+     * (FragmentId, ParamsHash) -> GlobalCacheEntry
+     * This map is kept in access-order so that we can evict the least recently used entries.
+     */
+    private final LinkedHashMap<Long, GlobalCacheEntry> globalCache;
+    private final int globalMaxEntries;
+    private final long globalMaxBytes;
+    private long globalBytes = 0;
+    
+    /**
+     * TableId -> Version Counter
+     * Every time a table is modified at this partition, its version is incremented.
+     * Any GlobalCacheEntry that was created with an older version is considered stale.
+     */
+    private long tableVersions[] = new long[0];
+    
+    /**
+     * TableId -> Number of uncommitted transactions that have written to the table
+     * We are not allowed to store new entries for a table while this is greater than zero,
+     * since the result could contain dirty data.
+     */
+    private int tablePendingWriters[] = new int[0];
+    
+    /**
+     * Incremented whenever a transaction writes to tables that we don't know about.
+     * This invalidates everything in the global cache. The PartitionExecutor has
+     * to tell us about these writes (e.g., ad-hoc queries), since they never go
+     * through the regular PlanFragment execution path.
+     */
+    private long globalEpoch = 0;
+    private int globalPendingWriters = 0;
+    
+    /**
+     * TransactionId -> Set of TableIds written by that txn at this partition
+     * A txn that writes to an unknown set of tables will have a null BitSet.
+     */
+    private final Map<Long, BitSet> txnWriteSets = new HashMap<Long, BitSet>();
+    
+    // Stats
+    private long globalHits = 0;
+    private long globalMisses = 0;
+    private long globalEvictions = 0;
+    private long globalInvalidations = 0;
+    
     /**
      * Constructor
      */
     public QueryCache(int globalBufferSize, int txnBufferSize) {
-        this.globalCache = new Cache(globalBufferSize);
-        this.txnCache = new Cache(txnBufferSize);
+        this(globalBufferSize, txnBufferSize, Long.MAX_VALUE);
     }
     
+    /**
+     * Constructor
+     * @param globalBufferSize The max number of entries in the global cache
+     * @param txnBufferSize The max number of entries in the txn cache
+     * @param globalMaxBytes The max number of bytes of the results stored in the global cache
+     */
+    public QueryCache(int globalBufferSize, int txnBufferSize, long globalMaxBytes) {
+        this.globalCache = new LinkedHashMap<Long, GlobalCacheEntry>(Math.min(globalBufferSize, 1024), 0.75f, true);
+        this.globalMaxEntries = globalBufferSize;
+        this.globalMaxBytes = globalMaxBytes;
+        this.txnCache = new Cache(txnBufferSize);
+    }
     
     // ----------------------------------------------------------------------------
-    // API
+    // GLOBAL CACHE API
     // ----------------------------------------------------------------------------
 
+    private static long globalKey(int fragmentId, int paramsHash) {
+        return (((long)fragmentId << 32) | (paramsHash & 0xFFFFFFFFL));
+    }
+    
+    private void ensureTableCapacity(int tableId) {
+        if (tableId >= this.tableVersions.length) {
+            int newSize = Math.max(tableId+1, this.tableVersions.length * 2);
+            this.tableVersions = Arrays.copyOf(this.tableVersions, newSize);
+            this.tablePendingWriters = Arrays.copyOf(this.tablePendingWriters, newSize);
+        }
+    }
+    
+    /**
+     * Returns true if the results of a PlanFragment that reads the given tables
+     * are allowed to be stored in the global cache right now. This will be false
+     * if there is a transaction that has uncommitted changes to any of the tables.
+     * @param tableIds
+     * @return
+     */
+    public boolean isGlobalCacheable(int tableIds[]) {
+        if (tableIds == null || this.globalPendingWriters > 0) return (false);
+        for (int tableId : tableIds) {
+            if (tableId < this.tablePendingWriters.length && this.tablePendingWriters[tableId] > 0) {
+                return (false);
+            }
+        } // FOR
+        return (true);
+    }
+    
+    /**
+     * Store the result of a read-only PlanFragment in the global cache so that
+     * it can be reused by other transactions. Returns true if the result was stored.
+     * @param fragmentId
+     * @param tableIds The tables that are read by this PlanFragment
+     * @param params
+     * @param result
+     * @return
+     */
+    public boolean addGlobalQueryResult(int fragmentId, int tableIds[], ParameterSet params, VoltTable result) {
+        if (this.isGlobalCacheable(tableIds) == false) {
+            if (trace.val)
+                LOG.trace(String.format("Not caching result for FragmentId %d because tables %s have pending writes",
+                          fragmentId, Arrays.toString(tableIds)));
+            return (false);
+        }
+        int size = result.getUnderlyingBufferSize();
+        if (this.globalMaxEntries <= 0 || size > this.globalMaxBytes) {
+            return (false);
+        }
+        
+        // Make our own copy of the result so that nobody can change it on us
+        ByteBuffer src = result.getTableDataReference();
+        src.limit(size);
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.put(src);
+        data.flip();
+        
+        long versions[] = new long[tableIds.length];
+        for (int i = 0; i < tableIds.length; i++) {
+            this.ensureTableCapacity(tableIds[i]);
+            versions[i] = this.tableVersions[tableIds[i]];
+        } // FOR
+        Object values[] = params.toArray();
+        GlobalCacheEntry entry = new GlobalCacheEntry(fragmentId,
+                                                      Arrays.copyOf(values, values.length),
+                                                      tableIds,
+                                                      versions,
+                                                      this.globalEpoch,
+                                                      data);
+        GlobalCacheEntry prev = this.globalCache.put(globalKey(fragmentId, params.hashCode()), entry);
+        if (prev != null) this.globalBytes -= prev.size();
+        this.globalBytes += entry.size();
+        if (debug.val)
+            LOG.debug(String.format("Storing global query result for FragmentId %d - %s [size=%d]",
+                      fragmentId, params, size));
+        
+        // Evict the least recently used entries until we are back under our limits
+        Iterator<GlobalCacheEntry> it = this.globalCache.values().iterator();
+        while ((this.globalBytes > this.globalMaxBytes || this.globalCache.size() > this.globalMaxEntries) && it.hasNext()) {
+            GlobalCacheEntry victim = it.next();
+            it.remove();
+            this.globalBytes -= victim.size();
+            this.globalEvictions++;
+        } // WHILE
+        // Since the new entry is the most recently used one and is not larger than
+        // our byte limit, it will never be evicted by the loop above.
+        return (true);
+    }
+    
+    /**
+     * Return the cached result for the given PlanFragment invocation from the global cache.
+     * Returns null if there is no valid entry for the PlanFragment.
+     * The returned VoltTable can be safely handed off to the caller since it has its own
+     * position state, but it should be treated as read-only. 
+     * @param fragmentId
+     * @param params
+     * @return
+     */
+    public VoltTable getGlobalQueryResult(int fragmentId, ParameterSet params) {
+        int paramsHash = params.hashCode();
+        Long key = globalKey(fragmentId, paramsHash);
+        GlobalCacheEntry entry = this.globalCache.get(key);
+        if (entry == null || entry.fragmentId != fragmentId ||
+            Arrays.deepEquals(entry.params, params.toArray()) == false) {
+            this.globalMisses++;
+            return (null);
+        }
+        
+        // Make sure that none of the tables that this entry depends on were modified
+        boolean valid = (entry.epoch == this.globalEpoch);
+        for (int i = 0; valid && i < entry.tableIds.length; i++) {
+            valid = (this.tableVersions[entry.tableIds[i]] == entry.tableVersions[i]); 
+        } // FOR
+        if (valid == false) {
+            if (trace.val)
+                LOG.trace(String.format("Removing stale global query result for FragmentId %d - %s", fragmentId, params));
+            this.globalCache.remove(key);
+            this.globalBytes -= entry.size();
+            this.globalInvalidations++;
+            this.globalMisses++;
+            return (null);
+        }
+        
+        // Bingo!
+        entry.accessCounter++;
+        entry.accessTimestamp = EstTime.currentTimeMillis();
+        this.globalHits++;
+        return (new VoltTable(entry.data.duplicate(), true));
+    }
     
-    public void addGlobalQueryResult(int fragmentId, ParameterSet params, VoltTable result) {
+    /**
+     * Mark the given txn as having written to the given tables at this partition.
+     * All of the global cache entries that read these tables are invalidated
+     * and we will not store new entries for them until the txn is purged.
+     * If tableIds is null, then we will assume that the txn could have written to any table.
+     * @param txnId
+     * @param tableIds
+     */
+    public void markTablesWritten(Long txnId, int tableIds[]) {
+        BitSet writeSet = this.txnWriteSets.get(txnId);
+        boolean exists = this.txnWriteSets.containsKey(txnId);
         
+        // Unknown tables
+        if (tableIds == null) {
+            if (exists == false || writeSet != null) {
+                if (writeSet != null) {
+                    this.releaseTables(writeSet);
+                }
+                this.txnWriteSets.put(txnId, null);
+                this.globalPendingWriters++;
+            }
+            this.invalidateAll();
+            return;
+        }
+        // We've already marked this txn as writing to everything
+        else if (exists && writeSet == null) {
+            return;
+        }
+        
+        if (writeSet == null) {
+            writeSet = new BitSet();
+            this.txnWriteSets.put(txnId, writeSet);
+        }
+        for (int tableId : tableIds) {
+            this.ensureTableCapacity(tableId);
+            if (writeSet.get(tableId) == false) {
+                writeSet.set(tableId);
+                this.tablePendingWriters[tableId]++;
+            }
+        } // FOR
+        this.invalidateTables(tableIds);
+    }
+    
+    /**
+     * Invalidate all of the global cache entries that read the given tables
+     * @param tableIds
+     */
+    public void invalidateTables(int...tableIds) {
+        for (int tableId : tableIds) {
+            this.ensureTableCapacity(tableId);
+            this.tableVersions[tableId]++;
+        } // FOR
     }
     
+    /**
+     * Invalidate all of the entries in the global cache
+     */
+    public void invalidateAll() {
+        this.globalEpoch++;
+    }
+    
+    private void releaseTables(BitSet writeSet) {
+        for (int tableId = writeSet.nextSetBit(0); tableId >= 0; tableId = writeSet.nextSetBit(tableId+1)) {
+            this.tablePendingWriters[tableId]--;
+            this.tableVersions[tableId]++;
+        } // FOR
+    }
+    
+    // ----------------------------------------------------------------------------
+    // TRANSACTION CACHE API
+    // ----------------------------------------------------------------------------
+    
     /**
      * Store a new cache entry for a query that is specific to a transaction
      * This cached result is not be available to other transactions
@@ -258,11 +567,13 @@ public class QueryCache {
     }
     
     /**
-     * Remove all the cached query results that are specific for this transaction
+     * Remove all the cached query results that are specific for this transaction.
+     * This must be called once the txn is committed or aborted at this partition so that
+     * we can start caching results again for the tables that it modified.
      * @param txn_id
      */
     public void purgeTransaction(Long txnId) {
-        List<Integer> entries = this.txnCacheXref.get(txnId);
+        List<Integer> entries = this.txnCacheXref.remove(txnId);
         if (entries != null) {
             try {
                 this.listPool.returnObject(entries);
@@ -270,6 +581,49 @@ public class QueryCache {
                 throw new RuntimeException("Failed to return list to object pool", ex);
             }
         }
+        
+        if (this.txnWriteSets.containsKey(txnId)) {
+            BitSet writeSet = this.txnWriteSets.remove(txnId);
+            if (writeSet != null) {
+                this.releaseTables(writeSet);
+            } else {
+                this.globalPendingWriters--;
+                this.invalidateAll();
+            }
+        }
+    }
+    
+    // ----------------------------------------------------------------------------
+    // STATS
+    // ----------------------------------------------------------------------------
+    
+    public long getGlobalHits() {
+        return (this.globalHits);
+    }
+    public long getGlobalMisses() {
+        return (this.globalMisses);
+    }
+    public double getGlobalHitRate() {
+        long total = this.globalHits + this.globalMisses;
+        return (total > 0 ? this.globalHits / (double)total : 0d);
+    }
+    public long getGlobalEvictions() {
+        return (this.globalEvictions);
+    }
+    public long getGlobalInvalidations() {
+        return (this.globalInvalidations);
+    }
+    public int getGlobalEntryCount() {
+        return (this.globalCache.size());
+    }
+    public long getGlobalBytes() {
+        return (this.globalBytes);
+    }
+    public void resetGlobalStats() {
+        this.globalHits = 0;
+        this.globalMisses = 0;
+        this.globalEvictions = 0;
+        this.globalInvalidations = 0;
     }
 
 
@@ -285,7 +639,12 @@ public class QueryCache {
         
         // Global Cache
         m[idx] = new LinkedHashMap<String, Object>();
-        m[idx].put("Global Cache", null);
+        m[idx].put(String.format("GlobalCache[%d]", this.globalCache.size()),
+                   StringUtil.join("\n", this.globalCache.values()).trim());
+        m[idx].put("Global Bytes", this.globalBytes);
+        m[idx].put("Global Hit Rate", this.getGlobalHitRate());
+        m[idx].put("Global Evictions", this.globalEvictions);
+        m[idx].put("Global Invalidations", this.globalInvalidations);
         
         // TxnCache
         m[++idx] = new LinkedHashMap<String, Object>();
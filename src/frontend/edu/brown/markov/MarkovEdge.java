@@ -45,6 +45,11 @@ public class MarkovEdge extends AbstractEdge implements MarkovHitTrackable {
      */
     public transient int instancehits = 0;
 
+    /**
+     * Where this edge is in the MarkovGraph's current MarkovTransitionTable
+     */
+    transient volatile MarkovTransitionTable.Slot table_slot = null;
+
     /**
      * Constructor
      * 
@@ -38,6 +38,8 @@ import edu.brown.utils.PartitionSet;
 import edu.brown.utils.ProjectType;
 import edu.brown.workload.QueryTrace;
 import edu.brown.workload.TransactionTrace;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
 
 /**
  * Markov Model Graph
@@ -84,6 +86,15 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
     private transient double xact_accuracy = 1.0;
     /** How many times have we recomputed the probabilities for this graph */
     private transient int recompute_count = 0;
+    
+    /**
+     * How often (in ms) the striped hit counters in the MarkovTransitionTable
+     * get folded back into the graph when checking whether we need to recompute
+     */
+    private static final long TRANSITION_TABLE_FOLD_INTERVAL = 1000; // ms
+    
+    /** Compiled version of this graph's vertices+edges used for path estimation */
+    private transient volatile MarkovTransitionTable transition_table = null;
 
     // ----------------------------------------------------------------------------
     // CONSTRUCTORS
@@ -173,6 +184,49 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
     }
     
     
+    /**
+     * Return the compiled MarkovTransitionTable for this graph. The table only gets
+     * compiled the first time that it is needed after the probabilities were recomputed.
+     * Any vertices or edges added to the graph after that are appended to the existing table.
+     * @return
+     */
+    public MarkovTransitionTable getTransitionTable() {
+        MarkovTransitionTable table = this.transition_table;
+        if (table == null) {
+            synchronized (this) {
+                table = this.transition_table;
+                if (table == null) {
+                    table = new MarkovTransitionTable(this);
+                    this.transition_table = table;
+                    if (debug.val) LOG.debug(String.format("Compiled MarkovTransitionTable for %s [vertices=%d, edges=%d]",
+                                                           this, table.getVertexCount(), table.getEdgeCount()));
+                }
+            } // SYNCH
+        }
+        return (table);
+    }
+    
+    /**
+     * Fold the instance hits collected in the MarkovTransitionTable back into
+     * this graph's vertices and edges
+     */
+    public void foldInstanceHits() {
+        MarkovTransitionTable table = this.transition_table;
+        if (table != null) table.fold();
+    }
+    
+    /**
+     * Throw away the current MarkovTransitionTable after folding its counters.
+     */
+    private void invalidateTransitionTable() {
+        MarkovTransitionTable table;
+        synchronized (this) {
+            table = this.transition_table;
+            this.transition_table = null;
+        } // SYNCH
+        if (table != null) table.fold();
+    }
+    
     // ----------------------------------------------------------------------------
     // DATA MEMBER METHODS
     // ----------------------------------------------------------------------------
@@ -208,9 +262,10 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
      * 
      */
     @Override
-    public boolean addVertex(MarkovVertex v) {
+    public synchronized boolean addVertex(MarkovVertex v) {
         boolean ret = super.addVertex(v);
         if (ret) {
+            if (this.transition_table != null) this.transition_table.addVertex(v);
             if (v.isQueryVertex()) {
                 Collection<MarkovVertex> stmt_vertices = this.cache_stmtVertices.get(v.getCatalogItem());
                 if (stmt_vertices == null) {
@@ -228,6 +283,22 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         return (ret);
     }
 
+    /**
+     * Appends the new edge to our MarkovTransitionTable
+     */
+    @Override
+    public synchronized boolean addEdge(MarkovEdge e, Pair<? extends MarkovVertex> endpoints, EdgeType edgeType) {
+        boolean ret = super.addEdge(e, endpoints, edgeType);
+        if (ret && this.transition_table != null) {
+            MarkovVertex source = endpoints.getFirst();
+            MarkovVertex dest = endpoints.getSecond();
+            this.transition_table.addVertex(source);
+            this.transition_table.addVertex(dest);
+            this.transition_table.addEdge(e, source, dest);
+        }
+        return (ret);
+    }
+
     /**
      * For the given Vertex type, return the special vertex
      * @param vtype - the Vertex type (cannot be a regular query)
@@ -346,6 +417,8 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
      * the totalhits for each graph element
      */
     public void calculateProbabilities(PartitionSet partitions) {
+        this.invalidateTransitionTable();
+        
         // Reset all probabilities
         for (MarkovVertex v : this.getVertices()) {
             v.resetAllProbabilities();
@@ -365,6 +438,9 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         // Then traverse the graph and calculate the vertex probability tables
         this.calculateVertexProbabilities(partitions);
         
+        // Somebody may have compiled a table while we were in the middle
+        // of updating the probabilities, so we have to throw it out
+        this.invalidateTransitionTable();
         this.recompute_count++;
     }
 
@@ -515,6 +591,8 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
 
     public boolean shouldRecompute(int instance_count, double recomputeTolerance) {
         double VERTEX_PROPORTION = 0.5f; // If VERTEX_PROPORTION of
+        MarkovTransitionTable table = this.transition_table;
+        if (table != null) table.fold(TRANSITION_TABLE_FOLD_INTERVAL);
         int count = 0;
         for (MarkovVertex v : this.getVertices()) {
             if (v.shouldRecompute(instance_count, recomputeTolerance, xact_count)) {
@@ -610,6 +688,7 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
      * other transaction running at the same time
      */
     public synchronized void resetCounters() {
+        if (this.transition_table != null) this.transition_table.reset();
         for (MarkovVertex v : this.getVertices()) {
             v.setInstanceHits(0);
         }
@@ -654,6 +733,8 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
     
     @Override
     public void toJSON(JSONStringer stringer) throws JSONException {
+        this.foldInstanceHits();
+        
         // Ignore any vertices with no totalhits
         Set<MarkovVertex> ignore = new HashSet<MarkovVertex>();
         for (MarkovVertex v : this.getVertices()) {
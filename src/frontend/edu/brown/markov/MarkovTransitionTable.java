@@ -0,0 +1,360 @@
+package edu.brown.markov;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.voltdb.utils.EstTime;
+
+/**
+ * A compiled snapshot of the structure of a MarkovGraph.
+ * The vertices and their outgoing edges are flattened into primitive arrays
+ * so that path estimation can walk the model without going through the JUNG
+ * adjacency maps or taking any locks.
+ * <P>
+ * When the MarkovGraph gains new vertices/edges, they are appended to the end of
+ * the arrays instead of compiling the whole graph again. There is only ever one thread
+ * appending at a time (the MarkovGraph holds its lock), but the readers do not lock anything.
+ * The arrays are doubled when they run out of space and each vertex's list of
+ * outgoing edges is replaced with a new copy when an edge is added to it, so a reader
+ * will always see a consistent (although maybe slightly out-of-date) view of the graph.
+ * <B>Note:</B> The edge probabilities are copied when the element is added to the table.
+ * The MarkovGraph throws away its table whenever the probabilities are recomputed.
+ * <P>
+ * The table also holds striped instance hit counters for the online learning. Each thread
+ * increments the cells of its own stripe and the counts are folded back into the
+ * MarkovVertex/MarkovEdge instancehits fields by fold(). Only the elements that were
+ * in the graph when the table was compiled get striped counters.
+ * @author pavlo
+ */
+public class MarkovTransitionTable {
+
+    /**
+     * The number of counter stripes. Always a power of two
+     */
+    private static final int NUM_STRIPES;
+    static {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        NUM_STRIPES = Math.min(64, Integer.highestOneBit(Math.max(1, cpus - 1)) << 1);
+    }
+
+    private static final int EMPTY[] = new int[0];
+
+    /**
+     * The position of a MarkovVertex or MarkovEdge in a particular table.
+     * Each element points to the slot for the last table that it was added to,
+     * which saves us from having to keep a map that the readers would have to lock.
+     */
+    static final class Slot {
+        private final MarkovTransitionTable table;
+        private final int idx;
+        private Slot(MarkovTransitionTable table, int idx) {
+            this.table = table;
+            this.idx = idx;
+        }
+    }
+
+    /**
+     * The arrays for the table.
+     * Once a Storage has been published, the only thing that changes in it is that
+     * new entries are filled in past the ones that the readers already know about.
+     */
+    private static final class Storage {
+        /** VertexIndex -> MarkovVertex */
+        private final MarkovVertex vertices[];
+        /** VertexIndex -> Whether this is a COMMIT/ABORT vertex */
+        private final boolean vertex_terminal[];
+        /** VertexIndex -> EdgeIndexes of the vertex's outgoing edges */
+        private final AtomicReferenceArray<int[]> out_edges;
+
+        /** EdgeIndex -> MarkovEdge */
+        private final MarkovEdge edges[];
+        /** EdgeIndex -> Destination VertexIndex */
+        private final int edge_dests[];
+        /** EdgeIndex -> Transition probability */
+        private final float edge_probabilities[];
+
+        private Storage(int num_vertices, int num_edges) {
+            this.vertices = new MarkovVertex[num_vertices];
+            this.vertex_terminal = new boolean[num_vertices];
+            this.out_edges = new AtomicReferenceArray<int[]>(num_vertices);
+            this.edges = new MarkovEdge[num_edges];
+            this.edge_dests = new int[num_edges];
+            this.edge_probabilities = new float[num_edges];
+        }
+
+        /**
+         * Make a copy of this Storage that has room for the given number of elements
+         */
+        private Storage grow(int num_vertices, int num_edges, int vertex_count, int edge_count) {
+            Storage s = new Storage(num_vertices, num_edges);
+            System.arraycopy(this.vertices, 0, s.vertices, 0, vertex_count);
+            System.arraycopy(this.vertex_terminal, 0, s.vertex_terminal, 0, vertex_count);
+            for (int i = 0; i < vertex_count; i++) {
+                s.out_edges.set(i, this.out_edges.get(i));
+            } // FOR
+            System.arraycopy(this.edges, 0, s.edges, 0, edge_count);
+            System.arraycopy(this.edge_dests, 0, s.edge_dests, 0, edge_count);
+            System.arraycopy(this.edge_probabilities, 0, s.edge_probabilities, 0, edge_count);
+            return (s);
+        }
+    }
+
+    private final MarkovGraph markov;
+    private volatile Storage storage;
+    private volatile int vertex_count = 0;
+    private volatile int edge_count = 0;
+
+    private final AtomicIntegerArray vertex_hits[] = new AtomicIntegerArray[NUM_STRIPES];
+    private final AtomicIntegerArray edge_hits[] = new AtomicIntegerArray[NUM_STRIPES];
+    private volatile long last_fold = EstTime.currentTimeMillis();
+
+    /**
+     * Compile the given MarkovGraph.
+     * The caller must make sure that the graph is not modified while we are doing this.
+     * @param markov
+     */
+    protected MarkovTransitionTable(MarkovGraph markov) {
+        this.markov = markov;
+
+        Collection<MarkovVertex> all_vertices = markov.getVertices();
+        int num_vertices = all_vertices.size();
+        int num_edges = markov.getEdgeCount();
+        this.storage = new Storage(Math.max(1, num_vertices), Math.max(1, num_edges));
+        for (MarkovVertex v : all_vertices) {
+            this.addVertex(v);
+        } // FOR
+        for (MarkovVertex v : all_vertices) {
+            Collection<MarkovEdge> out_edges = markov.getOutEdges(v);
+            if (out_edges == null) continue;
+            for (MarkovEdge e : out_edges) {
+                this.addEdge(e, v, markov.getDest(e));
+            } // FOR
+        } // FOR
+
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            this.vertex_hits[i] = new AtomicIntegerArray(this.vertex_count);
+            this.edge_hits[i] = new AtomicIntegerArray(this.edge_count);
+        } // FOR
+    }
+
+    // ----------------------------------------------------------------------------
+    // APPEND METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Append a new vertex to the table.
+     * The caller must hold the MarkovGraph's lock.
+     * @param v
+     */
+    protected void addVertex(MarkovVertex v) {
+        if (this.getVertexIndex(v) >= 0) return;
+        int idx = this.vertex_count;
+        Storage s = this.storage;
+        if (idx == s.vertices.length) {
+            s = s.grow(idx * 2, s.edges.length, idx, this.edge_count);
+        }
+        s.vertices[idx] = v;
+        s.vertex_terminal[idx] = (v.isCommitVertex() || v.isAbortVertex());
+        s.out_edges.set(idx, EMPTY);
+        this.storage = s;
+        this.vertex_count = idx + 1;
+        v.table_slot = new Slot(this, idx);
+    }
+
+    /**
+     * Append a new edge to the table.
+     * The caller must hold the MarkovGraph's lock.
+     * @param e
+     * @param source
+     * @param dest
+     */
+    protected void addEdge(MarkovEdge e, MarkovVertex source, MarkovVertex dest) {
+        if (this.getEdgeIndex(e) >= 0) return;
+        int source_idx = this.getVertexIndex(source);
+        int dest_idx = this.getVertexIndex(dest);
+        assert(source_idx >= 0) : "Unexpected source vertex for " + e;
+        assert(dest_idx >= 0) : "Unexpected destination vertex for " + e;
+
+        int idx = this.edge_count;
+        Storage s = this.storage;
+        if (idx == s.edges.length) {
+            s = s.grow(s.vertices.length, idx * 2, this.vertex_count, idx);
+        }
+        s.edges[idx] = e;
+        s.edge_dests[idx] = dest_idx;
+        s.edge_probabilities[idx] = e.getProbability();
+
+        // The readers might be looking at the old list, so we have to make a new one
+        int old_edges[] = s.out_edges.get(source_idx);
+        int new_edges[] = new int[old_edges.length + 1];
+        System.arraycopy(old_edges, 0, new_edges, 0, old_edges.length);
+        new_edges[old_edges.length] = idx;
+        s.out_edges.set(source_idx, new_edges);
+        this.storage = s;
+        this.edge_count = idx + 1;
+        e.table_slot = new Slot(this, idx);
+    }
+
+    // ----------------------------------------------------------------------------
+    // STRUCTURE METHODS
+    // ----------------------------------------------------------------------------
+
+    public MarkovGraph getMarkovGraph() {
+        return (this.markov);
+    }
+    public int getVertexCount() {
+        return (this.vertex_count);
+    }
+    public int getEdgeCount() {
+        return (this.edge_count);
+    }
+
+    /**
+     * Return the index of the given vertex in this table or -1 if the
+     * vertex is not in this table
+     * @param v
+     * @return
+     */
+    public int getVertexIndex(MarkovVertex v) {
+        Slot slot = v.table_slot;
+        return (slot != null && slot.table == this ? slot.idx : -1);
+    }
+    /**
+     * Return the index of the given edge in this table or -1 if the
+     * edge is not in this table
+     * @param e
+     * @return
+     */
+    public int getEdgeIndex(MarkovEdge e) {
+        Slot slot = e.table_slot;
+        return (slot != null && slot.table == this ? slot.idx : -1);
+    }
+    public MarkovVertex getVertex(int vertex_idx) {
+        return (this.storage.vertices[vertex_idx]);
+    }
+    public MarkovEdge getEdge(int edge_idx) {
+        return (this.storage.edges[edge_idx]);
+    }
+    public boolean isTerminal(int vertex_idx) {
+        return (this.storage.vertex_terminal[vertex_idx]);
+    }
+
+    /**
+     * Return the EdgeIndexes of the outgoing edges for the given vertex.
+     * The caller must not modify this array.
+     * @param vertex_idx
+     * @return
+     */
+    public int[] getOutEdges(int vertex_idx) {
+        return (this.storage.out_edges.get(vertex_idx));
+    }
+    public int getEdgeDestination(int edge_idx) {
+        return (this.storage.edge_dests[edge_idx]);
+    }
+    public float getEdgeProbability(int edge_idx) {
+        return (this.storage.edge_probabilities[edge_idx]);
+    }
+
+    /**
+     * Return the index of the edge from source to dest, or -1 if there is no such edge
+     * @param source_idx
+     * @param dest_idx
+     * @return
+     */
+    public int findEdge(int source_idx, int dest_idx) {
+        Storage s = this.storage;
+        for (int e : s.out_edges.get(source_idx)) {
+            if (s.edge_dests[e] == dest_idx) return (e);
+        } // FOR
+        return (-1);
+    }
+
+    // ----------------------------------------------------------------------------
+    // COUNTER METHODS
+    // ----------------------------------------------------------------------------
+
+    private static int getStripe() {
+        return ((int)Thread.currentThread().getId() & (NUM_STRIPES - 1));
+    }
+
+    /**
+     * Increment the instance hit counter for the given vertex.
+     * If the vertex does not have a counter in this table, then we will update it directly.
+     * @param v
+     */
+    public void incrementInstanceHits(MarkovVertex v) {
+        int idx = this.getVertexIndex(v);
+        AtomicIntegerArray hits = this.vertex_hits[getStripe()];
+        if (idx >= 0 && idx < hits.length()) {
+            hits.incrementAndGet(idx);
+        } else {
+            synchronized (this) {
+                v.incrementInstanceHits();
+            } // SYNCH
+        }
+    }
+
+    /**
+     * Increment the instance hit counter for the given edge.
+     * If the edge does not have a counter in this table, then we will update it directly.
+     * @param e
+     */
+    public void incrementInstanceHits(MarkovEdge e) {
+        int idx = this.getEdgeIndex(e);
+        AtomicIntegerArray hits = this.edge_hits[getStripe()];
+        if (idx >= 0 && idx < hits.length()) {
+            hits.incrementAndGet(idx);
+        } else {
+            synchronized (this) {
+                e.incrementInstanceHits();
+            } // SYNCH
+        }
+    }
+
+    /**
+     * Fold the striped counters back into the instancehits of the
+     * MarkovVertex and MarkovEdge objects
+     */
+    public synchronized void fold() {
+        this.last_fold = EstTime.currentTimeMillis();
+        Storage s = this.storage;
+        for (int stripe = 0; stripe < NUM_STRIPES; stripe++) {
+            AtomicIntegerArray hits = this.vertex_hits[stripe];
+            for (int i = 0, cnt = hits.length(); i < cnt; i++) {
+                if (hits.get(i) == 0) continue;
+                s.vertices[i].instancehits += hits.getAndSet(i, 0);
+            } // FOR
+            hits = this.edge_hits[stripe];
+            for (int i = 0, cnt = hits.length(); i < cnt; i++) {
+                if (hits.get(i) == 0) continue;
+                s.edges[i].instancehits += hits.getAndSet(i, 0);
+            } // FOR
+        } // FOR
+    }
+
+    /**
+     * Fold the striped counters if it has been at least the given number
+     * of milliseconds since the last time that they were folded
+     * @param interval
+     */
+    public void fold(long interval) {
+        if (EstTime.currentTimeMillis() - this.last_fold >= interval) {
+            this.fold();
+        }
+    }
+
+    /**
+     * Throw away any counts that have not been folded yet
+     */
+    public synchronized void reset() {
+        for (int stripe = 0; stripe < NUM_STRIPES; stripe++) {
+            for (int i = 0, cnt = this.vertex_hits[stripe].length(); i < cnt; i++) {
+                this.vertex_hits[stripe].set(i, 0);
+            } // FOR
+            for (int i = 0, cnt = this.edge_hits[stripe].length(); i < cnt; i++) {
+                this.edge_hits[stripe].set(i, 0);
+            } // FOR
+        } // FOR
+    }
+}
@@ -178,6 +178,11 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
      */
     private transient CountedStatement counted_stmt = null;
     
+    /**
+     * Where this vertex is in the MarkovGraph's current MarkovTransitionTable
+     */
+    transient volatile MarkovTransitionTable.Slot table_slot = null;
+    
 
     // ----------------------------------------------------------------------------
     // CONSTRUCTORS
@@ -0,0 +1,552 @@
+package edu.brown.markov.containers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+
+import edu.brown.catalog.CatalogKey;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.markov.MarkovEdge;
+import edu.brown.markov.MarkovGraph;
+import edu.brown.markov.MarkovUtil;
+import edu.brown.markov.MarkovVertex;
+import edu.brown.utils.ArgumentsParser;
+import edu.brown.utils.ClassUtil;
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.PartitionSet;
+
+/**
+ * Compact binary file format for a collection of MarkovGraphsContainers.
+ * The file is memory-mapped when it is opened and only the index is decoded up front.
+ * Each MarkovGraph is decoded the first time that somebody asks for it through its container.
+ * <B>File Layout:</B>
+ * <PRE>
+ * HEADER:    int magic | int version | long index_offset
+ * GRAPHS:    one record per MarkovGraph (see writeGraph)
+ * INDEX:     int num_containers
+ *            { int partition | str classname | int num_graphs
+ *              { int id | str proc_key | long offset | int length }* }*
+ * </PRE>
+ * All strings are stored as a short length followed by UTF-8 bytes.
+ * @author pavlo
+ */
+public class MarkovGraphsBinaryFile {
+    private static final Logger LOG = Logger.getLogger(MarkovGraphsBinaryFile.class);
+    private static final LoggerBoolean debug = new LoggerBoolean();
+    private static final LoggerBoolean trace = new LoggerBoolean();
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /**
+     * Magic number at the start of every binary Markov file ("MKVG")
+     */
+    public static final int MAGIC = 0x4D4B5647;
+
+    /**
+     * Current version of the file format. This must be incremented whenever
+     * the layout of the records changes (including the MarkovVertex.Probability enum)
+     */
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * Location of a single serialized MarkovGraph in the file
+     */
+    private static class GraphEntry {
+        final long offset;
+        final int length;
+        GraphEntry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Index information for a single MarkovGraphsContainer
+     */
+    private static class ContainerEntry {
+        final String className;
+        final Map<Integer, Map<Procedure, GraphEntry>> graphs = new TreeMap<Integer, Map<Procedure, GraphEntry>>();
+        ContainerEntry(String className) {
+            this.className = className;
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // INSTANCE MEMBERS
+    // ----------------------------------------------------------------------------
+
+    private final Database catalog_db;
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int version;
+
+    /**
+     * Partition -> ContainerEntry
+     */
+    private final Map<Integer, ContainerEntry> index = new TreeMap<Integer, ContainerEntry>();
+
+    /**
+     * Open the given binary file and read in its index.
+     * None of the MarkovGraphs are deserialized until they are requested.
+     * @param catalog_db
+     * @param file
+     * @throws IOException
+     */
+    public MarkovGraphsBinaryFile(Database catalog_db, File file) throws IOException {
+        this.catalog_db = catalog_db;
+        this.file = file;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+
+        ByteBuffer b = this.buffer.duplicate();
+        if (b.remaining() < HEADER_SIZE || b.getInt() != MAGIC) {
+            throw new IOException("The file '" + file + "' is not a binary MarkovGraphsContainer file");
+        }
+        this.version = b.getInt();
+        if (this.version > VERSION) {
+            throw new IOException(String.format("Unsupported MarkovGraphsContainer file version %d in '%s' [max=%d]",
+                                                this.version, file, VERSION));
+        }
+        long index_offset = b.getLong();
+        this.readIndex(index_offset);
+    }
+
+    private void readIndex(long index_offset) throws IOException {
+        ByteBuffer b = this.buffer.duplicate();
+        b.position((int)index_offset);
+        int num_containers = b.getInt();
+        for (int i = 0; i < num_containers; i++) {
+            Integer partition = Integer.valueOf(b.getInt());
+            ContainerEntry c = new ContainerEntry(readString(b));
+            int num_graphs = b.getInt();
+            for (int j = 0; j < num_graphs; j++) {
+                Integer id = Integer.valueOf(b.getInt());
+                String proc_key = readString(b);
+                GraphEntry e = new GraphEntry(b.getLong(), b.getInt());
+
+                Procedure catalog_proc = CatalogKey.getFromKey(this.catalog_db, proc_key, Procedure.class);
+                if (catalog_proc == null) {
+                    LOG.warn(String.format("Skipping MarkovGraph for unknown procedure '%s' in '%s'", proc_key, this.file));
+                    continue;
+                }
+                Map<Procedure, GraphEntry> inner = c.graphs.get(id);
+                if (inner == null) {
+                    inner = new HashMap<Procedure, GraphEntry>();
+                    c.graphs.put(id, inner);
+                }
+                inner.put(catalog_proc, e);
+            } // FOR
+            this.index.put(partition, c);
+        } // FOR
+        if (debug.val) LOG.debug(String.format("Read index for %d MarkovGraphsContainers from '%s' [version=%d]",
+                                               this.index.size(), this.file.getName(), this.version));
+    }
+
+    // ----------------------------------------------------------------------------
+    // ACCESS METHODS
+    // ----------------------------------------------------------------------------
+
+    public File getFile() {
+        return (this.file);
+    }
+
+    public int getVersion() {
+        return (this.version);
+    }
+
+    public Set<Integer> getPartitions() {
+        return (Collections.unmodifiableSet(this.index.keySet()));
+    }
+
+    /**
+     * Return the graph ids stored for the given partition's container
+     * @param partition
+     * @return
+     */
+    public Collection<Integer> getIds(Integer partition) {
+        ContainerEntry c = this.index.get(partition);
+        if (c == null) return (Collections.emptySet());
+        return (c.graphs.keySet());
+    }
+
+    /**
+     * Return the Procedures that have a MarkovGraph for the given partition/id pair
+     * @param partition
+     * @param id
+     * @return
+     */
+    public Collection<Procedure> getProcedures(Integer partition, Integer id) {
+        ContainerEntry c = this.index.get(partition);
+        Map<Procedure, GraphEntry> inner = (c != null ? c.graphs.get(id) : null);
+        if (inner == null) return (Collections.emptySet());
+        return (inner.keySet());
+    }
+
+    /**
+     * Create the MarkovGraphsContainers stored in this file. The containers are
+     * attached to this file and will deserialize each MarkovGraph on first use.
+     * @param procedures the procedures to load (null for all of them)
+     * @param ids the partitions to load (null for all of them)
+     * @return
+     */
+    public Map<Integer, MarkovGraphsContainer> load(Collection<Procedure> procedures, Collection<Integer> ids) {
+        Map<Integer, MarkovGraphsContainer> ret = new HashMap<Integer, MarkovGraphsContainer>();
+        for (Integer partition : this.index.keySet()) {
+            // Same rules as the JSON loader in MarkovGraphsContainerUtil
+            if (partition.equals(MarkovUtil.GLOBAL_MARKOV_CONTAINER_ID) == false &&
+                ids != null && ids.contains(partition) == false) {
+                continue;
+            }
+            ContainerEntry c = this.index.get(partition);
+            MarkovGraphsContainer markovs = ClassUtil.newInstance(c.className, new Object[]{procedures},
+                                                                               new Class<?>[]{Collection.class});
+            assert(markovs != null);
+            markovs.setLazySource(this, partition);
+            ret.put(partition, markovs);
+            if (debug.val) LOG.debug(String.format("Attached %s for partition %d to '%s'",
+                                                   markovs.getClass().getSimpleName(), partition, this.file.getName()));
+        } // FOR
+        return (ret);
+    }
+
+    /**
+     * Deserialize the MarkovGraph for the given partition/id/procedure.
+     * Returns null if there is no such graph in the file.
+     * @param partition
+     * @param id
+     * @param catalog_proc
+     * @return
+     */
+    public MarkovGraph readGraph(Integer partition, Integer id, Procedure catalog_proc) {
+        ContainerEntry c = this.index.get(partition);
+        Map<Procedure, GraphEntry> inner = (c != null ? c.graphs.get(id) : null);
+        GraphEntry e = (inner != null ? inner.get(catalog_proc) : null);
+        if (e == null) return (null);
+
+        if (trace.val) LOG.trace(String.format("Loading MarkovGraph [partition=%d, id=%d, proc=%s]",
+                                               partition, id, catalog_proc.getName()));
+        ByteBuffer b = this.buffer.duplicate();
+        b.position((int)e.offset);
+        b.limit((int)(e.offset + e.length));
+        try {
+            return (this.readGraph(b, catalog_proc));
+        } catch (Throwable ex) {
+            throw new RuntimeException("Failed to load MarkovGraph " + id + " for " + catalog_proc.getName(), ex);
+        }
+    }
+
+    private MarkovGraph readGraph(ByteBuffer b, Procedure catalog_proc) throws IOException {
+        MarkovGraph markov = new MarkovGraph(catalog_proc);
+        int graph_id = b.getInt();
+
+        // Statement Names
+        Statement stmts[] = new Statement[b.getShort()];
+        for (int i = 0; i < stmts.length; i++) {
+            String name = readString(b);
+            stmts[i] = catalog_proc.getStatements().get(name);
+            if (stmts[i] == null) {
+                throw new IOException(String.format("Invalid Statement '%s' for %s", name, catalog_proc.getName()));
+            }
+        } // FOR
+
+        // Vertices
+        MarkovVertex.Type types[] = MarkovVertex.Type.values();
+        MarkovVertex.Probability ptypes[] = MarkovVertex.Probability.values();
+        MarkovVertex vertices[] = new MarkovVertex[b.getInt()];
+        for (int i = 0; i < vertices.length; i++) {
+            MarkovVertex.Type type = types[b.get()];
+            short stmt_idx = b.getShort();
+            Statement catalog_stmt = (stmt_idx < 0 ? MarkovUtil.getSpecialStatement(this.catalog_db, type) : stmts[stmt_idx]);
+            int counter = b.getInt();
+            int totalhits = b.getInt();
+            long execution_time = b.getLong();
+            PartitionSet partitions = readPartitions(b);
+            PartitionSet past_partitions = readPartitions(b);
+
+            MarkovVertex v = new MarkovVertex(catalog_stmt, type, counter, partitions, past_partitions);
+            v.totalhits = totalhits;
+            v.execution_time = execution_time;
+            int num_ptypes = b.get();
+            for (int p = 0; p < num_ptypes; p++) {
+                float probs[] = new float[b.getShort()];
+                for (int j = 0; j < probs.length; j++) {
+                    probs[j] = b.getFloat();
+                } // FOR
+                if (p < ptypes.length) v.probabilities[p] = probs;
+            } // FOR
+            markov.addVertex(v);
+            vertices[i] = v;
+        } // FOR
+
+        // Edges
+        int num_edges = b.getInt();
+        for (int i = 0; i < num_edges; i++) {
+            MarkovVertex v0 = vertices[b.getInt()];
+            MarkovVertex v1 = vertices[b.getInt()];
+            MarkovEdge e = new MarkovEdge(markov, b.getInt(), b.getFloat());
+            markov.addEdge(e, v0, v1);
+        } // FOR
+
+        markov.setGraphId(graph_id);
+        markov.buildCache();
+        return (markov);
+    }
+
+    // ----------------------------------------------------------------------------
+    // WRITE METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Serialize the given MarkovGraphsContainers out to a binary file
+     * @param markovs
+     * @param output_path
+     * @throws IOException
+     */
+    public static void save(Map<Integer, ? extends MarkovGraphsContainer> markovs, File output_path) throws IOException {
+        // Sort the list of partitions so we always iterate over them in the same order
+        SortedSet<Integer> sorted = new TreeSet<Integer>(markovs.keySet());
+
+        ByteArrayOutputStream index_bytes = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(index_bytes);
+        index.writeInt(sorted.size());
+
+        int graphs_ctr = 0;
+        RandomAccessFile out = new RandomAccessFile(output_path, "rw");
+        try {
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(0l); // Placeholder for index offset
+
+            for (Integer partition : sorted) {
+                MarkovGraphsContainer container = markovs.get(partition);
+                assert(container != null) : "Null MarkovGraphsContainer for partition #" + partition;
+                index.writeInt(partition);
+                writeString(index, container.getClass().getCanonicalName());
+                index.writeInt(container.totalSize());
+
+                for (Integer id : new TreeSet<Integer>(container.keySet())) {
+                    for (MarkovGraph markov : container.getAll(id).values()) {
+                        ByteArrayOutputStream graph_bytes = new ByteArrayOutputStream();
+                        writeGraph(new DataOutputStream(graph_bytes), markov);
+
+                        index.writeInt(id);
+                        writeString(index, CatalogKey.createKey(markov.getProcedure()));
+                        index.writeLong(out.getFilePointer());
+                        index.writeInt(graph_bytes.size());
+                        out.write(graph_bytes.toByteArray());
+                        graphs_ctr++;
+                    } // FOR
+                } // FOR
+            } // FOR
+
+            long index_offset = out.getFilePointer();
+            index.flush();
+            out.write(index_bytes.toByteArray());
+            out.seek(8);
+            out.writeLong(index_offset);
+        } finally {
+            out.close();
+        }
+        LOG.info(String.format("Wrote out %d graphs in binary format to '%s'", graphs_ctr, output_path));
+    }
+
+    /**
+     * Write a single MarkovGraph record
+     * <PRE>
+     * int graph_id | short num_stmts | str stmt_name*
+     * int num_vertices
+     *   { byte type | short stmt_idx | int counter | int totalhits | long execution_time |
+     *     partitions | past_partitions | byte num_ptypes { short len | float* }* }*
+     * int num_edges
+     *   { int v0_idx | int v1_idx | int totalhits | float probability }*
+     * </PRE>
+     * Like MarkovGraph.toJSON(), query vertices that have never been hit are not written out.
+     */
+    private static void writeGraph(DataOutputStream out, MarkovGraph markov) throws IOException {
+        markov.foldInstanceHits();
+        out.writeInt(markov.getGraphId());
+
+        // Only store each Statement name once
+        Map<Statement, Integer> stmt_xref = new HashMap<Statement, Integer>();
+        Map<MarkovVertex, Integer> vertex_xref = new HashMap<MarkovVertex, Integer>();
+        Set<MarkovVertex> ignore = new HashSet<MarkovVertex>();
+        for (MarkovVertex v : markov.getVertices()) {
+            if (v.isQueryVertex()) {
+                if (v.instancehits == 0 && v.totalhits == 0) {
+                    ignore.add(v);
+                    continue;
+                }
+                Statement catalog_stmt = v.getCatalogItem();
+                if (stmt_xref.containsKey(catalog_stmt) == false) {
+                    stmt_xref.put(catalog_stmt, stmt_xref.size());
+                }
+            }
+            vertex_xref.put(v, vertex_xref.size());
+        } // FOR
+        Statement stmts[] = new Statement[stmt_xref.size()];
+        for (Map.Entry<Statement, Integer> e : stmt_xref.entrySet()) {
+            stmts[e.getValue()] = e.getKey();
+        } // FOR
+        out.writeShort(stmts.length);
+        for (Statement catalog_stmt : stmts) {
+            writeString(out, catalog_stmt.getName());
+        } // FOR
+
+        // Vertices
+        MarkovVertex vertices[] = new MarkovVertex[vertex_xref.size()];
+        for (Map.Entry<MarkovVertex, Integer> e : vertex_xref.entrySet()) {
+            vertices[e.getValue()] = e.getKey();
+        } // FOR
+        out.writeInt(vertices.length);
+        for (MarkovVertex v : vertices) {
+            out.writeByte(v.getType().ordinal());
+            out.writeShort(v.isQueryVertex() ? stmt_xref.get(v.getCatalogItem()) : -1);
+            out.writeInt(v.counter);
+            out.writeInt(v.totalhits);
+            out.writeLong(v.execution_time);
+            writePartitions(out, v.partitions);
+            writePartitions(out, v.past_partitions);
+            out.writeByte(v.probabilities.length);
+            for (float probs[] : v.probabilities) {
+                out.writeShort(probs.length);
+                for (float p : probs) {
+                    out.writeFloat(p);
+                } // FOR
+            } // FOR
+        } // FOR
+
+        // Edges
+        ByteArrayOutputStream edge_bytes = new ByteArrayOutputStream();
+        DataOutputStream edge_out = new DataOutputStream(edge_bytes);
+        int num_edges = 0;
+        for (MarkovEdge e : markov.getEdges()) {
+            MarkovVertex v0 = markov.getSource(e);
+            MarkovVertex v1 = markov.getDest(e);
+            if (ignore.contains(v0) || ignore.contains(v1)) continue;
+            Integer idx0 = vertex_xref.get(v0);
+            Integer idx1 = vertex_xref.get(v1);
+            if (idx0 == null || idx1 == null) continue;
+            edge_out.writeInt(idx0);
+            edge_out.writeInt(idx1);
+            edge_out.writeInt(e.totalhits);
+            edge_out.writeFloat(e.probability);
+            num_edges++;
+        } // FOR
+        edge_out.flush();
+        out.writeInt(num_edges);
+        out.write(edge_bytes.toByteArray());
+        out.flush();
+    }
+
+    // ----------------------------------------------------------------------------
+    // UTILITY METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Returns true if the given file starts with the binary MarkovGraphsContainer magic number
+     * @param file
+     * @return
+     */
+    public static boolean isBinaryFile(File file) {
+        if (file.isFile() == false || file.length() < HEADER_SIZE) return (false);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            return (in.readInt() == MAGIC);
+        } catch (IOException ex) {
+            return (false);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    // IGNORE
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte bytes[] = s.getBytes(CHARSET);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer b) throws IOException {
+        byte bytes[] = new byte[b.getShort()];
+        b.get(bytes);
+        return (new String(bytes, CHARSET));
+    }
+
+    private static void writePartitions(DataOutputStream out, PartitionSet partitions) throws IOException {
+        out.writeShort(partitions.size());
+        for (int p : partitions.values()) {
+            out.writeInt(p);
+        } // FOR
+    }
+
+    private static PartitionSet readPartitions(ByteBuffer b) {
+        PartitionSet partitions = new PartitionSet();
+        for (int i = 0, cnt = b.getShort(); i < cnt; i++) {
+            partitions.add(b.getInt());
+        } // FOR
+        return (partitions);
+    }
+
+    // ----------------------------------------------------------------------------
+    // CONVERTER
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Convert an existing JSON MarkovGraphsContainer file into the binary format
+     * @param vargs
+     * @throws Exception
+     */
+    public static void main(String vargs[]) throws Exception {
+        ArgumentsParser args = ArgumentsParser.load(vargs);
+        args.require(ArgumentsParser.PARAM_CATALOG,
+                     ArgumentsParser.PARAM_MARKOV,
+                     ArgumentsParser.PARAM_MARKOV_OUTPUT);
+
+        File input = args.getFileParam(ArgumentsParser.PARAM_MARKOV);
+        File output = args.getFileParam(ArgumentsParser.PARAM_MARKOV_OUTPUT);
+        Map<Integer, MarkovGraphsContainer> markovs = MarkovGraphsContainerUtil.load(args.catalogContext, input);
+        LOG.info(String.format("Converting %d %s from '%s' to '%s'",
+                               markovs.size(), CollectionUtil.first(markovs.values()).getClass().getSimpleName(),
+                               input, output));
+        MarkovGraphsBinaryFile.save(markovs, output);
+    }
+}
@@ -72,6 +72,14 @@ public class MarkovGraphsContainer implements JSONSerializable {
      */
     private final Set<Procedure> load_procedures;
     
+    /**
+     * If this container was loaded from a MarkovGraphsBinaryFile, then this is the file
+     * that we will read the MarkovGraphs from the first time that they are requested
+     */
+    private MarkovGraphsBinaryFile lazy_file = null;
+    private Integer lazy_partition = null;
+    private volatile boolean lazy_complete = true;
+    
     // -----------------------------------------------------------------
     // Constructors
     // -----------------------------------------------------------------
@@ -98,6 +106,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
     // -----------------------------------------------------------------
     
     public MarkovGraph getFromGraphId(int id) {
+        this.loadAllLazy();
         for (MarkovGraph m : this.getAll()) {
             if (m.getGraphId() == id) return (m);
         } // FOR
@@ -119,12 +128,18 @@ public class MarkovGraphsContainer implements JSONSerializable {
     // -----------------------------------------------------------------
     
     public void clear() {
+        this.lazy_file = null;
+        this.lazy_complete = true;
         this.markovs.clear();
     }
     
     public MarkovGraph get(Integer id, Procedure catalog_proc) {
         Map<Procedure, MarkovGraph> inner = this.markovs.get(id);
-        return (inner != null ? inner.get(catalog_proc) : null);
+        MarkovGraph markov = (inner != null ? inner.get(catalog_proc) : null);
+        if (markov == null && this.lazy_complete == false) {
+            markov = this.loadLazy(id, catalog_proc);
+        }
+        return (markov);
     }
     
     /**
@@ -203,6 +218,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
      * Invoke MarkovGraph.calculateProbabilities() for all of the graphs stored within this container 
      */
     public void calculateProbabilities(PartitionSet partitions) {
+        this.loadAllLazy();
         for (Map<Procedure, MarkovGraph> inner : this.markovs.values()) {
             for (Entry<Procedure, MarkovGraph> e : inner.entrySet()) {
                 MarkovGraph m = e.getValue();
@@ -224,10 +240,12 @@ public class MarkovGraphsContainer implements JSONSerializable {
     }
     
     protected Map<Procedure, MarkovGraph> getAll(Integer id) {
+        this.loadAllLazy();
         return (this.markovs.get(id));
     }
     
     public Map<Integer, MarkovGraph> getAll(Procedure catalog_proc) {
+        this.loadAllLazy();
         Map<Integer, MarkovGraph> ret = new HashMap<Integer, MarkovGraph>();
         for (Integer id : this.markovs.keySet()) {
             MarkovGraph m = this.markovs.get(id).get(catalog_proc);
@@ -241,6 +259,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
      * @return
      */
     public Set<MarkovGraph> getAll() {
+        this.loadAllLazy();
         Set<MarkovGraph> ret = new HashSet<MarkovGraph>();
         for (Integer id : this.markovs.keySet()) {
             Map<Procedure, MarkovGraph> m = this.markovs.get(id);
@@ -250,22 +269,27 @@ public class MarkovGraphsContainer implements JSONSerializable {
     }
     
     public void copy(MarkovGraphsContainer other) {
+        other.loadAllLazy();
         this.markovs.putAll(other.markovs);
     }
     
     public Set<Integer> keySet() {
+        this.loadAllLazy();
         return this.markovs.keySet();
     }
     
     public Set<Entry<Integer, Map<Procedure, MarkovGraph>>> entrySet() {
+        this.loadAllLazy();
         return this.markovs.entrySet();
     }
     
     public int size() {
+        this.loadAllLazy();
         return (this.markovs.size());
     }
     
     public int totalSize() {
+        this.loadAllLazy();
         int total = 0;
         for (Integer id : this.markovs.keySet()) {
             Map<Procedure, MarkovGraph> m = this.markovs.get(id);
@@ -301,6 +325,59 @@ public class MarkovGraphsContainer implements JSONSerializable {
         return StringUtil.formatMaps(maps);
     }
     
+    // -----------------------------------------------------------------
+    // LAZY LOADING
+    // -----------------------------------------------------------------
+    
+    /**
+     * Attach this container to a binary file. The MarkovGraphs for the given partition
+     * will be deserialized from the file the first time that they are requested.
+     * @param file
+     * @param partition
+     */
+    protected void setLazySource(MarkovGraphsBinaryFile file, Integer partition) {
+        this.lazy_file = file;
+        this.lazy_partition = partition;
+        this.lazy_complete = false;
+    }
+    
+    private MarkovGraph loadLazy(Integer id, Procedure catalog_proc) {
+        if (this.load_procedures != null && this.load_procedures.contains(catalog_proc) == false) {
+            return (null);
+        }
+        synchronized (this) {
+            MarkovGraphsBinaryFile file = this.lazy_file;
+            if (file == null) return (null);
+            Map<Procedure, MarkovGraph> inner = this.markovs.get(id);
+            MarkovGraph markov = (inner != null ? inner.get(catalog_proc) : null);
+            if (markov == null) {
+                markov = file.readGraph(this.lazy_partition, id, catalog_proc);
+                if (markov != null) this.put(id, markov);
+            }
+            return (markov);
+        } // SYNCH
+    }
+    
+    /**
+     * Make sure that every MarkovGraph in our binary file has been deserialized.
+     * This is needed before we can iterate over the entire contents of the container.
+     */
+    private void loadAllLazy() {
+        if (this.lazy_complete) return;
+        synchronized (this) {
+            if (this.lazy_complete) return;
+            MarkovGraphsBinaryFile file = this.lazy_file;
+            if (file != null) {
+                for (Integer id : file.getIds(this.lazy_partition)) {
+                    for (Procedure catalog_proc : file.getProcedures(this.lazy_partition, id)) {
+                        this.loadLazy(id, catalog_proc);
+                    } // FOR
+                } // FOR
+            }
+            this.lazy_complete = true;
+        } // SYNCH
+    }
+    
     // -----------------------------------------------------------------
     // SERIALIZATION
     // -----------------------------------------------------------------
@@ -322,6 +399,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
 
     @Override
     public void toJSON(JSONStringer stringer) throws JSONException {
+        this.loadAllLazy();
         // CLASSNAME
         stringer.key(Members.CLASSNAME.name()).value(this.getClass().getCanonicalName());
         
@@ -379,6 +379,21 @@ public abstract class MarkovGraphsContainerUtil {
         LOG.info(String.format("Wrote out %d graphs in %s to '%s'", graphs_ctr, className, output_path));
     }
     
+    /**
+     * For the given MarkovGraphContainers, serialize them out to a file using
+     * the compact binary format of MarkovGraphsBinaryFile
+     * @param markovs
+     * @param output_path
+     */
+    public static void saveBinary(Map<Integer, ? extends MarkovGraphsContainer> markovs, File output_path) {
+        try {
+            MarkovGraphsBinaryFile.save(markovs, output_path);
+        } catch (IOException ex) {
+            LOG.error("Failed to serialize the binary MarkovGraphsContainer file '" + output_path + "'", ex);
+            throw new RuntimeException(ex);
+        }
+    }
+    
     // ----------------------------------------------------------------------------
     // LOAD METHODS
     // ----------------------------------------------------------------------------
@@ -411,6 +426,18 @@ public abstract class MarkovGraphsContainerUtil {
         LOG.info(String.format("Loading in MarkovGraphContainers from '%s' [procedures=%s, ids=%s]",
                                file.getName(), (procedures == null ? "*ALL*" : CatalogUtil.debug(procedures)), (ids == null ? "*ALL*" : ids)));
         
+        // Binary files are memory-mapped and the graphs are only deserialized when they are needed
+        if (MarkovGraphsBinaryFile.isBinaryFile(file)) {
+            try {
+                MarkovGraphsBinaryFile binary = new MarkovGraphsBinaryFile(catalogContext.database, file);
+                ret.putAll(binary.load(procedures, ids));
+            } catch (Exception ex) {
+                LOG.error("Failed to deserialize the binary MarkovGraphsContainer from file '" + file + "'", ex);
+                throw new IOException(ex);
+            }
+            return (ret);
+        }
+        
         try {
             // File Format: One PartitionId per line, each with its own MarkovGraphsContainer 
             BufferedReader in = FileUtil.getReader(file);
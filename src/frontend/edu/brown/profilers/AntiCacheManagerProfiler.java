@@ -89,6 +89,18 @@ public class AntiCacheManagerProfiler extends AbstractProfiler {
      */
     public int restarted_txns = 0;
     
+    /**
+     * The number of transactions that waited for blocks that were already
+     * being read in for another transaction instead of reading them in again.
+     */
+    public int piggybacked_txns = 0;
+    
+    /**
+     * The number of transactions whose evicted blocks were read in
+     * before they started running.
+     */
+    public int preunevicted_txns = 0;
+    
     /**
      * Eviction history
      */
@@ -122,6 +134,8 @@ public class AntiCacheManagerProfiler extends AbstractProfiler {
         this.eviction_history.clear();
         this.evictedaccess_history.clear();
         this.restarted_txns = 0;
+        this.piggybacked_txns = 0;
+        this.preunevicted_txns = 0;
     }
     
     // ----------------------------------------------------------------------------
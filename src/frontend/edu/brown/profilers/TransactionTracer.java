@@ -0,0 +1,424 @@
+package edu.brown.profilers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.statistics.LatencyHistogram;
+
+/**
+ * Lightweight, always-on tracing for a sample of transactions.
+ * Unlike the TransactionProfiler, this does not allocate anything per txn. Only one out of
+ * every N txns is traced (plus any txn that gets restarted or mispredicted), and for those
+ * txns we just write the txnId, the current time, and the phase into a preallocated ring
+ * buffer that belongs to the thread that recorded it. The buffers are drained in the
+ * background by the HStoreSite's periodic thread, which writes the raw events out to a
+ * binary trace file and keeps per-phase latency histograms for @Statistics.
+ * <P>
+ * Each ring buffer has a single writer, so recording an event never takes a lock.
+ * If the drainer can't keep up, then the oldest events are overwritten and counted as dropped.
+ * <P>
+ * A txn's events are recorded by different threads (e.g., the network thread queues it and the
+ * PartitionExecutor starts it), so the drainer merges the events from all of the buffers by their
+ * timestamps before it computes how long each txn took to get from one phase to the next.
+ * @author pavlo
+ */
+public class TransactionTracer {
+    private static final Logger LOG = Logger.getLogger(TransactionTracer.class);
+    private static final LoggerBoolean debug = new LoggerBoolean();
+    static {
+        LoggerUtil.attachObserver(LOG, debug);
+    }
+
+    /**
+     * The points in a txn's life that we record
+     */
+    public enum Phase {
+        /** The txn was initialized at its base partition's site */
+        INIT,
+        /** The txn was queued to be executed at its base partition */
+        QUEUE,
+        /** The txn's control code started executing */
+        START,
+        /** The txn was prepared at a partition */
+        PREPARE,
+        /** The txn was finished (committed or aborted) at a partition */
+        FINISH,
+        /** The txn's ClientResponse is being sent back */
+        RESPONSE,
+        /** The txn is being restarted */
+        RESTART,
+        /** The txn is being restarted because it was mispredicted */
+        MISPREDICT,
+        /** The txn's handle was deleted */
+        DELETE;
+    }
+    private static final Phase PHASES[] = Phase.values();
+
+    /**
+     * Magic number at the start of every trace file
+     */
+    public static final int TRACE_FILE_MAGIC = 0x54524331; // "TRC1"
+
+    /**
+     * Each event is [txnId, timestamp, (phase << 32) | partition]
+     */
+    private static final int ENTRY_SIZE = 3;
+
+    /**
+     * The maximum number of txns whose last event we remember in the drainer
+     * so that we can compute how long they spent between phases.
+     */
+    private static final int MAX_TRACKED_TXNS = 10000;
+
+    /**
+     * Per-thread ring buffer of events.
+     */
+    protected static final class TraceBuffer {
+        /**
+         * The owning thread writes entries with lazySet() before it publishes them
+         * by moving the head, so the drainer never sees a slot's new contents
+         * without also seeing the new head.
+         */
+        private final AtomicLongArray entries;
+        private final int capacity;
+        private final int mask;
+        /** The position of the next event that the owning thread will write */
+        private final AtomicLong head = new AtomicLong(0);
+        /** The position of the next event that the drainer will read */
+        private long tail = 0;
+
+        // The drainer copies the events out of the ring into here before it merges them
+        private final long copy[];
+        private int copyPos = 0;
+        private int copyEnd = 0;
+
+        private TraceBuffer(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.entries = new AtomicLongArray(capacity * ENTRY_SIZE);
+            this.copy = new long[capacity * ENTRY_SIZE];
+        }
+    }
+
+    private final int sampleRate;
+    private final int bufferSize;
+    private final List<TraceBuffer> buffers = new CopyOnWriteArrayList<TraceBuffer>();
+    private final ThreadLocal<TraceBuffer> threadBuffer = new ThreadLocal<TraceBuffer>() {
+        @Override
+        protected TraceBuffer initialValue() {
+            TraceBuffer buffer = new TraceBuffer(bufferSize);
+            buffers.add(buffer);
+            return (buffer);
+        }
+    };
+
+    /**
+     * We don't care if multiple threads race on this counter.
+     * We just need roughly one out of every sampleRate txns.
+     */
+    private int sampleCounter = 0;
+    private final AtomicLong sampled = new AtomicLong(0);
+    private final AtomicLong forced = new AtomicLong(0);
+
+    // Drainer state. Only touched while holding this object's lock
+    private DataOutputStream output = null;
+    private File outputFile = null;
+    private long drained = 0;
+    private long dropped = 0;
+    private final long phaseCounts[] = new long[PHASES.length];
+    private final LatencyHistogram phaseLatencies[] = new LatencyHistogram[PHASES.length];
+    @SuppressWarnings("serial")
+    private final Map<Long, Long> lastEvents = new LinkedHashMap<Long, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return (this.size() > MAX_TRACKED_TXNS);
+        }
+    };
+
+    /**
+     * Constructor
+     * @param sampleRate Trace one out of every sampleRate txns
+     * @param bufferSize The number of events in each thread's ring buffer.
+     *                   This is rounded up to the next power of two.
+     */
+    public TransactionTracer(int sampleRate, int bufferSize) {
+        assert(bufferSize > 0);
+        this.sampleRate = Math.max(1, sampleRate);
+        this.bufferSize = Integer.highestOneBit(Math.max(1, bufferSize - 1)) << 1;
+        for (int i = 0; i < this.phaseLatencies.length; i++) {
+            this.phaseLatencies[i] = new LatencyHistogram();
+        } // FOR
+    }
+
+    // ----------------------------------------------------------------------------
+    // RECORDING METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Returns true if the next txn should be traced.
+     * If force is true, then the txn will always be traced. This is used for txns
+     * that are going down a slow path (e.g., restarts) that we always want to see.
+     * @param force
+     * @return
+     */
+    public boolean sample(boolean force) {
+        if (force) {
+            this.forced.incrementAndGet();
+            return (true);
+        }
+        if (++this.sampleCounter % this.sampleRate != 0) {
+            return (false);
+        }
+        this.sampled.incrementAndGet();
+        return (true);
+    }
+
+    /**
+     * Record that a traced txn has entered the given phase at the given partition.
+     * This should only be invoked for txns that were picked by sample().
+     * @param txn_id
+     * @param phase
+     * @param partition
+     */
+    public void record(long txn_id, Phase phase, int partition) {
+        TraceBuffer buffer = this.threadBuffer.get();
+        long pos = buffer.head.get();
+        int offset = (int)(pos & buffer.mask) * ENTRY_SIZE;
+        buffer.entries.lazySet(offset, txn_id);
+        buffer.entries.lazySet(offset+1, System.nanoTime());
+        buffer.entries.lazySet(offset+2, ((long)phase.ordinal() << 32) | (partition & 0xFFFFFFFFl));
+        // Publish the event to the drainer
+        buffer.head.lazySet(pos + 1);
+    }
+
+    // ----------------------------------------------------------------------------
+    // DRAINING METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Write all of the events that are drained from now on to the given file
+     * @param file
+     * @throws IOException
+     */
+    public synchronized void setOutputFile(File file) throws IOException {
+        this.closeOutput();
+        this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        this.outputFile = file;
+        this.output.writeInt(TRACE_FILE_MAGIC);
+        this.output.writeInt(PHASES.length);
+        for (Phase phase : PHASES) {
+            this.output.writeUTF(phase.name());
+        } // FOR
+        this.output.flush();
+    }
+
+    public synchronized File getOutputFile() {
+        return (this.outputFile);
+    }
+
+    /**
+     * Read all of the new events out of the threads' ring buffers and process them
+     * in the order that they were recorded. Events that were recorded after this
+     * method was invoked are left in the buffers for the next round so that we don't
+     * process one thread's newer events before another thread's older ones.
+     * Returns the number of events that were drained.
+     * @return
+     */
+    public synchronized int drain() {
+        long cutoff = System.nanoTime();
+        for (TraceBuffer buffer : this.buffers) {
+            this.copyEvents(buffer, cutoff);
+        } // FOR
+
+        // Each buffer's events are already in timestamp order because they were all
+        // recorded by the same thread, so we just need to merge them together.
+        int total = 0;
+        while (true) {
+            TraceBuffer next = null;
+            long nextTimestamp = 0;
+            for (TraceBuffer buffer : this.buffers) {
+                if (buffer.copyPos >= buffer.copyEnd) continue;
+                long timestamp = buffer.copy[(buffer.copyPos * ENTRY_SIZE) + 1];
+                if (next == null || timestamp - nextTimestamp < 0) {
+                    next = buffer;
+                    nextTimestamp = timestamp;
+                }
+            } // FOR
+            if (next == null) break;
+            int offset = next.copyPos * ENTRY_SIZE;
+            this.process(next.copy[offset], next.copy[offset+1], next.copy[offset+2]);
+            next.copyPos++;
+            total++;
+        } // WHILE
+        this.drained += total;
+
+        if (this.output != null && total > 0) {
+            try {
+                this.output.flush();
+            } catch (IOException ex) {
+                LOG.warn("Failed to write transaction trace events to " + this.outputFile, ex);
+                this.closeOutput();
+            }
+        }
+        return (total);
+    }
+
+    /**
+     * Copy the events out of the given buffer that were recorded at or before
+     * the cutoff time and have not been overwritten by the owning thread.
+     * @param buffer
+     * @param cutoff
+     */
+    private void copyEvents(TraceBuffer buffer, long cutoff) {
+        buffer.copyPos = 0;
+        buffer.copyEnd = 0;
+        long head = buffer.head.get();
+        long start = Math.max(buffer.tail, head - buffer.capacity);
+        if (start >= head) return;
+        for (long pos = start; pos < head; pos++) {
+            int src = (int)(pos & buffer.mask) * ENTRY_SIZE;
+            int dest = (int)(pos - start) * ENTRY_SIZE;
+            for (int i = 0; i < ENTRY_SIZE; i++) {
+                buffer.copy[dest+i] = buffer.entries.get(src+i);
+            } // FOR
+        } // FOR
+
+        // The owning thread may have lapped us while we were copying. Anything
+        // at or behind the slot that it is writing now may be garbage.
+        long valid = Math.max(start, buffer.head.get() - buffer.capacity + 1);
+        this.dropped += (valid - buffer.tail);
+        long end = valid;
+        while (end < head && buffer.copy[((int)(end - start) * ENTRY_SIZE) + 1] - cutoff <= 0) {
+            end++;
+        } // WHILE
+        buffer.copyPos = (int)(valid - start);
+        buffer.copyEnd = (int)(end - start);
+        buffer.tail = end;
+    }
+
+    private void process(long txn_id, long timestamp, long info) {
+        int phase = (int)(info >>> 32);
+        int partition = (int)info;
+        if (phase < 0 || phase >= PHASES.length) return;
+        this.phaseCounts[phase]++;
+
+        // Record how long it took this txn to get here from its previous event.
+        // We only start tracking a txn at the first phase that it can be traced from,
+        // so that an event that straggles in after the txn was deleted doesn't leave
+        // an entry behind. If the event is older than the last one that we saw
+        // for this txn, then we just ignore it.
+        Long last = this.lastEvents.get(txn_id);
+        if (last != null) {
+            long delta = timestamp - last.longValue();
+            if (delta >= 0) {
+                this.phaseLatencies[phase].record(delta / 1000l);
+            }
+            if (PHASES[phase] == Phase.DELETE) {
+                this.lastEvents.remove(txn_id);
+            } else if (delta > 0) {
+                this.lastEvents.put(txn_id, timestamp);
+            }
+        }
+        else if (PHASES[phase] == Phase.INIT ||
+                 PHASES[phase] == Phase.RESTART ||
+                 PHASES[phase] == Phase.MISPREDICT) {
+            this.lastEvents.put(txn_id, timestamp);
+        }
+
+        if (this.output != null) {
+            try {
+                this.output.writeLong(txn_id);
+                this.output.writeLong(timestamp);
+                this.output.writeByte(phase);
+                this.output.writeInt(partition);
+            } catch (IOException ex) {
+                LOG.warn("Failed to write transaction trace events to " + this.outputFile, ex);
+                this.closeOutput();
+            }
+        }
+    }
+
+    private void closeOutput() {
+        if (this.output == null) return;
+        try {
+            this.output.close();
+        } catch (IOException ex) {
+            if (debug.val) LOG.warn("Failed to close " + this.outputFile, ex);
+        }
+        this.output = null;
+    }
+
+    /**
+     * Drain any remaining events and close the trace file
+     */
+    public synchronized void shutdown() {
+        this.drain();
+        this.closeOutput();
+    }
+
+    // ----------------------------------------------------------------------------
+    // STATISTICS
+    // ----------------------------------------------------------------------------
+
+    public int getSampleRate() {
+        return (this.sampleRate);
+    }
+    public int getBufferSize() {
+        return (this.bufferSize);
+    }
+    /**
+     * The number of txns that were picked by the regular sampling
+     */
+    public long getSampledCount() {
+        return (this.sampled.get());
+    }
+    /**
+     * The number of txns that were traced because they hit a slow path
+     */
+    public long getForcedCount() {
+        return (this.forced.get());
+    }
+    public synchronized long getDrainedCount() {
+        return (this.drained);
+    }
+    /**
+     * The number of events that were overwritten before they could be drained
+     */
+    public synchronized long getDroppedCount() {
+        return (this.dropped);
+    }
+    public synchronized long getEventCount(Phase phase) {
+        return (this.phaseCounts[phase.ordinal()]);
+    }
+    /**
+     * Return a copy of the histogram of how long (in microseconds) traced txns
+     * took to get to the given phase from their previous phase
+     * @param phase
+     * @return
+     */
+    public synchronized LatencyHistogram getPhaseLatencies(Phase phase) {
+        return (this.phaseLatencies[phase.ordinal()].copy());
+    }
+    protected int getThreadBufferCount() {
+        return (this.buffers.size());
+    }
+    /**
+     * The number of txns that the drainer is waiting to see more events for
+     */
+    protected synchronized int getTrackedTxnCount() {
+        return (this.lastEvents.size());
+    }
+}
@@ -0,0 +1,355 @@
+package edu.brown.statistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.voltdb.catalog.Database;
+
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.JSONSerializable;
+import edu.brown.utils.JSONUtil;
+
+/**
+ * Log-bucketed histogram for latencies measured in microseconds.
+ * Values less than 64 each get their own bucket. After that, every power of two
+ * is split into 32 buckets of equal width, so the value that we report for
+ * a bucket is within ~1.6% of the values that were recorded in it. Values that are larger
+ * than MAX_VALUE (~19 hours) are clamped.
+ * <P>
+ * The counts are kept in primitive arrays so that recording a value never allocates
+ * or takes a lock. A striped histogram gives each thread its own set of counters
+ * (picked by the thread's id) so that the client threads do not fight over the same
+ * cache lines. Histograms can be merged with put().
+ * @author pavlo
+ */
+public class LatencyHistogram implements JSONSerializable {
+
+    public enum Members {
+        BUCKETS,
+        SUM,
+        MAX,
+    }
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BITS = 36;
+
+    /** The largest value that can be recorded without being clamped */
+    public static final long MAX_VALUE = (1l << MAX_BITS) - 1;
+
+    /** The total number of buckets */
+    public static final int NUM_BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * The number of counter stripes for striped histograms. Always a power of two
+     */
+    private static final int NUM_STRIPES;
+    static {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        NUM_STRIPES = Math.min(16, Integer.highestOneBit(Math.max(1, cpus - 1)) << 1);
+    }
+
+    private final AtomicLongArray counts[];
+    private final AtomicLongArray sums;
+    private final AtomicLong max = new AtomicLong(0);
+
+    // ----------------------------------------------------------------------------
+    // INITIALIZATION
+    // ----------------------------------------------------------------------------
+
+    public LatencyHistogram() {
+        this(false);
+    }
+
+    /**
+     * Constructor
+     * @param striped If true, then each thread will record into its own set of counters.
+     */
+    public LatencyHistogram(boolean striped) {
+        int num_stripes = (striped ? NUM_STRIPES : 1);
+        this.counts = new AtomicLongArray[num_stripes];
+        for (int i = 0; i < num_stripes; i++) {
+            this.counts[i] = new AtomicLongArray(NUM_BUCKETS);
+        } // FOR
+        this.sums = new AtomicLongArray(num_stripes);
+    }
+
+    // ----------------------------------------------------------------------------
+    // BUCKET METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Return the bucket index for the given value
+     * @param value
+     * @return
+     */
+    protected static int getBucket(long value) {
+        if (value < 0) value = 0;
+        else if (value > MAX_VALUE) value = MAX_VALUE;
+        if (value < (SUB_BUCKETS << 1)) return ((int)value);
+
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (((shift + 1) << SUB_BUCKET_BITS) + (int)((value >> shift) - SUB_BUCKETS));
+    }
+
+    /**
+     * Return the smallest value that is stored in the given bucket
+     * @param bucket
+     * @return
+     */
+    protected static long getBucketLowerBound(int bucket) {
+        if (bucket < (SUB_BUCKETS << 1)) return (bucket);
+        int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        return ((long)((bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS) << shift);
+    }
+
+    /**
+     * Return the value that we report for the given bucket.
+     * This is the middle of the range of values that it holds.
+     * @param bucket
+     * @return
+     */
+    protected static long getBucketValue(int bucket) {
+        if (bucket < (SUB_BUCKETS << 1)) return (bucket);
+        int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        return (getBucketLowerBound(bucket) + ((1l << shift) >> 1));
+    }
+
+    private int getStripe() {
+        return ((int)Thread.currentThread().getId() & (this.counts.length - 1));
+    }
+
+    // ----------------------------------------------------------------------------
+    // RECORDING METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Record a single latency measurement in microseconds
+     * @param value
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        int stripe = this.getStripe();
+        this.counts[stripe].incrementAndGet(getBucket(value));
+        this.sums.addAndGet(stripe, value);
+        this.updateMax(value);
+    }
+
+    private void updateMax(long value) {
+        long current = this.max.get();
+        while (value > current) {
+            if (this.max.compareAndSet(current, value)) break;
+            current = this.max.get();
+        } // WHILE
+    }
+
+    /**
+     * Add all of the counts from the other histogram into this one
+     * @param other
+     */
+    public void put(LatencyHistogram other) {
+        int stripe = this.getStripe();
+        AtomicLongArray dest = this.counts[stripe];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long cnt = other.getBucketCount(i);
+            if (cnt != 0) dest.addAndGet(i, cnt);
+        } // FOR
+        this.sums.addAndGet(stripe, other.getSum());
+        this.updateMax(other.getMax());
+    }
+
+    /**
+     * Throw away all of the recorded values
+     */
+    public void clear() {
+        for (int stripe = 0; stripe < this.counts.length; stripe++) {
+            AtomicLongArray c = this.counts[stripe];
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                if (c.get(i) != 0) c.set(i, 0);
+            } // FOR
+            this.sums.set(stripe, 0);
+        } // FOR
+        this.max.set(0);
+    }
+
+    /**
+     * Return a non-striped copy of this histogram
+     * @return
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram(false);
+        copy.put(this);
+        return (copy);
+    }
+
+    // ----------------------------------------------------------------------------
+    // ACCESS METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Return the number of values recorded in the given bucket across all stripes
+     * @param bucket
+     * @return
+     */
+    protected long getBucketCount(int bucket) {
+        long cnt = 0;
+        for (int stripe = 0; stripe < this.counts.length; stripe++) {
+            cnt += this.counts[stripe].get(bucket);
+        } // FOR
+        return (cnt);
+    }
+
+    /**
+     * Return the total number of values recorded in this histogram
+     * @return
+     */
+    public long getSampleCount() {
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            total += this.getBucketCount(i);
+        } // FOR
+        return (total);
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (this.getBucketCount(i) != 0) return (false);
+        } // FOR
+        return (true);
+    }
+
+    /**
+     * Return the sum of all of the values recorded in this histogram
+     * @return
+     */
+    public long getSum() {
+        long sum = 0;
+        for (int stripe = 0; stripe < this.counts.length; stripe++) {
+            sum += this.sums.get(stripe);
+        } // FOR
+        return (sum);
+    }
+
+    /**
+     * Return the largest value recorded in this histogram.
+     * This is the exact value, not the value of its bucket.
+     * @return
+     */
+    public long getMax() {
+        return (this.max.get());
+    }
+
+    /**
+     * Return the average of the values recorded in this histogram
+     * @return
+     */
+    public double getMean() {
+        long cnt = this.getSampleCount();
+        return (cnt > 0 ? this.getSum() / (double)cnt : 0d);
+    }
+
+    /**
+     * Return the value at the given percentile [0, 100].
+     * Returns zero if the histogram is empty.
+     * @param percentile
+     * @return
+     */
+    public long getValueAtPercentile(double percentile) {
+        long buckets[] = new long[NUM_BUCKETS];
+        long total = 0;
+        int last = -1;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets[i] = this.getBucketCount(i);
+            total += buckets[i];
+            if (buckets[i] != 0) last = i;
+        } // FOR
+        if (total == 0) return (0);
+        if (percentile >= 100) return (this.getMax());
+
+        long target = Math.max(1, (long)Math.ceil((Math.max(0, percentile) / 100d) * total));
+        long seen = 0;
+        for (int i = 0; i <= last; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return (Math.min(getBucketValue(i), this.getMax()));
+            }
+        } // FOR
+        return (this.getMax());
+    }
+
+    /**
+     * Convert this histogram into an ObjectHistogram of whole milliseconds
+     * for the older parts of the system that only know about those.
+     * @return
+     */
+    public ObjectHistogram<Integer> toMillisHistogram() {
+        ObjectHistogram<Integer> h = new ObjectHistogram<Integer>();
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long cnt = this.getBucketCount(i);
+            if (cnt == 0) continue;
+            h.put((int)Math.round(getBucketValue(i) / 1000d), cnt);
+        } // FOR
+        return (h);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[count=%d, mean=%.1f, p50=%d, p99=%d, max=%d]",
+                             this.getClass().getSimpleName(),
+                             this.getSampleCount(), this.getMean(),
+                             this.getValueAtPercentile(50), this.getValueAtPercentile(99),
+                             this.getMax());
+    }
+
+    // ----------------------------------------------------------------------------
+    // SERIALIZATION METHODS
+    // ----------------------------------------------------------------------------
+
+    @Override
+    public void load(File input_path, Database catalog_db) throws IOException {
+        JSONUtil.load(this, catalog_db, input_path);
+    }
+
+    @Override
+    public void save(File output_path) throws IOException {
+        JSONUtil.save(this, output_path);
+    }
+
+    @Override
+    public String toJSONString() {
+        return (JSONUtil.toJSONString(this));
+    }
+
+    @Override
+    public void toJSON(JSONStringer stringer) throws JSONException {
+        // Only write out the buckets that have values
+        stringer.key(Members.BUCKETS.name()).object();
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long cnt = this.getBucketCount(i);
+            if (cnt != 0) stringer.key(Integer.toString(i)).value(cnt);
+        } // FOR
+        stringer.endObject();
+        stringer.key(Members.SUM.name()).value(this.getSum());
+        stringer.key(Members.MAX.name()).value(this.getMax());
+    }
+
+    @Override
+    public void fromJSON(JSONObject object, Database catalog_db) throws JSONException {
+        this.clear();
+        JSONObject jsonBuckets = object.getJSONObject(Members.BUCKETS.name());
+        for (String key : CollectionUtil.iterable(jsonBuckets.keys())) {
+            int bucket = Integer.parseInt(key);
+            if (bucket < 0 || bucket >= NUM_BUCKETS) {
+                throw new JSONException("Invalid bucket index " + bucket);
+            }
+            this.counts[0].set(bucket, jsonBuckets.getLong(key));
+        } // FOR
+        this.sums.set(0, object.getLong(Members.SUM.name()));
+        this.max.set(object.getLong(Members.MAX.name()));
+    }
+}
@@ -65,6 +65,7 @@ import org.voltdb.utils.VoltTypeUtil;
 import edu.brown.catalog.CatalogKey;
 import edu.brown.catalog.CatalogPair;
 import edu.brown.catalog.CatalogUtil;
+import edu.brown.catalog.PlanFragmentIdGenerator;
 import edu.brown.catalog.special.MultiColumn;
 import edu.brown.catalog.special.MultiProcParameter;
 import edu.brown.catalog.special.NullProcParameter;
@@ -105,7 +106,10 @@ public class PartitionEstimator {
     private PartitionSet all_partitions = new PartitionSet();
     private int num_partitions;
 
-    private final Map<Procedure, ProcParameter> cache_procPartitionParameters = new HashMap<Procedure, ProcParameter>();
+    /**
+     * ProcedureId -> ProcParameter
+     */
+    private volatile ProcParameter cache_procPartitionParameters[] = new ProcParameter[0];
     private final Map<Table, Column> cache_tablePartitionColumns = new HashMap<Table, Column>();
     
     /**
@@ -114,14 +118,16 @@ public class PartitionEstimator {
     private final Map<Statement, int[]> cache_stmtPartitionParameters = new HashMap<Statement, int[]>();
 
     /**
-     * PlanFragment Key -> CacheEntry(Column Key -> StmtParameter Indexes)
+     * PlanFragment Index -> CacheEntry(Column Key -> StmtParameter Indexes)
+     * The index is the PlanFragment's id without its embedded flags
+     * @see PlanFragmentIdGenerator#getPlanFragmentIndex(long)
      */
-    private final Map<String, CacheEntry> cache_fragmentEntries = new HashMap<String, CacheEntry>();
+    private volatile CacheEntry cache_fragmentEntries[] = new CacheEntry[0];
 
     /**
-     * Statement Key -> CacheEntry(Column Key -> StmtParam Indexes)
+     * StatementId -> CacheEntry(Column Key -> StmtParam Indexes)
      */
-    private final Map<String, CacheEntry> cache_statementEntries = new HashMap<String, CacheEntry>();
+    private volatile CacheEntry cache_statementEntries[] = new CacheEntry[0];
 
     /**
      * Table Key -> All cache entries for Statements that reference Table
@@ -133,6 +139,7 @@ public class PartitionEstimator {
      * The parameters could be either StmtParameters or ConstantValues 
      */
     private final class CacheEntry {
+        private final CatalogType catalog_item;
         private final QueryType query_type;
         private boolean contains_or = false;
         
@@ -154,8 +161,38 @@ public class PartitionEstimator {
         private transient boolean is_array[]; // parameters
         private transient boolean is_valid = true;
         private transient boolean cache_valid = false;
+        
+        /**
+         * Precompiled routing information for each table in the tables array.
+         * This is generated at the same time as the tables array so that
+         * calculatePartitionsForCache() does not need to go through the predicates map.
+         */
+        private transient RouteType route_types[];
+        private transient Column route_columns[];
+        
+        /**
+         * The StmtParameter offsets that are compared for equality against
+         * the table's partitioning column. 
+         */
+        private transient int route_params[][];
+        
+        /**
+         * The partitions for the ConstantValues that are compared for equality
+         * against the table's partitioning column. These never change so we
+         * can hash them ahead of time.
+         */
+        private transient int route_constants[][];
+        
+        /**
+         * The StmtParameter offsets and partitioning columns used by all of the
+         * Statement's PlanFragments. This is only generated for Statement CacheEntries.
+         * @see PartitionEstimator#getStatementSignature(Statement, Object[], int[], int)
+         */
+        private transient int signature_params[];
+        private transient Column signature_columns[];
 
-        public CacheEntry(QueryType query_type) {
+        public CacheEntry(CatalogType catalog_item, QueryType query_type) {
+            this.catalog_item = catalog_item;
             this.query_type = query_type;
         }
 
@@ -221,14 +258,16 @@ public class PartitionEstimator {
                         if (trace.val)
                             LOG.trace("Generating list of tables used by cache entry");
                         
-                        this.tables = new Table[this.table_keys.size()];
-                        this.is_replicated = new boolean[this.tables.length];
+                        Table tables[] = new Table[this.table_keys.size()];
+                        this.is_replicated = new boolean[tables.length];
                         int i = 0;
                         for (String table_key : this.table_keys) {
                             Table catalog_tbl = CatalogKey.getFromKey(catalogContext.database, table_key, Table.class);
-                            this.tables[i] = catalog_tbl;
+                            tables[i] = catalog_tbl;
                             this.is_replicated[i++] = catalog_tbl.getIsreplicated();
                         } // FOR
+                        this.compileRoutes(tables);
+                        this.tables = tables;
                     }
                     this.cache_valid = true;
                 } // SYNCH
@@ -236,6 +275,97 @@ public class PartitionEstimator {
             return (this.tables);
         }
 
+        /**
+         * Figure out ahead of time how we are going to calculate the partitions
+         * for each of the given tables. 
+         * @param tables
+         */
+        private void compileRoutes(Table tables[]) {
+            this.route_types = new RouteType[tables.length];
+            this.route_columns = new Column[tables.length];
+            this.route_params = new int[tables.length][];
+            this.route_constants = new int[tables.length][];
+            
+            for (int table_idx = 0; table_idx < tables.length; table_idx++) {
+                RouteType type = null;
+                
+                // REPLICATED TABLE
+                if (this.is_replicated[table_idx]) {
+                    switch (this.query_type) {
+                        case SELECT:
+                            type = RouteType.LOCAL;
+                            break;
+                        case INSERT:
+                        case UPDATE:
+                        case DELETE:
+                            type = RouteType.BROADCAST;
+                            break;
+                        default:
+                            assert(false) : "Unexpected query type: " + this.query_type;
+                            type = RouteType.BROADCAST;
+                    } // SWITCH
+                    this.route_types[table_idx] = type;
+                    continue;
+                }
+                
+                // NON-REPLICATED TABLE
+                Column catalog_col = cache_tablePartitionColumns.get(tables[table_idx]);
+                this.route_columns[table_idx] = catalog_col;
+                if (catalog_col instanceof MultiColumn) {
+                    // HACK: All multi-column look-ups on queries with an OR
+                    // must be broadcast
+                    type = (this.contains_or ? RouteType.BROADCAST : RouteType.MULTICOLUMN);
+                }
+                else {
+                    type = RouteType.SINGLECOLUMN;
+                    List<Pair<ExpressionType, CatalogType>> predicates = this.predicates.get(catalog_col);
+                    if (predicates == null || predicates.isEmpty()) {
+                        type = RouteType.BROADCAST;
+                    } else {
+                        int num_params = 0;
+                        int num_constants = 0;
+                        for (Pair<ExpressionType, CatalogType> pair : predicates) {
+                            // If this is not an equality comparison, then it has to go to all partitions.
+                            if (pair.getFirst() != ExpressionType.COMPARE_EQUAL) {
+                                type = RouteType.BROADCAST;
+                                break;
+                            }
+                            if (pair.getSecond() instanceof StmtParameter) num_params++;
+                            else num_constants++;
+                        } // FOR
+                        
+                        if (type == RouteType.SINGLECOLUMN) {
+                            int params[] = new int[num_params];
+                            int constants[] = new int[num_constants];
+                            num_params = 0;
+                            num_constants = 0;
+                            for (Pair<ExpressionType, CatalogType> pair : predicates) {
+                                CatalogType param = pair.getSecond();
+                                if (param instanceof StmtParameter) {
+                                    params[num_params++] = ((StmtParameter)param).getIndex();
+                                }
+                                else if (param instanceof ConstantValue) {
+                                    ConstantValue const_param = (ConstantValue)param;
+                                    VoltType vtype = VoltType.get(const_param.getType());
+                                    Object const_value = VoltTypeUtil.getObjectFromString(vtype, const_param.getValue());
+                                    constants[num_constants++] = hasher.hash(const_value);
+                                }
+                                else {
+                                    throw new RuntimeException("Unexpected parameter type: " + param.fullName());
+                                }
+                            } // FOR
+                            this.route_params[table_idx] = params;
+                            this.route_constants[table_idx] = constants;
+                        }
+                    }
+                }
+                this.route_types[table_idx] = type;
+                if (trace.val)
+                    LOG.trace(String.format("%s Route for %s: %s",
+                              this.catalog_item.fullName(), tables[table_idx].getName(), type));
+            } // FOR
+        }
+
         public boolean hasTable(Table catalog_tbl) {
             return (this.table_keys.contains(CatalogKey.createKey(catalog_tbl)));
         }
@@ -250,12 +380,27 @@ public class PartitionEstimator {
         public String toString() {
             StringBuilder sb = new StringBuilder();
             sb.append("[IsValid=" + this.is_valid + ", ")
+              .append("Routes=" + (this.route_types != null ? Arrays.toString(this.route_types) : null) + ", ")
               .append("Tables=" + this.table_keys + ", ")
               .append("Broadcast=" + this.broadcast_tables + ", ")
               .append("Predicates=" + this.predicates + "]");
             return (sb.toString());
         }
     }; // END CLASS
+    
+    /**
+     * How to calculate the partitions for a table in a CacheEntry
+     */
+    private enum RouteType {
+        /** Execute on the base partition */
+        LOCAL,
+        /** Execute on all partitions */
+        BROADCAST,
+        /** Hash the parameters for the table's MultiColumn */
+        MULTICOLUMN,
+        /** Hash the parameters and constants for the table's partitioning column */
+        SINGLECOLUMN;
+    }
 
     /**
      * PartitionSet pool used by calculatePartitionsForCache
@@ -352,6 +497,29 @@ public class PartitionEstimator {
     }
 
     private synchronized void buildCatalogCache() {
+        // Size our id-indexed caches up front so that we don't have to grow them at runtime
+        int max_proc_id = 0;
+        int max_stmt_id = 0;
+        int max_frag_idx = 0;
+        for (Procedure catalog_proc : this.catalogContext.database.getProcedures()) {
+            max_proc_id = Math.max(max_proc_id, catalog_proc.getId());
+            for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                max_stmt_id = Math.max(max_stmt_id, catalog_stmt.getId());
+                for (PlanFragment catalog_frag : CatalogUtil.getAllPlanFragments(catalog_stmt)) {
+                    max_frag_idx = Math.max(max_frag_idx, PlanFragmentIdGenerator.getPlanFragmentIndex(catalog_frag.getId()));
+                } // FOR
+            } // FOR
+        } // FOR
+        if (this.cache_procPartitionParameters.length <= max_proc_id) {
+            this.cache_procPartitionParameters = new ProcParameter[max_proc_id + 1];
+        }
+        if (this.cache_statementEntries.length <= max_stmt_id) {
+            this.cache_statementEntries = new CacheEntry[max_stmt_id + 1];
+        }
+        if (this.cache_fragmentEntries.length <= max_frag_idx) {
+            this.cache_fragmentEntries = new CacheEntry[max_frag_idx + 1];
+        }
+        
         for (Procedure catalog_proc : this.catalogContext.database.getProcedures()) {
             if (catalog_proc.getParameters().size() > 0) {
                 ProcParameter catalog_param = null;
@@ -363,7 +531,7 @@ public class PartitionEstimator {
                 } else {
                     catalog_param = catalog_proc.getParameters().get(param_idx);
                 }
-                this.cache_procPartitionParameters.put(catalog_proc, catalog_param);
+                this.cache_procPartitionParameters[catalog_proc.getId()] = catalog_param;
                 if (debug.val)
                     LOG.debug(catalog_proc + " ProcParameter Cache: " + (catalog_param != null ? catalog_param.fullName() : catalog_param));
             }
@@ -387,11 +555,11 @@ public class PartitionEstimator {
             if (debug.val)
                 LOG.debug(String.format("%s Partition Column Cache: %s", catalog_tbl.getName(), catalog_col));
         } // FOR
-        for (CacheEntry entry : this.cache_fragmentEntries.values()) {
-            entry.cache_valid = false;
+        for (CacheEntry entry : this.cache_fragmentEntries) {
+            if (entry != null) entry.cache_valid = false;
         }
-        for (CacheEntry entry : this.cache_statementEntries.values()) {
-            entry.cache_valid = false;
+        for (CacheEntry entry : this.cache_statementEntries) {
+            if (entry != null) entry.cache_valid = false;
         }
 
         // Generate a list of all the partition ids, so that we can quickly
@@ -409,14 +577,64 @@ public class PartitionEstimator {
      * Completely clear the PartitionEstimator's internal cache This should only
      * really be used for testing
      */
-    public void clear() {
-        this.cache_procPartitionParameters.clear();
+    public synchronized void clear() {
+        Arrays.fill(this.cache_procPartitionParameters, null);
         this.cache_tablePartitionColumns.clear();
-        this.cache_fragmentEntries.clear();
-        this.cache_statementEntries.clear();
+        this.cache_fragmentEntries = new CacheEntry[this.cache_fragmentEntries.length];
+        this.cache_statementEntries = new CacheEntry[this.cache_statementEntries.length];
         this.cache_stmtPartitionParameters.clear();
     }
     
+    /**
+     * Return the CacheEntry for the given Statement. Returns null if
+     * one has not been generated yet.
+     * @param catalog_stmt
+     * @return
+     */
+    private CacheEntry getStatementCacheEntry(Statement catalog_stmt) {
+        CacheEntry entries[] = this.cache_statementEntries;
+        int idx = catalog_stmt.getId();
+        if (idx < entries.length) {
+            CacheEntry entry = entries[idx];
+            if (entry != null && entry.catalog_item == catalog_stmt) return (entry);
+        }
+        return (null);
+    }
+    
+    /**
+     * Return the CacheEntry for the given PlanFragment. Returns null if
+     * one has not been generated yet.
+     * @param catalog_frag
+     * @return
+     */
+    private CacheEntry getCachedFragmentEntry(PlanFragment catalog_frag) {
+        CacheEntry entries[] = this.cache_fragmentEntries;
+        int idx = PlanFragmentIdGenerator.getPlanFragmentIndex(catalog_frag.getId());
+        if (idx < entries.length) {
+            CacheEntry entry = entries[idx];
+            if (entry != null && entry.catalog_item == catalog_frag) return (entry);
+        }
+        return (null);
+    }
+    
+    /**
+     * Store the given CacheEntry at the given offset in the array and return the
+     * array. If the array is not large enough, then a new one will be returned. 
+     * This must only be called while holding the PartitionEstimator's lock.
+     * @param entries
+     * @param idx
+     * @param entry
+     * @return
+     */
+    private static CacheEntry[] putCacheEntry(CacheEntry entries[], int idx, CacheEntry entry) {
+        assert(idx >= 0) : "Invalid cache offset " + idx;
+        if (idx >= entries.length) {
+            entries = Arrays.copyOf(entries, idx + 1);
+        }
+        entries[idx] = entry;
+        return (entries);
+    }
+    
     // ----------------------------------------------------------------------------
     // INTERNAL CACHE METHODS
     // ----------------------------------------------------------------------------
@@ -432,11 +650,10 @@ public class PartitionEstimator {
     private synchronized void generateCache(final Statement catalog_stmt) throws Exception {
         // Check whether we already have a CacheEntry for the Statement that we
         // can reuse
-        String stmt_key = CatalogKey.createKey(catalog_stmt);
         QueryType stmt_type = QueryType.get(catalog_stmt.getQuerytype());
-        PartitionEstimator.CacheEntry stmt_cache = this.cache_statementEntries.get(stmt_key);
+        PartitionEstimator.CacheEntry stmt_cache = this.getStatementCacheEntry(catalog_stmt);
         if (stmt_cache == null) {
-            stmt_cache = new PartitionEstimator.CacheEntry(stmt_type);
+            stmt_cache = new PartitionEstimator.CacheEntry(catalog_stmt, stmt_type);
         } else {
             // assert(stmt_cache.isValid()) :
             // "Unexpected invalid cache entry for " +
@@ -471,10 +688,9 @@ public class PartitionEstimator {
             for (PlanFragment catalog_frag : fragments) {
                 // Again, always check whether we already have a CacheEntry for
                 // the PlanFragment that we can reuse
-                String frag_key = CatalogKey.createKey(catalog_frag);
-                PartitionEstimator.CacheEntry frag_cache = this.cache_fragmentEntries.get(frag_key);
+                PartitionEstimator.CacheEntry frag_cache = this.getCachedFragmentEntry(catalog_frag);
                 if (frag_cache == null) {
-                    frag_cache = new PartitionEstimator.CacheEntry(stmt_type);
+                    frag_cache = new PartitionEstimator.CacheEntry(catalog_frag, stmt_type);
                 } else if (frag_cache.isValid()) {
                     assert (!frag_cache.isValid()) : "Cache entry for " + CatalogUtil.getDisplayName(catalog_frag) + " is marked as valid when we were expecting to be invalid\n" + this.toString();
                     frag_cache.setValid();
@@ -694,7 +910,9 @@ public class PartitionEstimator {
                 } // FOR
 
                 // Store the Fragment cache and update the Table xref mapping
-                this.cache_fragmentEntries.put(frag_key, frag_cache);
+                this.cache_fragmentEntries = putCacheEntry(this.cache_fragmentEntries,
+                                                           PlanFragmentIdGenerator.getPlanFragmentIndex(catalog_frag.getId()),
+                                                           frag_cache);
                 this.addTableCacheXref(frag_cache, frag_tables);
             } // FOR (fragment)
 
@@ -743,7 +961,7 @@ public class PartitionEstimator {
         } // FOR (single-partition vs multi-partition)
 
         // Add the Statement cache entry and update the Table xref map
-        this.cache_statementEntries.put(stmt_key, stmt_cache);
+        this.cache_statementEntries = putCacheEntry(this.cache_statementEntries, catalog_stmt.getId(), stmt_cache);
         this.addTableCacheXref(stmt_cache, stmt_tables);
     }
 
@@ -869,7 +1087,11 @@ public class PartitionEstimator {
 //        assert(catalog_proc.getParameters().size() == params.length) :
 //            String.format("Invalid number of ProcParameters for %s: %d != %d",
 //                          catalog_proc, catalog_proc.getParameters().size(), params.length);
-        ProcParameter catalog_param = this.cache_procPartitionParameters.get(catalog_proc);
+        int proc_id = catalog_proc.getId();
+        ProcParameter catalog_param = null;
+        if (proc_id < this.cache_procPartitionParameters.length) {
+            catalog_param = this.cache_procPartitionParameters[proc_id];
+        }
 
         if (catalog_param == null && force) {
             if (force) {
@@ -881,7 +1103,14 @@ public class PartitionEstimator {
                 } else {
                     catalog_param = catalog_proc.getParameters().get(idx);
                 }
-                this.cache_procPartitionParameters.put(catalog_proc, catalog_param);
+                synchronized (this) {
+                    ProcParameter cache[] = this.cache_procPartitionParameters;
+                    if (proc_id >= cache.length) {
+                        cache = Arrays.copyOf(cache, proc_id + 1);
+                    }
+                    cache[proc_id] = catalog_param;
+                    this.cache_procPartitionParameters = cache;
+                } // SYNCH
                 if (debug.val)
                     LOG.debug("Added cached " + catalog_param + " for " + catalog_proc);
             } else {
@@ -1121,6 +1350,93 @@ public class PartitionEstimator {
         }
         return (all_param_idxs);
     }
+    
+    /**
+     * Return the number of elements that getStatementSignature() will write for
+     * the given Statement. Returns -1 if the partitions touched by the Statement 
+     * cannot be derived from a signature (e.g., it references a table that uses
+     * MultiColumn partitioning). 
+     * @param catalog_stmt
+     * @return
+     */
+    public int getStatementSignatureSize(final Statement catalog_stmt) {
+        CacheEntry stmt_cache = this.getStatementSignatureEntry(catalog_stmt);
+        return (stmt_cache.signature_params != null ? stmt_cache.signature_params.length : -1);
+    }
+    
+    /**
+     * Write the partitions that each input parameter used to route the Statement's
+     * PlanFragments hashes to into the given array starting at the given offset.
+     * Any two invocations of the Statement that produce the same signature with the
+     * same base partition will touch the same partitions for every PlanFragment.
+     * Returns false if a signature cannot be generated for these parameters.
+     * @param catalog_stmt
+     * @param params
+     * @param signature
+     * @param offset
+     * @return
+     */
+    public boolean getStatementSignature(final Statement catalog_stmt,
+                                         final Object params[],
+                                         final int signature[],
+                                         int offset) {
+        CacheEntry stmt_cache = this.getStatementSignatureEntry(catalog_stmt);
+        final int param_idxs[] = stmt_cache.signature_params;
+        if (param_idxs == null) return (false);
+        final Column columns[] = stmt_cache.signature_columns;
+        for (int i = 0; i < param_idxs.length; i++) {
+            Object value = params[param_idxs[i]];
+            // We don't bother with arrays because the number of elements can change
+            if (ClassUtil.isArray(value)) return (false);
+            signature[offset++] = this.hasher.hash(value, columns[i]);
+        } // FOR
+        return (true);
+    }
+    
+    /**
+     * Return the Statement's CacheEntry with its signature information populated
+     * @param catalog_stmt
+     * @return
+     */
+    private CacheEntry getStatementSignatureEntry(final Statement catalog_stmt) {
+        CacheEntry stmt_cache = this.getStatementCacheEntry(catalog_stmt);
+        if (stmt_cache != null && stmt_cache.signature_columns != null) {
+            return (stmt_cache);
+        }
+        
+        synchronized (this) {
+            List<Integer> param_idxs = new ArrayList<Integer>();
+            List<Column> columns = new ArrayList<Column>();
+            boolean valid = true;
+            try {
+                for (PlanFragment catalog_frag : CatalogUtil.getAllPlanFragments(catalog_stmt)) {
+                    CacheEntry frag_cache = this.getFragmentCacheEntry(catalog_frag);
+                    frag_cache.getTables();
+                    for (int table_idx = 0; table_idx < frag_cache.route_types.length; table_idx++) {
+                        if (frag_cache.route_types[table_idx] == RouteType.MULTICOLUMN) {
+                            valid = false;
+                        }
+                        else if (frag_cache.route_types[table_idx] == RouteType.SINGLECOLUMN) {
+                            for (int param_idx : frag_cache.route_params[table_idx]) {
+                                param_idxs.add(param_idx);
+                                columns.add(frag_cache.route_columns[table_idx]);
+                            } // FOR
+                        }
+                    } // FOR
+                } // FOR
+            } catch (Exception ex) {
+                throw new RuntimeException("Failed to generate signature for " + catalog_stmt.fullName(), ex);
+            }
+            stmt_cache = this.getStatementCacheEntry(catalog_stmt);
+            assert(stmt_cache != null) : "Missing CacheEntry for " + catalog_stmt.fullName();
+            stmt_cache.signature_params = (valid ? CollectionUtil.toIntArray(param_idxs) : null);
+            stmt_cache.signature_columns = columns.toArray(new Column[columns.size()]);
+            if (debug.val)
+                LOG.debug(String.format("%s Signature Parameters: %s",
+                          catalog_stmt.fullName(), (valid ? param_idxs : null)));
+        } // SYNCH
+        return (stmt_cache);
+    }
 
     /**
      * @param frag_partitions
@@ -1246,18 +1562,17 @@ public class PartitionEstimator {
     }
 
     private PartitionEstimator.CacheEntry getFragmentCacheEntry(PlanFragment catalog_frag) throws Exception {
-        String frag_key = CatalogKey.createKey(catalog_frag);
         // Check whether we have generate the cache entries for this Statement
         // The CacheEntry object just tells us what input parameter to use for
         // hashing to figure out where we need to go for each table.
-        PartitionEstimator.CacheEntry cache_entry = this.cache_fragmentEntries.get(frag_key);
+        PartitionEstimator.CacheEntry cache_entry = this.getCachedFragmentEntry(catalog_frag);
         if (cache_entry == null) {
             synchronized (this) {
-                cache_entry = this.cache_fragmentEntries.get(frag_key);
+                cache_entry = this.getCachedFragmentEntry(catalog_frag);
                 if (cache_entry == null) {
                     Statement catalog_stmt = (Statement) catalog_frag.getParent();
                     this.generateCache(catalog_stmt);
-                    cache_entry = this.cache_fragmentEntries.get(frag_key);
+                    cache_entry = this.getCachedFragmentEntry(catalog_frag);
                 }
             } // SYNCHRONIZED
         }
@@ -1287,18 +1602,23 @@ public class PartitionEstimator {
                                              final Map<String, PartitionSet> entry_table_partitions,
                                              final PartitionSet entry_all_partitions) throws Exception {
 
-        // Hash the input parameters to determine what partitions we're headed to
-        QueryType stmt_type = target.query_type;
-
         // Update cache
         if (target.is_array == null) {
-            target.is_array = new boolean[params.length];
-            for (int i = 0; i < target.is_array.length; i++) {
-                target.is_array[i] = ClassUtil.isArray(params[i]);
+            boolean is_array[] = new boolean[params.length];
+            for (int i = 0; i < is_array.length; i++) {
+                is_array[i] = ClassUtil.isArray(params[i]);
             } // FOR
+            target.is_array = is_array;
         }
 
-        final PartitionSet table_partitions = this.partitionSetPool.borrowObject();
+        // OPTIMIZATION: If we don't need to keep track of the partitions for each
+        // individual table, then we can just write directly into the output set
+        final PartitionSet table_partitions;
+        if (entry_table_partitions != null) {
+            table_partitions = this.partitionSetPool.borrowObject();
+        } else {
+            table_partitions = entry_all_partitions;
+        }
         assert(table_partitions != null);
 
         // Go through each table referenced in this CacheEntry and look-up the parameters that the 
@@ -1306,6 +1626,7 @@ public class PartitionEstimator {
         // IMPORTANT: If there are no tables (meaning it's some PlanFragment that combines data output
         // from other PlanFragments), then won't return anything because it is up to whoever
         // to figure out where to send this PlanFragment (it may be at the coordinator)
+        // Note that the routes for each table were compiled when we generated the tables array
         Table tables[] = target.getTables();
         if (trace.val) {
             Map<String, Object> m = new LinkedHashMap<String, Object>();
@@ -1315,131 +1636,49 @@ public class PartitionEstimator {
             m.put("Base Partition", base_partition);
             LOG.trace("Calculating partitions for " + target.query_type + "\n" + StringUtil.formatMaps(m));
         }
-        for (int table_idx = 0; table_idx < target.is_replicated.length; table_idx++) {
-            final Table catalog_tbl = tables[table_idx];
-
-            // REPLICATED TABLE
-            if (target.is_replicated[table_idx]) {
-                switch (stmt_type) {
-                    // If this table is replicated and this query is a scan,
-                    // then we're in the clear and there's nothing else we need to do here
-                    // for the current table (but we still need to check the other guys).
-                    case SELECT:
-                        if (trace.val)
-                            LOG.trace("Cache entry " + target + " will execute on the local partition");
-                        if (base_partition != HStoreConstants.NULL_PARTITION_ID)
-                            table_partitions.add(base_partition);
-                        break;
-                    // Conversely, if it's replicated but we're performing an update or
-                    // a delete, then we know it's not single-sited. The modification has
-                    // to be broadcast to all partitions.
-                    case INSERT:
-                    case UPDATE:
-                    case DELETE: 
-                        if (trace.val)
-                            LOG.trace("Cache entry " + target + " must be broadcast to all partitions");
-                        table_partitions.addAll(this.all_partitions);
-                        break;
-                    // BUSTED (like your mom)
-                    default:
-                        assert (false) : "Unexpected query type: " + stmt_type;
-                } // SWITCH
-            }
-            // NON-REPLICATED TABLE
-            else {
-                // We need to calculate the partition value based on this table's partitioning column
-                Column catalog_col = cache_tablePartitionColumns.get(catalog_tbl);
-                if (trace.val)
-                    LOG.trace("Partitioning Column: " + (catalog_col != null ? catalog_col.fullName() : catalog_col));
-
+        for (int table_idx = 0; table_idx < tables.length; table_idx++) {
+            switch (target.route_types[table_idx]) {
+                // If this table is replicated and this query is a scan,
+                // then we're in the clear and there's nothing else we need to do here
+                // for the current table (but we still need to check the other guys).
+                case LOCAL:
+                    if (trace.val)
+                        LOG.trace("Cache entry " + target + " will execute on the local partition");
+                    if (base_partition != HStoreConstants.NULL_PARTITION_ID)
+                        table_partitions.add(base_partition);
+                    break;
+                // Either the table is replicated and we're modifying it, or we don't 
+                // have a way to figure out what partitions we need, so we have to 
+                // broadcast this mofo
+                case BROADCAST:
+                    if (trace.val)
+                        LOG.trace("Cache entry " + target + " must be broadcast to all partitions");
+                    table_partitions.addAll(this.all_partitions);
+                    break;
                 // MULTI-COLUMN PARTITIONING
-                // Strap on your seatbelts, we're going in!!!
-                if (catalog_col instanceof MultiColumn) {
-                    // HACK: All multi-column look-ups on queries with an OR
-                    // must be broadcast
-                    if (target.isMarkedContainsOR()) {
-                        if (debug.val)
-                            LOG.warn("Trying to use multi-column partitioning [" + catalog_col.fullName() + "] on query that contains an 'OR': " + target);
-                        table_partitions.addAll(this.all_partitions);
-                    } else {
-                        MultiColumn mc = (MultiColumn) catalog_col;
-                        PartitionSet mc_partitions[] = this.mcPartitionSetPool.borrowObject();
-
-                        if (trace.val)
-                            LOG.trace("Calculating columns for multi-partition colunmn: " + mc);
-                        boolean is_valid = true;
-                        for (int i = 0, mc_cnt = mc.size(); i < mc_cnt; i++) {
-                            Column mc_column = mc.get(i);
-                            // assert(cache_entry.get(mc_column_key) != null) :
-                            // "Null CacheEntry: " + mc_column_key;
-                            if (target.predicates.containsKey(mc_column)) {
-                                this.calculatePartitions(mc_partitions[i],
-                                                         params,
-                                                         target.is_array,
-                                                         target.predicates.get(mc_column),
-                                                         mc_column);
-                            }
-
-                            // Unless we have partition values for both keys,
-                            // then it has to be a broadcast
-                            if (mc_partitions[i].isEmpty()) {
-                                if (debug.val)
-                                    LOG.warn(String.format("No partitions for %s from %s. " +
-                                    		 "Cache entry %s must be broadcast to all partitions",
-                                    		 mc_column.fullName(), mc.fullName(), target));
-                                table_partitions.addAll(this.all_partitions);
-                                is_valid = false;
-                                break;
-                            }
-                            if (trace.val)
-                                LOG.trace(CatalogUtil.getDisplayName(mc_column) + ": " + mc_partitions[i]);
-                        } // FOR
-
-                        // Now if we're here, then we have partitions for both
-                        // of the columns and we're legit
-                        // We therefore just need to take the cross product of
-                        // the two sets and hash them together
-                        if (is_valid) {
-                            for (int part0 : mc_partitions[0]) {
-                                for (int part1 : mc_partitions[1]) {
-                                    int partition = this.hasher.multiValueHash(part0, part1);
-                                    table_partitions.add(partition);
-                                    if (trace.val)
-                                        LOG.trace(String.format("MultiColumn Partitions[%d, %d] => %d",
-                                                  part0, part1, partition));
-                                } // FOR
-                            } // FOR
-                        }
-                        this.mcPartitionSetPool.returnObject(mc_partitions);
-                    }
-                }
+                case MULTICOLUMN:
+                    this.calculateMultiColumnPartitions(table_partitions,
+                                                        target,
+                                                        params,
+                                                        (MultiColumn)target.route_columns[table_idx]);
+                    break;
                 // SINGLE COLUMN PARTITIONING
-                else {
-                    List<Pair<ExpressionType, CatalogType>> predicates = target.predicates.get(catalog_col);
-                    if (trace.val)
-                        LOG.trace("Param Indexes: " + predicates);
-
-                    // Important: If there is no entry for this partitioning
-                    // column, then we have to broadcast this mofo
-                    if (predicates == null || predicates.isEmpty()) {
-                        if (debug.val)
-                            LOG.debug(String.format("No parameter mapping for %s. Fragment must be broadcast to all partitions",
-                                      CatalogUtil.getDisplayName(catalog_col)));
-                        table_partitions.addAll(this.all_partitions);
-
-                        // If there is nothing special, just shove off and have
-                        // this method figure things out for us
-                    } else {
-                        if (trace.val)
-                            LOG.trace("Calculating partitions normally for " + target);
-                        this.calculatePartitions(table_partitions, params, target.is_array, predicates, catalog_col);
-                    }
-                }
-            } // ELSE
+                case SINGLECOLUMN:
+                    this.calculatePartitions(table_partitions,
+                                             params,
+                                             target.is_array,
+                                             target.route_params[table_idx],
+                                             target.route_constants[table_idx],
+                                             target.route_columns[table_idx]);
+                    break;
+                // BUSTED (like your mom)
+                default:
+                    assert (false) : "Unexpected route type: " + target.route_types[table_idx];
+            } // SWITCH
             assert (table_partitions.size() <= this.num_partitions);
 
             if (entry_table_partitions != null) {
-                String table_key = CatalogKey.createKey(catalog_tbl);
+                String table_key = CatalogKey.createKey(tables[table_idx]);
                 PartitionSet table_p = entry_table_partitions.get(table_key);
                 if (table_p == null) {
                     entry_table_partitions.put(table_key, new PartitionSet(table_partitions));
@@ -1447,20 +1686,128 @@ public class PartitionEstimator {
                     table_p.clear();
                     table_p.addAll(table_partitions);
                 }
-            }
-            if (entry_all_partitions != null) {
-                entry_all_partitions.addAll(table_partitions);
+                if (entry_all_partitions != null) {
+                    entry_all_partitions.addAll(table_partitions);
+                }
             }
             // OPTIMIZATION: If we aren't calculating the individual partitions for each table
             // separately (i.e., we are calculating the "global" partitions needed for the cache entry),
             // then we can check whether we are already touching all partitions. If so, then that means
             // there are no more partitions to add to the set and therefore we can stop here.
-            if (entry_table_partitions == null && entry_all_partitions.size() == this.num_partitions)
+            else if (entry_all_partitions.size() == this.num_partitions) {
                 break;
+            }
         } // FOR
-        this.partitionSetPool.returnObject(table_partitions);
+        if (entry_table_partitions != null) {
+            this.partitionSetPool.returnObject(table_partitions);
+        }
         return;
     }
+    
+    /**
+     * Calculate the partitions touched for the given MultiColumn partitioning column
+     * @param partitions
+     * @param target
+     * @param params
+     * @param mc
+     * @throws Exception
+     */
+    private void calculateMultiColumnPartitions(final PartitionSet partitions,
+                                                final CacheEntry target,
+                                                final Object params[],
+                                                final MultiColumn mc) throws Exception {
+        // Strap on your seatbelts, we're going in!!!
+        PartitionSet mc_partitions[] = this.mcPartitionSetPool.borrowObject();
+        if (trace.val)
+            LOG.trace("Calculating columns for multi-partition colunmn: " + mc);
+        boolean is_valid = true;
+        for (int i = 0, mc_cnt = mc.size(); i < mc_cnt; i++) {
+            Column mc_column = mc.get(i);
+            if (target.predicates.containsKey(mc_column)) {
+                this.calculatePartitions(mc_partitions[i],
+                                         params,
+                                         target.is_array,
+                                         target.predicates.get(mc_column),
+                                         mc_column);
+            }
+
+            // Unless we have partition values for both keys,
+            // then it has to be a broadcast
+            if (mc_partitions[i].isEmpty()) {
+                if (debug.val)
+                    LOG.warn(String.format("No partitions for %s from %s. " +
+                             "Cache entry %s must be broadcast to all partitions",
+                             mc_column.fullName(), mc.fullName(), target));
+                partitions.addAll(this.all_partitions);
+                is_valid = false;
+                break;
+            }
+            if (trace.val)
+                LOG.trace(CatalogUtil.getDisplayName(mc_column) + ": " + mc_partitions[i]);
+        } // FOR
+
+        // Now if we're here, then we have partitions for both
+        // of the columns and we're legit
+        // We therefore just need to take the cross product of
+        // the two sets and hash them together
+        if (is_valid) {
+            for (int part0 : mc_partitions[0]) {
+                for (int part1 : mc_partitions[1]) {
+                    int partition = this.hasher.multiValueHash(part0, part1);
+                    partitions.add(partition);
+                    if (trace.val)
+                        LOG.trace(String.format("MultiColumn Partitions[%d, %d] => %d",
+                                  part0, part1, partition));
+                } // FOR
+            } // FOR
+        }
+        this.mcPartitionSetPool.returnObject(mc_partitions);
+    }
+    
+    /**
+     * Calculate the partitions touched for the given column using the 
+     * precompiled parameter offsets and constant partitions from a CacheEntry. 
+     * This does not allocate any new objects unless the parameters are arrays.
+     * @param partitions
+     * @param params
+     * @param is_array
+     * @param param_idxs
+     * @param const_partitions
+     * @param catalog_col
+     */
+    private void calculatePartitions(final PartitionSet partitions,
+                                     final Object params[],
+                                     final boolean is_array[],
+                                     final int param_idxs[],
+                                     final int const_partitions[],
+                                     final Column catalog_col) {
+        for (int param_idx : param_idxs) {
+            // IMPORTANT: Check if the parameter is an array. If it is, then we 
+            // have to loop through and get the hash of all of the values
+            if (is_array[param_idx]) {
+                int num_elements = Array.getLength(params[param_idx]);
+                for (int i = 0; i < num_elements; i++) {
+                    Object value = Array.get(params[param_idx], i);
+                    int partition_id = this.hasher.hash(value, catalog_col);
+                    if (trace.val)
+                        LOG.trace(String.format("%s HASHING PARAM ARRAY[%d][%d]: %s -> %d",
+                                  catalog_col.fullName(), param_idx, i, value, partition_id));
+                    partitions.add(partition_id);
+                } // FOR
+            }
+            // Primitive Value
+            else {
+                int partition_id = this.hasher.hash(params[param_idx], catalog_col);
+                if (trace.val)
+                    LOG.trace(String.format("%s HASHING PARAM [%d]: %s -> %d",
+                              catalog_col.fullName(), param_idx, params[param_idx], partition_id));
+                partitions.add(partition_id);
+            }
+        } // FOR
+        for (int partition_id : const_partitions) {
+            partitions.add(partition_id);
+        } // FOR
+    }
 
     /**
      * Calculate the partitions touched for the given column
@@ -1584,16 +1931,14 @@ public class PartitionEstimator {
             boolean has_entries = false;
             sb.append(CatalogUtil.getDisplayName(catalog_proc)).append(":\n");
             for (Statement catalog_stmt : catalog_proc.getStatements()) {
-                String stmt_key = CatalogKey.createKey(catalog_stmt);
-                CacheEntry stmt_cache = this.cache_statementEntries.get(stmt_key);
+                CacheEntry stmt_cache = this.getStatementCacheEntry(catalog_stmt);
                 if (stmt_cache == null)
                     continue;
                 has_entries = true;
                 sb.append("  " + catalog_stmt.getName() + ": ").append(stmt_cache).append("\n");
 
                 for (PlanFragment catalog_frag : CatalogUtil.getAllPlanFragments(catalog_stmt)) {
-                    String frag_key = CatalogKey.createKey(catalog_frag);
-                    CacheEntry frag_cache = this.cache_fragmentEntries.get(frag_key);
+                    CacheEntry frag_cache = this.getCachedFragmentEntry(catalog_frag);
                     if (frag_cache == null)
                         continue;
                     sb.append("    PlanFragment[" + catalog_frag.getName() + "]: ").append(frag_cache).append("\n");
@@ -1655,11 +2000,11 @@ public class PartitionEstimator {
             } // FOR
         } // FOR
 
-        for (CacheEntry entry : this.cache_fragmentEntries.values()) {
-            entry.getTables();
+        for (CacheEntry entry : this.cache_fragmentEntries) {
+            if (entry != null) entry.getTables();
         }
-        for (CacheEntry entry : this.cache_statementEntries.values()) {
-            entry.getTables();
+        for (CacheEntry entry : this.cache_statementEntries) {
+            if (entry != null) entry.getTables();
         }
 
     }
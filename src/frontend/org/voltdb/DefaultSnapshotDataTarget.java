@@ -22,15 +22,20 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.Semaphore;
 import java.util.zip.CRC32;
@@ -41,6 +46,8 @@ import org.voltdb.messaging.FastSerializer;
 import org.voltdb.utils.DBBPool;
 import org.voltdb.utils.DBBPool.BBContainer;
 
+import edu.brown.hstore.conf.HStoreConf;
+
 public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     private static final Logger LOG = Logger.getLogger(DefaultSnapshotDataTarget.class);
 
@@ -68,7 +75,6 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     private static final Semaphore m_bytesAllowedBeforeSync = new Semaphore((1024 * 1024) * 256);
     private final AtomicInteger m_bytesWrittenSinceLastSync = new AtomicInteger(0);
 
-    private final ScheduledFuture<?> m_syncTask;
     /*
      * Accept a single write even though simulating a full disk is enabled;
      */
@@ -79,29 +85,102 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
     private final AtomicInteger m_outstandingWriteTasks = new AtomicInteger(0);
 
-    private static final ExecutorService m_es = Executors.newSingleThreadExecutor(new ThreadFactory() {
-        @Override
-        public Thread newThread(Runnable r) {
+    /*
+     * Writes for all of the targets at this site are performed by a shared pool
+     * of I/O threads. Each target has its own queue of pending writes that is only
+     * ever drained by one thread at a time, so the writes for a single file are
+     * still performed in the order that they were submitted.
+     */
+    private static final int DEFAULT_IO_THREADS = 4;
+    private static final int DEFAULT_SYNC_INTERVAL = 1000; // ms
 
-            return new Thread(
-                    Thread.currentThread().getThreadGroup(),
-                    r,
-                    "Snapshot write service ",
-                    131072);
+    /*
+     * The maximum number of writes that a thread will perform for a single
+     * target before it yields to the other targets waiting for the pool
+     */
+    private static final int MAX_WRITES_PER_DRAIN = 16;
+
+    private static final ExecutorService m_es;
+    private static final ScheduledExecutorService m_syncService;
+
+    /*
+     * All of the open targets that the sync service needs to force to disk
+     */
+    private static final Set<DefaultSnapshotDataTarget> m_syncTargets =
+        Collections.newSetFromMap(new ConcurrentHashMap<DefaultSnapshotDataTarget, Boolean>());
+
+    static {
+        int ioThreads = DEFAULT_IO_THREADS;
+        int syncInterval = DEFAULT_SYNC_INTERVAL;
+        if (HStoreConf.isInitialized()) {
+            HStoreConf hstore_conf = HStoreConf.singleton();
+            ioThreads = Math.max(1, hstore_conf.site.snapshot_io_threads);
+            syncInterval = Math.max(1, hstore_conf.site.snapshot_sync_interval);
         }
-    });
+        final AtomicInteger threadCounter = new AtomicInteger(0);
+        m_es = Executors.newFixedThreadPool(ioThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(
+                        Thread.currentThread().getThreadGroup(),
+                        r,
+                        "Snapshot write service " + threadCounter.getAndIncrement(),
+                        131072);
+            }
+        });
+
+        m_syncService = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(
+                        Thread.currentThread().getThreadGroup(),
+                        r,
+                        "Snapshot sync service ",
+                        131072);
+            }
+        });
+
+        /*
+         * One sweep syncs every target that has written something since
+         * the last sweep instead of each target scheduling its own sync task
+         */
+        m_syncService.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                for (DefaultSnapshotDataTarget target : m_syncTargets) {
+                    target.sync();
+                }
+            }
+        }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
 
-    private static final ScheduledExecutorService m_syncService = Executors.newSingleThreadScheduledExecutor(
-            new ThreadFactory() {
+    /*
+     * Pending writes for this target in submission order
+     */
+    private final ConcurrentLinkedQueue<FutureTask<Object>> m_pendingWrites =
+        new ConcurrentLinkedQueue<FutureTask<Object>>();
+    private final AtomicBoolean m_drainScheduled = new AtomicBoolean(false);
+    private final Runnable m_drainTask = new Runnable() {
         @Override
-        public Thread newThread(Runnable r) {
-            return new Thread(
-                    Thread.currentThread().getThreadGroup(),
-                    r,
-                    "Snapshot sync service ",
-                    131072);
+        public void run() {
+            int drained = 0;
+            FutureTask<Object> task;
+            while ((task = m_pendingWrites.poll()) != null) {
+                task.run();
+                if (++drained == MAX_WRITES_PER_DRAIN && !m_pendingWrites.isEmpty()) {
+                    // Give the other targets a chance. We still own the drain flag.
+                    m_es.execute(this);
+                    return;
+                }
+            }
+            m_drainScheduled.set(false);
+            // Somebody may have added a write after our last poll but before we cleared the flag
+            if (!m_pendingWrites.isEmpty() && m_drainScheduled.compareAndSet(false, true)) {
+                m_es.execute(this);
+            }
         }
-    });
+    };
 
     public DefaultSnapshotDataTarget(
             final File file,
@@ -213,22 +292,25 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             throw m_writeException;
         }
 
-        ScheduledFuture<?> syncTask = null;
-        syncTask = m_syncService.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
-                int bytesSinceLastSync = 0;
-                while ((bytesSinceLastSync = m_bytesWrittenSinceLastSync.getAndSet(0)) > 0) {
-                    try {
-                        m_channel.force(false);
-                    } catch (IOException e) {
-                        LOG.error("Error syncing snapshot", e);
-                    }
-                    m_bytesAllowedBeforeSync.release(bytesSinceLastSync);
-                }
+        m_syncTargets.add(this);
+    }
+
+    /*
+     * Invoked by the shared sync service
+     */
+    private synchronized void sync() {
+        if (!m_channel.isOpen()) {
+            return;
+        }
+        int bytesSinceLastSync = 0;
+        while ((bytesSinceLastSync = m_bytesWrittenSinceLastSync.getAndSet(0)) > 0) {
+            try {
+                m_channel.force(false);
+            } catch (IOException e) {
+                LOG.error("Error syncing snapshot", e);
             }
-        }, 1, 1, TimeUnit.SECONDS);
-        m_syncTask = syncTask;
+            m_bytesAllowedBeforeSync.release(bytesSinceLastSync);
+        }
     }
 
     @Override
@@ -239,7 +321,9 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                     m_outstandingWriteTasks.wait();
                 }
             }
-            m_syncTask.cancel(false);
+            synchronized (this) {
+                m_syncTargets.remove(this);
+            }
             m_channel.force(false);
         } finally {
             m_bytesAllowedBeforeSync.release(m_bytesWrittenSinceLastSync.getAndSet(0));
@@ -276,7 +360,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         }
 
         m_outstandingWriteTasks.incrementAndGet();
-        Future<?> writeTask = m_es.submit(new Callable<Object>() {
+        FutureTask<Object> writeTask = new FutureTask<Object>(new Callable<Object>() {
             @Override
             public Object call() throws Exception {
                 try {
@@ -312,6 +396,10 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                 return null;
             }
         });
+        m_pendingWrites.offer(writeTask);
+        if (m_drainScheduled.compareAndSet(false, true)) {
+            m_es.execute(m_drainTask);
+        }
         return writeTask;
     }
 
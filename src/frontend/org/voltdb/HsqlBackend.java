@@ -17,16 +17,23 @@
 
 package org.voltdb;
 
+import java.math.BigDecimal;
 import java.nio.ByteBuffer;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -50,8 +57,27 @@ public class HsqlBackend {
     private static final Logger hostLog = Logger.getLogger("HOST", VoltLoggerFactory.instance());
     private static final Logger sqlLog = Logger.getLogger("SQL", VoltLoggerFactory.instance());
 
+    /**
+     * The number of rows that loadTable() will send to HSQLDB in each batch
+     */
+    private static final int LOAD_BATCH_SIZE = 1000;
+
     Connection dbconn;
 
+    /**
+     * Each SQLStmt is only prepared once. The key is the SQLStmt's catalog Statement
+     * because every VoltProcedure instance has its own SQLStmt objects.
+     */
+    private final Map<org.voltdb.catalog.Statement, PreparedStatement> preparedStmts =
+            new HashMap<org.voltdb.catalog.Statement, PreparedStatement>();
+    private final Map<org.voltdb.catalog.Statement, VoltType[]> paramTypes =
+            new HashMap<org.voltdb.catalog.Statement, VoltType[]>();
+
+    /**
+     * The INSERT statements used by loadTable(), one per table
+     */
+    private final Map<String, PreparedStatement> insertStmts = new HashMap<String, PreparedStatement>();
+
     public HsqlBackend(int siteId) {
         try {
             Class.forName("org.hsqldb.jdbcDriver" );
@@ -98,75 +124,12 @@ public class HsqlBackend {
                 sqlLog.l7dlog( Level.DEBUG, LogKeys.sql_Backend_ExecutingDML.name(), new Object[] { dml }, null);
                 sqlLog.debug("Executing " + dml);
                 ResultSet rs = stmt.executeQuery(dml);
-                ResultSetMetaData rsmd = rs.getMetaData();
-
-                // note the index values here carefully
-                VoltTable.ColumnInfo[] columns = new VoltTable.ColumnInfo[rsmd.getColumnCount()];
-                for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-                    String colname = rsmd.getColumnLabel(i);
-                    String type = rsmd.getColumnTypeName(i);
-                    //LOG.fine("Column type: " + type);
-                    if (type.equals("VARCHAR"))
-                        columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.STRING);
-                    else if (type.equals("TINYINT"))
-                        columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.TINYINT);
-                    else if (type.equals("SMALLINT"))
-                        columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.SMALLINT);
-                    else if (type.equals("INTEGER"))
-                        columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.INTEGER);
-                    else if (type.equals("BIGINT"))
-                        columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.BIGINT);
-                    else if (type.equals("DECIMAL"))
-                        columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.DECIMAL);
-                    else if (type.equals("FLOAT"))
-                        columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.FLOAT);
-                    else if (type.equals("TIMESTAMP"))
-                        columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.TIMESTAMP);
-                    else
-                        throw new ExpectedProcedureException("Trying to create a column in Backend with a (currently) unsupported type: " + type);
-                }
-                VoltTable table = new VoltTable(columns);
-                while (rs.next()) {
-                    Object[] row = new Object[table.getColumnCount()];
-                    for (int i = 0; i < table.getColumnCount(); i++) {
-                        // TODO(evanj): JDBC returns 0 instead of null. Put null into the row?
-                        if (table.getColumnType(i) == VoltType.STRING)
-                            row[i] = rs.getString(i + 1);
-                        else if (table.getColumnType(i) == VoltType.TINYINT)
-                            row[i] = rs.getByte(i + 1);
-                        else if (table.getColumnType(i) == VoltType.SMALLINT)
-                            row[i] = rs.getShort(i + 1);
-                        else if (table.getColumnType(i) == VoltType.INTEGER)
-                            row[i] = rs.getInt(i + 1);
-                        else if (table.getColumnType(i) == VoltType.BIGINT)
-                            row[i] = rs.getLong(i + 1);
-                        else if (table.getColumnType(i) == VoltType.DECIMAL)
-                            row[i] = rs.getBigDecimal(i + 1);
-                        else if (table.getColumnType(i) == VoltType.FLOAT)
-                            row[i] = rs.getDouble(i + 1);
-                        else if (table.getColumnType(i) == VoltType.TIMESTAMP) {
-                            Timestamp t = rs.getTimestamp(i + 1);
-                            if (t == null) {
-                                row[i] = null;
-                            } else {
-                                // convert from millisecond to microsecond granularity
-                                row[i] = new org.voltdb.types.TimestampType(t.getTime() * 1000);
-                            }
-                        } else {
-                            throw new ExpectedProcedureException("Trying to read a (currently) unsupported type from a JDBC resultset.");
-                        }
-                    }
-                    table.addRow(row);
-                }
+                VoltTable table = toVoltTable(rs);
                 stmt.close();
                 rs.close();
                 return table;
             } catch (Exception e) {
-                if (e instanceof ExpectedProcedureException) {
-                    throw (ExpectedProcedureException)e;
-                }
-                sqlLog.l7dlog( Level.TRACE, LogKeys.sql_Backend_DmlError.name(), e);
-                throw new ExpectedProcedureException("HSQLDB Backend DML Error ", e);
+                throw convertException(e);
             }
         }
         else {
@@ -174,100 +137,297 @@ public class HsqlBackend {
                 Statement stmt = dbconn.createStatement();
                 sqlLog.debug("Executing: " + dml);
                 long ucount = stmt.executeUpdate(dml);
-                sqlLog.debug("  result: " + String.valueOf(ucount));
-                VoltTable table = new VoltTable(new VoltTable.ColumnInfo("", VoltType.BIGINT));
-                table.addRow(ucount);
-                return table;
-            } catch(SQLException e) {
-                // glorious hack to determine if the error is a constraint failure
-                if (e.getMessage().contains("constraint")) {
-                    sqlLog.l7dlog( Level.TRACE, LogKeys.sql_Backend_ConvertingHSQLExtoCFEx.name(), e);
-                    final byte messageBytes[] = e.getMessage().getBytes();
-                    ByteBuffer b = ByteBuffer.allocate(21 + messageBytes.length);
-                    b.putInt(messageBytes.length);
-                    b.put(messageBytes);
-                    b.put(e.getSQLState().getBytes());
-                    b.putLong(0);//Move forward 8 bytes to provide header info for CFE, ConstraintType, TableId
-                    b.putInt(0);//Table size is 0
-                    b.rewind();
-                    throw new ConstraintFailureException(b);
-                }
-                else {
-                    sqlLog.l7dlog( Level.TRACE, LogKeys.sql_Backend_DmlError.name(), e);
-                    throw new ExpectedProcedureException("HSQLDB Backend DML Error ", e);
-                }
-
+                stmt.close();
+                return toUpdateCountTable(ucount);
             } catch (Exception e) {
-                // rethrow an expected exception
-                sqlLog.l7dlog( Level.TRACE, LogKeys.sql_Backend_DmlError.name(), e);
-                throw new ExpectedProcedureException("HSQLDB Backend DML Error ", e);
+                throw convertException(e);
             }
         }
     }
 
+    /**
+     * Execute the given SQLStmt with its parameters bound to a cached PreparedStatement.
+     * This means that HSQLDB only has to parse and plan each SQLStmt once.
+     * @param stmt
+     * @param args
+     * @return
+     */
     VoltTable runSQLWithSubstitutions(final SQLStmt stmt, Object... args) {
-        //HSQLProcedureWrapper does nothing smart. it just implements this interface with runStatement()
-        StringBuilder sqlOut = new StringBuilder(stmt.getText().length() * 2);
+        try {
+            PreparedStatement ps = this.getPreparedStatement(stmt);
+            VoltType types[] = this.paramTypes.get(stmt.catStmt);
+            if (args.length > types.length)
+                throw new RuntimeException("SQL Statement has more arguments than params.");
+            ps.clearParameters();
+            for (int i = 0; i < args.length; i++) {
+                bindParameter(ps, i + 1, types[i], args[i]);
+            } // FOR
 
-        CatalogMap<StmtParameter> sparamsMap = stmt.catStmt.getParameters();
-        List<StmtParameter> sparams = CatalogUtil.getSortedCatalogItems(sparamsMap, "index");
-        assert(sparams != null);
+            sqlLog.l7dlog( Level.DEBUG, LogKeys.sql_Backend_ExecutingDML.name(), new Object[] { stmt.getText() }, null);
+            if (ps.execute()) {
+                ResultSet rs = ps.getResultSet();
+                VoltTable table = toVoltTable(rs);
+                rs.close();
+                return table;
+            }
+            return toUpdateCountTable(ps.getUpdateCount());
+        } catch (Exception e) {
+            throw convertException(e);
+        }
+    }
 
-        int lastIndex = 0;
-        String sql = stmt.getText();
-        for (int i = 0; i < args.length; i++) {
-            int nextIndex = sql.indexOf('?', lastIndex);
-            if (nextIndex == -1)
-                throw new RuntimeException("SQL Statement has more arguments than params.");
-            sqlOut.append(sql, lastIndex, nextIndex);
-            lastIndex = nextIndex + 1;
+    /**
+     * Insert all of the rows in the given VoltTable into the given table.
+     * The rows are sent to HSQLDB in batches.
+     * @param tableName
+     * @param data
+     */
+    public void loadTable(String tableName, VoltTable data) {
+        if (data.getRowCount() == 0) return;
+        try {
+            PreparedStatement ps = this.insertStmts.get(tableName);
+            if (ps == null) {
+                StringBuilder sb = new StringBuilder("INSERT INTO ").append(tableName).append(" VALUES (");
+                for (int i = 0; i < data.getColumnCount(); i++) {
+                    sb.append(i > 0 ? ", ?" : "?");
+                } // FOR
+                sb.append(");");
+                ps = dbconn.prepareStatement(sb.toString());
+                this.insertStmts.put(tableName, ps);
+            }
+
+            int batchSize = 0;
+            data.resetRowPosition();
+            while (data.advanceRow()) {
+                for (int i = 0; i < data.getColumnCount(); i++) {
+                    Object value = data.get(i);
+                    bindParameter(ps, i + 1, data.getColumnType(i), data.wasNull() ? null : value);
+                } // FOR
+                ps.addBatch();
+                if (++batchSize == LOAD_BATCH_SIZE) {
+                    ps.executeBatch();
+                    batchSize = 0;
+                }
+            } // WHILE
+            if (batchSize > 0) ps.executeBatch();
+            sqlLog.debug(String.format("Loaded %d rows into %s", data.getRowCount(), tableName));
+        } catch (Exception e) {
+            throw convertException(e);
+        }
+    }
 
-            StmtParameter stmtParam = sparams.get(i);
-            assert(stmtParam != null);
-            VoltType type = VoltType.get((byte) stmtParam.getJavatype());
+    private PreparedStatement getPreparedStatement(SQLStmt stmt) throws SQLException {
+        PreparedStatement ps = this.preparedStmts.get(stmt.catStmt);
+        if (ps == null) {
+            CatalogMap<StmtParameter> sparamsMap = stmt.catStmt.getParameters();
+            List<StmtParameter> sparams = CatalogUtil.getSortedCatalogItems(sparamsMap, "index");
+            assert(sparams != null);
+            VoltType types[] = new VoltType[sparams.size()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = VoltType.get((byte) sparams.get(i).getJavatype());
+            } // FOR
 
-            if (args[i] == null) {
-                sqlOut.append("NULL");
-            } else if (args[i] instanceof TimestampType) {
-                if (type != VoltType.TIMESTAMP)
-                    throw new RuntimeException("Inserting date into mismatched column type in HSQL.");
-                TimestampType d = (TimestampType) args[i];
-                // convert VoltDB's microsecond granularity to millis.
-                Timestamp t = new Timestamp(d.getTime() * 1000);
-                sqlOut.append('\'').append(t.toString()).append('\'');
-            } else if (args[i] instanceof byte[]) {
-                if (type != VoltType.STRING)
-                    throw new RuntimeException("Inserting string (bytes) into mismatched column type in HSQL.");
-                // Convert from byte[] -> String; escape single quotes
-                sqlOut.append(sqlEscape(new String((byte[]) args[i])));
-            } else if (args[i] instanceof String) {
-                if (type != VoltType.STRING)
+            sqlLog.debug("Preparing " + stmt.getText());
+            ps = dbconn.prepareStatement(stmt.getText());
+            this.preparedStmts.put(stmt.catStmt, ps);
+            this.paramTypes.put(stmt.catStmt, types);
+        }
+        return (ps);
+    }
+
+    private static void bindParameter(PreparedStatement ps, int idx, VoltType type, Object value) throws SQLException {
+        if (value == null) {
+            ps.setNull(idx, toSqlType(type));
+            return;
+        }
+        switch (type) {
+            case TINYINT:
+                ps.setByte(idx, ((Number)value).byteValue());
+                break;
+            case SMALLINT:
+                ps.setShort(idx, ((Number)value).shortValue());
+                break;
+            case INTEGER:
+                ps.setInt(idx, ((Number)value).intValue());
+                break;
+            case BIGINT:
+                ps.setLong(idx, ((Number)value).longValue());
+                break;
+            case FLOAT:
+                ps.setDouble(idx, ((Number)value).doubleValue());
+                break;
+            case DECIMAL:
+                ps.setBigDecimal(idx, (value instanceof BigDecimal ? (BigDecimal)value : new BigDecimal(value.toString())));
+                break;
+            case STRING:
+                if (value instanceof byte[]) {
+                    ps.setString(idx, new String((byte[])value));
+                } else if (value instanceof String) {
+                    ps.setString(idx, (String)value);
+                } else {
                     throw new RuntimeException("Inserting string into mismatched column type in HSQL.");
-                // Escape single quotes
-                sqlOut.append(sqlEscape((String) args[i]));
-            } else {
-                if (type == VoltType.TIMESTAMP) {
-                    long t = Long.parseLong(args[i].toString());
-                    TimestampType d = new TimestampType(t);
-                    // convert VoltDB's microsecond granularity to millis
-                    Timestamp ts = new Timestamp(d.getTime() * 1000);
-                    sqlOut.append('\'').append(ts.toString()).append('\'');
                 }
-                else
-                    sqlOut.append(args[i].toString());
+                break;
+            case TIMESTAMP:
+                if (value instanceof TimestampType) {
+                    ps.setTimestamp(idx, toTimestamp(((TimestampType)value).getTime()));
+                } else if (value instanceof Date) {
+                    ps.setTimestamp(idx, new Timestamp(((Date)value).getTime()));
+                } else if (value instanceof Number) {
+                    ps.setTimestamp(idx, toTimestamp(((Number)value).longValue()));
+                } else {
+                    throw new RuntimeException("Inserting date into mismatched column type in HSQL.");
+                }
+                break;
+            default:
+                ps.setObject(idx, value);
+        } // SWITCH
+    }
+
+    /**
+     * Convert VoltDB's microsecond granularity timestamps to a JDBC Timestamp
+     */
+    private static Timestamp toTimestamp(long usecs) {
+        Timestamp t = new Timestamp(usecs / 1000);
+        t.setNanos((int)(usecs % 1000000) * 1000);
+        return (t);
+    }
+
+    private static int toSqlType(VoltType type) {
+        switch (type) {
+            case TINYINT:
+                return (Types.TINYINT);
+            case SMALLINT:
+                return (Types.SMALLINT);
+            case INTEGER:
+                return (Types.INTEGER);
+            case BIGINT:
+                return (Types.BIGINT);
+            case FLOAT:
+                return (Types.DOUBLE);
+            case DECIMAL:
+                return (Types.DECIMAL);
+            case TIMESTAMP:
+                return (Types.TIMESTAMP);
+            case STRING:
+                return (Types.VARCHAR);
+            default:
+                return (Types.NULL);
+        } // SWITCH
+    }
+
+    private static VoltTable toUpdateCountTable(long ucount) {
+        sqlLog.debug("  result: " + String.valueOf(ucount));
+        VoltTable table = new VoltTable(new VoltTable.ColumnInfo("", VoltType.BIGINT));
+        table.addRow(ucount);
+        return table;
+    }
+
+    private static VoltTable toVoltTable(ResultSet rs) throws SQLException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+
+        // note the index values here carefully
+        VoltTable.ColumnInfo[] columns = new VoltTable.ColumnInfo[rsmd.getColumnCount()];
+        for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+            String colname = rsmd.getColumnLabel(i);
+            String type = rsmd.getColumnTypeName(i);
+            //LOG.fine("Column type: " + type);
+            if (type.equals("VARCHAR"))
+                columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.STRING);
+            else if (type.equals("TINYINT"))
+                columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.TINYINT);
+            else if (type.equals("SMALLINT"))
+                columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.SMALLINT);
+            else if (type.equals("INTEGER"))
+                columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.INTEGER);
+            else if (type.equals("BIGINT"))
+                columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.BIGINT);
+            else if (type.equals("DECIMAL"))
+                columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.DECIMAL);
+            else if (type.equals("FLOAT"))
+                columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.FLOAT);
+            else if (type.equals("TIMESTAMP"))
+                columns[i-1] = new VoltTable.ColumnInfo(colname, VoltType.TIMESTAMP);
+            else
+                throw new ExpectedProcedureException("Trying to create a column in Backend with a (currently) unsupported type: " + type);
+        }
+        VoltTable table = new VoltTable(columns);
+        while (rs.next()) {
+            Object[] row = new Object[table.getColumnCount()];
+            for (int i = 0; i < table.getColumnCount(); i++) {
+                // TODO(evanj): JDBC returns 0 instead of null. Put null into the row?
+                if (table.getColumnType(i) == VoltType.STRING)
+                    row[i] = rs.getString(i + 1);
+                else if (table.getColumnType(i) == VoltType.TINYINT)
+                    row[i] = rs.getByte(i + 1);
+                else if (table.getColumnType(i) == VoltType.SMALLINT)
+                    row[i] = rs.getShort(i + 1);
+                else if (table.getColumnType(i) == VoltType.INTEGER)
+                    row[i] = rs.getInt(i + 1);
+                else if (table.getColumnType(i) == VoltType.BIGINT)
+                    row[i] = rs.getLong(i + 1);
+                else if (table.getColumnType(i) == VoltType.DECIMAL)
+                    row[i] = rs.getBigDecimal(i + 1);
+                else if (table.getColumnType(i) == VoltType.FLOAT)
+                    row[i] = rs.getDouble(i + 1);
+                else if (table.getColumnType(i) == VoltType.TIMESTAMP) {
+                    Timestamp t = rs.getTimestamp(i + 1);
+                    if (t == null) {
+                        row[i] = null;
+                    } else {
+                        // convert from millisecond to microsecond granularity
+                        row[i] = new org.voltdb.types.TimestampType(t.getTime() * 1000);
+                    }
+                } else {
+                    throw new ExpectedProcedureException("Trying to read a (currently) unsupported type from a JDBC resultset.");
+                }
             }
+            table.addRow(row);
         }
-        sqlOut.append(sql, lastIndex, sql.length());
-
-        return runDML(sqlOut.toString());
+        return table;
     }
 
-    private static String sqlEscape(String input) {
-        return "\'" + input.replace("'", "''") + "\'";
+    /**
+     * Convert an error from HSQLDB into the exception that the EE would have thrown
+     * @param e
+     * @return
+     */
+    private static RuntimeException convertException(Exception e) {
+        if (e instanceof ExpectedProcedureException) {
+            return (ExpectedProcedureException)e;
+        }
+        // The real error for a failed batch is chained behind it
+        if (e instanceof BatchUpdateException && ((SQLException)e).getNextException() != null) {
+            e = ((SQLException)e).getNextException();
+        }
+        // glorious hack to determine if the error is a constraint failure
+        if (e instanceof SQLException && e.getMessage() != null && e.getMessage().contains("constraint")) {
+            sqlLog.l7dlog( Level.TRACE, LogKeys.sql_Backend_ConvertingHSQLExtoCFEx.name(), e);
+            final byte messageBytes[] = e.getMessage().getBytes();
+            ByteBuffer b = ByteBuffer.allocate(21 + messageBytes.length);
+            b.putInt(messageBytes.length);
+            b.put(messageBytes);
+            b.put(((SQLException)e).getSQLState().getBytes());
+            b.putLong(0);//Move forward 8 bytes to provide header info for CFE, ConstraintType, TableId
+            b.putInt(0);//Table size is 0
+            b.rewind();
+            return new ConstraintFailureException(b);
+        }
+        sqlLog.l7dlog( Level.TRACE, LogKeys.sql_Backend_DmlError.name(), e);
+        return new ExpectedProcedureException("HSQLDB Backend DML Error ", e);
     }
 
     public void shutdown() {
         try {
+            for (PreparedStatement ps : this.preparedStmts.values()) {
+                try { ps.close(); } catch (SQLException e) {};
+            } // FOR
+            for (PreparedStatement ps : this.insertStmts.values()) {
+                try { ps.close(); } catch (SQLException e) {};
+            } // FOR
+            this.preparedStmts.clear();
+            this.paramTypes.clear();
+            this.insertStmts.clear();
             try {
                 Statement stmt = dbconn.createStatement();
                 stmt.execute("SHUTDOWN;");
@@ -0,0 +1,102 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB Inc.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.sysprocs.SnapshotRegistry;
+import org.voltdb.sysprocs.SnapshotRegistry.Restore;
+import org.voltdb.sysprocs.SnapshotRegistry.RestoreTable;
+
+/**
+ * Per-table progress of the snapshot restores that have run on this host.
+ * Rows are reported while the restore is still in progress.
+ */
+public class SnapshotRestoreStatus extends StatsSource {
+
+    public SnapshotRestoreStatus(String name) {
+        super(name, false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("TABLE", VoltType.STRING));
+        columns.add(new ColumnInfo("PATH", VoltType.STRING));
+        columns.add(new ColumnInfo("NONCE", VoltType.STRING));
+        columns.add(new ColumnInfo("START_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("END_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("CHUNKS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("ROWS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("SIZE", VoltType.BIGINT));
+        columns.add(new ColumnInfo("DURATION", VoltType.FLOAT));
+        columns.add(new ColumnInfo("THROUGHPUT", VoltType.FLOAT));
+        columns.add(new ColumnInfo("ACTIVE_LOADERS", VoltType.INTEGER));
+        columns.add(new ColumnInfo("RESULT", VoltType.STRING));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        RestoreTable t = (RestoreTable) rowKey;
+        long start = t.getTimeStarted();
+        long finish = t.getTimeFinished();
+        long bytes = t.bytes.get();
+        double duration = 0;
+        double throughput = 0;
+        if (start != 0) {
+            duration = ((finish != 0 ? finish : System.currentTimeMillis()) - start) / 1000.0;
+            if (duration > 0) throughput = (bytes / (1024.0 * 1024.0)) / duration;
+        }
+        String result;
+        if (t.getError() != null) {
+            result = "FAILURE";
+        } else if (finish == 0) {
+            result = "IN_PROGRESS";
+        } else {
+            result = "SUCCESS";
+        }
+
+        rowValues[columnNameToIndex.get("TABLE")] = t.name;
+        rowValues[columnNameToIndex.get("PATH")] = t.restore.path;
+        rowValues[columnNameToIndex.get("NONCE")] = t.restore.nonce;
+        rowValues[columnNameToIndex.get("START_TIME")] = start;
+        rowValues[columnNameToIndex.get("END_TIME")] = finish;
+        rowValues[columnNameToIndex.get("CHUNKS")] = t.chunks.get();
+        rowValues[columnNameToIndex.get("ROWS")] = t.rows.get();
+        rowValues[columnNameToIndex.get("SIZE")] = bytes;
+        rowValues[columnNameToIndex.get("DURATION")] = duration;
+        rowValues[columnNameToIndex.get("THROUGHPUT")] = throughput;
+        rowValues[columnNameToIndex.get("ACTIVE_LOADERS")] = t.getActiveLoaders();
+        rowValues[columnNameToIndex.get("RESULT")] = result;
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        List<Object> keys = new LinkedList<Object>();
+        for (Restore r : SnapshotRegistry.getRestoreHistory()) {
+            keys.addAll(r.getTables());
+        } // FOR
+        return (keys.iterator());
+    }
+
+}
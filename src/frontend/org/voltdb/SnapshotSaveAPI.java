@@ -31,9 +31,12 @@ import org.voltdb.catalog.Table;
 import org.voltdb.catalog.Partition;
 import org.voltdb.sysprocs.SnapshotRegistry;
 import org.voltdb.sysprocs.SnapshotSave;
+import org.voltdb.sysprocs.saverestore.SnapshotChangeTracker;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil.SnapshotLink;
 
 import edu.brown.catalog.CatalogUtil;
+import edu.brown.hstore.conf.HStoreConf;
 import edu.brown.hstore.PartitionExecutor.SystemProcedureExecutionContext;
 import edu.brown.utils.CollectionUtil;
 
@@ -203,6 +206,15 @@ public class SnapshotSaveAPI
                             file_nonce,
                             tables.toArray(new Table[0]));
                 
+                // For incremental snapshots, we only write out the tables that have been
+                // modified at this partition since the last snapshot that wrote them.
+                // We are running on the partition's thread, so nothing can write to
+                // the tables between when we grab the version and when the snapshot starts.
+                final int partition_id = context.getPartitionExecutor().getPartitionId();
+                final boolean incremental = HStoreConf.singleton().site.snapshot_incremental;
+                final long version = (incremental ? SnapshotChangeTracker.getVersion(partition_id) : 0);
+                final List<SnapshotLink> links = new ArrayList<SnapshotLink>();
+
                 for (final Table table : SnapshotUtil.getTablesToSave(context.getDatabase()))
                 {
                     String canSnapshot = "SUCCESS";
@@ -211,8 +223,34 @@ public class SnapshotSaveAPI
                         SnapshotUtil.constructFileForTable(table, file_path, file_nonce,
                                               String.valueOf(context.getHost().getId()),                                 
                                               String.valueOf(context.getHStoreSite().getSiteId()), 
-                                              String.valueOf(context.getPartitionExecutor().getPartitionId())
+                                              String.valueOf(partition_id)
                                               );
+
+                    SnapshotChangeTracker.Marker marker = null;
+                    if (incremental) {
+                        SnapshotChangeTracker.Marker prev = SnapshotChangeTracker.getMarker(partition_id, table.getTypeName());
+                        if (prev != null && prev.path.equals(file_path) && prev.exists() &&
+                            SnapshotChangeTracker.isModified(partition_id, table.getRelativeIndex(), prev) == false) {
+                            // Unchanged: link to the snapshot that has the data and remove
+                            // the empty file that the feasibility check may have created
+                            if (saveFilePath.exists() && saveFilePath.length() == 0) {
+                                saveFilePath.delete();
+                            }
+                            links.add(new SnapshotLink(saveFilePath.getName(), prev.nonce));
+                            numTables.decrementAndGet();
+                            LOG.trace("Linking unchanged table " + table.getTypeName() + " at partition " + partition_id + " to " + prev);
+                            result.addRow(Integer.parseInt(context.getSite().getHost().getTypeName().replaceAll("[\\D]", "")),
+                                    hostname,
+                                    context.getHStoreSite().getSiteId(), 
+                                    partition_id,                         
+                                    table.getTypeName(),
+                                    canSnapshot,
+                                    err_msg);
+                            continue;
+                        }
+                        marker = new SnapshotChangeTracker.Marker(file_path, file_nonce, saveFilePath.getName(), version);
+                    }
+                    final SnapshotChangeTracker.Marker markerFinal = marker;
                     SnapshotDataTarget sdt = null;
                     try {
                         sdt =
@@ -239,6 +277,13 @@ public class SnapshotSaveAPI
                                                 sdtFinal.getLastWriteException());
                                     }
                                 });
+                                if (markerFinal != null) {
+                                    if (sdtFinal.getLastWriteException() == null) {
+                                        SnapshotChangeTracker.recordMarker(partition_id, table.getTypeName(), markerFinal);
+                                    } else {
+                                        SnapshotChangeTracker.invalidate(partition_id, table.getTypeName());
+                                    }
+                                }
                                 int tablesLeft = numTables.decrementAndGet();
                                 if (tablesLeft == 0) {
                                     final SnapshotRegistry.Snapshot completed =
@@ -300,6 +345,12 @@ public class SnapshotSaveAPI
                             err_msg);
                 }
 
+                if (!links.isEmpty()) {
+                    synchronized (SnapshotSiteProcessor.m_digestWritten) {
+                        SnapshotUtil.recordSnapshotLinks(file_path, file_nonce, links);
+                    }
+                }
+
                 synchronized (SnapshotSiteProcessor.m_taskListsForSites) {
                     if (!partitionedSnapshotTasks.isEmpty() || !replicatedSnapshotTasks.isEmpty()) {
 
@@ -328,7 +379,6 @@ public class SnapshotSaveAPI
                     }        
                     assert (lowest_partition_id != Integer.MAX_VALUE);
                     
-                    int partition_id = context.getPartitionExecutor().getPartitionId();                                            
                     int index = partition_id - lowest_partition_id;    
                     
                     // Each partition gets a partitioned task
@@ -37,4 +37,7 @@ public enum SysProcSelector {
     ANTICACHE,      // anti-cache manager information
     ANTICACHEEVICTIONS, // anti-cache eviction history
     ANTICACHEACCESS, // anti-cache evicted access history
+    QUERYCACHE,     // partition query result cache information
+    TXNTRACE,       // sampled transaction tracing information
+    SNAPSHOTRESTORE, // per-table snapshot restore progress
 }
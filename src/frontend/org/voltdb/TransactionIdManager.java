@@ -19,10 +19,9 @@ package org.voltdb;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.log4j.Logger;
-
-import edu.brown.hstore.HStore;
+import org.voltdb.utils.EstTime;
 
 /**
  * <p>The TransactionIdManager creates Transaction ids that
@@ -37,9 +36,15 @@ import edu.brown.hstore.HStore;
  * txn ids created at the same time on different machines will be reasonably
  * close in value. Thus transaction ids can be used for a global ordering.</p>
  *
+ * <p>The last id that we handed out is kept packed in a single AtomicLong,
+ * so generating a new id is just a compare-and-set. The time comes from
+ * {@link EstTime} rather than the system clock. If we run out of counter
+ * values within a millisecond, the counter carries over into the timestamp
+ * field and we borrow from the next millisecond instead of spinning.
+ * Likewise if the clock moves backwards, we just keep counting up from the
+ * last id. Either way, every id is strictly larger than the one before it.</p>
  */
 public class TransactionIdManager {
-    private static final Logger LOG = Logger.getLogger(TransactionIdManager.class);
     
     // bit sizes for each of the fields in the 64-bit id
     // note, these add up to 63 bits to make dealing with
@@ -48,8 +53,6 @@ public class TransactionIdManager {
     static final long COUNTER_BITS = 13;
     static final long INITIATORID_BITS = 10;
     
-    static final int DRIFT_CHECK = 5; // ms
-
     // VOLT_EPOCH holds the time in millis since 1/1/2008 at 12am.
     // The current time - VOLT_EPOCH should fit nicely in 40 bits
     // of memory.
@@ -70,25 +73,63 @@ public class TransactionIdManager {
     static final long TIMESTAMP_MAX_VALUE = (1L << TIMESTAMP_BITS) - 1L;
     static final long COUNTER_MAX_VALUE = (1L << COUNTER_BITS) - 1L;
     static final long INITIATORID_MAX_VALUE = (1L << INITIATORID_BITS) - 1L;
+    
+    /**
+     * The amount to add to a txn id to get the next counter value
+     */
+    static final long COUNTER_INCREMENT = 1L << INITIATORID_BITS;
 
     // the local siteid
-    long initiatorId;
-    // the time of the previous txn id generation
-    long lastUsedTime = -1;
-    // the number of txns generated during the same value
-    // for System.currentTimeMillis()
-    long counterValue = 0;
+    final long initiatorId;
 
     // remembers the last txn generated
-    Long lastTxnId = 0l;
+    private final AtomicLong lastTxnId = new AtomicLong(0l);
     
-    long time_delta = 0L;
+    private volatile long time_delta = 0L;
 
+    /**
+     * A contiguous range of txn ids that were reserved with
+     * {@link TransactionIdManager#reserveTransactionIds(int)}.
+     * This is not thread-safe, so only one thread should pull ids out of it.
+     */
+    public static final class Block {
+        private final long first;
+        private final int size;
+        private int offset = 0;
+        
+        private Block(long first, int size) {
+            this.first = first;
+            this.size = size;
+        }
+        /**
+         * Returns true if there are no more txn ids left in this block
+         */
+        public boolean isEmpty() {
+            return (this.offset >= this.size);
+        }
+        /**
+         * Returns the next txn id from this block
+         * or null if the block is empty.
+         */
+        public Long next() {
+            if (this.offset >= this.size) return (null);
+            return (this.first + (this.offset++ * COUNTER_INCREMENT));
+        }
+        public int getSize() {
+            return (this.size);
+        }
+        @Override
+        public String toString() {
+            return String.format("TxnIdBlock[first=%d, size=%d, used=%d]", this.first, this.size, this.offset);
+        }
+    }
+    
     /**
      * Initialize the TransactionIdManager for this site
      * @param initiatorId The siteId of the current site.
      */
     public TransactionIdManager(int initiatorId) {
+        assert(initiatorId <= INITIATORID_MAX_VALUE);
         this.initiatorId = initiatorId;
     }
 
@@ -99,64 +140,39 @@ public class TransactionIdManager {
      * @return The newly generated transaction id.
      */
     public Long getNextUniqueTransactionId() {
-        long currentTime = 0;
-        long currentCounter = 0;
-        
-        synchronized (this) {
-            currentTime = System.currentTimeMillis();
-            if (currentTime == this.lastUsedTime) {
-                // increment the counter for this millisecond
-                currentCounter = ++this.counterValue;
+        return (this.nextIds(1));
+    }
     
-                // handle the case where we've run out of counter values
-                // for this particular millisecond (feels unlikely)
-                if (this.counterValue > COUNTER_MAX_VALUE) {
-                    LOG.warn("TOO MANY TXNS! SPIN LOCK!!!");
-                    // spin until the next millisecond
-                    while (currentTime == this.lastUsedTime)
-                        currentTime = System.currentTimeMillis();
-                    // reset the counter and lastUsedTime for the new millisecond
-                    this.lastUsedTime = currentTime;
-                    currentCounter = this.counterValue = 0;
-                }
-            }
-            else {
-                // reset the counter and lastUsedTime for the new millisecond
-                if (currentTime < this.lastUsedTime) {
-                    LOG.warn(String.format("Initiator time moved backwards from %d to %d by %d ms!!!",
-                                           this.lastUsedTime, currentTime, (this.lastUsedTime - currentTime)));
-                    // if the diff is less than 5 ms, wait a bit
-                    if ((this.lastUsedTime - currentTime) < DRIFT_CHECK) {
-                        int count = 1000;
-                        // note, the loop should stop once lastUsedTime is PASSED, not current
-                        while ((currentTime <= this.lastUsedTime) && (count-- > 0)) {
-                            try {
-                                Thread.sleep(this.lastUsedTime - currentTime + 1);
-                            } catch (InterruptedException e) {}
-                            currentTime = System.currentTimeMillis();
-                        }
-                        // if the loop above ended because it ran too much
-                        if (count < 0) {
-                            LOG.error("H-Store was unable to recover after the system time was externally negatively adusted. " +
-                                      "It is possible that there is a serious system time or NTP error. ");
-                            HStore.crashDB();
-                        }
-                    }
-                    // crash immediately if time has gone backwards by too much
-                    else {
-                        HStore.crashDB();
-                    }
-                }
-                this.lastUsedTime = currentTime;
-                currentCounter = this.counterValue = 0;
+    /**
+     * Reserve a block of consecutive txn ids. The ids in the block are all
+     * larger than any id that was generated before this call and smaller than
+     * any id generated after it. Since the block is handed out all at once,
+     * holding on to it for a long time means that its ids will be older than
+     * the txns that other threads are creating.
+     * @param count The number of txn ids to reserve
+     * @return
+     */
+    public Block reserveTransactionIds(int count) {
+        assert(count > 0) : "Invalid txn id block size " + count;
+        return (new Block(this.nextIds(count), count));
+    }
+    
+    /**
+     * Move the last txn id forward by the given number of counter values
+     * and return the first id in that range.
+     * @param count
+     * @return
+     */
+    private long nextIds(int count) {
+        while (true) {
+            long last = this.lastTxnId.get();
+            long now = makeIdFromComponents(EstTime.currentTimeMillis() + this.time_delta, 0, this.initiatorId);
+            long first = (now > last ? now : last + COUNTER_INCREMENT);
+            long end = first + ((count - 1) * COUNTER_INCREMENT);
+            if (this.lastTxnId.compareAndSet(last, end)) {
+                return (first);
             }
-        } // SYNCH
-
-        Long newTxnId = new Long(makeIdFromComponents(currentTime + this.time_delta,
-                                 currentCounter,
-                                 this.initiatorId));
-        this.lastTxnId = newTxnId;
-        return (newTxnId);
+        } // WHILE
     }
 
     public static long makeIdFromComponents(long ts, long seqNo, long initiatorId) {
@@ -223,11 +239,16 @@ public class TransactionIdManager {
      * @return The last txn id generated.
      */
     public Long getLastTxnId() {
-        return lastTxnId;
+        return lastTxnId.get();
     }
 
+    /**
+     * Get the timestamp embedded in the last txn id generated.
+     * This may be ahead of the actual time if we've borrowed from
+     * future milliseconds.
+     */
     public long getLastUsedTime() {
-        return lastUsedTime;
+        return getTimestampFromTransactionId(lastTxnId.get());
     }
 
     /**
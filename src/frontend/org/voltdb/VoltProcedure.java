@@ -49,6 +49,7 @@ import org.voltdb.exceptions.EvictedTupleAccessException;
 import org.voltdb.exceptions.MispredictionException;
 import org.voltdb.exceptions.SerializableException;
 import org.voltdb.exceptions.ServerFaultException;
+import org.voltdb.sysprocs.saverestore.SnapshotChangeTracker;
 import org.voltdb.types.TimestampType;
 
 import edu.brown.catalog.CatalogUtil;
@@ -588,6 +589,9 @@ public abstract class VoltProcedure implements Poolable {
                     try {
                         Table catalog_tbl = txnState.getAntiCacheMergeTable();
                         this.executor.getExecutionEngine().antiCacheMergeBlocks(catalog_tbl);
+                        if (hstore_conf.site.snapshot_incremental) {
+                            SnapshotChangeTracker.markTablesWritten(this.partitionId, catalog_tbl.getRelativeIndex());
+                        }
                     } finally {
                         if (hstore_conf.site.anticache_profiling) {
                             this.hstore_site.getAntiCacheManager()
@@ -253,6 +253,14 @@ public interface Client {
      */
     public Object[] getInstanceId();
 
+    /**
+     * Retrieve the catalog from the cluster and use it to route new procedure invocations
+     * directly to the site that has their base partition.
+     * @throws IOException
+     * @throws ProcCallException
+     */
+    public void refreshRoutingTable() throws IOException, ProcCallException;
+
     /**
      * Retrieve the build string that was provided by the server on logon
      * @return Volt server build string
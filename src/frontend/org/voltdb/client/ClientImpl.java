@@ -23,23 +23,22 @@ import java.util.Random;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
-import org.voltdb.CatalogContext;
 import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.StoredProcedureInvocationHints;
+import org.voltdb.VoltSystemProcedure;
 import org.voltdb.VoltTable;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.sysprocs.GetCatalog;
 import org.voltdb.utils.DBBPool.BBContainer;
 
-import edu.brown.catalog.CatalogUtil;
 import edu.brown.hstore.HStoreConstants;
 import edu.brown.hstore.Hstoreservice.Status;
 import edu.brown.hstore.conf.HStoreConf;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.profilers.ProfileMeasurement;
-import edu.brown.utils.PartitionEstimator;
 
 /**
  *  A client that connects to one or more nodes in a VoltCluster
@@ -70,12 +69,10 @@ final class ClientImpl implements Client {
     private volatile boolean m_isShutdown = false;
 
     /**
-     * If we have a catalog, then we'll enable client-side hints
+     * If we have a catalog, then we'll enable client-side hints.
+     * This gets replaced whenever we retrieve a new catalog from the cluster.
      */
-    private Catalog m_catalog;
-    private CatalogContext m_catalogContext;
-    private PartitionEstimator m_pEstimator;
-    private int m_partitionSiteXref[];
+    private volatile ClientRoutingTable m_routing;
     private final HStoreConf m_hstoreConf;
     private final ProfileMeasurement m_queueTime = new ProfileMeasurement("queue");
 
@@ -123,11 +120,8 @@ final class ClientImpl implements Client {
         m_hstoreConf = HStoreConf.singleton(true);
 
         if (catalog != null && m_hstoreConf.client.txn_hints) {
-            m_catalog = catalog;
-            m_catalogContext = new CatalogContext(m_catalog);
-            m_pEstimator = new PartitionEstimator(m_catalogContext);
-            m_partitionSiteXref = CatalogUtil.getPartitionSiteXrefArray(m_catalog);
-    }
+            m_routing = new ClientRoutingTable(catalog);
+        }
 
         m_distributer = new Distributer(
                 expectedOutgoingMessageSize,
@@ -152,7 +146,8 @@ final class ClientImpl implements Client {
         }
         String subProgram = "default";
         String subPassword = "password";
-        m_distributer.createConnection(null, host, port, subProgram, subPassword);
+        int site_id = m_distributer.createConnection(null, host, port, subProgram, subPassword);
+        this.checkRoutingTable(site_id);
     }
     
     /**
@@ -171,7 +166,78 @@ final class ClientImpl implements Client {
         }
         final String subProgram = (program == null) ? "" : program;
         final String subPassword = (password == null) ? "" : password;
-        m_distributer.createConnection(site_id, host, port, subProgram, subPassword);
+        int connected_site_id = m_distributer.createConnection(site_id, host, port, subProgram, subPassword);
+        this.checkRoutingTable(connected_site_id);
+    }
+    
+    /**
+     * Retrieve the catalog from the cluster if we don't have one yet or if
+     * we just connected to a site that isn't in our current routing table.
+     * @param site_id
+     * @throws IOException
+     */
+    private void checkRoutingTable(int site_id) throws IOException {
+        if (m_hstoreConf.client.txn_hints == false || m_hstoreConf.client.txn_hints_fetch_catalog == false) {
+            return;
+        }
+        ClientRoutingTable routing = m_routing;
+        if (routing != null && routing.hasSite(site_id)) {
+            return;
+        }
+        try {
+            this.refreshRoutingTable();
+        } catch (ProcCallException ex) {
+            LOG.warn("Failed to retrieve catalog from the cluster. Txn requests may need to be redirected", ex);
+        }
+    }
+    
+    @Override
+    public void refreshRoutingTable() throws IOException, ProcCallException {
+        ClientResponse cr = this.callProcedure(VoltSystemProcedure.procCallName(GetCatalog.class));
+        VoltTable vt = cr.getResults()[0];
+        if (vt.advanceRow() == false) {
+            throw new IOException("No catalog was returned by the cluster");
+        }
+        ClientRoutingTable routing = ClientRoutingTable.fromSerializedCatalog(vt.getString(0));
+        if (debug.val)
+            LOG.debug(String.format("Retrieved new routing table from cluster [partitions=%d]",
+                      routing.getPartitionCount()));
+        m_routing = routing;
+    }
+    
+    /**
+     * Set the base partition for the given invocation and return the id of the site that has it.
+     * Returns null if we don't know where the invocation should be sent.
+     * @param invocation
+     * @param hints
+     * @return
+     */
+    private Integer routeInvocation(StoredProcedureInvocation invocation, StoredProcedureInvocationHints hints) {
+        ClientRoutingTable routing = m_routing;
+        int partition = HStoreConstants.NULL_PARTITION_ID;
+        if (hints != null && hints.basePartition != HStoreConstants.NULL_PARTITION_ID) {
+            partition = hints.basePartition;
+        }
+        if (routing != null) {
+            Procedure catalog_proc = routing.getProcedure(invocation.getProcName());
+            if (catalog_proc != null) {
+                // OPTIMIZATION: If we have the the catalog, then we'll send just 
+                // the procId. This reduces the number of strings that we need to 
+                // allocate on the server side.
+                invocation.setProcedureId(catalog_proc.getId());
+                
+                // OPTIMIZATION: If this isn't a sysproc, then we can tell them
+                // what the base partition for this request will be
+                if (partition == HStoreConstants.NULL_PARTITION_ID && catalog_proc.getSystemproc() == false) {
+                    partition = routing.getBasePartition(invocation);
+                }
+            }
+        }
+        if (partition == HStoreConstants.NULL_PARTITION_ID) {
+            return (null);
+        }
+        invocation.setBasePartition(partition);
+        return (routing != null ? routing.getSiteId(partition) : null);
     }
 
     /**
@@ -208,24 +274,7 @@ final class ClientImpl implements Client {
         final StoredProcedureInvocation invocation =
               new StoredProcedureInvocation(m_handle.getAndIncrement(), procName, parameters);
 
-        Integer site_id = null;
-        if (hints != null && hints.basePartition != HStoreConstants.NULL_PARTITION_ID) {
-            invocation.setBasePartition(hints.basePartition);
-            if (m_partitionSiteXref != null) {
-                site_id = m_partitionSiteXref[hints.basePartition];
-            }
-        }
-        else if (m_catalog != null && procName.startsWith("@") == false) {
-            try {
-                int partition = m_pEstimator.getBasePartition(invocation);
-                if (partition != HStoreConstants.NULL_PARTITION_ID) {
-                    site_id = m_partitionSiteXref[partition];
-                    invocation.setBasePartition(partition);
-                }
-            } catch (Exception ex) {
-                throw new RuntimeException("Failed to estimate base partition for new invocation of '" + procName + "'", ex);
-            }
-        }
+        Integer site_id = this.routeInvocation(invocation, hints);
 
         long start = ProfileMeasurement.getTime();
         m_distributer.queue(
@@ -311,34 +360,7 @@ final class ClientImpl implements Client {
         StoredProcedureInvocation invocation =
             new StoredProcedureInvocation(m_handle.getAndIncrement(), procName, parameters);
 
-        Integer site_id = null;
-        if (m_catalog != null) {
-            Procedure catalog_proc = m_catalogContext.procedures.getIgnoreCase(procName);
-            if (catalog_proc != null) {
-                // OPTIMIZATION: If we have the the catalog, then we'll send just 
-                // the procId. This reduces the number of strings that we need to 
-                // allocate on the server side.
-                invocation.setProcedureId(catalog_proc.getId());
-                
-                // OPTIMIZATION: If this isn't a sysproc, then we can tell them
-                // what the base partition for this request will be
-                if ((hints == null || hints.basePartition == HStoreConstants.NULL_PARTITION_ID) &&
-                    catalog_proc.getSystemproc() == false) {
-                    try {
-                        int partition = m_pEstimator.getBasePartition(invocation);
-                        if (partition != HStoreConstants.NULL_PARTITION_ID) {
-                            site_id = m_partitionSiteXref[partition];
-                            invocation.setBasePartition(partition);
-                        }
-                    } catch (Exception ex) {
-                        throw new RuntimeException("Failed to estimate base partition for new invocation of '" + procName + "'", ex);
-                    }
-                }
-            }
-        }
-        if (hints != null && hints.basePartition != HStoreConstants.NULL_PARTITION_ID) {
-            invocation.setBasePartition(hints.basePartition);
-        }
+        Integer site_id = this.routeInvocation(invocation, hints);
 
         if (m_blockingQueue) {
             long start = ProfileMeasurement.getTime();
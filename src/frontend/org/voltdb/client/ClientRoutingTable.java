@@ -0,0 +1,104 @@
+package org.voltdb.client;
+
+import org.voltdb.CatalogContext;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Procedure;
+
+import edu.brown.catalog.CatalogUtil;
+import edu.brown.hstore.HStoreConstants;
+import edu.brown.utils.PartitionEstimator;
+
+/**
+ * Everything that the client needs to send a txn request directly to the site
+ * that has its base partition: each procedure's partitioning parameter and its type,
+ * how those values are hashed to partitions, and which site has each partition.
+ * This is built from the cluster's catalog, either the one that was given to the
+ * ClientFactory or the one that we get from the cluster with @GetCatalog.
+ * <P>
+ * A ClientRoutingTable is never modified after it is created. When the cluster
+ * changes, the Client just swaps in a new one.
+ * @author pavlo
+ */
+public class ClientRoutingTable {
+
+    private final CatalogContext catalogContext;
+    private final PartitionEstimator p_estimator;
+    private final int partitionSiteXref[];
+
+    public ClientRoutingTable(Catalog catalog) {
+        assert(catalog != null);
+        this.catalogContext = new CatalogContext(catalog);
+        this.p_estimator = new PartitionEstimator(this.catalogContext);
+        this.partitionSiteXref = CatalogUtil.getPartitionSiteXrefArray(catalog);
+    }
+
+    /**
+     * Create a new ClientRoutingTable from the output of @GetCatalog
+     * @param serializedCatalog
+     * @return
+     */
+    public static ClientRoutingTable fromSerializedCatalog(String serializedCatalog) {
+        Catalog catalog = new Catalog();
+        catalog.execute(serializedCatalog);
+        return (new ClientRoutingTable(catalog));
+    }
+
+    public CatalogContext getCatalogContext() {
+        return (this.catalogContext);
+    }
+
+    /**
+     * Returns the Procedure catalog object for the given name or null if it doesn't exist
+     * @param procName
+     * @return
+     */
+    public Procedure getProcedure(String procName) {
+        return (this.catalogContext.procedures.getIgnoreCase(procName));
+    }
+
+    /**
+     * Returns the base partition for the given invocation or
+     * HStoreConstants.NULL_PARTITION_ID if we can't figure it out.
+     * @param invocation
+     * @return
+     */
+    public int getBasePartition(StoredProcedureInvocation invocation) {
+        try {
+            return (this.p_estimator.getBasePartition(invocation));
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to estimate base partition for new invocation of '" +
+                                       invocation.getProcName() + "'", ex);
+        }
+    }
+
+    /**
+     * Returns the id of the site that has the given partition
+     * or null if we don't know about that partition.
+     * @param partition
+     * @return
+     */
+    public Integer getSiteId(int partition) {
+        if (partition == HStoreConstants.NULL_PARTITION_ID ||
+            partition < 0 || partition >= this.partitionSiteXref.length) {
+            return (null);
+        }
+        return (this.partitionSiteXref[partition]);
+    }
+
+    /**
+     * Returns true if the given site has at least one partition in this table
+     * @param site_id
+     * @return
+     */
+    public boolean hasSite(int site_id) {
+        for (int i = 0; i < this.partitionSiteXref.length; i++) {
+            if (this.partitionSiteXref[i] == site_id) return (true);
+        } // FOR
+        return (false);
+    }
+
+    public int getPartitionCount() {
+        return (this.partitionSiteXref.length);
+    }
+}
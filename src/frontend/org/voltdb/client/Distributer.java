@@ -572,7 +572,13 @@ class Distributer {
 //        createConnection(host, program, password, port);
 //    }
 
-    public synchronized void createConnection(Integer site_id, String host, int port, String program, String password) throws UnknownHostException, IOException {
+    /**
+     * Create a new connection to the given host. If no site_id is given, then we will
+     * use the id of the site that the server tells us it is so that we can still send
+     * txn requests directly to it.
+     * @return The id of the site that we connected to
+     */
+    public synchronized int createConnection(Integer site_id, String host, int port, String program, String password) throws UnknownHostException, IOException {
         if (debug.val) {
             LOG.debug(String.format("Creating new connection [site=%s, host=%s, port=%d]",
                       HStoreThreadManager.formatSiteName(site_id), host, port));
@@ -614,18 +620,19 @@ class Distributer {
         m_buildString = (String)connectionStuff[2];
         NodeConnection cxn = new NodeConnection(numbers);
         m_connections.add(cxn);
-        if (site_id != null) {
-            if (debug.val)
-                LOG.debug(String.format("Created connection for Site %s: %s", HStoreThreadManager.formatSiteName(site_id), cxn));
-            synchronized (m_connectionSiteXref) {
-                Collection<NodeConnection> nc = m_connectionSiteXref.get(site_id);
-                if (nc == null) {
-                    nc = new ArrayList<NodeConnection>();
-                    m_connectionSiteXref.put(site_id, nc);
-                }
-                nc.add(cxn);    
-            } // SYNCH
+        if (site_id == null) {
+            site_id = Integer.valueOf((int)numbers[0]);
         }
+        if (debug.val)
+            LOG.debug(String.format("Created connection for Site %s: %s", HStoreThreadManager.formatSiteName(site_id), cxn));
+        synchronized (m_connectionSiteXref) {
+            Collection<NodeConnection> nc = m_connectionSiteXref.get(site_id);
+            if (nc == null) {
+                nc = new ArrayList<NodeConnection>();
+                m_connectionSiteXref.put(site_id, nc);
+            }
+            nc.add(cxn);    
+        } // SYNCH
         
         Connection c = m_network.registerChannel(aChannel, cxn);
         cxn.m_hostname = c.getHostname();
@@ -633,6 +640,7 @@ class Distributer {
         cxn.m_connection = c;
         if (debug.val) 
             LOG.debug("From what I can tell, we have a connection: " + cxn);
+        return (site_id);
     }
 
 //    private HashMap<String, Long> reportedSizes = new HashMap<String, Long>();
@@ -665,7 +673,7 @@ class Distributer {
         throws NoConnectionsException {
         NodeConnection cxn = null;
         boolean backpressure = true;
-        long now = System.currentTimeMillis();
+        long now = IntendedStartTime.get(System.currentTimeMillis());
         
         final int totalConnections = m_connections.size();
 
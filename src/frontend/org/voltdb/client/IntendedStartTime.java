@@ -0,0 +1,53 @@
+package org.voltdb.client;
+
+/**
+ * Lets an open-loop load generator tell the client library when it was
+ * supposed to send the next request. If a time is set, then the Distributer
+ * measures the client roundtrip of every request that the current thread queues
+ * from that time instead of from when the request was actually queued. This means that
+ * any time that the request spent waiting for the generator to catch up or for
+ * backpressure to clear is included in its latency.
+ * @author pavlo
+ */
+public final class IntendedStartTime {
+
+    private static final long NULL_TIME = -1;
+
+    private static final ThreadLocal<long[]> CACHE = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return (new long[]{ NULL_TIME });
+        }
+    };
+
+    private IntendedStartTime() {
+        // Nothing
+    }
+
+    /**
+     * Set the time (in milliseconds) that the next requests queued
+     * by the current thread were supposed to be sent.
+     * @param timestamp
+     */
+    public static void set(long timestamp) {
+        CACHE.get()[0] = timestamp;
+    }
+
+    /**
+     * Go back to measuring latencies from when requests are queued
+     */
+    public static void clear() {
+        CACHE.get()[0] = NULL_TIME;
+    }
+
+    /**
+     * Return the intended start time for the current thread if one is set
+     * and it is not after the given actual time. Otherwise return the actual time.
+     * @param now
+     * @return
+     */
+    static long get(long now) {
+        long timestamp = CACHE.get()[0];
+        return (timestamp != NULL_TIME && timestamp < now ? timestamp : now);
+    }
+}
@@ -0,0 +1,289 @@
+package org.voltdb.client;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.voltdb.CatalogContext;
+import org.voltdb.StoredProcedureInvocationHints;
+import org.voltdb.VoltSystemProcedure;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Table;
+import org.voltdb.sysprocs.LoadMultipartitionTable;
+import org.voltdb.sysprocs.LoadPartitionTable;
+
+import edu.brown.catalog.CatalogUtil;
+import edu.brown.hstore.Hstoreservice.Status;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.utils.PartitionEstimator;
+
+/**
+ * Client-side bulk loader that splits VoltTables up by partition before they are
+ * sent to the database. Each per-partition chunk is loaded with a single-partition
+ * @LoadPartitionTable txn that is sent directly to the site that owns that partition,
+ * and many of those txns can be in flight at the same time. This avoids having every
+ * batch of rows go through @LoadMultipartitionTable, which has to lock the entire cluster.
+ * <P>
+ * Replicated tables and tables with a vertical partition are still loaded with
+ * @LoadMultipartitionTable.
+ * <P>
+ * Rows are buffered per partition until a chunk is big enough, so callers have
+ * to invoke drain() when they are done to send the leftovers and wait for everything
+ * to be acknowledged.
+ * @author pavlo
+ */
+public class PartitionedBulkLoader {
+    private static final Logger LOG = Logger.getLogger(PartitionedBulkLoader.class);
+    private static final LoggerBoolean debug = new LoggerBoolean();
+    static {
+        LoggerUtil.attachObserver(LOG, debug);
+    }
+
+    /**
+     * The default number of bytes that we will put in each per-partition chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 512 * 1024; // 512KB
+
+    /**
+     * The number of times that we will resend a chunk if it gets rejected
+     */
+    private static final int MAX_TRIES = 3;
+
+    private static final String PARTITION_PROC = VoltSystemProcedure.procCallName(LoadPartitionTable.class);
+    private static final String MULTIPARTITION_PROC = VoltSystemProcedure.procCallName(LoadMultipartitionTable.class);
+
+    private final Client client;
+    private final CatalogContext catalogContext;
+    private final PartitionEstimator p_estimator;
+    private final int maxInFlight;
+    private final int chunkSize;
+
+    /**
+     * Permits for the number of load txns that we can have outstanding
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * The rows for each table that have not been sent yet, indexed by partition
+     */
+    private final Map<Table, VoltTable[]> pending = new HashMap<Table, VoltTable[]>();
+
+    /**
+     * Requests that were rejected and need to be sent again.
+     * These are added by the client's callback threads.
+     */
+    private final ConcurrentLinkedQueue<LoadRequest> retries = new ConcurrentLinkedQueue<LoadRequest>();
+
+    private final AtomicLong rowsLoaded = new AtomicLong(0);
+    private final AtomicLong txnsSent = new AtomicLong(0);
+
+    /**
+     * The first load txn that failed
+     */
+    private volatile ClientResponse error = null;
+
+    /**
+     * A single load txn that we've sent to the cluster
+     */
+    private class LoadRequest implements ProcedureCallback {
+        private final String procName;
+        private final StoredProcedureInvocationHints hints;
+        private final Object params[];
+        private final int rowCount;
+        private int tries = 0;
+
+        private LoadRequest(String procName, int partition, int rowCount, Object...params) {
+            this.procName = procName;
+            this.params = params;
+            this.rowCount = rowCount;
+            if (partition >= 0) {
+                this.hints = new StoredProcedureInvocationHints();
+                this.hints.basePartition = partition;
+            } else {
+                this.hints = null;
+            }
+        }
+
+        @Override
+        public void clientCallback(ClientResponse cr) {
+            if (cr.getStatus() == Status.OK) {
+                rowsLoaded.addAndGet(this.rowCount);
+            }
+            else if (cr.getStatus() == Status.ABORT_REJECT && this.tries < MAX_TRIES) {
+                if (debug.val)
+                    LOG.warn(String.format("%s request with %d rows was rejected. Going to try again",
+                             this.procName, this.rowCount));
+                retries.add(this);
+            }
+            else if (error == null) {
+                LOG.warn(String.format("%s request with %d rows failed: %s",
+                         this.procName, this.rowCount, cr.getStatusString()));
+                error = cr;
+            }
+            // This has to come last so that drain() sees our retry
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Constructor
+     * @param client
+     * @param catalogContext
+     * @param maxInFlight The maximum number of load txns that can be outstanding at a time
+     * @param chunkSize The number of bytes to buffer for each partition before its rows are sent
+     */
+    public PartitionedBulkLoader(Client client, CatalogContext catalogContext, int maxInFlight, int chunkSize) {
+        assert(client != null);
+        assert(catalogContext != null);
+        this.client = client;
+        this.catalogContext = catalogContext;
+        this.p_estimator = new PartitionEstimator(catalogContext);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.inFlight = new Semaphore(this.maxInFlight);
+    }
+
+    public PartitionedBulkLoader(Client client, CatalogContext catalogContext, int maxInFlight) {
+        this(client, catalogContext, maxInFlight, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Queue the rows in the given VoltTable to be loaded into the given table.
+     * This may block if there are too many load txns outstanding.
+     * @param tableName
+     * @param vt
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public synchronized void load(String tableName, VoltTable vt) throws IOException, InterruptedException {
+        assert(vt != null) : "Null VoltTable for '" + tableName + "'";
+        if (vt.getRowCount() == 0) return;
+        this.processRetries();
+
+        Table catalog_tbl = this.catalogContext.getTableByName(tableName);
+        if (catalog_tbl == null ||
+            catalog_tbl.getIsreplicated() ||
+            CatalogUtil.getVerticalPartition(catalog_tbl) != null) {
+            // Let the cluster sort these guys out
+            this.send(new LoadRequest(MULTIPARTITION_PROC, -1, vt.getRowCount(), tableName, vt));
+            return;
+        }
+
+        VoltTable chunks[] = this.pending.get(catalog_tbl);
+        if (chunks == null) {
+            chunks = new VoltTable[this.catalogContext.numberOfPartitions];
+            this.pending.put(catalog_tbl, chunks);
+        }
+        vt.resetRowPosition();
+        while (vt.advanceRow()) {
+            int partition = -1;
+            try {
+                partition = this.p_estimator.getTableRowPartition(catalog_tbl, vt);
+            } catch (Exception ex) {
+                throw new RuntimeException("Failed to calculate partition for " + catalog_tbl.getName() + " row", ex);
+            }
+            if (chunks[partition] == null) {
+                chunks[partition] = vt.clone(this.chunkSize);
+            }
+            chunks[partition].add(vt);
+            if (chunks[partition].getUnderlyingBufferSize() >= this.chunkSize) {
+                this.sendChunk(catalog_tbl, partition, chunks[partition]);
+                chunks[partition] = null;
+            }
+        } // WHILE
+    }
+
+    /**
+     * Send all of the rows that are still buffered for every partition
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public synchronized void flush() throws IOException, InterruptedException {
+        for (Map.Entry<Table, VoltTable[]> e : this.pending.entrySet()) {
+            VoltTable chunks[] = e.getValue();
+            for (int partition = 0; partition < chunks.length; partition++) {
+                if (chunks[partition] == null) continue;
+                this.sendChunk(e.getKey(), partition, chunks[partition]);
+                chunks[partition] = null;
+            } // FOR
+        } // FOR
+    }
+
+    /**
+     * Send all buffered rows and then block until every load txn has completed.
+     * If any of them failed, then the first failure is thrown.
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws ProcCallException
+     */
+    public synchronized void drain() throws IOException, InterruptedException, ProcCallException {
+        this.flush();
+        while (true) {
+            this.processRetries();
+            // Once we have all of the permits there is nothing left outstanding
+            this.inFlight.acquire(this.maxInFlight);
+            this.inFlight.release(this.maxInFlight);
+            if (this.retries.isEmpty()) break;
+        } // WHILE
+
+        ClientResponse cr = this.error;
+        if (cr != null) {
+            this.error = null;
+            throw new ProcCallException(cr, cr.getStatusString(), cr.getException());
+        }
+    }
+
+    private void sendChunk(Table catalog_tbl, int partition, VoltTable chunk) throws IOException, InterruptedException {
+        if (debug.val)
+            LOG.debug(String.format("Sending %d %s rows to partition %d",
+                      chunk.getRowCount(), catalog_tbl.getName(), partition));
+        this.send(new LoadRequest(PARTITION_PROC, partition, chunk.getRowCount(),
+                                  partition, catalog_tbl.getName(), chunk));
+    }
+
+    private void processRetries() throws IOException, InterruptedException {
+        LoadRequest request = null;
+        while ((request = this.retries.poll()) != null) {
+            this.send(request);
+        } // WHILE
+    }
+
+    private void send(LoadRequest request) throws IOException, InterruptedException {
+        request.tries++;
+        this.inFlight.acquire();
+        boolean queued = false;
+        try {
+            while ((queued = this.client.callProcedure(request, request.procName, request.hints, request.params)) == false) {
+                this.client.backpressureBarrier();
+            } // WHILE
+        } finally {
+            if (queued == false) this.inFlight.release();
+        }
+        this.txnsSent.incrementAndGet();
+    }
+
+    // ----------------------------------------------------------------------------
+    // STATISTICS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * The number of rows that the cluster has acknowledged
+     */
+    public long getRowsLoaded() {
+        return (this.rowsLoaded.get());
+    }
+    /**
+     * The number of load txns that we've sent (including retries)
+     */
+    public long getTransactionsSent() {
+        return (this.txnsSent.get());
+    }
+    public int getMaxInFlight() {
+        return (this.maxInFlight);
+    }
+}
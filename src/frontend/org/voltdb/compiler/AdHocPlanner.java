@@ -0,0 +1,363 @@
+package org.voltdb.compiler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+import org.hsqldb.HSQLInterface;
+import org.hsqldb.HSQLInterface.HSQLParseException;
+import org.voltdb.CatalogContext;
+import org.voltdb.planner.CompiledPlan;
+import org.voltdb.planner.CompiledPlan.Fragment;
+import org.voltdb.planner.QueryPlanner;
+import org.voltdb.planner.TrivialCostModel;
+import org.voltdb.plannodes.PlanNodeList;
+import org.voltdb.utils.Encoder;
+
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.utils.ThreadUtil;
+
+/**
+ * Plans ad hoc SQL inside of the HStoreSite's JVM using the QueryPlanner directly
+ * against the site's CatalogContext. This replaces the forked PlannerTool process,
+ * so we no longer have to ship the serialized catalog to another JVM and then parse
+ * the plans back out of its stdout.
+ * <P>
+ * Each statement is planned on a separate worker thread. If a statement takes longer
+ * than the timeout, then we give up on it and throw away the worker thread and its
+ * HSQLDB instance. They get created again for the next statement.
+ * <P>
+ * Cancelling a stuck planner does not actually stop it, and the QueryPlanner keeps
+ * static state (the plan node ids in PlanAssembler and the PlannerContext singleton)
+ * that is not safe to touch from more than one thread. So all planning in the JVM
+ * is serialized on a single lock that the worker holds until it is done, even if we
+ * already gave up on it. We also won't start a new worker while there are
+ * {@link #MAX_ABANDONED_WORKERS} abandoned ones that are still running.
+ * @author pavlo
+ */
+public class AdHocPlanner {
+    private static final Logger LOG = Logger.getLogger(AdHocPlanner.class);
+    private static final LoggerBoolean debug = new LoggerBoolean();
+    static {
+        LoggerUtil.attachObserver(LOG, debug);
+    }
+
+    /**
+     * The max number of worker threads that we gave up on that can
+     * still be running before we stop planning new statements
+     */
+    public static final int MAX_ABANDONED_WORKERS = 1;
+
+    /**
+     * Only one worker thread in the JVM can be inside of the QueryPlanner at a time
+     */
+    static final ReentrantLock PLANNER_LOCK = new ReentrantLock();
+
+    /**
+     * The output of planning a single ad hoc statement.
+     * The fragments are the planner's objects. They are only converted
+     * to JSON when they need to be sent down to the EE.
+     */
+    public static class Result {
+        /** The fragment that is executed at the base partition */
+        Fragment onePlan = null;
+        /** The fragment that is executed at every partition */
+        Fragment allPlan = null;
+        String errors = null;
+        boolean replicatedDML = false;
+
+        public Fragment getOnePlan() {
+            return (this.onePlan);
+        }
+        public Fragment getAllPlan() {
+            return (this.allPlan);
+        }
+        public String getErrors() {
+            return (this.errors);
+        }
+        public boolean isReplicatedDML() {
+            return (this.replicatedDML);
+        }
+        public String getOnePlanJSON() {
+            return (toJSONString(this.onePlan));
+        }
+        public String getAllPlanJSON() {
+            return (toJSONString(this.allPlan));
+        }
+        private static String toJSONString(Fragment frag) {
+            if (frag == null) return (null);
+            return (new PlanNodeList(frag.planGraph).toJSONString());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("RESULT {\n");
+            sb.append("  ONE: ").append(onePlan == null ? "null" : getOnePlanJSON()).append("\n");
+            sb.append("  ALL: ").append(allPlan == null ? "null" : getAllPlanJSON()).append("\n");
+            sb.append("  ERR: ").append(errors == null ? "null" : errors).append("\n");
+            sb.append("  RTD: ").append(replicatedDML ? "true" : "false").append("\n");
+            sb.append("}");
+            return sb.toString();
+        }
+    }
+
+    private final CatalogContext catalogContext;
+    private final long timeout;
+    private final String threadName;
+
+    /**
+     * The thread that we plan on. This gets thrown away if a stmt times out.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Worker threads that timed out but have not exited yet
+     */
+    private final List<ExecutorService> abandoned = new ArrayList<ExecutorService>();
+
+    /**
+     * The HSQLDB instance loaded with the database's schema.
+     * Every worker thread gets its own, so it goes away with the thread.
+     */
+    private final ThreadLocal<HSQLInterface> hsql = new ThreadLocal<HSQLInterface>();
+
+    private int timeoutCounter = 0;
+
+    /**
+     * Constructor
+     * @param catalogContext The catalog to plan queries against
+     * @param timeout How long (in milliseconds) to wait for a stmt to be planned
+     * @param threadName The name of the worker thread
+     */
+    public AdHocPlanner(CatalogContext catalogContext, long timeout, String threadName) {
+        assert(catalogContext != null);
+        this.catalogContext = catalogContext;
+        this.timeout = timeout;
+        this.threadName = threadName;
+    }
+
+    public CatalogContext getCatalogContext() {
+        return (this.catalogContext);
+    }
+
+    /**
+     * Returns the number of stmts that we gave up on because they took too long
+     */
+    public synchronized int getTimeoutCount() {
+        return (this.timeoutCounter);
+    }
+
+    /**
+     * Returns the number of worker threads that we gave up on that are still running
+     */
+    public synchronized int getAbandonedCount() {
+        this.pruneAbandoned();
+        return (this.abandoned.size());
+    }
+
+    /**
+     * Plan the given SQL statement. This will block until the plan is
+     * generated or the timeout is reached.
+     * @param sql
+     * @return
+     */
+    public synchronized Result planSql(String sql) {
+        if ((sql == null) || (sql.trim().length() == 0)) {
+            Result result = new Result();
+            result.errors = "Can't plan empty or null SQL.";
+            return (result);
+        }
+        final String stmt = sql.trim();
+
+        // Don't pile up more threads behind workers that won't die
+        if (this.waitForAbandoned() == false) {
+            LOG.warn(String.format("Not planning ad hoc SQL because %d earlier statement(s) are still " +
+                                   "stuck in the planner.\n%s", this.abandoned.size(), stmt));
+            Result result = new Result();
+            result.errors = "The planner is still busy with an earlier SQL statement that timed out";
+            return (result);
+        }
+
+        if (this.executor == null) {
+            this.executor = Executors.newSingleThreadExecutor(ThreadUtil.getThreadFactory(this.threadName, null));
+        }
+        Future<Result> future = this.executor.submit(new Callable<Result>() {
+            @Override
+            public Result call() throws Exception {
+                // If we get interrupted while waiting, then nobody wants this plan anymore
+                PLANNER_LOCK.lockInterruptibly();
+                try {
+                    return (plan(stmt));
+                } finally {
+                    PLANNER_LOCK.unlock();
+                }
+            }
+        });
+
+        try {
+            if (this.timeout > 0) {
+                return (future.get(this.timeout, TimeUnit.MILLISECONDS));
+            }
+            return (future.get());
+        } catch (TimeoutException ex) {
+            LOG.error(String.format("Gave up planning ad hoc SQL after %d ms. The planner will be " +
+                                    "restarted for the next statement.\n%s", this.timeout, stmt));
+            future.cancel(true);
+            this.reset();
+            this.timeoutCounter++;
+            Result result = new Result();
+            result.errors = String.format("Timed out after %d ms while planning SQL statement", this.timeout);
+            return (result);
+        } catch (ExecutionException ex) {
+            Throwable cause = (ex.getCause() != null ? ex.getCause() : ex);
+            LOG.warn("Unexpected error while planning ad hoc SQL", cause);
+            Result result = new Result();
+            result.errors = (cause.getMessage() != null ? cause.getMessage() : "UNKNOWN PLANNING ERROR");
+            return (result);
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            this.reset();
+            Thread.currentThread().interrupt();
+            Result result = new Result();
+            result.errors = "Interrupted while planning SQL statement";
+            return (result);
+        }
+    }
+
+    /**
+     * Throw away the worker thread along with its HSQLDB instance.
+     * If the worker thread is stuck then we can't do anything about it
+     * other than interrupt it. It's a daemon thread so it won't keep
+     * the JVM alive. We keep track of it until it exits.
+     */
+    public synchronized void reset() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+            this.abandoned.add(this.executor);
+            this.executor = null;
+        }
+        this.pruneAbandoned();
+    }
+
+    /**
+     * Remove the abandoned workers that have exited
+     */
+    private void pruneAbandoned() {
+        Iterator<ExecutorService> it = this.abandoned.iterator();
+        while (it.hasNext()) {
+            if (it.next().isTerminated()) it.remove();
+        } // WHILE
+    }
+
+    /**
+     * If we are at the limit of abandoned workers, then wait up to the timeout
+     * for one of them to exit. Returns false if they are all still running.
+     * @return
+     */
+    private boolean waitForAbandoned() {
+        this.pruneAbandoned();
+        if (this.abandoned.size() < MAX_ABANDONED_WORKERS) return (true);
+
+        ExecutorService oldest = this.abandoned.get(0);
+        try {
+            if (this.timeout > 0) {
+                oldest.awaitTermination(this.timeout, TimeUnit.MILLISECONDS);
+            } else {
+                oldest.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return (false);
+        }
+        this.pruneAbandoned();
+        return (this.abandoned.size() < MAX_ABANDONED_WORKERS);
+    }
+
+    /**
+     * Stop the worker thread for good
+     */
+    public void shutdown() {
+        this.reset();
+    }
+
+    // ----------------------------------------------------------------------------
+    // WORKER THREAD METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Load the database's schema into a new HSQLDB instance
+     * @return
+     * @throws HSQLParseException
+     */
+    private HSQLInterface loadHSQL() throws HSQLParseException {
+        HSQLInterface hsql = HSQLInterface.loadHsqldb();
+        String ddl = Encoder.hexDecodeToString(this.catalogContext.database.getSchema());
+        for (String command : ddl.split(";")) {
+            command = command.trim();
+            if (command.length() == 0) continue;
+            hsql.runDDLCommand(command);
+        } // FOR
+        if (debug.val) LOG.debug("Loaded HSQLDB for ad hoc planning");
+        return (hsql);
+    }
+
+    /**
+     * Plan the SQL statement on the current worker thread.
+     * <B>Note:</B> The caller must be holding the PLANNER_LOCK
+     * @param sql
+     * @return
+     */
+    Result plan(String sql) {
+        Result result = new Result();
+
+        // We only need to load HSQLDB once per worker thread
+        HSQLInterface hsql = this.hsql.get();
+        if (hsql == null) {
+            try {
+                hsql = this.loadHSQL();
+            } catch (HSQLParseException ex) {
+                result.errors = "Error creating hsql: " + ex.getMessage();
+                return (result);
+            }
+            this.hsql.set(hsql);
+        }
+
+        QueryPlanner planner = new QueryPlanner(this.catalogContext.cluster,
+                                                this.catalogContext.database,
+                                                hsql, new DatabaseEstimates(), false, true);
+        CompiledPlan plan = null;
+        try {
+            plan = planner.compilePlan(new TrivialCostModel(), sql, "AdHocPlanner", "AdHocPlannerProc", false, null);
+        } catch (Throwable ex) {
+            result.errors = (ex.getMessage() != null ? ex.getMessage() : "UNKNOWN PLANNING ERROR");
+            return (result);
+        }
+        if (plan == null) {
+            String msg = planner.getErrorMessage();
+            result.errors = (msg != null ? msg : "UNKNOWN PLANNING ERROR");
+            return (result);
+        }
+        assert(plan.fragments.size() <= 2);
+
+        for (Fragment frag : plan.fragments) {
+            if (frag.multiPartition) {
+                result.allPlan = frag;
+            } else {
+                result.onePlan = frag;
+            }
+        } // FOR
+        result.replicatedDML = plan.replicatedTableDML;
+        return (result);
+    }
+}
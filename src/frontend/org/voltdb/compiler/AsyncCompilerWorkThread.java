@@ -32,6 +32,7 @@ import org.voltdb.utils.DumpManager;
 import org.voltdb.utils.Encoder;
 
 import edu.brown.hstore.HStoreSite;
+import edu.brown.hstore.conf.HStoreConf;
 import edu.brown.hstore.txns.LocalTransaction;
 import edu.brown.interfaces.Shutdownable;
 import edu.brown.logging.LoggerUtil;
@@ -47,8 +48,7 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
 
     LinkedBlockingQueue<AsyncCompilerWork> m_work = new LinkedBlockingQueue<AsyncCompilerWork>();
     final ArrayDeque<AsyncCompilerResult> m_finished = new ArrayDeque<AsyncCompilerResult>();
-    //HSQLInterface m_hsql;
-    PlannerTool m_ptool;
+    AdHocPlanner m_planner;
     int counter = 0;
     final int m_siteId;
     boolean m_isLoaded = false;
@@ -63,8 +63,7 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
     long m_currentDumpTimestamp = 0;
 
     public AsyncCompilerWorkThread(CatalogContext context, int siteId) {
-        m_ptool = null;
-        //m_hsql = null;
+        m_planner = null;
         m_siteId = siteId;
         m_context = context;
 
@@ -75,8 +74,7 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
     }
     
     public AsyncCompilerWorkThread(HStoreSite hStoreSite, int siteId) {
-        m_ptool = null;
-        //m_hsql = null;
+        m_planner = null;
         m_siteId = siteId;
         //m_context = context;
         m_hStoreSite = hStoreSite;
@@ -88,24 +86,11 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
     }
 
     public synchronized void ensureLoadedPlanner() {
-        // if the process was created but is dead, clear the placeholder
-        if ((m_ptool != null) && (m_ptool.expensiveIsRunningCheck() == false)) {
-            LOG.error("Planner process died on its own. It will be restarted if needed.");
-            m_ptool = null;
-        }
-        // if no placeholder, create a new plannertool
-        if (m_ptool == null) {
-            m_ptool = PlannerTool.createPlannerToolProcess(m_hStoreSite.getCatalogContext().catalog.serialize());
-        }
-    }
-
-    public void verifyEverthingIsKosher() {
-        if (m_ptool != null) {
-            // check if the planner process has been blocked for 2 seconds
-            if (m_ptool.perhapsIsHung(5000)) {
-                LOG.error("Was forced to kill the planner process due to a timeout. It will be restarted if needed.");
-                m_ptool.kill();
-            }
+        // if no planner, create a new one against the current catalog
+        if (m_planner == null) {
+            CatalogContext context = (m_hStoreSite != null ? m_hStoreSite.getCatalogContext() : m_context);
+            int timeout = HStoreConf.singleton().site.exec_adhoc_planner_timeout;
+            m_planner = new AdHocPlanner(context, timeout, getName() + " Worker");
         }
     }
 
@@ -202,11 +187,11 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
                 if (m_shouldUpdateCatalog.compareAndSet(true, false)) {
                 	//TODO: @AdHoc for hstoresite, how to switch catalogcontext for hstoresite?
                     m_context = VoltDB.instance().getCatalogContext();
-                    // kill the planner process which has an outdated catalog
+                    // throw away the planner which has an outdated catalog
                     // it will get created again for the next stmt
-                    if (m_ptool != null) {
-                        m_ptool.kill();
-                        m_ptool = null;
+                    if (m_planner != null) {
+                        m_planner.shutdown();
+                        m_planner = null;
                     }
                 }
 
@@ -228,8 +213,8 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
                 e.printStackTrace();
             }
         }
-        if (m_ptool != null)
-            m_ptool.kill();
+        if (m_planner != null)
+            m_planner.shutdown();
     }
 
     public void notifyShouldUpdateCatalog() {
@@ -286,16 +271,17 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
         try {
             ensureLoadedPlanner();
 
-            PlannerTool.Result result = m_ptool.planSql(work.sql);
+            AdHocPlanner.Result result = m_planner.planSql(work.sql);
 
-            plannedStmt.aggregatorFragment = result.onePlan;
-            plannedStmt.collectorFragment = result.allPlan;
+            // the EE only takes JSON plans
+            plannedStmt.aggregatorFragment = result.getOnePlanJSON();
+            plannedStmt.collectorFragment = result.getAllPlanJSON();
 
-            plannedStmt.isReplicatedTableDML = result.replicatedDML;
+            plannedStmt.isReplicatedTableDML = result.isReplicatedDML();
             plannedStmt.sql = work.sql;
-            plannedStmt.errorMsg = result.errors;
+            plannedStmt.errorMsg = result.getErrors();
             if (plannedStmt.errorMsg != null)
-                LOG.error("PlannerTool Error: " + result.errors);
+                LOG.error("AdHocPlanner Error: " + result.getErrors());
         }
         catch (Exception e) {
             String msg = "Unexpected Ad Hoc Planning Error";
@@ -265,15 +265,29 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         final VoltTable vt =  m_dependencyTracker.nextDependency(dependencyId);
         if (vt != null) {
             ByteBuffer buffer = vt.getDirectDataReference();
+            byte bytes[] = null;
+            if (buffer.hasArray()) {
+                bytes = buffer.array();
+            }
+            // Tables that we got from a remote site are backed by the read-only
+            // buffer of the ByteString that they came in. JNITopend::loadNextDependency()
+            // can only read from a byte array, so we have to copy them out before we can
+            // pass them down. This is the same copy that we used to make when we
+            // deserialized the table, it just happens here now.
+            else {
+                bytes = new byte[buffer.position()];
+                ByteBuffer dup = buffer.duplicate();
+                dup.position(0);
+                dup.get(bytes);
+            }
             if (debug.val) LOG.debug(String.format("Passing Dependency %d to EE [rows=%d, cols=%d, bytes=%d/%d]\n%s",
                                            dependencyId,
                                            vt.getRowCount(),
                                            vt.getColumnCount(),
                                            vt.getUnderlyingBufferSize(),
-                                           buffer.array().length,
+                                           bytes.length,
                                            vt.toString()));
-            assert(buffer.hasArray());
-            return (buffer.array());
+            return (bytes);
         }
         // Note that we will hit this after retrieving all the VoltTables for the given dependencyId
         // It does not mean that there were no VoltTables at all, it just means that 
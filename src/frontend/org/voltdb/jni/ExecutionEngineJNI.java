@@ -494,7 +494,14 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         final long txnId, final long lastCommittedTxnId,
         final long undoToken, boolean allowExport) throws EEException
     {
-        byte[] serialized_table = table.getTableDataReference().array();
+        ByteBuffer buffer = table.getTableDataReference();
+        byte[] serialized_table = null;
+        if (buffer.hasArray()) {
+            serialized_table = buffer.array();
+        } else {
+            serialized_table = new byte[buffer.limit()];
+            buffer.get(serialized_table);
+        }
         if (trace.val)
             LOG.trace(String.format("Passing table into EE [id=%d, bytes=%s]",
                       tableId, serialized_table.length));
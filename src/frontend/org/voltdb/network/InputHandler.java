@@ -19,6 +19,7 @@ package org.voltdb.network;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 public interface InputHandler {
 
@@ -54,6 +55,16 @@ public interface InputHandler {
      */
     void handleMessage(ByteBuffer message, Connection c);
 
+    /**
+     * Handle all of the messages that were retrieved from a single read
+     * of the connection. The list is reused by the caller, so the handler
+     * must not hold on to it after returning.
+     *
+     * @param messages
+     * @param c
+     */
+    void handleMessages(List<ByteBuffer> messages, Connection c);
+
     /**
      * Notify the input handler that the Connection will start receiving work
      * soon (Channel is registering with Selector)
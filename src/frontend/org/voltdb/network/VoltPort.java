@@ -25,6 +25,7 @@ import java.net.SocketException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 
 import org.apache.log4j.Logger;
 import org.voltdb.utils.DBBPool;
@@ -72,6 +73,8 @@ public class VoltPort implements Callable<VoltPort>, Connection
     private NIOReadStream m_readStream;
     private NIOWriteStream m_writeStream;
     private AtomicLong m_messagesRead = new AtomicLong(0);
+    /** The messages retrieved from the last read. Only touched by the thread running call() */
+    private final ArrayList<ByteBuffer> m_messageBatch = new ArrayList<ByteBuffer>();
     private long m_lastMessagesRead = 0;
     final int m_expectedOutgoingMessageSize;
     final String m_remoteHost;
@@ -140,11 +143,18 @@ public class VoltPort implements Callable<VoltPort>, Connection
 
                     /*
                      * Process all the buffered bytes and retrieve as many messages as possible
-                     * and pass them off to the input handler.
+                     * and pass them off to the input handler all at once.
                      */
                     while ((message = m_handler.retrieveNextMessage( this )) != null) {
-                        m_handler.handleMessage( message, this);
-                        m_messagesRead.incrementAndGet();
+                        m_messageBatch.add(message);
+                    }
+                    if (m_messageBatch.isEmpty() == false) {
+                        try {
+                            m_handler.handleMessages( m_messageBatch, this);
+                            m_messagesRead.addAndGet(m_messageBatch.size());
+                        } finally {
+                            m_messageBatch.clear();
+                        }
                     }
                 }
             }
@@ -20,6 +20,7 @@ package org.voltdb.network;
 import java.util.concurrent.atomic.AtomicLong;
 import java.nio.ByteBuffer;
 import java.io.IOException;
+import java.util.List;
 
 public abstract class VoltProtocolHandler implements InputHandler {
     /** VoltProtocolPorts each have a unique id */
@@ -71,6 +72,16 @@ public abstract class VoltProtocolHandler implements InputHandler {
         return result;
     }
 
+    /**
+     * By default we just hand each message off to handleMessage() one at a time
+     */
+    @Override
+    public void handleMessages(List<ByteBuffer> messages, Connection c) {
+        for (int i = 0, cnt = messages.size(); i < cnt; i++) {
+            handleMessage(messages.get(i), c);
+        }
+    }
+
     @Override
     public void started(Connection c) {
     }
@@ -99,6 +99,10 @@ public class AdHoc extends VoltSystemProcedure {
             ts.markExecNotReadOnly(this.partitionId);
             ts.markExecutedWork(this.partitionId);
             
+            // We don't know which tables this query touches, so we have to assume
+            // that it could have modified any of them.
+            executor.markUnknownTablesWritten(ts);
+            
             table = ee.executeCustomPlanFragment(plan, outputDepId, inputDepId, txn_id,
                                           context.getLastCommittedTxnId(),
                                           ts.getLastUndoToken(this.partitionId));
@@ -13,6 +13,7 @@ import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.VoltType;
 import org.voltdb.catalog.Table;
 import org.voltdb.jni.ExecutionEngine;
+import org.voltdb.sysprocs.saverestore.SnapshotChangeTracker;
 import org.voltdb.types.TimestampType;
 
 import edu.brown.hstore.PartitionExecutor;
@@ -131,6 +132,9 @@ public class EvictTuples extends VoltSystemProcedure {
             }else{
                 vt = ee.antiCacheEvictBlock(tables[i], blockSizes[i], numBlocks[i]);    
             }
+            if (hstore_conf.site.snapshot_incremental) {
+                SnapshotChangeTracker.markTablesWritten(this.partitionId, tables[i].getRelativeIndex());
+            }
             
             boolean adv = vt.advanceRow();
             
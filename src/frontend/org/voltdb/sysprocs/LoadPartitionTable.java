@@ -0,0 +1,103 @@
+package org.voltdb.sysprocs;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.voltdb.DependencySet;
+import org.voltdb.ParameterSet;
+import org.voltdb.ProcInfo;
+import org.voltdb.VoltSystemProcedure;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.Table;
+
+import edu.brown.catalog.CatalogUtil;
+import edu.brown.hstore.PartitionExecutor.SystemProcedureExecutionContext;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+
+/**
+ * Load a VoltTable into a single partition. Every row in the table must belong
+ * to the partition that this txn is executing at. Unlike @LoadMultipartitionTable,
+ * this does not need to lock the entire cluster, so a client can have many of these
+ * running at the same time on different partitions.
+ * <B>NOTE:</B> This cannot be used to load replicated tables or tables that have
+ * a vertical partition. Those have to use @LoadMultipartitionTable.
+ * @see org.voltdb.client.PartitionedBulkLoader
+ */
+@ProcInfo(
+    partitionParam = 0,
+    singlePartition = true
+)
+public class LoadPartitionTable extends VoltSystemProcedure {
+    private static final Logger LOG = Logger.getLogger(LoadPartitionTable.class);
+    private static final LoggerBoolean debug = new LoggerBoolean();
+    static {
+        LoggerUtil.attachObserver(LOG, debug);
+    }
+
+    @Override
+    public void initImpl() {
+        // Nothing
+    }
+
+    @Override
+    public DependencySet executePlanFragment(Long txn_id,
+                                             Map<Integer, List<VoltTable>> dependencies,
+                                             int fragmentId,
+                                             ParameterSet params,
+                                             SystemProcedureExecutionContext context) {
+        throw new IllegalAccessError("Invalid invocation of " + this.getClass() + ".executePlanFragment()");
+    }
+
+    public VoltTable[] run(int partition, String tableName, VoltTable table) throws VoltAbortException {
+        assert(table != null) :
+            "VoltTable to be loaded into " + tableName + " is null in txn #" + this.getTransactionId();
+
+        Table catalog_tbl = catalogContext.database.getTables().getIgnoreCase(tableName);
+        if (catalog_tbl == null) {
+            throw new VoltAbortException("Table '" + tableName + "' does not exist");
+        }
+        else if (catalog_tbl.getIsreplicated()) {
+            throw new VoltAbortException("Table '" + tableName + "' is replicated and must be " +
+                                         "loaded with @LoadMultipartitionTable");
+        }
+        else if (CatalogUtil.getVerticalPartition(catalog_tbl) != null) {
+            throw new VoltAbortException("Table '" + tableName + "' has a vertical partition and must be " +
+                                         "loaded with @LoadMultipartitionTable");
+        }
+        else if (partition != this.partitionId) {
+            throw new VoltAbortException(String.format("Trying to load %s at partition %d but txn is " +
+                                         "executing at partition %d", tableName, partition, this.partitionId));
+        }
+
+        // Make sure that the client split the rows the same way that we would have.
+        // Otherwise we'll end up with tuples at the wrong partition.
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            int p = -1;
+            try {
+                p = this.p_estimator.getTableRowPartition(catalog_tbl, table);
+            } catch (Exception ex) {
+                throw new VoltAbortException("Failed to calculate partition for " + tableName + " row: " + ex.getMessage());
+            }
+            if (p != this.partitionId) {
+                throw new VoltAbortException(String.format("Row #%d for %s belongs to partition %d not partition %d",
+                                             table.getActiveRowIndex(), tableName, p, this.partitionId));
+            }
+        } // WHILE
+
+        if (debug.val)
+            LOG.debug(String.format("Loading %d tuples for table '%s' at partition %d in txn #%d",
+                      table.getRowCount(), tableName, this.partitionId, this.getTransactionId()));
+        this.executor.loadTable(this.getTransactionState(),
+                                catalogContext.cluster.getName(),
+                                catalogContext.database.getName(),
+                                catalog_tbl.getName(), table, 0);
+
+        VoltTable result = new VoltTable(new VoltTable.ColumnInfo("TxnId", VoltType.BIGINT));
+        result.addRow(this.getTransactionId());
+        return (new VoltTable[]{ result });
+    }
+}
@@ -17,9 +17,14 @@
 
 package org.voltdb.sysprocs;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.TreeSet;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 
@@ -171,5 +176,143 @@ public class SnapshotRegistry {
 
     public static synchronized void clear() {
         m_snapshots.clear();
+        m_restores.clear();
+    }
+
+    // ----------------------------------------------------------------------------
+    // RESTORE PROGRESS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Restores that have been executed on this host, keyed by path + nonce.
+     * Unlike snapshots, the progress of a restore is updated in place by every
+     * partition that is loading data so that @SnapshotStatus can report on a
+     * restore while it is still running.
+     */
+    private static final LinkedHashMap<String, Restore> m_restores = new LinkedHashMap<String, Restore>();
+
+    public static class Restore {
+        public final String path;
+        public final String nonce;
+        public final long timeStarted;
+
+        private final LinkedHashMap<String, RestoreTable> tables = new LinkedHashMap<String, RestoreTable>();
+
+        private Restore(String path, String nonce) {
+            this.path = path;
+            this.nonce = nonce;
+            this.timeStarted = System.currentTimeMillis();
+        }
+
+        public RestoreTable getTable(String name) {
+            synchronized (this.tables) {
+                RestoreTable t = this.tables.get(name);
+                if (t == null) {
+                    t = new RestoreTable(this, name);
+                    this.tables.put(name, t);
+                }
+                return (t);
+            }
+        }
+
+        public List<RestoreTable> getTables() {
+            synchronized (this.tables) {
+                return (new ArrayList<RestoreTable>(this.tables.values()));
+            }
+        }
+    }
+
+    /**
+     * The progress of loading a single table for a Restore. The counters are
+     * aggregated across all of the partitions on this host that load the table.
+     */
+    public static class RestoreTable {
+        public final Restore restore;
+        public final String name;
+        public final AtomicLong chunks = new AtomicLong(0);
+        public final AtomicLong rows = new AtomicLong(0);
+        public final AtomicLong bytes = new AtomicLong(0);
+        private final AtomicInteger active = new AtomicInteger(0);
+        private volatile long timeStarted = 0;
+        private volatile long timeFinished = 0;
+        private volatile String error = null;
+
+        private RestoreTable(Restore restore, String name) {
+            this.restore = restore;
+            this.name = name;
+        }
+
+        /**
+         * Mark that a partition has started loading this table
+         */
+        public void start() {
+            if (this.active.getAndIncrement() == 0 && this.timeStarted == 0) {
+                this.timeStarted = System.currentTimeMillis();
+            }
+            this.timeFinished = 0;
+        }
+
+        /**
+         * Record a chunk that was loaded into a partition
+         */
+        public void update(long numRows, long numBytes) {
+            this.chunks.incrementAndGet();
+            this.rows.addAndGet(numRows);
+            this.bytes.addAndGet(numBytes);
+        }
+
+        /**
+         * Mark that a partition has finished loading this table
+         * @param error the error message if the load failed (may be null)
+         */
+        public void finish(String error) {
+            if (error != null) this.error = error;
+            if (this.active.decrementAndGet() == 0) {
+                this.timeFinished = System.currentTimeMillis();
+            }
+        }
+
+        public int getActiveLoaders() {
+            return (this.active.get());
+        }
+        public long getTimeStarted() {
+            return (this.timeStarted);
+        }
+        public long getTimeFinished() {
+            return (this.timeFinished);
+        }
+        public String getError() {
+            return (this.error);
+        }
+    }
+
+    /**
+     * Return the progress handle for the given table in the restore for the path/nonce.
+     * The restore entry is created the first time that any partition asks for it.
+     */
+    public static synchronized RestoreTable getRestoreTable(String path, String nonce, String tableName) {
+        String key = path + "/" + nonce;
+        Restore r = m_restores.get(key);
+        if (r == null) {
+            r = new Restore(path, nonce);
+            m_restores.put(key, r);
+            if (m_restores.size() > m_maxStatusHistory) {
+                Iterator<String> iter = m_restores.keySet().iterator();
+                iter.next();
+                iter.remove();
+            }
+        }
+        return (r.getTable(tableName));
+    }
+
+    /**
+     * Throw away any progress recorded for an earlier restore of the same path/nonce
+     */
+    public static synchronized void resetRestore(String path, String nonce) {
+        m_restores.remove(path + "/" + nonce);
+    }
+
+    public static synchronized List<Restore> getRestoreHistory() {
+        return new ArrayList<Restore>(m_restores.values());
     }
 }
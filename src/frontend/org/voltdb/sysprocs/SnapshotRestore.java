@@ -27,6 +27,7 @@ import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -56,7 +57,10 @@ import org.voltdb.catalog.Partition;
 import org.voltdb.client.ConnectionUtil;
 import org.voltdb.sysprocs.saverestore.ClusterSaveFileState;
 import org.voltdb.sysprocs.saverestore.SavedTableConverter;
+import org.voltdb.sysprocs.SnapshotRegistry.RestoreTable;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil.SnapshotLink;
+import org.voltdb.sysprocs.saverestore.TableRestorePipeline;
 import org.voltdb.sysprocs.saverestore.TableSaveFile;
 import org.voltdb.sysprocs.saverestore.TableSaveFileState;
 import org.voltdb.utils.DBBPool.BBContainer;
@@ -196,9 +200,11 @@ public class SnapshotRestore extends VoltSystemProcedure {
                 m_initializedTableSaveFiles.clear();
                 m_saveFiles.clear();// Tests will reused a VoltDB process that
                                     // fails a restore
+                TableRestorePipeline.clearPrefetched();
 
                 m_filePath = (String) params.toArray()[0];
                 m_fileNonce = (String) params.toArray()[1];
+                SnapshotRegistry.resetRestore(m_filePath, m_fileNonce);
                 LOG.trace("Checking saved table state for restore of: " + m_filePath + ", " + m_fileNonce);
                 File[] savefiles = retrieveRelevantFiles(m_filePath, m_fileNonce);
                 for (File file : savefiles) {
@@ -265,48 +271,23 @@ public class SnapshotRestore extends VoltSystemProcedure {
             String table_name = (String) params.toArray()[0];
             int dependency_id = (Integer) params.toArray()[1];
             int allowExport = (Integer) params.toArray()[2];
+            String next_table_name = (params.size() > 3 ? (String) params.toArray()[3] : null);
             LOG.trace("restoreLoadReplicatedTable :: Partition id :" + context.getPartitionExecutor().getPartitionId());
             //LOG.trace("Dependency_id :" + dependency_id + " - Loading replicated table: " + table_name);
             String result_str = "SUCCESS";
             String error_msg = "";
-            TableSaveFile savefile = null;
 
             /**
-             * For replicated tables this will do the slow thing and read the
-             * file once for each ExecutionSite. This could use optimization
-             * like is done with the partitioned tables.
+             * For replicated tables this will still read the file once for each
+             * ExecutionSite, but the reads and conversions happen in the background
+             * while this partition is loading the previous chunk.
              */
             try {
-                savefile = getTableSaveFile(getSaveFileForReplicatedTable(table_name), 3, null);
-                assert (savefile.getCompleted());
-            } catch (IOException e) {
-                VoltTable result = constructResultsTable();
-                result.addRow(m_hostId, hostname, m_siteId, table_name, -1, "FAILURE", "Unable to load table: " + table_name + " error: " + e.getMessage());
-                return new DependencySet(dependency_id, result);
-            }
-
-            try {
-
-                while (savefile.hasMoreChunks()) {
-                    VoltTable table = null;
-                    final org.voltdb.utils.DBBPool.BBContainer c = savefile.getNextChunk();
-                    if (c == null) {
-                        continue;// Should be equivalent to break
-                    }
-                    VoltTable old_table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b, true);
-                    Table new_catalog_table = getCatalogTable(table_name);
-                    table = SavedTableConverter.convertTable(old_table, new_catalog_table);
-                    c.discard();
-                    try {
-                        LOG.trace("LoadTable " + table_name);
-                        this.executor.loadTable(ts, context.getCluster().getTypeName(), context.getDatabase().getTypeName(), table_name, table, allowExport);
-                    } catch (VoltAbortException e) {
-                        result_str = "FAILURE";
-                        error_msg = e.getMessage();
-                        break;
-                    }
+                String load_error = loadTableFromSaveFile(getSaveFileForReplicatedTable(table_name), table_name, next_table_name, allowExport, context, ts);
+                if (load_error != null) {
+                    result_str = "FAILURE";
+                    error_msg = load_error;
                 }
-
             } catch (IOException e) {
                 VoltTable result = constructResultsTable();
                 result.addRow(m_hostId, hostname, m_siteId, table_name, -1, "FAILURE", "Unable to load table: " + table_name + " error: " + e.getMessage());
@@ -319,12 +300,6 @@ public class SnapshotRestore extends VoltSystemProcedure {
 
             VoltTable result = constructResultsTable();
             result.addRow(m_hostId, hostname, m_siteId, table_name, -1, result_str, error_msg);
-            try {
-                savefile.close();
-            } catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
             return new DependencySet(dependency_id, result);
         } else if (fragmentId == SysProcFragmentId.PF_restoreDistributeReplicatedTable) {
             // XXX I tested this with a hack that cannot be replicated
@@ -405,9 +380,10 @@ public class SnapshotRestore extends VoltSystemProcedure {
             int relevantPartitions[] = (int[]) paramsA[2];
             int dependency_id = (Integer) paramsA[3];
             int allowExport = (Integer) paramsA[4];
+            String next_table_name = (paramsA.length > 5 ? (String) paramsA[5] : null);
 
             // Using Localized Version
-            VoltTable result = performLoadPartitionedTable(table_name, originalHosts, relevantPartitions, context, allowExport, ts);
+            VoltTable result = performLoadPartitionedTable(table_name, next_table_name, originalHosts, relevantPartitions, context, allowExport, ts);
 
             // Distributed Version - Invokes another round of plan fragments
             // which does not work
@@ -541,7 +517,13 @@ public class SnapshotRestore extends VoltSystemProcedure {
 
         LOG.trace("performTableRestoreWork starts at Site :" + execution_context.getSite().getId());
 
-        results = performTableRestoreWork(savefile_state);
+        // The partitions throw away their own prefetched pipelines when they are done,
+        // but if the restore aborts part way through then they may never get told
+        try {
+            results = performTableRestoreWork(savefile_state);
+        } finally {
+            TableRestorePipeline.clearPrefetched();
+        }
 
         final long endTime = System.currentTimeMillis();
         final double duration = (endTime - startTime) / 1000.0;
@@ -569,6 +551,30 @@ public class SnapshotRestore extends VoltSystemProcedure {
 
         File save_dir = new File(filePath);
         File[] save_files = save_dir.listFiles(has_nonce);
+
+        // Incremental snapshots do not write out the tables that did not change, so
+        // we need to follow the links in the digest back to the files that have the data
+        File digest = new File(filePath, SnapshotUtil.constructDigestFilenameForNonce(fileNonce));
+        if (save_files != null && digest.exists()) {
+            List<File> linked_files = new ArrayList<File>();
+            try {
+                for (SnapshotLink link : SnapshotUtil.retrieveSnapshotLinks(digest).values()) {
+                    if (new File(filePath, link.fileName).exists()) continue;
+                    File base = SnapshotUtil.resolveSnapshotFile(filePath, fileNonce, link.fileName);
+                    if (base.exists()) {
+                        linked_files.add(base);
+                    } else {
+                        LOG.warn("Unable to resolve linked file " + link.fileName + " for snapshot " + fileNonce);
+                    }
+                } // FOR
+            } catch (IOException ex) {
+                LOG.warn("Failed to read links from snapshot digest " + digest, ex);
+            }
+            if (!linked_files.isEmpty()) {
+                linked_files.addAll(0, Arrays.asList(save_files));
+                save_files = linked_files.toArray(new File[0]);
+            }
+        }
         return save_files;
     }
 
@@ -591,7 +597,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
         filename_builder.append("-");
         filename_builder.append(tableName);
         filename_builder.append(".vpt");
-        return new File(m_filePath, new String(filename_builder));
+        return SnapshotUtil.resolveSnapshotFile(m_filePath, m_fileNonce, new String(filename_builder));
     }
 
     private static File getSaveFileForPartitionedTable(String filePath, String fileNonce, String tableName, int originalHostId, int siteId, int partitionId) {
@@ -608,7 +614,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
 
         
         filename_builder.append(".vpt");
-        return new File(filePath, new String(filename_builder));
+        return SnapshotUtil.resolveSnapshotFile(filePath, fileNonce, new String(filename_builder));
     }
 
     private static TableSaveFile getTableSaveFile(File saveFile, int readAheadChunks, int relevantPartitionIds[]) throws IOException {
@@ -682,6 +688,13 @@ public class SnapshotRestore extends VoltSystemProcedure {
             restorePlans.add(restore_plan);
         }
 
+        // Tell the partitions which table comes next so that they can start
+        // reading its save file while they are still loading the current one
+        Table ordered_tables[] = tables_to_restore.toArray(new Table[0]);
+        for (int i = 0; i < ordered_tables.length - 1; i++) {
+            addNextTableHint(restorePlans.get(i), ordered_tables[i + 1].getTypeName());
+        } // FOR
+
         Iterator<Table> tableIterator = tables_to_restore.iterator();
         for (SynthesizedPlanFragment[] restore_plan : restorePlans) {
             Table table = tableIterator.next();
@@ -697,6 +710,24 @@ public class SnapshotRestore extends VoltSystemProcedure {
         return restore_results;
     }
 
+    /**
+     * Append the name of the next table to be restored to the parameters of
+     * the fragments in the given plan that load data at the partitions
+     */
+    private static void addNextTableHint(SynthesizedPlanFragment[] restore_plan, String nextTableName) {
+        for (SynthesizedPlanFragment pf : restore_plan) {
+            if (pf.fragmentId != SysProcFragmentId.PF_restoreLoadReplicatedTable &&
+                pf.fragmentId != SysProcFragmentId.PF_restoreDistributePartitionedTable) {
+                continue;
+            }
+            Object orig[] = pf.parameters.toArray();
+            Object params[] = new Object[orig.length + 1];
+            System.arraycopy(orig, 0, params, 0, orig.length);
+            params[orig.length] = nextTableName;
+            pf.parameters.setParameters(params);
+        } // FOR
+    }
+
     // XXX I hacked up a horrible one-off in my world to test this code.
     // I believe that it will work for at least one new node, but
     // there's not a good way to add a unit test for this at the moment,
@@ -705,7 +736,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
         String hostname = ConnectionUtil.getHostnameOrAddress();
         TableSaveFile savefile = null;
         try {
-            savefile = getTableSaveFile(getSaveFileForReplicatedTable(tableName), 3, null);
+            savefile = getTableSaveFile(getSaveFileForReplicatedTable(tableName), hstore_conf.site.snapshot_restore_readahead, null);
             assert (savefile.getCompleted());
         } catch (IOException e) {
             VoltTable result = constructResultsTable();
@@ -789,7 +820,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
         return results[0];
     }
 
-    private VoltTable performLoadPartitionedTable(String tableName, int originalHostIds[], int relevantPartitionIds[], SystemProcedureExecutionContext context, int allowExport, AbstractTransaction ts) {
+    private VoltTable performLoadPartitionedTable(String tableName, String nextTableName, int originalHostIds[], int relevantPartitionIds[], SystemProcedureExecutionContext context, int allowExport, AbstractTransaction ts) {
         String hostname = ConnectionUtil.getHostnameOrAddress();
         // XXX This is all very similar to the splitting code in
         // LoadMultipartitionTable. Consider ways to consolidate later
@@ -812,6 +843,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
         try {
             initializeTableSaveFiles(m_filePath, m_fileNonce, tableName, originalHostIds, relevantPartitionIds, context);
         } catch (IOException e) {
+            TableRestorePipeline.clearPrefetched(context.getPartitionExecutor().getPartitionId());
             VoltTable result = constructResultsTable();
             // e.printStackTrace();
             result.addRow(m_hostId, hostname, m_siteId, tableName, relevantPartitionIds[0], "FAILURE", "Unable to load table: " + tableName + " error: " + e.getMessage());
@@ -823,63 +855,104 @@ public class SnapshotRestore extends VoltSystemProcedure {
 
         String result_str = "SUCCESS";
         String error_msg = "";
-        TableSaveFile savefile = null;
 
         /**
          * For partitioned tables
          */
         try {
-            savefile = getTableSaveFile(getSaveFileForPartitionedTable(m_filePath, m_fileNonce, tableName, 
+            File f = getSaveFileForPartitionedTable(m_filePath, m_fileNonce, tableName, 
                     catalog_host.getId(),
                     catalog_site.getId(), 
-                    catalog_partition.getId()),                             
-                    3, null);
-            assert (savefile.getCompleted());
-        } catch (IOException e) {
+                    catalog_partition.getId());
+            String load_error = loadTableFromSaveFile(f, tableName, nextTableName, allowExport, context, ts);
+            if (load_error != null) {
+                result_str = "FAILURE";
+                error_msg = load_error;
+            }
+        } catch (Exception e) {
             VoltTable result = constructResultsTable();
             result.addRow(m_hostId, hostname, m_siteId, tableName, -1, "FAILURE", "Unable to load table: " + tableName + " error: " + e.getMessage());
             return result;
         }
 
-        try {
+        VoltTable result = constructResultsTable();
+        result.addRow(m_hostId, hostname, m_siteId, tableName, -1, result_str, error_msg);
+        return result;
+    }
 
-            while (savefile.hasMoreChunks()) {
-                VoltTable table = null;
-                final org.voltdb.utils.DBBPool.BBContainer c = savefile.getNextChunk();
-                if (c == null) {
-                    continue; // Should be equivalent to break
-                }
-                VoltTable old_table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b, true);
-                Table new_catalog_table = getCatalogTable(tableName);
-                table = SavedTableConverter.convertTable(old_table, new_catalog_table);
-                c.discard();
+    /**
+     * Load all of the chunks in the given save file into this partition.
+     * The chunks are read and converted by a TableRestorePipeline while this
+     * partition is loading the previous chunk into the EE. Once the pipeline for this
+     * table is running, we start prefetching the next table. If the load fails or there
+     * is no next table, then any prefetched pipeline for this partition is thrown away.
+     * @return the error message if the EE rejected a chunk, otherwise null
+     */
+    private String loadTableFromSaveFile(File saveFile, String tableName, String nextTableName, int allowExport, SystemProcedureExecutionContext context, AbstractTransaction ts) throws IOException {
+        int partition_id = context.getPartitionExecutor().getPartitionId();
+        RestoreTable progress = SnapshotRegistry.getRestoreTable(m_filePath, m_fileNonce, tableName);
+        TableRestorePipeline pipeline = null;
+        String error_msg = null;
+        boolean success = false;
+        progress.start();
+        try {
+            pipeline = TableRestorePipeline.open(partition_id, saveFile, getCatalogTable(tableName), hstore_conf.site.snapshot_restore_readahead);
+            prefetchNextTable(nextTableName, context);
+            VoltTable table = null;
+            while ((table = pipeline.next()) != null) {
                 try {
                     LOG.trace("LoadTable " + tableName);
-
                     this.executor.loadTable(ts, context.getCluster().getTypeName(), context.getDatabase().getTypeName(), tableName, table, allowExport);
                 } catch (VoltAbortException e) {
-                    result_str = "FAILURE";
                     error_msg = e.getMessage();
                     break;
                 }
+                progress.update(table.getRowCount(), pipeline.getLastChunkBytes());
+            } // WHILE
+            success = (error_msg == null);
+        } catch (IOException e) {
+            error_msg = e.getMessage();
+            throw e;
+        } catch (RuntimeException e) {
+            error_msg = e.getMessage();
+            throw e;
+        } finally {
+            if (pipeline != null) pipeline.close();
+            if (success == false) {
+                TableRestorePipeline.clearPrefetched(partition_id);
             }
-
-        } catch (Exception e) {
-            VoltTable result = constructResultsTable();
-            result.addRow(m_hostId, hostname, m_siteId, tableName, -1, "FAILURE", "Unable to load table: " + tableName + " error: " + e.getMessage());
-            return result;
+            progress.finish(error_msg);
         }
+        return (error_msg);
+    }
 
-        VoltTable result = constructResultsTable();
-        result.addRow(m_hostId, hostname, m_siteId, tableName, -1, result_str, error_msg);
-        try {
-            savefile.close();
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+    /**
+     * Start reading the save file for the table that this partition will restore
+     * after the current one. The file is prefetched in the background and is picked
+     * up by loadTableFromSaveFile() when the restore fragment for that table arrives.
+     */
+    private void prefetchNextTable(String nextTableName, SystemProcedureExecutionContext context) {
+        int partition_id = context.getPartitionExecutor().getPartitionId();
+        if (nextTableName == null || nextTableName.isEmpty() || hstore_conf.site.snapshot_restore_prefetch == false) {
+            TableRestorePipeline.clearPrefetched(partition_id);
+            return;
+        }
+        Table catalog_tbl = getCatalogTable(nextTableName);
+        if (catalog_tbl == null) {
+            TableRestorePipeline.clearPrefetched(partition_id);
+            return;
         }
 
-        return result;
+        File f = null;
+        if (catalog_tbl.getIsreplicated()) {
+            f = getSaveFileForReplicatedTable(nextTableName);
+        } else {
+            f = getSaveFileForPartitionedTable(m_filePath, m_fileNonce, nextTableName,
+                    context.getHost().getId(),
+                    context.getSite().getId(),
+                    partition_id);
+        }
+        TableRestorePipeline.prefetch(partition_id, f, catalog_tbl, hstore_conf.site.snapshot_restore_readahead);
     }
 
     private VoltTable performDistributePartitionedTable(String tableName, int originalHostIds[], int relevantPartitionIds[], SystemProcedureExecutionContext context, int allowExport) {
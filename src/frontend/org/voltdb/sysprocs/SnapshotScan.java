@@ -40,6 +40,7 @@ import org.voltdb.VoltTableRow;
 import org.voltdb.VoltType;
 import org.voltdb.client.ConnectionUtil;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil.SnapshotLink;
 import org.voltdb.sysprocs.saverestore.TableSaveFile;
 
 import edu.brown.hstore.HStoreConstants;
@@ -94,6 +95,9 @@ public class SnapshotScan extends VoltSystemProcedure {
                 } else {
                     for (final File f : relevantFiles) {
                         if (f.getName().endsWith(".digest")) {
+                            // Report the files that an incremental snapshot linked to
+                            // as if they were part of that snapshot
+                            addLinkedFileRows(f, results, context, hostname);
                             continue;
                         }
                         if (f.canRead()) {
@@ -330,6 +334,45 @@ public class SnapshotScan extends VoltSystemProcedure {
         }
     }
 
+    /**
+     * For each table file that was linked to an earlier snapshot in the given digest,
+     * add a row for the file that holds the data under the name and creation time of
+     * the snapshot that the digest belongs to.
+     */
+    private void addLinkedFileRows(File digest, VoltTable results, SystemProcedureExecutionContext context, String hostname) {
+        if (!digest.canRead()) return;
+        try {
+            final String nonce = digest.getName().substring(0, digest.getName().indexOf(".digest"));
+            final long createTime = SnapshotUtil.retrieveRelevantTableNamesAndTime(digest).getFirst();
+            for (SnapshotLink link : SnapshotUtil.retrieveSnapshotLinks(digest).values()) {
+                if (new File(digest.getParentFile(), link.fileName).exists()) continue;
+                File base = SnapshotUtil.resolveSnapshotFile(digest.getParent(), nonce, link.fileName);
+                if (!base.exists() || !base.canRead()) {
+                    LOG.warn("Unable to resolve linked file " + link.fileName + " in " + digest);
+                    continue;
+                }
+                FileInputStream savefile_input = new FileInputStream(base);
+                try {
+                    TableSaveFile savefile = new TableSaveFile(savefile_input.getChannel(), 1, null);
+                    String partitions = "";
+                    for (int partition : savefile.getPartitionIds()) {
+                        partitions = partitions + "," + partition;
+                    }
+                    if (partitions.startsWith(",")) {
+                        partitions = partitions.substring(1);
+                    }
+                    results.addRow(Integer.parseInt(context.getSite().getHost().getTypeName().replaceAll("[\\D]", "")), hostname, digest.getParent(), link.fileName, createTime,
+                            savefile.getTableName(), savefile.getCompleted() ? "TRUE" : "FALSE", base.length(), savefile.isReplicated() ? "TRUE" : "FALSE", partitions,
+                            savefile.getTotalPartitions(), "TRUE", "SUCCESS", "");
+                } finally {
+                    savefile_input.close();
+                }
+            } // FOR
+        } catch (Exception e) {
+            LOG.warn(e);
+        }
+    }
+
     private static class Snapshot {
         private final long m_createTime;
         private final String m_path;
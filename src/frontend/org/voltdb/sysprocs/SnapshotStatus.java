@@ -25,7 +25,6 @@ import org.voltdb.DependencySet;
 import org.voltdb.ParameterSet;
 import org.voltdb.ProcInfo;
 import org.voltdb.SysProcSelector;
-import org.voltdb.VoltDB;
 import org.voltdb.VoltSystemProcedure;
 import org.voltdb.VoltTable;
 
@@ -47,6 +46,7 @@ public class SnapshotStatus extends VoltSystemProcedure {
     public VoltTable[] run() throws VoltAbortException {
         ArrayList<Integer> catalogIds = new ArrayList<Integer>();
         catalogIds.add(0);
-        return new VoltTable[] { VoltDB.instance().getStatsAgent().getStats(SysProcSelector.SNAPSHOTSTATUS, catalogIds, false, System.currentTimeMillis()) };
+        // Restore progress is available through @Statistics SNAPSHOTRESTORE
+        return new VoltTable[] { hstore_site.getStatsAgent().getStats(SysProcSelector.SNAPSHOTSTATUS, catalogIds, false, System.currentTimeMillis()) };
     }
 }
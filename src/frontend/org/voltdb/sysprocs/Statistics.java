@@ -109,6 +109,9 @@ public class Statistics extends VoltSystemProcedure {
         addStatsFragments(SysProcSelector.SITEPROFILER, SysProcFragmentId.PF_siteProfilerData, SysProcFragmentId.PF_siteProfilerAggregator);
         addStatsFragments(SysProcSelector.PLANNERPROFILER, SysProcFragmentId.PF_plannerProfilerData, SysProcFragmentId.PF_plannerProfilerAggregator);
         addStatsFragments(SysProcSelector.ANTICACHE, SysProcFragmentId.PF_anticacheProfilerData, SysProcFragmentId.PF_anticacheProfilerAggregator);
+        addStatsFragments(SysProcSelector.QUERYCACHE, SysProcFragmentId.PF_queryCacheData, SysProcFragmentId.PF_queryCacheAggregator);
+        addStatsFragments(SysProcSelector.TXNTRACE, SysProcFragmentId.PF_txnTraceData, SysProcFragmentId.PF_txnTraceAggregator);
+        addStatsFragments(SysProcSelector.SNAPSHOTRESTORE, SysProcFragmentId.PF_snapshotRestoreData, SysProcFragmentId.PF_snapshotRestoreAggregator);
     } // STATIC
     
     @Override
@@ -155,7 +158,10 @@ public class Statistics extends VoltSystemProcedure {
             case SysProcFragmentId.PF_specexecProfilerData:
             case SysProcFragmentId.PF_siteProfilerData:
             case SysProcFragmentId.PF_plannerProfilerData:
-            case SysProcFragmentId.PF_anticacheProfilerData: {
+            case SysProcFragmentId.PF_anticacheProfilerData:
+            case SysProcFragmentId.PF_queryCacheData:
+            case SysProcFragmentId.PF_txnTraceData:
+            case SysProcFragmentId.PF_snapshotRestoreData: {
                 assert(params.toArray().length == 2);
                 final boolean interval =
                     ((Byte)params.toArray()[0]).byteValue() == 0 ? false : true;
@@ -196,7 +202,10 @@ public class Statistics extends VoltSystemProcedure {
             case SysProcFragmentId.PF_specexecProfilerAggregator:
             case SysProcFragmentId.PF_siteProfilerAggregator:
             case SysProcFragmentId.PF_plannerProfilerAggregator:
-            case SysProcFragmentId.PF_anticacheProfilerAggregator: {
+            case SysProcFragmentId.PF_anticacheProfilerAggregator:
+            case SysProcFragmentId.PF_queryCacheAggregator:
+            case SysProcFragmentId.PF_txnTraceAggregator:
+            case SysProcFragmentId.PF_snapshotRestoreAggregator: {
                 // Do a reverse look up to find the input dependency id
                 int dataFragmentId = -1;
                 for (Integer id : STATS_DATA.keySet()) {
@@ -59,6 +59,12 @@ public class SysProcFragmentId {
     public static final int PF_plannerProfilerAggregator = 37;
     public static final int PF_anticacheProfilerData = 38;
     public static final int PF_anticacheProfilerAggregator = 39;
+    public static final int PF_queryCacheData = 40;
+    public static final int PF_queryCacheAggregator = 41;
+    public static final int PF_txnTraceData = 42;
+    public static final int PF_txnTraceAggregator = 43;
+    public static final int PF_snapshotRestoreData = 44;
+    public static final int PF_snapshotRestoreAggregator = 45;
 
     // @Shutdown
     public static final int PF_shutdownCommand = 50;
@@ -0,0 +1,186 @@
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of which tables have been modified at each partition and the last snapshot
+ * that wrote out each table. An incremental snapshot uses this to decide whether it can
+ * link a table to the earlier snapshot instead of writing it out again.
+ * <P>
+ * Every partition has a counter that is incremented whenever the PartitionExecutor
+ * tells us that a txn wrote to some tables. We remember the counter value of the last
+ * write to each table. A snapshot records the partition's counter when it writes out a table,
+ * so the table is unchanged as long as it has not been written to since then.
+ * Txns that write to a table and then abort still count as a change.
+ * @author pavlo
+ */
+public abstract class SnapshotChangeTracker {
+
+    /**
+     * The change marker for a table at a partition
+     */
+    public static class Marker {
+        public final String path;
+        public final String nonce;
+        public final String fileName;
+        /** The partition's write version when the table was written out */
+        public final long version;
+
+        public Marker(String path, String nonce, String fileName, long version) {
+            this.path = path;
+            this.nonce = nonce;
+            this.fileName = fileName;
+            this.version = version;
+        }
+
+        /**
+         * Returns true if the file that was written for this marker is still there
+         */
+        public boolean exists() {
+            return (new File(this.path, this.fileName).exists());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s/%s [version=%d]", this.path, this.fileName, this.version);
+        }
+    }
+
+    /**
+     * The write versions for a single partition
+     */
+    private static class PartitionVersions {
+        private final AtomicLong counter = new AtomicLong(0);
+        /** The version of the last write to an unknown set of tables */
+        private volatile long allTables = 0;
+        /** TableId -> Version of the last write to that table */
+        private final Map<Integer, Long> tables = new ConcurrentHashMap<Integer, Long>();
+    }
+
+    /**
+     * PartitionId -> TableName -> Marker
+     */
+    private static final Map<Integer, Map<String, Marker>> markers = new ConcurrentHashMap<Integer, Map<String, Marker>>();
+
+    /**
+     * PartitionId -> PartitionVersions
+     */
+    private static final Map<Integer, PartitionVersions> versions = new ConcurrentHashMap<Integer, PartitionVersions>();
+
+    private static Map<String, Marker> getMarkers(int partition) {
+        Map<String, Marker> m = markers.get(partition);
+        if (m == null) {
+            synchronized (markers) {
+                m = markers.get(partition);
+                if (m == null) {
+                    m = new ConcurrentHashMap<String, Marker>();
+                    markers.put(partition, m);
+                }
+            } // SYNCH
+        }
+        return (m);
+    }
+
+    private static PartitionVersions getVersions(int partition) {
+        PartitionVersions v = versions.get(partition);
+        if (v == null) {
+            synchronized (versions) {
+                v = versions.get(partition);
+                if (v == null) {
+                    v = new PartitionVersions();
+                    versions.put(partition, v);
+                }
+            } // SYNCH
+        }
+        return (v);
+    }
+
+    // ----------------------------------------------------------------------------
+    // WRITE TRACKING
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Record that the given tables were modified at the given partition
+     * @param partition
+     * @param tableIds The relative indexes of the tables
+     */
+    public static void markTablesWritten(int partition, int...tableIds) {
+        PartitionVersions v = getVersions(partition);
+        long version = v.counter.incrementAndGet();
+        for (int tableId : tableIds) {
+            v.tables.put(tableId, version);
+        } // FOR
+    }
+
+    /**
+     * Record that an unknown set of tables were modified at the given partition
+     * @param partition
+     */
+    public static void markAllTablesWritten(int partition) {
+        PartitionVersions v = getVersions(partition);
+        v.allTables = v.counter.incrementAndGet();
+    }
+
+    /**
+     * Return the current write version for the given partition
+     * @param partition
+     */
+    public static long getVersion(int partition) {
+        return (getVersions(partition).counter.get());
+    }
+
+    /**
+     * Returns true if the given table has been modified at the given partition
+     * since the given marker was created.
+     * @param partition
+     * @param tableId
+     * @param marker
+     */
+    public static boolean isModified(int partition, int tableId, Marker marker) {
+        PartitionVersions v = getVersions(partition);
+        if (v.allTables > marker.version) return (true);
+        Long last = v.tables.get(tableId);
+        return (last != null && last.longValue() > marker.version);
+    }
+
+    // ----------------------------------------------------------------------------
+    // SNAPSHOT MARKERS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Return the marker for the last snapshot that wrote out the given table
+     * at the given partition. Returns null if there is no such snapshot.
+     * @param partition
+     * @param tableName
+     */
+    public static Marker getMarker(int partition, String tableName) {
+        return (getMarkers(partition).get(tableName));
+    }
+
+    /**
+     * Record that a snapshot successfully wrote out the given table at the given partition
+     * @param partition
+     * @param tableName
+     * @param marker
+     */
+    public static void recordMarker(int partition, String tableName, Marker marker) {
+        getMarkers(partition).put(tableName, marker);
+    }
+
+    /**
+     * Forget the marker for the given table so that the next snapshot will write it out in full
+     * @param partition
+     * @param tableName
+     */
+    public static void invalidate(int partition, String tableName) {
+        getMarkers(partition).remove(tableName);
+    }
+
+    public static void clear() {
+        markers.clear();
+        versions.clear();
+    }
+}
@@ -164,6 +164,142 @@ public class SnapshotUtil {
         }
     }
 
+    /**
+     * The maximum number of links that resolveSnapshotFile() will follow
+     */
+    public static final int MAX_LINK_DEPTH = 32;
+
+    /**
+     * A table file that an incremental snapshot did not write because the table
+     * had not changed at that partition since an earlier snapshot. The data is in
+     * the file with the same name under the earlier snapshot's nonce.
+     */
+    public static class SnapshotLink {
+        public final String fileName;
+        public final String baseNonce;
+
+        public SnapshotLink(String fileName, String baseNonce) {
+            this.fileName = fileName;
+            this.baseNonce = baseNonce;
+        }
+
+        /**
+         * Return the name of the linked file in the base snapshot
+         * @param nonce the nonce of the snapshot that contains this link
+         */
+        public String getBaseFileName(String nonce) {
+            assert(this.fileName.startsWith(nonce + "-"));
+            return (this.baseNonce + this.fileName.substring(nonce.length()));
+        }
+    }
+
+    /**
+     * Append links for unchanged table files to the digest of an incremental snapshot.
+     * Each link is written on its own line after the table list with its own CRC so that
+     * readers that only know about the table list are not affected.
+     * The digest must have already been written with recordSnapshotTableList().
+     * @param path
+     * @param nonce
+     * @param links
+     * @throws IOException
+     */
+    public static void recordSnapshotLinks(String path, String nonce, List<SnapshotLink> links) throws IOException {
+        final File f = new File(path, constructDigestFilenameForNonce(nonce));
+        if (!f.exists()) {
+            throw new IOException("Unable to append links to missing digest " + f);
+        }
+        StringWriter sw = new StringWriter();
+        for (SnapshotLink link : links) {
+            String line = link.fileName + "," + link.baseNonce;
+            final CRC32 crc = new CRC32();
+            crc.update(line.getBytes("UTF-8"));
+            sw.append(Integer.toString((int)crc.getValue())).append(',').append(line).append('\n');
+        } // FOR
+
+        FileOutputStream fos = new FileOutputStream(f, true);
+        try {
+            fos.getChannel().write(ByteBuffer.wrap(sw.getBuffer().toString().getBytes("UTF-8")));
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Retrieve the links for unchanged table files from a digest.
+     * FileName -> SnapshotLink
+     * @param f
+     * @throws IOException If the CRC for a link does not match
+     */
+    public static Map<String, SnapshotLink> retrieveSnapshotLinks(File f) throws IOException {
+        Map<String, SnapshotLink> links = new TreeMap<String, SnapshotLink>();
+        final FileInputStream fis = new FileInputStream(f);
+        try {
+            byte contents[] = new byte[(int)f.length()];
+            int offset = 0;
+            while (offset < contents.length) {
+                int read = fis.read(contents, offset, contents.length - offset);
+                if (read == -1) break;
+                offset += read;
+            }
+            if (offset < 4) {
+                throw new EOFException("EOF while attempting to read CRC from snapshot digest");
+            }
+            String lines[] = new String(contents, 4, offset - 4, "UTF-8").split("\n");
+            // The first line is always the table list
+            for (int ii = 1; ii < lines.length; ii++) {
+                if (lines[ii].isEmpty()) continue;
+                String fields[] = lines[ii].split(",", 2);
+                if (fields.length != 2) {
+                    throw new IOException("Invalid link in snapshot digest " + f + ": " + lines[ii]);
+                }
+                final CRC32 crc = new CRC32();
+                crc.update(fields[1].getBytes("UTF-8"));
+                if (Integer.parseInt(fields[0]) != (int)crc.getValue()) {
+                    throw new IOException("CRC of link in snapshot digest " + f + " did not match link contents");
+                }
+                String link[] = fields[1].split(",");
+                links.put(link[0], new SnapshotLink(link[0], link[1]));
+            } // FOR
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid link CRC in snapshot digest " + f, ex);
+        } finally {
+            fis.close();
+        }
+        return (links);
+    }
+
+    /**
+     * Find the file that holds the data for the given table file of a snapshot.
+     * If the file was not written because the snapshot was incremental, then the
+     * links in the digests are followed back to the snapshot that wrote it.
+     * If the chain cannot be resolved, then the original file is returned.
+     * @param path
+     * @param nonce
+     * @param fileName
+     */
+    public static File resolveSnapshotFile(String path, String nonce, String fileName) {
+        File f = new File(path, fileName);
+        String curNonce = nonce;
+        String curFileName = fileName;
+        for (int depth = 0; depth < MAX_LINK_DEPTH && !f.exists(); depth++) {
+            File digest = new File(path, constructDigestFilenameForNonce(curNonce));
+            if (!digest.exists()) break;
+            SnapshotLink link = null;
+            try {
+                link = retrieveSnapshotLinks(digest).get(curFileName);
+            } catch (IOException ex) {
+                System.err.println(ex.getMessage());
+            }
+            if (link == null) break;
+            curFileName = link.getBaseFileName(curNonce);
+            curNonce = link.baseNonce;
+            File base = new File(path, curFileName);
+            if (base.exists()) return (base);
+        } // FOR
+        return (f);
+    }
+
     /**
      * Storage for information about files that are part of a specific snapshot
      */
@@ -315,41 +451,26 @@ public class SnapshotUtil {
                     tableSet.addAll(result.getSecond());
                     s.m_digestTables.add(tableSet);
                     s.m_digests.add(f);
-                } else {
-                    HashSet<Integer> partitionIds = new HashSet<Integer>();
-                    TableSaveFile saveFile = new TableSaveFile(fis.getChannel(), 1, null, true);
-                    try {
-                        for (Integer partitionId : saveFile.getPartitionIds()) {
-                            partitionIds.add(partitionId);
-                        }
-                        if (validate && saveFile.getCompleted()) {
-                            while (saveFile.hasMoreChunks()) {
-                                BBContainer cont = saveFile.getNextChunk();
-                                if (cont != null) {
-                                    cont.discard();
-                                }
-                            }
-                        }
-                        partitionIds.removeAll(saveFile.getCorruptedPartitionIds());
-                        Snapshot s = snapshots.get(saveFile.getCreateTime());
-                        if (s == null) {
-                            s = new Snapshot();
-                            snapshots.put(saveFile.getCreateTime(), s);
-                        }
 
-                        TableFiles tableFiles = s.m_tableFiles.get(saveFile.getTableName());
-                        if (tableFiles == null) {
-                            tableFiles = new TableFiles(saveFile.isReplicated());
-                            s.m_tableFiles.put(saveFile.getTableName(), tableFiles);
+                    // Pull in the files from earlier snapshots for any tables that
+                    // were unchanged when this snapshot was taken
+                    String nonce = f.getName().substring(0, f.getName().length() - ".digest".length());
+                    for (SnapshotLink link : retrieveSnapshotLinks(f).values()) {
+                        if (new File(f.getParentFile(), link.fileName).exists()) continue;
+                        File base = resolveSnapshotFile(f.getParent(), nonce, link.fileName);
+                        if (!base.exists()) {
+                            System.err.println("Error: Unable to resolve linked file " + link.fileName + " in " + f.getPath());
+                            continue;
                         }
-                        tableFiles.m_files.add(f);
-                        tableFiles.m_completed.add(saveFile.getCompleted());
-                        tableFiles.m_validPartitionIds.add(partitionIds);
-                        tableFiles.m_corruptParititionIds.add(saveFile.getCorruptedPartitionIds());
-                        tableFiles.m_totalPartitionCounts.add(saveFile.getTotalPartitions());
-                    } finally {
-                        saveFile.close();
-                    }
+                        FileInputStream base_fis = new FileInputStream(base);
+                        try {
+                            addTableFile(base, base_fis, snapshots, snapshotTime, validate);
+                        } finally {
+                            base_fis.close();
+                        }
+                    } // FOR
+                } else {
+                    addTableFile(f, fis, snapshots, null, validate);
                 }
             } catch (IOException e) {
 		e.printStackTrace();
@@ -366,6 +487,51 @@ public class SnapshotUtil {
         }
     }
 
+    /**
+     * Add the given table save file to the snapshot that it belongs to
+     * @param snapshotTime the snapshot to add the file to. If null, then use the
+     *                     create time in the file's header
+     */
+    private static void addTableFile(File f, FileInputStream fis, Map<Long, Snapshot> snapshots, Long snapshotTime, boolean validate) throws IOException {
+        HashSet<Integer> partitionIds = new HashSet<Integer>();
+        TableSaveFile saveFile = new TableSaveFile(fis.getChannel(), 1, null, true);
+        try {
+            for (Integer partitionId : saveFile.getPartitionIds()) {
+                partitionIds.add(partitionId);
+            }
+            if (validate && saveFile.getCompleted()) {
+                while (saveFile.hasMoreChunks()) {
+                    BBContainer cont = saveFile.getNextChunk();
+                    if (cont != null) {
+                        cont.discard();
+                    }
+                }
+            }
+            partitionIds.removeAll(saveFile.getCorruptedPartitionIds());
+            if (snapshotTime == null) {
+                snapshotTime = saveFile.getCreateTime();
+            }
+            Snapshot s = snapshots.get(snapshotTime);
+            if (s == null) {
+                s = new Snapshot();
+                snapshots.put(snapshotTime, s);
+            }
+
+            TableFiles tableFiles = s.m_tableFiles.get(saveFile.getTableName());
+            if (tableFiles == null) {
+                tableFiles = new TableFiles(saveFile.isReplicated());
+                s.m_tableFiles.put(saveFile.getTableName(), tableFiles);
+            }
+            tableFiles.m_files.add(f);
+            tableFiles.m_completed.add(saveFile.getCompleted());
+            tableFiles.m_validPartitionIds.add(partitionIds);
+            tableFiles.m_corruptParititionIds.add(saveFile.getCorruptedPartitionIds());
+            tableFiles.m_totalPartitionCounts.add(saveFile.getTotalPartitions());
+        } finally {
+            saveFile.close();
+        }
+    }
+
     /**
      * Returns a detailed report and a boolean indicating whether the snapshot can be successfully loaded
      * @param snapshotTime
@@ -0,0 +1,349 @@
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Table;
+import org.voltdb.utils.DBBPool.BBContainer;
+
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+
+/**
+ * Reads a table save file and converts its chunks into VoltTables in the background
+ * so that the partition that is restoring the table only has to hand the
+ * tables to the EE. The number of converted chunks that can be waiting for the
+ * partition is bounded by the read-ahead count.
+ * <P>
+ * All of the pipelines at a site share a fixed pool of threads. A pipeline only holds
+ * onto a thread while it is reading chunks. It gives it back when its queue is full or
+ * after MAX_CHUNKS_PER_RUN chunks, and the partition reschedules it once it has taken
+ * a chunk out of the queue. The file is read in that thread too (see TableSaveFile.readNextChunk()),
+ * so there are no other threads per table.
+ * <P>
+ * A partition can also ask for the save file of the next table that it is going to
+ * restore to be prefetched. The pipeline is parked until that partition opens the same
+ * file, at which point it gets back the pipeline that is already running. There is at
+ * most one prefetched pipeline per partition.
+ * @author pavlo
+ */
+public class TableRestorePipeline implements Runnable {
+    private static final Logger LOG = Logger.getLogger(TableRestorePipeline.class);
+    private static final LoggerBoolean debug = new LoggerBoolean();
+    private static final LoggerBoolean trace = new LoggerBoolean();
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    private static final int DEFAULT_THREADS = 2;
+
+    /**
+     * The maximum number of chunks that a pipeline will convert before it yields
+     * its thread to the other pipelines waiting for the pool
+     */
+    private static final int MAX_CHUNKS_PER_RUN = 16;
+
+    private static final ExecutorService m_es;
+    static {
+        int threads = DEFAULT_THREADS;
+        if (HStoreConf.isInitialized()) {
+            threads = Math.max(1, HStoreConf.singleton().site.snapshot_restore_threads);
+        }
+        final AtomicInteger threadCounter = new AtomicInteger(0);
+        m_es = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "RestorePipeline-" + threadCounter.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * A converted chunk along with the size of its serialized form
+     */
+    private static class Chunk {
+        private final VoltTable table;
+        private final int bytes;
+
+        private Chunk(VoltTable table, int bytes) {
+            this.table = table;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Marker placed in the queue after the last chunk
+     */
+    private static final Chunk END_OF_FILE = new Chunk(null, 0);
+
+    /**
+     * Prefetched pipelines that have not been claimed yet.
+     * PartitionId -> Pipeline
+     */
+    private static final ConcurrentHashMap<Integer, TableRestorePipeline> prefetched = new ConcurrentHashMap<Integer, TableRestorePipeline>();
+
+    private final File file;
+    private final Table catalog_tbl;
+    private final TableSaveFile savefile;
+    private final BlockingQueue<Chunk> queue;
+    /** Whether this pipeline is waiting for or running in a pool thread */
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile Exception error = null;
+    private volatile boolean stop = false;
+    /** Set by the pool thread once END_OF_FILE is in the queue */
+    private volatile boolean done = false;
+    private boolean closed = false;
+    /** Set by the partition once it has taken END_OF_FILE out of the queue */
+    private boolean finished = false;
+
+    /** The chunk that did not fit in the queue the last time that we ran */
+    private Chunk pending = null;
+
+    /** The number of bytes of the last chunk returned by next() */
+    private int lastChunkBytes = 0;
+
+    private TableRestorePipeline(File file, Table catalog_tbl, int readAheadChunks) throws IOException {
+        this.file = file;
+        this.catalog_tbl = catalog_tbl;
+        FileInputStream input = new FileInputStream(file);
+        this.savefile = new TableSaveFile(input.getChannel(), readAheadChunks, null);
+        this.savefile.setFilePath(file.getAbsolutePath());
+        this.queue = new ArrayBlockingQueue<Chunk>(readAheadChunks);
+        this.schedule();
+    }
+
+    // ----------------------------------------------------------------------------
+    // STATIC METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Open a pipeline for the given save file. If the file was already prefetched
+     * for this partition then the running pipeline is returned. Any other pipeline that
+     * was prefetched for this partition is thrown away.
+     * @param partition
+     * @param file
+     * @param catalog_tbl
+     * @param readAheadChunks
+     * @return
+     * @throws IOException
+     */
+    public static TableRestorePipeline open(int partition, File file, Table catalog_tbl, int readAheadChunks) throws IOException {
+        TableRestorePipeline pipeline = prefetched.remove(partition);
+        if (pipeline != null) {
+            if (pipeline.file.equals(file) && pipeline.catalog_tbl.equals(catalog_tbl)) {
+                if (debug.val) LOG.debug("Using prefetched restore pipeline for " + file);
+                return (pipeline);
+            }
+            pipeline.close();
+        }
+        return (new TableRestorePipeline(file, catalog_tbl, Math.max(1, readAheadChunks)));
+    }
+
+    /**
+     * Start reading the given save file in the background before it is needed.
+     * Any error is deferred until the file is actually opened.
+     * @param partition
+     * @param file
+     * @param catalog_tbl
+     * @param readAheadChunks
+     */
+    public static void prefetch(int partition, File file, Table catalog_tbl, int readAheadChunks) {
+        if (file.exists() == false) return;
+        TableRestorePipeline pipeline = prefetched.get(partition);
+        if (pipeline != null && pipeline.file.equals(file)) return;
+        try {
+            pipeline = new TableRestorePipeline(file, catalog_tbl, Math.max(1, readAheadChunks));
+        } catch (IOException ex) {
+            if (debug.val) LOG.debug("Failed to prefetch " + file, ex);
+            return;
+        }
+        TableRestorePipeline old = prefetched.put(partition, pipeline);
+        if (old != null) old.close();
+    }
+
+    /**
+     * Stop and throw away the pipeline that was prefetched for the given partition
+     * but never opened
+     * @param partition
+     */
+    public static void clearPrefetched(int partition) {
+        TableRestorePipeline pipeline = prefetched.remove(partition);
+        if (pipeline != null) pipeline.close();
+    }
+
+    /**
+     * Stop and throw away all of the pipelines that were prefetched but never opened
+     */
+    public static void clearPrefetched() {
+        for (Integer partition : prefetched.keySet()) {
+            clearPrefetched(partition.intValue());
+        } // FOR
+    }
+
+    /**
+     * Return the pipeline that was prefetched for the given partition but not opened yet
+     * @param partition
+     */
+    static TableRestorePipeline getPrefetched(int partition) {
+        return (prefetched.get(partition));
+    }
+
+    /**
+     * Return the number of pipelines that were prefetched but not opened yet
+     */
+    public static int getPrefetchedCount() {
+        return (prefetched.size());
+    }
+
+    // ----------------------------------------------------------------------------
+    // BACKGROUND TASK
+    // ----------------------------------------------------------------------------
+
+    private void schedule() {
+        if (this.stop == false && this.done == false && this.scheduled.compareAndSet(false, true)) {
+            m_es.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (int i = 0; i < MAX_CHUNKS_PER_RUN && this.stop == false; i++) {
+                if (this.pending == null) this.pending = this.readChunk();
+                // If the queue is full, then the partition will reschedule us
+                // once it takes something out of it
+                if (this.queue.offer(this.pending) == false) break;
+                if (this.pending == END_OF_FILE) this.done = true;
+                this.pending = null;
+                if (this.done) break;
+            } // FOR
+        } finally {
+            this.scheduled.set(false);
+        }
+        if (this.stop || this.done) {
+            this.closeSaveFile();
+        }
+        // The partition may have taken something out of the queue after we found
+        // that it was full but before we cleared our flag, so we have to check again
+        else if (this.queue.remainingCapacity() > 0) {
+            this.schedule();
+        }
+    }
+
+    /**
+     * Read and convert the next chunk from the file.
+     * Returns END_OF_FILE if there are no more chunks or if something went wrong.
+     */
+    private Chunk readChunk() {
+        try {
+            BBContainer c = this.savefile.readNextChunk();
+            if (c == null) return (END_OF_FILE);
+            int bytes = c.b.remaining();
+            VoltTable table = null;
+            try {
+                VoltTable old_table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b, true);
+                table = SavedTableConverter.convertTable(old_table, this.catalog_tbl);
+            } finally {
+                c.discard();
+            }
+            return (new Chunk(table, bytes));
+        } catch (Exception ex) {
+            this.error = ex;
+            return (END_OF_FILE);
+        }
+    }
+
+    private synchronized void closeSaveFile() {
+        if (this.closed) return;
+        this.closed = true;
+        this.pending = null;
+        try {
+            this.savefile.close();
+        } catch (IOException ex) {
+            if (debug.val) LOG.debug("Failed to close " + this.file, ex);
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // CONSUMER METHODS
+    // ----------------------------------------------------------------------------
+
+    public File getFile() {
+        return (this.file);
+    }
+
+    /**
+     * Return the next converted chunk of the table, or null if there are no more chunks.
+     * Any error that happened in the background task is rethrown here.
+     * @return
+     * @throws IOException
+     */
+    public VoltTable next() throws IOException {
+        if (this.finished) return (null);
+        Chunk chunk = null;
+        try {
+            chunk = this.queue.take();
+        } catch (InterruptedException ex) {
+            throw new IOException(ex);
+        }
+        this.schedule();
+        this.lastChunkBytes = chunk.bytes;
+        if (chunk == END_OF_FILE) {
+            this.finished = true;
+            this.lastChunkBytes = 0;
+            if (this.error instanceof IOException) {
+                throw (IOException)this.error;
+            } else if (this.error instanceof RuntimeException) {
+                throw (RuntimeException)this.error;
+            } else if (this.error != null) {
+                throw new IOException(this.error);
+            }
+            return (null);
+        }
+        return (chunk.table);
+    }
+
+    /**
+     * The size in bytes of the serialized chunk that was returned by the last call to next()
+     * @return
+     */
+    public int getLastChunkBytes() {
+        return (this.lastChunkBytes);
+    }
+
+    /**
+     * Returns true if the save file has been closed
+     */
+    public synchronized boolean isClosed() {
+        return (this.closed);
+    }
+
+    /**
+     * Stop reading the file. Any chunks that were not consumed are dropped.
+     * If the pipeline is in the middle of reading a chunk, then the file is
+     * closed as soon as it is done.
+     */
+    public void close() {
+        this.stop = true;
+        this.queue.clear();
+        this.finished = true;
+        if (this.scheduled.get() == false) {
+            this.closeSaveFile();
+        }
+    }
+}
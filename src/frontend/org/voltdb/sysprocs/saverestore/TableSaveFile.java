@@ -317,6 +317,11 @@ public class TableSaveFile {
                 m_availableChunks.poll().discard();
             }
             notifyAll();
+            // There is no ChunkReader thread to close the file for us
+            if (m_chunkReader != null && m_chunkReaderThread == null) {
+                m_hasMoreChunks = false;
+                m_saveFile.close();
+            }
         }
     }
 
@@ -363,6 +368,32 @@ public class TableSaveFile {
         return c;
     }
 
+    /**
+     * Read the next chunk of the table in the calling thread instead of
+     * starting a ChunkReader thread. This is for callers that are already reading
+     * the file in a background thread. It cannot be mixed with getNextChunk().
+     * Returns null when there are no more chunks.
+     */
+    public synchronized BBContainer readNextChunk() throws IOException {
+        assert(m_chunkReaderThread == null) : "ChunkReader thread is already running for " + m_filePath;
+        if (m_chunkReader == null) {
+            m_chunkReader = new ChunkReader();
+        }
+        Container c = m_availableChunks.poll();
+        while (c == null && m_hasMoreChunks) {
+            m_chunkReader.readChunk();
+            c = m_availableChunks.poll();
+        }
+        if (c == null) {
+            m_saveFile.close();
+        }
+        if (m_chunkReaderException != null) {
+            if (c != null) c.discard();
+            throw m_chunkReaderException;
+        }
+        return c;
+    }
+
     public synchronized boolean hasMoreChunks() throws IOException {
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
@@ -451,7 +482,6 @@ public class TableSaveFile {
     private class ChunkReader implements Runnable {
 
         private void readChunks() {
-            int chunksRead = 0;
             while (m_hasMoreChunks) {
                 /*
                  * Limit the number of chunk reads at any one time.
@@ -461,221 +491,228 @@ public class TableSaveFile {
                 } catch (InterruptedException e) {
                     return;
                 }
-                boolean expectedAnotherChunk = false;
-                try {
-                    /*
-                     * Get the length of the next chunk, partition id, crc for
-                     * partition id,
-                     */
-                    ByteBuffer chunkLengthB = ByteBuffer.allocate(16);
-                    while (chunkLengthB.hasRemaining()) {
-                        final int read = m_saveFile.read(chunkLengthB);
-                        if (read == -1) {
-                            throw new EOFException();
-                        }
+                readChunk();
+            }
+        }
+
+        /**
+         * Read the next chunk from the file and add it to m_availableChunks.
+         * The caller is responsible for limiting the number of chunk reads.
+         */
+        private void readChunk() {
+            boolean expectedAnotherChunk = false;
+            try {
+                /*
+                 * Get the length of the next chunk, partition id, crc for
+                 * partition id,
+                 */
+                ByteBuffer chunkLengthB = ByteBuffer.allocate(16);
+                while (chunkLengthB.hasRemaining()) {
+                    final int read = m_saveFile.read(chunkLengthB);
+                    if (read == -1) {
+                        throw new EOFException();
                     }
-                    chunkLengthB.flip();
-                    final int nextChunkLength = chunkLengthB.getInt();
-                    expectedAnotherChunk = true;
+                }
+                chunkLengthB.flip();
+                final int nextChunkLength = chunkLengthB.getInt();
+                expectedAnotherChunk = true;
 
-                    /*
-                     * Get the partition id and its CRC and validate it.
-                     * Validating the partition ID for the chunk separately
-                     * makes it possible to continue processing chunks from
-                     * other partitions if only one partition has corrupt chunks
-                     * in the file.
-                     */
-                    final CRC32 partitionIdCRC = new CRC32();
-                    chunkLengthB.mark();
-                    final int nextChunkPartitionId = chunkLengthB.getInt();
-                    final int nextChunkPartitionIdCRC = chunkLengthB.getInt();
-                    chunkLengthB.reset();
-                    byte partitionIdBytes[] = new byte[4];
-                    chunkLengthB.get(partitionIdBytes);
-                    partitionIdCRC.update(partitionIdBytes);
-                    int generatedValue = (int) partitionIdCRC.getValue();
-
-                    if (generatedValue != nextChunkPartitionIdCRC) {
-                        chunkLengthB.position(0);
-                        for (int partitionId : m_partitionIds) {
-                            m_corruptedPartitions.add(partitionId);
-                        }
-                        throw new IOException("Chunk partition ID CRC check failed. " + "This corrupts all partitions in this file");
+                /*
+                 * Get the partition id and its CRC and validate it.
+                 * Validating the partition ID for the chunk separately
+                 * makes it possible to continue processing chunks from
+                 * other partitions if only one partition has corrupt chunks
+                 * in the file.
+                 */
+                final CRC32 partitionIdCRC = new CRC32();
+                chunkLengthB.mark();
+                final int nextChunkPartitionId = chunkLengthB.getInt();
+                final int nextChunkPartitionIdCRC = chunkLengthB.getInt();
+                chunkLengthB.reset();
+                byte partitionIdBytes[] = new byte[4];
+                chunkLengthB.get(partitionIdBytes);
+                partitionIdCRC.update(partitionIdBytes);
+                int generatedValue = (int) partitionIdCRC.getValue();
+
+                if (generatedValue != nextChunkPartitionIdCRC) {
+                    chunkLengthB.position(0);
+                    for (int partitionId : m_partitionIds) {
+                        m_corruptedPartitions.add(partitionId);
                     }
+                    throw new IOException("Chunk partition ID CRC check failed. " + "This corrupts all partitions in this file");
+                }
 
-                    //System.err.println("nextChunkPartitionId :"+nextChunkPartitionId);
-                    //System.err.println("nextChunkLength :"+nextChunkLength);
-                    
-                    /*
-                     * CRC for the data portion of the chunk
-                     */
-                    chunkLengthB.position(chunkLengthB.position() + 4);
-                    final int nextChunkCRC = chunkLengthB.getInt();
+                //System.err.println("nextChunkPartitionId :"+nextChunkPartitionId);
+                //System.err.println("nextChunkLength :"+nextChunkLength);
+                
+                /*
+                 * CRC for the data portion of the chunk
+                 */
+                chunkLengthB.position(chunkLengthB.position() + 4);
+                final int nextChunkCRC = chunkLengthB.getInt();
 
-                    /*
-                     * Sanity check the length value to ensure there isn't a
-                     * runtime exception or OOM.
-                     */
-                    if (nextChunkLength < 0) {
-                        throw new IOException("Corrupted TableSaveFile chunk has negative chunk length");
-                    }
+                /*
+                 * Sanity check the length value to ensure there isn't a
+                 * runtime exception or OOM.
+                 */
+                if (nextChunkLength < 0) {
+                    throw new IOException("Corrupted TableSaveFile chunk has negative chunk length");
+                }
 
-                    if (nextChunkLength > DEFAULT_CHUNKSIZE) {
-                        throw new IOException("Corrupted TableSaveFile chunk has unreasonable length " + "> DEFAULT_CHUNKSIZE bytes");
-                    }
+                if (nextChunkLength > DEFAULT_CHUNKSIZE) {
+                    throw new IOException("Corrupted TableSaveFile chunk has unreasonable length " + "> DEFAULT_CHUNKSIZE bytes");
+                }
 
-                    /*
-                     * Now allocate space to store the chunk using the VoltTable
-                     * serialization representation. The chunk will contain an
-                     * integer row count preceding it so it can be sucked
-                     * straight in. There is a little funny business to
-                     * overwrite the partition id that is not part of the
-                     * serialization format
-                     */
-                    Container c = m_buffers.poll();
-                    if (c == null) {
-                        final BBContainer originContainer = DBBPool.allocateDirect(DEFAULT_CHUNKSIZE);
-                        final ByteBuffer b = originContainer.b;
-                        final long pointer = org.voltdb.utils.DBBPool.getBufferAddress(b);
-                        c = new Container(b, pointer, originContainer);
-                    }
+                /*
+                 * Now allocate space to store the chunk using the VoltTable
+                 * serialization representation. The chunk will contain an
+                 * integer row count preceding it so it can be sucked
+                 * straight in. There is a little funny business to
+                 * overwrite the partition id that is not part of the
+                 * serialization format
+                 */
+                Container c = m_buffers.poll();
+                if (c == null) {
+                    final BBContainer originContainer = DBBPool.allocateDirect(DEFAULT_CHUNKSIZE);
+                    final ByteBuffer b = originContainer.b;
+                    final long pointer = org.voltdb.utils.DBBPool.getBufferAddress(b);
+                    c = new Container(b, pointer, originContainer);
+                }
 
+                /*
+                 * If the length value is wrong or not all data made it to
+                 * disk this read will not complete correctly. There could
+                 * be overflow, underflow etc. so use a try finally block to
+                 * indicate that all partitions are now corrupt. The
+                 * enclosing exception handlers will do the right thing WRT
+                 * to propagating the error and closing the file.
+                 */
+                boolean completedRead = false;
+                int checksumStartPosition = 0;
+                int rowCount = 0;
+                try {
                     /*
-                     * If the length value is wrong or not all data made it to
-                     * disk this read will not complete correctly. There could
-                     * be overflow, underflow etc. so use a try finally block to
-                     * indicate that all partitions are now corrupt. The
-                     * enclosing exception handlers will do the right thing WRT
-                     * to propagating the error and closing the file.
+                     * Assemble a VoltTable out of the chunk of tuples. Put
+                     * in the header that was cached in the constructor,
+                     * then copy the tuple data. The row count is at the end
+                     * because it isn't known until serialization is
+                     * complete. It will have to be moved back to the
+                     * beginning of the tuple data after the header once the
+                     * CRC has been calculated.
                      */
-                    boolean completedRead = false;
-                    int checksumStartPosition = 0;
-                    int rowCount = 0;
-                    try {
-                        /*
-                         * Assemble a VoltTable out of the chunk of tuples. Put
-                         * in the header that was cached in the constructor,
-                         * then copy the tuple data. The row count is at the end
-                         * because it isn't known until serialization is
-                         * complete. It will have to be moved back to the
-                         * beginning of the tuple data after the header once the
-                         * CRC has been calculated.
-                         */
-                        c.b.clear();
-                        c.b.limit((nextChunkLength - 8) + m_tableHeader.capacity());
-                        m_tableHeader.position(0);
-                        c.b.put(m_tableHeader);
-                        c.b.position(c.b.position() + 4);// Leave space for row
-                                                         // count to be moved
-                                                         // into
-                        checksumStartPosition = c.b.position();
-                        while (c.b.hasRemaining()) {
-                            final int read = m_saveFile.read(c.b);
-                            if (read == -1) {
-                                throw new EOFException();
-                            }
-                        }
-                        c.b.position(c.b.position() - 4);
-                        rowCount = c.b.getInt();
-                        c.b.position(checksumStartPosition);
-                        completedRead = true;
-                    } finally {
-                        if (!completedRead) {
-                            for (int partitionId : m_partitionIds) {
-                                m_corruptedPartitions.add(partitionId);
-                            }
+                    c.b.clear();
+                    c.b.limit((nextChunkLength - 8) + m_tableHeader.capacity());
+                    m_tableHeader.position(0);
+                    c.b.put(m_tableHeader);
+                    c.b.position(c.b.position() + 4);// Leave space for row
+                                                     // count to be moved
+                                                     // into
+                    checksumStartPosition = c.b.position();
+                    while (c.b.hasRemaining()) {
+                        final int read = m_saveFile.read(c.b);
+                        if (read == -1) {
+                            throw new EOFException();
                         }
                     }
-
-                    /*
-                     * Validate the rest of the chunk. This can fail if the data
-                     * is corrupted or the length value was corrupted.
-                     */
-                    final int calculatedCRC = DBBPool.getBufferCRC32(c.b, c.b.position(), c.b.remaining());
-                    if (calculatedCRC != nextChunkCRC) {
-                        m_corruptedPartitions.add(nextChunkPartitionId);
-                        if (m_continueOnCorruptedChunk) {
-                            c.discard();
-                            m_chunkReads.release();
-                            continue;
-                        } else {
-                            throw new IOException("CRC mismatch in saved table chunk");
+                    c.b.position(c.b.position() - 4);
+                    rowCount = c.b.getInt();
+                    c.b.position(checksumStartPosition);
+                    completedRead = true;
+                } finally {
+                    if (!completedRead) {
+                        for (int partitionId : m_partitionIds) {
+                            m_corruptedPartitions.add(partitionId);
                         }
                     }
+                }
 
-                    /*
-                     * Skip irrelevant chunks after CRC is calculated. Always
-                     * calulate the CRC in case it is the length value that is
-                     * corrupted
-                     */
-                    if (m_relevantPartitionIds != null) {
-                        if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
-                            c.discard();
-                            m_chunkReads.release();
-                            continue;
-                        }
+                /*
+                 * Validate the rest of the chunk. This can fail if the data
+                 * is corrupted or the length value was corrupted.
+                 */
+                final int calculatedCRC = DBBPool.getBufferCRC32(c.b, c.b.position(), c.b.remaining());
+                if (calculatedCRC != nextChunkCRC) {
+                    m_corruptedPartitions.add(nextChunkPartitionId);
+                    if (m_continueOnCorruptedChunk) {
+                        c.discard();
+                        m_chunkReads.release();
+                        return;
+                    } else {
+                        throw new IOException("CRC mismatch in saved table chunk");
                     }
+                }
 
-                    /*
-                     * The row count which was stored on disk at the end (and
-                     * for the CRC calc) is now moved to the appropriate place
-                     * for the table serialization format. Update the limit to
-                     * reflect that. Surrounded in a try finally just in case
-                     * there is overflow/underflow. Shouldn't happen but I could
-                     * be wrong.
-                     */
-                    boolean success = false;
-                    try {
-                        c.b.limit(c.b.limit() - 4);
-                        c.b.position(checksumStartPosition - 4);
-                        c.b.putInt(rowCount);
-                        c.b.position(0);
-                        success = true;
-                    } finally {
-                        if (!success) {
-                            for (int partitionId : m_partitionIds) {
-                                m_corruptedPartitions.add(partitionId);
-                            }
-                        }
+                /*
+                 * Skip irrelevant chunks after CRC is calculated. Always
+                 * calulate the CRC in case it is the length value that is
+                 * corrupted
+                 */
+                if (m_relevantPartitionIds != null) {
+                    if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
+                        c.discard();
+                        m_chunkReads.release();
+                        return;
                     }
-                    ++chunksRead;
+                }
 
-                    synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
-                        TableSaveFile.this.notifyAll();
-                    }
-                } catch (EOFException eof) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        if (expectedAnotherChunk) {
-                            m_chunkReaderException = new IOException("Expected to find another chunk but reached end of file instead");
+                /*
+                 * The row count which was stored on disk at the end (and
+                 * for the CRC calc) is now moved to the appropriate place
+                 * for the table serialization format. Update the limit to
+                 * reflect that. Surrounded in a try finally just in case
+                 * there is overflow/underflow. Shouldn't happen but I could
+                 * be wrong.
+                 */
+                boolean success = false;
+                try {
+                    c.b.limit(c.b.limit() - 4);
+                    c.b.position(checksumStartPosition - 4);
+                    c.b.putInt(rowCount);
+                    c.b.position(0);
+                    success = true;
+                } finally {
+                    if (!success) {
+                        for (int partitionId : m_partitionIds) {
+                            m_corruptedPartitions.add(partitionId);
                         }
-                        TableSaveFile.this.notifyAll();
-                    }
-                } catch (IOException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = e;
-                        TableSaveFile.this.notifyAll();
-                    }
-                } catch (BufferUnderflowException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
-                    }
-                } catch (BufferOverflowException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
                     }
-                } catch (IndexOutOfBoundsException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
+                }
+
+                synchronized (TableSaveFile.this) {
+                    m_availableChunks.offer(c);
+                    TableSaveFile.this.notifyAll();
+                }
+            } catch (EOFException eof) {
+                synchronized (TableSaveFile.this) {
+                    m_hasMoreChunks = false;
+                    if (expectedAnotherChunk) {
+                        m_chunkReaderException = new IOException("Expected to find another chunk but reached end of file instead");
                     }
+                    TableSaveFile.this.notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (TableSaveFile.this) {
+                    m_hasMoreChunks = false;
+                    m_chunkReaderException = e;
+                    TableSaveFile.this.notifyAll();
+                }
+            } catch (BufferUnderflowException e) {
+                synchronized (TableSaveFile.this) {
+                    m_hasMoreChunks = false;
+                    m_chunkReaderException = new IOException(e);
+                    TableSaveFile.this.notifyAll();
+                }
+            } catch (BufferOverflowException e) {
+                synchronized (TableSaveFile.this) {
+                    m_hasMoreChunks = false;
+                    m_chunkReaderException = new IOException(e);
+                    TableSaveFile.this.notifyAll();
+                }
+            } catch (IndexOutOfBoundsException e) {
+                synchronized (TableSaveFile.this) {
+                    m_hasMoreChunks = false;
+                    m_chunkReaderException = new IOException(e);
+                    TableSaveFile.this.notifyAll();
                 }
             }
         }
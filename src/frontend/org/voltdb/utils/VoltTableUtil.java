@@ -1,6 +1,7 @@
 package org.voltdb.utils;
 
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 
@@ -11,6 +12,9 @@ import org.voltdb.catalog.Table;
 import org.voltdb.types.SortDirectionType;
 
 import au.com.bytecode.opencsv.CSVWriter;
+
+import com.google.protobuf.ByteString;
+
 import edu.brown.utils.StringBoxUtil;
 import edu.brown.utils.StringUtil;
 import edu.brown.utils.TableUtil;
@@ -165,6 +169,36 @@ public abstract class VoltTableUtil {
         return (result);
     }
     
+    /**
+     * Copy the given VoltTable into a ByteString that can be attached to a protobuf
+     * message. This copies the table's buffer directly without going through a
+     * FastSerializer first. Note that the ByteString does not include the length
+     * prefix that VoltTable.writeExternal() writes, so it must be read back
+     * with fromByteString().
+     * @param vt
+     * @return
+     */
+    public static ByteString toByteString(VoltTable vt) {
+        ByteBuffer buffer = vt.getDirectDataReference().duplicate();
+        buffer.limit(buffer.position());
+        buffer.position(0);
+        return (ByteString.copyFrom(buffer));
+    }
+    
+    /**
+     * Create a VoltTable from a ByteString that was created with toByteString().
+     * The VoltTable is backed by the ByteString's bytes, so nothing is copied.
+     * This means that the returned VoltTable is read-only. Note that the
+     * ExecutionEngine still has to copy the table's bytes if it gets passed down to it.
+     * @param bs
+     * @return
+     */
+    public static VoltTable fromByteString(ByteString bs) {
+        // The ByteString may only be a piece of a larger array, so we have to slice
+        // the buffer to make the start of the table be at position zero
+        return (new VoltTable(bs.asReadOnlyByteBuffer().slice(), true));
+    }
+    
     
     /**
      * Returns a row with random data that can be added to this VoltTable
@@ -21,5 +21,17 @@ public class MockAntiCacheManager extends AntiCacheManager{
 		}
 		this.processingCallback(next);
 	}
+	
+	public int getQueueSize(){
+		return this.queue.size();
+	}
+	
+	public QueueEntry peekQueue(){
+		return this.queue.peek();
+	}
+	
+	public QueueEntry pollQueue(){
+		return this.queue.poll();
+	}
 
 }
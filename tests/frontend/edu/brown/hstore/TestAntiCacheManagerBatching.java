@@ -0,0 +1,205 @@
+package edu.brown.hstore;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.catalog.Table;
+
+import com.google.protobuf.RpcCallback;
+
+import edu.brown.BaseTestCase;
+import edu.brown.benchmark.AbstractProjectBuilder;
+import edu.brown.benchmark.ycsb.YCSBConstants;
+import edu.brown.benchmark.ycsb.YCSBProjectBuilder;
+import edu.brown.hstore.AntiCacheManager.QueueEntry;
+import edu.brown.hstore.Hstoreservice.UnevictDataResponse;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.hstore.txns.AbstractTransaction;
+import edu.brown.hstore.txns.LocalTransaction;
+import edu.brown.hstore.txns.RemoteTransaction;
+import edu.brown.profilers.AntiCacheManagerProfiler;
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.FileUtil;
+
+/**
+ * Tests for how the AntiCacheManager coalesces uneviction requests
+ * from multiple transactions into batches
+ * @author pavlo
+ */
+public class TestAntiCacheManagerBatching extends BaseTestCase {
+
+    private static final int NUM_PARTITIONS = 1;
+    private static final int BATCH_SIZE = 4;
+    private static final String TARGET_TABLE = YCSBConstants.TABLE_NAME;
+
+    private final MockHStoreSite hstore_sites[] = new MockHStoreSite[2];
+    private final MockAntiCacheManager managers[] = new MockAntiCacheManager[2];
+    private final int partitions[] = new int[2];
+    private HStoreConf hstore_conf;
+    private File anticache_dir;
+    private Table catalog_tbl;
+
+    private final AbstractProjectBuilder builder = new YCSBProjectBuilder() {
+        {
+            this.markTableEvictable(TARGET_TABLE);
+            this.addAllDefaults();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp(builder, false);
+        this.anticache_dir = FileUtil.getTempDirectory();
+        this.catalog_tbl = getTable(TARGET_TABLE);
+        assertTrue(catalog_tbl.getEvictable());
+
+        this.initializeCatalog(1, 2, NUM_PARTITIONS);
+        this.hstore_conf = HStoreConf.singleton();
+        this.hstore_conf.site.status_enable = false;
+        this.hstore_conf.site.txn_partition_id_managers = true;
+        this.hstore_conf.site.anticache_enable = true;
+        this.hstore_conf.site.anticache_profiling = true;
+        this.hstore_conf.site.anticache_check_interval = Integer.MAX_VALUE;
+        this.hstore_conf.site.anticache_dir = this.anticache_dir.getAbsolutePath();
+        this.hstore_conf.site.anticache_unevict_batch_size = BATCH_SIZE;
+
+        for (int i = 0; i < this.hstore_sites.length; i++) {
+            this.hstore_sites[i] = new MockHStoreSite(i, catalogContext, hstore_conf);
+            // MockHStoreSite gives us a new manager every time, so we need to hang on to this one
+            this.managers[i] = (MockAntiCacheManager)this.hstore_sites[i].getAntiCacheManager();
+            this.partitions[i] = CollectionUtil.first(this.hstore_sites[i].getLocalPartitionIds());
+        } // FOR
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        FileUtil.deleteDirectory(this.anticache_dir);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // UTILITY METHODS
+    // --------------------------------------------------------------------------------------------
+
+    private void checkBlocks(QueueEntry entry, int...block_ids) {
+        assertEquals(entry.blocks.toString(), block_ids.length, entry.blocks.size());
+        for (int block_id : block_ids) {
+            assertTrue(entry.blocks.toString(), entry.blocks.containsKey(block_id));
+        } // FOR
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // TEST CASES
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * testQueueCoalesce
+     */
+    @Test
+    public void testQueueCoalesce() throws Exception {
+        MockAntiCacheManager manager = this.managers[0];
+        int partition = this.partitions[0];
+        LocalTransaction txns[] = new LocalTransaction[5];
+        for (int i = 0; i < txns.length; i++) {
+            txns[i] = MockHStoreSite.makeLocalTransaction(this.hstore_sites[0]);
+        } // FOR
+
+        // The first txn gets a new batch
+        assertTrue(manager.queue(txns[0], partition, catalog_tbl, new int[]{ 1, 2 }, new int[]{ 10, 20 }));
+        assertEquals(1, manager.getQueueSize());
+        QueueEntry first = manager.peekQueue();
+        this.checkBlocks(first, 1, 2);
+        assertEquals(1, first.waiters.size());
+
+        // A txn that needs the same blocks just waits on that batch
+        assertTrue(manager.queue(txns[1], partition, catalog_tbl, new int[]{ 2, 1 }, new int[]{ 21, 11 }));
+        assertEquals(1, manager.getQueueSize());
+        this.checkBlocks(first, 1, 2);
+        assertEquals(2, first.waiters.size());
+
+        // A txn that needs a different block joins the open batch
+        assertTrue(manager.queue(txns[2], partition, catalog_tbl, new int[]{ 3 }, new int[]{ 30 }));
+        assertEquals(1, manager.getQueueSize());
+        this.checkBlocks(first, 1, 2, 3);
+        assertEquals(3, first.waiters.size());
+
+        // But if there isn't room for all of its blocks, then it gets its own batch
+        assertTrue(manager.queue(txns[3], partition, catalog_tbl, new int[]{ 4, 5 }, new int[]{ 40, 50 }));
+        assertEquals(2, manager.getQueueSize());
+        this.checkBlocks(first, 1, 2, 3);
+        assertEquals(3, first.waiters.size());
+
+        // Duplicate blocks are removed but keep their own tuple offsets
+        assertTrue(manager.queue(txns[4], partition, catalog_tbl, new int[]{ 6, 6, 7 }, new int[]{ 60, 61, 70 }));
+        assertEquals(2, manager.getQueueSize());
+        assertEquals(10, first.blocks.get(1).intValue());
+        assertEquals(20, first.blocks.get(2).intValue());
+
+        // The second batch replaced the first one as the open batch for the
+        // table, so it should have both of the last txns
+        assertSame(first, manager.pollQueue());
+        QueueEntry second = manager.peekQueue();
+        assertNotSame(first, second);
+        this.checkBlocks(second, 4, 5, 6, 7);
+        assertEquals(60, second.blocks.get(6).intValue());
+        assertEquals(70, second.blocks.get(7).intValue());
+        assertEquals(2, second.waiters.size());
+        assertTrue(second.waiters.contains(txns[3]));
+        assertTrue(second.waiters.contains(txns[4]));
+
+        AntiCacheManagerProfiler profiler = manager.getDebugContext().getProfiler(partition);
+        assertNotNull(profiler);
+        assertEquals(3, profiler.piggybacked_txns);
+    }
+
+    /**
+     * testProcessQueueFinish
+     */
+    @Test
+    public void testProcessQueueFinish() throws Exception {
+        final MockAntiCacheManager manager = this.managers[1];
+        final int partition = this.partitions[1];
+        final int block_ids[] = new int[]{ 1111 };
+        final int tuple_offsets[] = new int[]{ 0 };
+        final CountDownLatch latch = new CountDownLatch(2);
+        final RpcCallback<UnevictDataResponse> callback = new RpcCallback<UnevictDataResponse>() {
+            @Override
+            public void run(UnevictDataResponse parameter) {
+                assertEquals(partition, parameter.getPartitionId());
+                latch.countDown();
+            }
+        };
+
+        RemoteTransaction txns[] = new RemoteTransaction[2];
+        for (int i = 0; i < txns.length; i++) {
+            txns[i] = MockHStoreSite.makeDistributedTransaction(this.hstore_sites[0], this.hstore_sites[1]);
+            txns[i].setUnevictCallback(callback);
+            assertTrue(manager.queue(txns[i], partition, catalog_tbl, block_ids, tuple_offsets));
+        } // FOR
+        assertEquals(1, manager.getQueueSize());
+        QueueEntry entry = manager.peekQueue();
+
+        // Both txns should get restarted from the one read
+        manager.processQueue();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(entry.dispatched);
+        assertTrue(entry.finished);
+        for (AbstractTransaction ts : txns) {
+            assertEquals(catalog_tbl, ts.getAntiCacheMergeTable());
+        } // FOR
+        assertEquals(0, manager.getQueueSize());
+
+        // The finished batch should not pick up any more txns
+        RemoteTransaction next = MockHStoreSite.makeDistributedTransaction(this.hstore_sites[0], this.hstore_sites[1]);
+        next.setUnevictCallback(callback);
+        assertTrue(manager.queue(next, partition, catalog_tbl, block_ids, tuple_offsets));
+        assertEquals(1, manager.getQueueSize());
+        QueueEntry newEntry = manager.peekQueue();
+        assertNotSame(entry, newEntry);
+        assertEquals(1, newEntry.waiters.size());
+        assertEquals(2, entry.waiters.size());
+    }
+}
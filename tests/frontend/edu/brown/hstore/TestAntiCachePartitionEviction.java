@@ -0,0 +1,200 @@
+package edu.brown.hstore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.Table;
+import org.voltdb.utils.EstTime;
+
+import edu.brown.BaseTestCase;
+import edu.brown.benchmark.AbstractProjectBuilder;
+import edu.brown.benchmark.ycsb.YCSBConstants;
+import edu.brown.benchmark.ycsb.YCSBProjectBuilder;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.hstore.internal.UtilityWorkMessage.EvictBlocksMessage;
+
+/**
+ * Tests for how the AntiCacheManager schedules evictions at each partition
+ * when ${site.anticache_partition_eviction} is enabled
+ * @author pavlo
+ */
+public class TestAntiCachePartitionEviction extends BaseTestCase {
+
+    private static final int NUM_PARTITIONS = 2;
+    private static final String TARGET_TABLE = YCSBConstants.TABLE_NAME;
+    private static final int THRESHOLD_MB = 100;
+    private static final int BLOCKS_PER_EVICTION = 8;
+    private static final long OVER_TARGET_KB = 200 * 1024;
+    private static final long UNDER_TARGET_KB = 10 * 1024;
+
+    private MockHStoreSite hstore_site;
+    private HStoreConf hstore_conf;
+    private MockAntiCacheManager manager;
+    private Table catalog_tbl;
+
+    private final AbstractProjectBuilder builder = new YCSBProjectBuilder() {
+        {
+            this.markTableEvictable(TARGET_TABLE);
+            this.addAllDefaults();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp(builder, false);
+        this.initializeCatalog(1, 1, NUM_PARTITIONS);
+        this.catalog_tbl = getTable(TARGET_TABLE);
+        assertTrue(catalog_tbl.getEvictable());
+
+        this.hstore_conf = HStoreConf.singleton();
+        this.hstore_conf.site.status_enable = false;
+        this.hstore_conf.site.anticache_enable = true;
+        this.hstore_conf.site.anticache_profiling = false;
+        this.hstore_conf.site.anticache_partition_eviction = true;
+        this.hstore_conf.site.anticache_threshold_mb = THRESHOLD_MB;
+        this.hstore_conf.site.anticache_blocks_per_eviction = BLOCKS_PER_EVICTION;
+        this.hstore_conf.site.anticache_max_evicted_blocks = Integer.MAX_VALUE;
+        this.hstore_conf.site.anticache_eviction_distribution = "even";
+
+        this.hstore_site = new MockHStoreSite(0, catalogContext, hstore_conf);
+        this.manager = (MockAntiCacheManager)this.hstore_site.getAntiCacheManager();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.hstore_conf.site.anticache_partition_eviction = false;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // UTILITY METHODS
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * Send the AntiCacheManager the table stats for a partition like the
+     * PartitionExecutor would after a TableStatsRequestMessage
+     */
+    private void updateStats(int partition, long sizeKb, long blocksFetched, long blocksWritten) {
+        VoltTable vt = new VoltTable(
+            new VoltTable.ColumnInfo("PARTITION_ID", VoltType.BIGINT),
+            new VoltTable.ColumnInfo("TABLE_NAME", VoltType.STRING),
+            new VoltTable.ColumnInfo("TUPLE_DATA_MEMORY", VoltType.BIGINT),
+            new VoltTable.ColumnInfo("STRING_DATA_MEMORY", VoltType.BIGINT),
+            new VoltTable.ColumnInfo("INDEX_MEMORY", VoltType.BIGINT),
+            new VoltTable.ColumnInfo("ANTICACHE_BLOCKS_EVICTED", VoltType.BIGINT),
+            new VoltTable.ColumnInfo("ANTICACHE_BLOCKS_READ", VoltType.BIGINT),
+            new VoltTable.ColumnInfo("ANTICACHE_BLOCKS_WRITTEN", VoltType.BIGINT),
+            new VoltTable.ColumnInfo("TUPLE_ACCESSES", VoltType.BIGINT)
+        );
+        vt.addRow(partition, TARGET_TABLE, sizeKb, 0, 0, blocksWritten - blocksFetched, blocksFetched, blocksWritten, 0);
+        this.manager.updatePartitionStats(vt);
+    }
+
+    private EvictBlocksMessage getPendingEviction(int partition) {
+        return (this.hstore_site.getPartitionExecutor(partition).getDebugContext().getPendingEviction());
+    }
+
+    private void checkEviction(EvictBlocksMessage work, int expectedBlocks) {
+        assertNotNull(work);
+        assertEquals(1, work.getTables().length);
+        assertEquals(catalog_tbl, work.getTables()[0]);
+        assertEquals(expectedBlocks, work.getBlocks()[0]);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // TEST CASES
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * testCheckPartitionEviction
+     */
+    @Test
+    public void testCheckPartitionEviction() throws Exception {
+        // Only the partition that is over its share of the memory should evict
+        this.updateStats(0, OVER_TARGET_KB, 0, 0);
+        this.updateStats(1, UNDER_TARGET_KB, 0, 0);
+
+        int blocksPerRound = BLOCKS_PER_EVICTION / NUM_PARTITIONS;
+        this.checkEviction(this.getPendingEviction(0), blocksPerRound);
+        assertNull(this.getPendingEviction(1));
+
+        AntiCacheManager.Debug debug = this.manager.getDebugContext();
+        assertTrue(debug.isEvicting());
+        for (int p = 0; p < NUM_PARTITIONS; p++) {
+            assertEquals(THRESHOLD_MB / (double)NUM_PARTITIONS, debug.getPartitionEvictionTarget(p), 0.001);
+            assertEquals(blocksPerRound, debug.getPartitionEvictionBlocks(p));
+        } // FOR
+    }
+
+    /**
+     * testPendingEviction
+     */
+    @Test
+    public void testPendingEviction() throws Exception {
+        this.updateStats(0, OVER_TARGET_KB, 0, 0);
+        EvictBlocksMessage first = this.getPendingEviction(0);
+        assertNotNull(first);
+
+        // We shouldn't schedule another eviction until the first one is done
+        this.updateStats(0, OVER_TARGET_KB, 0, 0);
+        assertSame(first, this.getPendingEviction(0));
+
+        this.manager.evictionFinished(0, 0);
+        assertFalse(this.manager.getDebugContext().isEvicting());
+        this.updateStats(0, OVER_TARGET_KB, 0, 0);
+        EvictBlocksMessage second = this.getPendingEviction(0);
+        assertNotNull(second);
+        assertNotSame(first, second);
+    }
+
+    /**
+     * testQueueEvictionReplacesPending
+     */
+    @Test
+    public void testQueueEvictionReplacesPending() throws Exception {
+        PartitionExecutor executor = this.hstore_site.getPartitionExecutor(0);
+        Table tables[] = { catalog_tbl };
+        Table childTables[] = { null };
+        long blockSize = hstore_conf.site.anticache_block_size;
+        EvictBlocksMessage first = new EvictBlocksMessage(tables, childTables, new int[]{ 1 },
+                                                          blockSize, EstTime.currentTimeMillis());
+        EvictBlocksMessage second = new EvictBlocksMessage(tables, childTables, new int[]{ 2 },
+                                                           blockSize, EstTime.currentTimeMillis());
+        executor.queueEviction(first);
+        assertSame(first, this.getPendingEviction(0));
+        executor.queueEviction(second);
+        assertSame(second, this.getPendingEviction(0));
+        assertNull(this.getPendingEviction(1));
+    }
+
+    /**
+     * testAdaptiveSchedule
+     */
+    @Test
+    public void testAdaptiveSchedule() throws Exception {
+        AntiCacheManager.Debug debug = this.manager.getDebugContext();
+        int blocksPerRound = BLOCKS_PER_EVICTION / NUM_PARTITIONS;
+        this.updateStats(0, OVER_TARGET_KB, 0, 0);
+        this.checkEviction(this.getPendingEviction(0), blocksPerRound);
+        this.manager.evictionFinished(0, blocksPerRound);
+
+        // Read back everything that we evicted. That means that we evicted too much,
+        // so we should evict less next time and keep more of this partition in memory
+        this.updateStats(0, OVER_TARGET_KB, blocksPerRound, blocksPerRound);
+        blocksPerRound /= 2;
+        this.checkEviction(this.getPendingEviction(0), blocksPerRound);
+        assertEquals(blocksPerRound, debug.getPartitionEvictionBlocks(0));
+        assertTrue(debug.getPartitionEvictionTarget(0) > THRESHOLD_MB / (double)NUM_PARTITIONS);
+        this.manager.evictionFinished(0, blocksPerRound);
+
+        // Now don't read anything back, so we can start evicting more again
+        this.updateStats(0, OVER_TARGET_KB, 2 * blocksPerRound, 4 * blocksPerRound);
+        blocksPerRound += 1;
+        this.checkEviction(this.getPendingEviction(0), blocksPerRound);
+        assertEquals(blocksPerRound, debug.getPartitionEvictionBlocks(0));
+
+        // The other partition shouldn't be touched
+        assertNull(this.getPendingEviction(1));
+        assertEquals(BLOCKS_PER_EVICTION / NUM_PARTITIONS, debug.getPartitionEvictionBlocks(1));
+    }
+}
@@ -0,0 +1,179 @@
+package edu.brown.hstore;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Site;
+import org.voltdb.catalog.Statement;
+import org.voltdb.catalog.StmtParameter;
+import org.voltdb.catalog.Table;
+import org.voltdb.client.Client;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.jni.ExecutionEngine;
+import org.voltdb.utils.VoltTableUtil;
+
+import edu.brown.BaseTestCase;
+import edu.brown.benchmark.AbstractProjectBuilder;
+import edu.brown.benchmark.ycsb.YCSBConstants;
+import edu.brown.benchmark.ycsb.YCSBProjectBuilder;
+import edu.brown.catalog.CatalogUtil;
+import edu.brown.hstore.Hstoreservice.Status;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.profilers.AntiCacheManagerProfiler;
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.FileUtil;
+
+/**
+ * Tests for probing single-partition txns for evicted tuples before they are queued
+ * @author pavlo
+ */
+public class TestAntiCachePreUnevict extends BaseTestCase {
+
+    private static final int NUM_PARTITIONS = 1;
+    private static final int NUM_TUPLES = 10;
+    private static final String TARGET_TABLE = YCSBConstants.TABLE_NAME;
+    private static final String TARGET_PROCEDURE = "GetRecord";
+
+    private HStoreSite hstore_site;
+    private HStoreConf hstore_conf;
+    private File anticache_dir;
+    private Client client;
+
+    private PartitionExecutor executor;
+    private ExecutionEngine ee;
+    private Table catalog_tbl;
+    private String expectedValues[];
+
+    private final AbstractProjectBuilder builder = new YCSBProjectBuilder() {
+        {
+            this.markTableEvictable(TARGET_TABLE);
+            this.addAllDefaults();
+            this.addStmtProcedure(TARGET_PROCEDURE,
+                                  "SELECT * FROM " + TARGET_TABLE + " WHERE ycsb_key = ?");
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp(builder, false);
+        initializeCatalog(1, 1, NUM_PARTITIONS);
+        this.anticache_dir = FileUtil.getTempDirectory();
+
+        this.catalog_tbl = getTable(TARGET_TABLE);
+        assertTrue(catalog_tbl.getEvictable());
+
+        // Single-statement procedures don't get a ParameterMapping, so we have to
+        // tell the planner that the query's key is the procedure's only parameter
+        Procedure catalog_proc = this.getProcedure(TARGET_PROCEDURE);
+        Statement catalog_stmt = CollectionUtil.first(catalog_proc.getStatements());
+        StmtParameter catalog_stmt_param = CollectionUtil.first(catalog_stmt.getParameters());
+        catalog_stmt_param.setProcparameter(CollectionUtil.first(catalog_proc.getParameters()));
+
+        Site catalog_site = CollectionUtil.first(getCatalogContext().sites);
+        this.hstore_conf = HStoreConf.singleton();
+        this.hstore_conf.site.status_enable = false;
+        this.hstore_conf.site.anticache_enable = true;
+        this.hstore_conf.site.anticache_profiling = true;
+        this.hstore_conf.site.anticache_preunevict = true;
+        this.hstore_conf.site.anticache_check_interval = Integer.MAX_VALUE;
+        this.hstore_conf.site.anticache_dir = this.anticache_dir.getAbsolutePath();
+        this.hstore_conf.site.anticache_dbtype = "BERKELEY";
+
+        this.hstore_site = createHStoreSite(catalog_site, hstore_conf);
+        this.executor = hstore_site.getPartitionExecutor(0);
+        assertNotNull(this.executor);
+        this.ee = executor.getExecutionEngine();
+        assertNotNull(this.ee);
+
+        this.client = createClient();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (this.client != null) this.client.close();
+        if (this.hstore_site != null) this.hstore_site.shutdown();
+        this.hstore_conf.site.anticache_preunevict = false;
+        FileUtil.deleteDirectory(this.anticache_dir);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // UTILITY METHODS
+    // --------------------------------------------------------------------------------------------
+
+    private void loadData() throws Exception {
+        VoltTable vt = CatalogUtil.getVoltTable(catalog_tbl);
+        assertNotNull(vt);
+        this.expectedValues = new String[NUM_TUPLES];
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            Object row[] = VoltTableUtil.getRandomRow(catalog_tbl);
+            row[0] = i;
+            vt.addRow(row);
+            this.expectedValues[i] = row[1].toString();
+        } // FOR
+        this.executor.loadTable(1000l, catalog_tbl, vt, false);
+    }
+
+    private void evictData() throws Exception {
+        VoltTable evictResult = this.ee.antiCacheEvictBlock(catalog_tbl, 1024 * 500, 1);
+        assertNotNull(evictResult);
+        assertEquals(1, evictResult.getRowCount());
+        evictResult.resetRowPosition();
+        assertTrue(evictResult.advanceRow());
+        long evicted = evictResult.getLong("ANTICACHE_TUPLES_EVICTED");
+        assertTrue("No tuples were evicted!" + evictResult, evicted > 0);
+    }
+
+    private void checkRecord(long key) throws Exception {
+        ClientResponse cresponse = this.client.callProcedure(TARGET_PROCEDURE, key);
+        assertEquals(cresponse.toString(), Status.OK, cresponse.getStatus());
+        VoltTable results[] = cresponse.getResults();
+        assertEquals(1, results.length);
+        assertTrue(results[0].advanceRow());
+        assertEquals(key, results[0].getLong(0));
+        assertEquals(this.expectedValues[(int)key], results[0].getString(1));
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // TEST CASES
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * testPreUnevict
+     */
+    @Test
+    public void testPreUnevict() throws Exception {
+        this.loadData();
+        this.evictData();
+
+        // The probe should find the evicted tuple, so the txn gets its
+        // blocks read in before it starts instead of being restarted
+        this.checkRecord(1);
+
+        AntiCacheManagerProfiler profiler = hstore_site.getAntiCacheManager().getDebugContext().getProfiler(0);
+        assertNotNull(profiler);
+        assertEquals(1, profiler.preunevicted_txns);
+        assertEquals(0, profiler.restarted_txns);
+        assertEquals(0, profiler.evictedaccess_history.size());
+    }
+
+    /**
+     * testPreUnevictNotEvicted
+     */
+    @Test
+    public void testPreUnevictNotEvicted() throws Exception {
+        this.loadData();
+
+        // Nothing is evicted so the probe should just let the txn through
+        for (long key = 0; key < NUM_TUPLES; key++) {
+            this.checkRecord(key);
+        } // FOR
+
+        AntiCacheManagerProfiler profiler = hstore_site.getAntiCacheManager().getDebugContext().getProfiler(0);
+        assertNotNull(profiler);
+        assertEquals(0, profiler.preunevicted_txns);
+        assertEquals(0, profiler.restarted_txns);
+    }
+}
@@ -120,6 +120,42 @@ public class TestBatchPlannerComplex extends BaseTestCase {
         assertTrue(error.getPartitions().values().containsAll(catalogContext.getAllPartitionIds()));
     }
 
+    /**
+     * testCachedDistributedPlan
+     */
+    public void testCachedDistributedPlan() throws Exception {
+        Procedure proc = this.getProcedure("InsertCountry");
+        Statement stmt = CollectionUtil.first(proc.getStatements());
+        this.batch = new SQLStmt[]{ new SQLStmt(stmt) };
+        this.args = new ParameterSet[]{ new ParameterSet(new Object[]{ 9999, "AAA", "BB", "CCCC" }) };
+        this.planner = new BatchPlanner(batch, catalog_proc, p_estimator);
+
+        // The first plan should be stored in the cache
+        BatchPlan plan0 = this.getPlan();
+        assertFalse(plan0.isSingledPartitionedAndLocal());
+        assertTrue(plan0.isCached());
+        assertEquals(1, this.planner.getDebugContext().getCachedDistributedPlanCount());
+        FastIntHistogram expected = new FastIntHistogram(this.touched_partitions);
+        List<WorkFragment.Builder> builders0 = new ArrayList<WorkFragment.Builder>();
+        plan0.getWorkFragmentsBuilders(TXN_ID, new int[]{ 0 }, builders0);
+        assertFalse(builders0.isEmpty());
+
+        // Then a batch with different parameters should get back the same plan
+        // and generate the same WorkFragments
+        this.args = new ParameterSet[]{ new ParameterSet(new Object[]{ 8888, "DDD", "EE", "FFFF" }) };
+        BatchPlan plan1 = this.getPlan();
+        assertSame(plan0, plan1);
+        assertEquals(expected, this.touched_partitions);
+        List<WorkFragment.Builder> builders1 = new ArrayList<WorkFragment.Builder>();
+        plan1.getWorkFragmentsBuilders(TXN_ID, new int[]{ 1 }, builders1);
+        assertEquals(builders0.size(), builders1.size());
+        for (int i = 0; i < builders0.size(); i++) {
+            assertEquals(builders0.get(i).getFragmentIdList(), builders1.get(i).getFragmentIdList());
+            assertEquals(builders0.get(i).getPartitionId(), builders1.get(i).getPartitionId());
+        } // FOR
+        assertEquals(1, this.planner.getDebugContext().getCachedDistributedPlanCount());
+    }
+
     /**
      * testGetPlanGraph
      */
@@ -128,12 +164,17 @@ public class TestBatchPlannerComplex extends BaseTestCase {
         assertNotNull(graph);
         
         // Make sure that only PlanVertexs with input dependencies have a child in the graph
-        for (BatchPlanner.PlanVertex v : graph.getVertices()) {
+        BatchPlanner.PlanVertex vertices[] = graph.getVertices();
+        for (int i = 0; i < vertices.length; i++) {
+            BatchPlanner.PlanVertex v = vertices[i];
             assertNotNull(v);
+            BatchPlanner.PlanVertex input = graph.getInputVertex(i);
             if (v.input_dependency_id == HStoreConstants.NULL_DEPENDENCY_ID) {
-                assertEquals(0, graph.getSuccessorCount(v));
+                assertNull(input);
             } else {
-                assertEquals(1, graph.getSuccessorCount(v));
+                assertNotNull(input);
+                assertEquals(v.input_dependency_id, input.output_dependency_id);
+                assertEquals(v.stmt_index, input.stmt_index);
             }
         } // FOR
         
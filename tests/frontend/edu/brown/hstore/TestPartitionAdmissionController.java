@@ -0,0 +1,113 @@
+package edu.brown.hstore;
+
+import org.junit.Test;
+import org.voltdb.catalog.Site;
+import org.voltdb.utils.EstTime;
+import org.voltdb.utils.EstTimeUpdater;
+
+import edu.brown.BaseTestCase;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.ProjectType;
+
+/**
+ *
+ * @author pavlo
+ */
+public class TestPartitionAdmissionController extends BaseTestCase {
+
+    private static final int NUM_PARTITONS = 2;
+    private static final int TARGET_LATENCY = 100;
+    private static final int NUM_SAMPLES = 100;
+
+    private HStoreSite hstore_site;
+    private HStoreConf hstore_conf;
+    private TransactionQueueManager queueManager;
+    private PartitionAdmissionController controller;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        addPartitions(NUM_PARTITONS);
+
+        this.hstore_conf = HStoreConf.singleton();
+        this.hstore_conf.site.queue_admission_control = true;
+        this.hstore_conf.site.queue_admission_target_latency = TARGET_LATENCY;
+        this.hstore_conf.global.nanosecond_latencies = false;
+
+        Site catalog_site = CollectionUtil.first(catalogContext.sites);
+        assertNotNull(catalog_site);
+        this.hstore_site = new MockHStoreSite(catalog_site.getId(), catalogContext, this.hstore_conf);
+        this.queueManager = this.hstore_site.getTransactionQueueManager();
+        this.controller = this.queueManager.getAdmissionController();
+        assertNotNull(this.controller);
+        EstTimeUpdater.update(System.currentTimeMillis());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.hstore_conf.site.queue_admission_control = false;
+        this.queueManager.shutdown();
+    }
+
+    private void record(int partition, int queueTime, int latency) {
+        long now = EstTime.currentTimeMillis();
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            this.controller.recordQueueDelay(partition, now - queueTime);
+            this.controller.recordLatency(partition, now - latency);
+        } // FOR
+    }
+
+    /**
+     * testDecreaseWindow
+     */
+    @Test
+    public void testDecreaseWindow() throws Exception {
+        PartitionLockQueue hot = this.queueManager.getLockQueue(0);
+        PartitionLockQueue cold = this.queueManager.getLockQueue(1);
+        int hotWindow = hot.getThrottleThreshold();
+        int coldWindow = cold.getThrottleThreshold();
+
+        // Partition 0 is spending most of its time waiting in the queue
+        this.record(0, TARGET_LATENCY * 4, TARGET_LATENCY * 5);
+        this.controller.update();
+        assertTrue(this.controller.getLastP99Latency(0) > TARGET_LATENCY);
+        assertTrue(hot.getThrottleThreshold() + " < " + hotWindow, hot.getThrottleThreshold() < hotWindow);
+        assertTrue(hot.getThrottleThreshold() >= hot.getThrottleThresholdMinSize());
+
+        // Partition 1 didn't have any txns, so it should be left alone
+        assertEquals(coldWindow, cold.getThrottleThreshold());
+        assertFalse(this.controller.isSaturated(1));
+    }
+
+    /**
+     * testSlowExecution
+     */
+    @Test
+    public void testSlowExecution() throws Exception {
+        // If the txns themselves are slow, then shrinking the window won't help
+        PartitionLockQueue queue = this.queueManager.getLockQueue(0);
+        int window = queue.getThrottleThreshold();
+        this.record(0, 0, TARGET_LATENCY * 5);
+        this.controller.update();
+        assertTrue(this.controller.getLastExecTime(0) >= TARGET_LATENCY);
+        assertEquals(window, queue.getThrottleThreshold());
+    }
+
+    /**
+     * testIncreaseWindow
+     */
+    @Test
+    public void testIncreaseWindow() throws Exception {
+        PartitionLockQueue queue = this.queueManager.getLockQueue(0);
+        this.record(0, TARGET_LATENCY * 4, TARGET_LATENCY * 5);
+        this.controller.update();
+        int window = queue.getThrottleThreshold();
+
+        // Now everything is fast, so it should be allowed to grow again
+        this.record(0, 0, 1);
+        this.controller.update();
+        assertTrue(queue.getThrottleThreshold() + " > " + window, queue.getThrottleThreshold() > window);
+        assertTrue(queue.getThrottleThreshold() <= queue.getThrottleThresholdMaxSize());
+    }
+}
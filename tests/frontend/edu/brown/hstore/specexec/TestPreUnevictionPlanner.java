@@ -0,0 +1,158 @@
+package edu.brown.hstore.specexec;
+
+import org.junit.Test;
+import org.voltdb.ParameterSet;
+import org.voltdb.catalog.PlanFragment;
+import org.voltdb.catalog.ProcParameter;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.catalog.StmtParameter;
+import org.voltdb.catalog.Table;
+import org.voltdb.types.TimestampType;
+
+import edu.brown.BaseTestCase;
+import edu.brown.benchmark.seats.SEATSConstants;
+import edu.brown.benchmark.seats.procedures.FindOpenSeats;
+import edu.brown.benchmark.seats.procedures.NewReservation;
+import edu.brown.hstore.MockHStoreSite;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.hstore.internal.UtilityWorkMessage.PreUnevictMessage;
+import edu.brown.hstore.txns.LocalTransaction;
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.PartitionSet;
+import edu.brown.utils.ProjectType;
+
+/**
+ * Tests for PreUnevictionPlanner
+ * @author pavlo
+ */
+public class TestPreUnevictionPlanner extends BaseTestCase {
+    private static final Long TXN_ID = 1000l;
+    private static final int LOCAL_PARTITION = 0;
+
+    private static final String TARGET_STATEMENT = "GetCustomer";
+    private static final int TARGET_PROC_PARAM = 1; // c_id
+    private static final int ARRAY_PROC_PARAM = 5; // attrs
+
+    private MockHStoreSite hstore_site;
+    private Procedure catalog_proc;
+    private Statement catalog_stmt;
+    private StmtParameter catalog_stmt_param;
+    private ProcParameter orig_proc_param;
+    private Table catalog_tbl;
+
+    private final Object proc_params[] = {
+        100l, // r_id
+        LOCAL_PARTITION + 1l, // c_id
+        LOCAL_PARTITION, // f_id
+        10l, // seatnum
+        100d, // price
+        new long[0], // attrs
+        new TimestampType()
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.SEATS);
+        this.initializeCatalog(1, 1, 1);
+
+        this.catalog_proc = this.getProcedure(NewReservation.class);
+        this.catalog_stmt = this.getStatement(this.catalog_proc, TARGET_STATEMENT);
+        assertEquals(1, this.catalog_stmt.getParameters().size());
+        this.catalog_stmt_param = CollectionUtil.first(this.catalog_stmt.getParameters());
+        this.orig_proc_param = this.catalog_stmt_param.getProcparameter();
+
+        // Hard-code the ParameterMapping for our probe query and make its table evictable
+        this.catalog_stmt_param.setProcparameter(this.catalog_proc.getParameters().get(TARGET_PROC_PARAM));
+        this.catalog_tbl = this.getTable(SEATSConstants.TABLENAME_CUSTOMER);
+        this.catalog_tbl.setEvictable(true);
+
+        this.hstore_site = new MockHStoreSite(0, catalogContext, HStoreConf.singleton());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Don't leave our changes in the catalog for other tests
+        this.catalog_stmt_param.setProcparameter(this.orig_proc_param);
+        this.catalog_tbl.setEvictable(false);
+    }
+
+    private LocalTransaction makeTransaction(Procedure proc, Object...params) {
+        LocalTransaction ts = new LocalTransaction(this.hstore_site);
+        ts.testInit(TXN_ID, LOCAL_PARTITION, new PartitionSet(LOCAL_PARTITION), proc, params);
+        return (ts);
+    }
+
+    /**
+     * testPlan
+     */
+    @Test
+    public void testPlan() throws Exception {
+        PreUnevictionPlanner planner = new PreUnevictionPlanner(catalogContext);
+        assertTrue(planner.hasProbes(this.catalog_proc));
+
+        LocalTransaction ts = this.makeTransaction(this.catalog_proc, this.proc_params);
+        PreUnevictMessage work = planner.plan(ts);
+        assertNotNull(work);
+        assertSame(ts, work.getTransaction());
+
+        // UpdateCustomer also touches CUSTOMER but it's not read-only,
+        // so GetCustomer should be our only probe
+        PlanFragment catalog_frag = CollectionUtil.first(this.catalog_stmt.getFragments());
+        assertEquals(1, work.getFragmentIds().length);
+        assertEquals(catalog_frag.getId(), work.getFragmentIds()[0]);
+
+        // The probe's parameters come from the txn's input parameters
+        ParameterSet params[] = work.getParameterSets();
+        assertEquals(1, params.length);
+        assertEquals(1, params[0].size());
+        assertEquals(this.proc_params[TARGET_PROC_PARAM], params[0].toArray()[0]);
+    }
+
+    /**
+     * testPlanNoProbes
+     */
+    @Test
+    public void testPlanNoProbes() throws Exception {
+        // This procedure doesn't read from CUSTOMER
+        Procedure proc = this.getProcedure(FindOpenSeats.class);
+        PreUnevictionPlanner planner = new PreUnevictionPlanner(catalogContext);
+        assertFalse(planner.hasProbes(proc));
+        LocalTransaction ts = this.makeTransaction(proc, 1l);
+        assertNull(planner.plan(ts));
+    }
+
+    /**
+     * testNotEvictable
+     */
+    @Test
+    public void testNotEvictable() throws Exception {
+        this.catalog_tbl.setEvictable(false);
+        PreUnevictionPlanner planner = new PreUnevictionPlanner(catalogContext);
+        assertFalse(planner.hasProbes(this.catalog_proc));
+        LocalTransaction ts = this.makeTransaction(this.catalog_proc, this.proc_params);
+        assertNull(planner.plan(ts));
+    }
+
+    /**
+     * testUnmappedParameter
+     */
+    @Test
+    public void testUnmappedParameter() throws Exception {
+        this.catalog_stmt_param.setProcparameter(null);
+        PreUnevictionPlanner planner = new PreUnevictionPlanner(catalogContext);
+        assertFalse(planner.hasProbes(this.catalog_proc));
+    }
+
+    /**
+     * testArrayParameter
+     */
+    @Test
+    public void testArrayParameter() throws Exception {
+        ProcParameter catalog_param = this.catalog_proc.getParameters().get(ARRAY_PROC_PARAM);
+        assertTrue(catalog_param.getIsarray());
+        this.catalog_stmt_param.setProcparameter(catalog_param);
+        PreUnevictionPlanner planner = new PreUnevictionPlanner(catalogContext);
+        assertFalse(planner.hasProbes(this.catalog_proc));
+    }
+}
@@ -6,7 +6,6 @@ package edu.brown.hstore.txns;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
 
 import org.junit.Test;
 import org.voltdb.ParameterSet;
@@ -181,8 +180,7 @@ public class TestDependencyTrackerPrefetch extends BaseTestCase {
         } // FOR
         
         this.ts.startRound(BASE_PARTITION);
-        CountDownLatch latch = this.depTracker.getDependencyLatch(this.ts);
-        assertEquals(numInvocations-1, latch.getCount());
+        assertEquals(numInvocations-1, this.depTracker.getPendingDependencyCount(this.ts));
         
         for (WorkFragment.Builder fragment : ftasks) {
             // Look through each WorkFragment and check to see whether it contains
@@ -200,7 +198,7 @@ public class TestDependencyTrackerPrefetch extends BaseTestCase {
             } // FOR
         } // FOR
         
-        assertEquals(0, latch.getCount());
+        assertEquals(0, this.depTracker.getPendingDependencyCount(this.ts));
         VoltTable results[] = this.depTracker.getResults(this.ts);
         assertEquals(numInvocations, results.length);
         for (int i = 0; i < numInvocations; i++) {
@@ -273,8 +271,7 @@ public class TestDependencyTrackerPrefetch extends BaseTestCase {
                 } // FOR
             } // FOR
             
-            CountDownLatch latch = this.depTracker.getDependencyLatch(this.ts);
-            assertEquals(0, latch.getCount());
+            assertEquals(0, this.depTracker.getPendingDependencyCount(this.ts));
 
             VoltTable results[] = this.depTracker.getResults(this.ts);
             assertEquals(nextResults.length, results.length);
@@ -347,8 +344,7 @@ public class TestDependencyTrackerPrefetch extends BaseTestCase {
         // We only need to add the query result for the first query 
         // and then we should get immediately unblocked
         this.ts.startRound(BASE_PARTITION);
-        CountDownLatch latch = this.depTracker.getDependencyLatch(this.ts);
-        assertEquals(nextCounters.length, latch.getCount());
+        assertEquals(nextCounters.length, this.depTracker.getPendingDependencyCount(this.ts));
  
         for (int i = 0, cnt = fragment.getFragmentIdCount(); i < cnt; i++) {
             nextResults[i].addRow(VoltTableUtil.getRandomRow(nextResults[i]));
@@ -356,7 +352,7 @@ public class TestDependencyTrackerPrefetch extends BaseTestCase {
                                       fragment.getPartitionId(),
                                       fragment.getOutputDepId(i),
                                       nextResults[i]);
-            assertEquals(cnt-(i+1), latch.getCount());
+            assertEquals(cnt-(i+1), this.depTracker.getPendingDependencyCount(this.ts));
         } // FOR
         
         
@@ -467,8 +463,7 @@ public class TestDependencyTrackerPrefetch extends BaseTestCase {
         // We only need to add the query result for the first query 
         // and then we should get immediately unblocked
         this.ts.startRound(BASE_PARTITION);
-        CountDownLatch latch = this.depTracker.getDependencyLatch(this.ts);
-        assertTrue(latch.getCount() > 0);
+        assertTrue(this.depTracker.getPendingDependencyCount(this.ts) > 0);
  
         WorkFragment.Builder fragment = CollectionUtil.first(ftasks);
         Collection<Column> outputCols = PlanNodeUtil.getOutputColumnsForStatement(nextBatch[0].getStatement());
@@ -478,7 +473,7 @@ public class TestDependencyTrackerPrefetch extends BaseTestCase {
                                   fragment.getPartitionId(),
                                   fragment.getOutputDepId(0),
                                   result);
-        assertEquals(0, latch.getCount());
+        assertEquals(0, this.depTracker.getPendingDependencyCount(this.ts));
         
         VoltTable results[] = this.depTracker.getResults(this.ts);
         assertEquals(nextBatch.length, results.length);
@@ -532,8 +527,7 @@ public class TestDependencyTrackerPrefetch extends BaseTestCase {
         // We only need to add the query result for the first query 
         // and then we should get immediately unblocked
         this.ts.startRound(BASE_PARTITION);
-        CountDownLatch latch = this.depTracker.getDependencyLatch(this.ts);
-        assertEquals(nextBatch.length, latch.getCount());
+        assertEquals(nextBatch.length, this.depTracker.getPendingDependencyCount(this.ts));
         WorkFragment.Builder fragment = CollectionUtil.first(ftasks);
         Collection<Column> outputCols = PlanNodeUtil.getOutputColumnsForStatement(nextBatch[0].getStatement());
         VoltTable result = CatalogUtil.getVoltTable(outputCols);
@@ -542,7 +536,7 @@ public class TestDependencyTrackerPrefetch extends BaseTestCase {
                                   fragment.getPartitionId(),
                                   fragment.getOutputDepId(0),
                                   result);
-        assertEquals(nextBatch.length-1, latch.getCount());
+        assertEquals(nextBatch.length-1, this.depTracker.getPendingDependencyCount(this.ts));
         
         // Now add in the prefetch result
         // This should cause use to get unblocked now
@@ -552,7 +546,7 @@ public class TestDependencyTrackerPrefetch extends BaseTestCase {
                                           REMOTE_PARTITION,
                                           this.prefetchParamsHash[0],
                                           this.prefetchResult);
-        assertEquals(0, latch.getCount());
+        assertEquals(0, this.depTracker.getPendingDependencyCount(this.ts));
         
         VoltTable results[] = this.depTracker.getResults(this.ts);
         assertEquals(nextBatch.length, results.length);
@@ -7,7 +7,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
 
 import org.apache.commons.collections15.set.ListOrderedSet;
 import org.apache.log4j.Logger;
@@ -185,11 +184,10 @@ public class TestTransactionState extends BaseTestCase {
         assertEquals(AbstractTransaction.RoundState.INITIALIZED, this.ts.getCurrentRoundState(LOCAL_PARTITION));
         this.addFragments();
         this.ts.startRound(LOCAL_PARTITION);
-        CountDownLatch latch = this.depTracker.getDependencyLatch(this.ts);
-        assertNotNull(latch);
+        assertTrue(this.depTrackerDbg.isRoundStarted(this.ts));
         
 //        System.err.println(this.ts.toString());
-        assertEquals(NUM_EXPECTED_DEPENDENCIES, latch.getCount());
+        assertEquals(NUM_EXPECTED_DEPENDENCIES, this.depTracker.getPendingDependencyCount(this.ts));
         assertEquals(NUM_DUPLICATE_STATEMENTS, this.depTrackerDbg.getOutputOrder(this.ts).size());
         
         // Although there will be a single blocked FragmentTaskMessage, it will contain
@@ -312,7 +310,7 @@ public class TestTransactionState extends BaseTestCase {
         this.addFragments();
         assertEquals(AbstractTransaction.RoundState.INITIALIZED, this.ts.getCurrentRoundState(LOCAL_PARTITION));
         
-        // We need to test to make sure that we don't get a CountDownLatch with the wrong count
+        // We need to test to make sure that we don't start the round with the wrong pending count
         // if we start the round *after* a bunch of results have arrived.
         // Add a bunch of fake results
         Long marker = 1000l;
@@ -338,9 +336,8 @@ public class TestTransactionState extends BaseTestCase {
         assertEquals(NUM_DUPLICATE_STATEMENTS, markers.size());
 
         this.ts.startRound(LOCAL_PARTITION);
-        CountDownLatch latch = this.depTracker.getDependencyLatch(this.ts);
-        assertNotNull(latch);
-        assertEquals(0, latch.getCount());
+        assertTrue(this.depTrackerDbg.isRoundStarted(this.ts));
+        assertEquals(0, this.depTracker.getPendingDependencyCount(this.ts));
         assertEquals(AbstractTransaction.RoundState.STARTED, this.ts.getCurrentRoundState(LOCAL_PARTITION));
     }
     
@@ -9,7 +9,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
 
 import org.apache.commons.collections15.set.ListOrderedSet;
 import org.voltdb.ParameterSet;
@@ -210,7 +209,7 @@ public class TestTransactionStateComplex extends BaseTestCase {
         this.ts.initFirstRound(UNDO_TOKEN, NUM_DUPLICATE_STATEMENTS);
         this.addFragments();
         
-        // We need to test to make sure that we don't get a CountDownLatch with the wrong count
+        // We need to test to make sure that we don't start the round with the wrong pending count
         // if we start the round *after* a bunch of results have arrived.
         // Add a bunch of fake results
         Long marker = 1000l;
@@ -236,9 +235,8 @@ public class TestTransactionStateComplex extends BaseTestCase {
         assertEquals(NUM_DUPLICATE_STATEMENTS, markers.size());
 
         this.ts.startRound(LOCAL_PARTITION);
-        CountDownLatch latch = this.depTracker.getDependencyLatch(this.ts); 
-        assertNotNull(latch);
-        assertEquals(0, latch.getCount());
+        assertTrue(this.depTrackerDbg.isRoundStarted(this.ts));
+        assertEquals(0, this.depTracker.getPendingDependencyCount(this.ts));
     }
     
     /**
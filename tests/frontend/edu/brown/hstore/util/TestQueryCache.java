@@ -98,4 +98,108 @@ public class TestQueryCache extends BaseTestCase {
             assertEquals(expected, cacheResult.asScalarLong());
         } // FOR
     }
+    
+    /**
+     * testGlobalCacheGet
+     */
+    public void testGlobalCacheGet() throws Exception {
+        int fragmentId = 2222;
+        int tableIds[] = { 1 };
+        ParameterSet params = new ParameterSet("Squirrels", 1981);
+        VoltTable result = new VoltTable(TARGET_RESULT);
+        result.addRow(1234l);
+        
+        assertNull(this.cache.getGlobalQueryResult(fragmentId, params));
+        assertTrue(this.cache.addGlobalQueryResult(fragmentId, tableIds, params, result));
+        
+        // Make sure that we can get it back for any other ParameterSet with the same values
+        for (int i = 0; i < 3; i++) {
+            VoltTable cacheResult = this.cache.getGlobalQueryResult(fragmentId, new ParameterSet("Squi" + "rrels", 1981));
+            assertNotNull(cacheResult);
+            assertEquals(1, cacheResult.getRowCount());
+            assertEquals(1234l, cacheResult.asScalarLong());
+        } // FOR
+        assertNull(this.cache.getGlobalQueryResult(fragmentId, new ParameterSet("WuTang!", 1981)));
+        assertNull(this.cache.getGlobalQueryResult(fragmentId+1, params));
+        assertEquals(3, this.cache.getGlobalHits());
+        assertEquals(3, this.cache.getGlobalMisses());
+        assertEquals(0.5d, this.cache.getGlobalHitRate(), 0.0001);
+    }
+    
+    /**
+     * testGlobalCacheInvalidate
+     */
+    public void testGlobalCacheInvalidate() throws Exception {
+        Long txnId = new Long(123456);
+        int fragmentId = 3333;
+        int readTables[] = { 1, 2 };
+        int writeTables[] = { 2 };
+        ParameterSet params = new ParameterSet("Squirrels", 1981);
+        VoltTable result = new VoltTable(TARGET_RESULT);
+        result.addRow(1234l);
+        
+        assertTrue(this.cache.addGlobalQueryResult(fragmentId, readTables, params, result));
+        assertNotNull(this.cache.getGlobalQueryResult(fragmentId, params));
+        
+        // Once a txn writes to one of the tables, we should not get back anything
+        // and we should not be allowed to store a new result until it finishes
+        this.cache.markTablesWritten(txnId, writeTables);
+        assertNull(this.cache.getGlobalQueryResult(fragmentId, params));
+        assertEquals(1, this.cache.getGlobalInvalidations());
+        assertFalse(this.cache.isGlobalCacheable(readTables));
+        assertFalse(this.cache.addGlobalQueryResult(fragmentId, readTables, params, result));
+        assertTrue(this.cache.isGlobalCacheable(new int[]{ 1 }));
+        
+        this.cache.purgeTransaction(txnId);
+        assertTrue(this.cache.isGlobalCacheable(readTables));
+        assertTrue(this.cache.addGlobalQueryResult(fragmentId, readTables, params, result));
+        assertNotNull(this.cache.getGlobalQueryResult(fragmentId, params));
+        
+        // Writing to unknown tables invalidates everything
+        this.cache.markTablesWritten(txnId, null);
+        assertNull(this.cache.getGlobalQueryResult(fragmentId, params));
+        assertFalse(this.cache.isGlobalCacheable(new int[]{ 1 }));
+        this.cache.purgeTransaction(txnId);
+        assertTrue(this.cache.isGlobalCacheable(new int[]{ 1 }));
+    }
+    
+    /**
+     * testGlobalCacheEviction
+     */
+    public void testGlobalCacheEviction() throws Exception {
+        int baseFragmentId = 4444;
+        int tableIds[] = { 1 };
+        ParameterSet params = new ParameterSet("Squirrels", 1981);
+        
+        // Fill up the cache and then touch the first entry so that the
+        // second one becomes the least recently used one
+        for (int i = 0; i < globalBufferSize; i++) {
+            VoltTable result = new VoltTable(TARGET_RESULT);
+            result.addRow((long)i);
+            assertTrue(this.cache.addGlobalQueryResult(baseFragmentId + i, tableIds, params, result));
+        } // FOR
+        assertEquals(globalBufferSize, this.cache.getGlobalEntryCount());
+        assertNotNull(this.cache.getGlobalQueryResult(baseFragmentId, params));
+        
+        VoltTable result = new VoltTable(TARGET_RESULT);
+        result.addRow(-1l);
+        assertTrue(this.cache.addGlobalQueryResult(baseFragmentId + globalBufferSize, tableIds, params, result));
+        assertEquals(globalBufferSize, this.cache.getGlobalEntryCount());
+        assertEquals(1, this.cache.getGlobalEvictions());
+        assertNotNull(this.cache.getGlobalQueryResult(baseFragmentId, params));
+        assertNull(this.cache.getGlobalQueryResult(baseFragmentId + 1, params));
+        
+        // Now check that we respect the memory limit
+        long maxBytes = result.getUnderlyingBufferSize() * 2;
+        QueryCache smallCache = new QueryCache(globalBufferSize, txnBufferSize, maxBytes);
+        for (int i = 0; i < 3; i++) {
+            result = new VoltTable(TARGET_RESULT);
+            result.addRow((long)i);
+            assertTrue(smallCache.addGlobalQueryResult(baseFragmentId + i, tableIds, params, result));
+            assertTrue(smallCache.getGlobalBytes() <= maxBytes);
+        } // FOR
+        assertEquals(2, smallCache.getGlobalEntryCount());
+        assertNull(smallCache.getGlobalQueryResult(baseFragmentId, params));
+        assertNotNull(smallCache.getGlobalQueryResult(baseFragmentId + 2, params));
+    }
 }
@@ -234,6 +234,77 @@ public class TestMarkovGraph extends BaseTestCase {
         testGraph.validate();
     }
 
+    /**
+     * testTransitionTable
+     */
+    @Test
+    public void testTransitionTable() throws Exception {
+        MarkovGraph testGraph = new MarkovGraph(this.catalog_proc);
+        testGraph.initialize();
+        MarkovVertex start = testGraph.getStartVertex();
+        MarkovVertex stop = testGraph.getCommitVertex();
+        
+        Statement catalog_stmt = CollectionUtil.first(this.catalog_proc.getStatements());
+        MarkovVertex current = new MarkovVertex(catalog_stmt, MarkovVertex.Type.QUERY, 0,
+                                                PartitionSet.singleton(BASE_PARTITION), new PartitionSet());
+        testGraph.addVertex(current);
+        MarkovEdge e0 = testGraph.addToEdge(start, current);
+        MarkovEdge e1 = testGraph.addToEdge(current, stop);
+        
+        MarkovTransitionTable table = testGraph.getTransitionTable();
+        assertEquals(testGraph.getVertexCount(), table.getVertexCount());
+        assertEquals(testGraph.getEdgeCount(), table.getEdgeCount());
+        int start_idx = table.getVertexIndex(start);
+        int current_idx = table.getVertexIndex(current);
+        int stop_idx = table.getVertexIndex(stop);
+        assertEquals(table.getEdgeIndex(e0), table.findEdge(start_idx, current_idx));
+        assertEquals(table.getEdgeIndex(e1), table.findEdge(current_idx, stop_idx));
+        assertEquals(-1, table.findEdge(start_idx, stop_idx));
+        assertTrue(table.isTerminal(stop_idx));
+        assertFalse(table.isTerminal(current_idx));
+        assertSame(table, testGraph.getTransitionTable());
+        
+        // The striped counters should only show up after they are folded
+        table.incrementInstanceHits(current);
+        table.incrementInstanceHits(e1);
+        assertEquals(0, current.getInstanceHits());
+        testGraph.foldInstanceHits();
+        assertEquals(1, current.getInstanceHits());
+        assertEquals(1, e1.getInstanceHits());
+        
+        // Adding a new edge should append it to the existing table
+        int out_edges[] = table.getOutEdges(start_idx);
+        MarkovEdge e2 = testGraph.addToEdge(start, stop);
+        assertSame(table, testGraph.getTransitionTable());
+        assertEquals(testGraph.getEdgeCount(), table.getEdgeCount());
+        assertEquals(table.getEdgeIndex(e2), table.findEdge(start_idx, stop_idx));
+        assertEquals(out_edges.length + 1, table.getOutEdges(start_idx).length);
+        
+        // Same thing for new vertices, even when the table has to grow
+        int num_vertices = table.getVertexCount();
+        MarkovVertex last = current;
+        for (int i = 1; i <= num_vertices * 2; i++) {
+            MarkovVertex v = new MarkovVertex(catalog_stmt, MarkovVertex.Type.QUERY, i,
+                                              PartitionSet.singleton(BASE_PARTITION), new PartitionSet());
+            testGraph.addVertex(v);
+            MarkovEdge e = testGraph.addToEdge(last, v);
+            int last_idx = table.getVertexIndex(last);
+            int v_idx = table.getVertexIndex(v);
+            assertTrue(v.toString(), v_idx >= 0);
+            assertSame(v, table.getVertex(v_idx));
+            assertEquals(table.getEdgeIndex(e), table.findEdge(last_idx, v_idx));
+            last = v;
+        } // FOR
+        assertSame(table, testGraph.getTransitionTable());
+        assertEquals(testGraph.getVertexCount(), table.getVertexCount());
+        assertEquals(testGraph.getEdgeCount(), table.getEdgeCount());
+        assertEquals(table.getEdgeIndex(e1), table.findEdge(current_idx, stop_idx));
+        
+        // The new elements don't have striped counters, so they get updated directly
+        table.incrementInstanceHits(last);
+        assertEquals(1, last.getInstanceHits());
+    }
+
         
      /**
      * testGraphSerialization
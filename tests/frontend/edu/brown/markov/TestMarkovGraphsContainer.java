@@ -1,15 +1,22 @@
 package edu.brown.markov;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.voltdb.VoltProcedure;
 import org.voltdb.benchmark.tpcc.procedures.neworder;
 import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
 
 import edu.brown.BaseTestCase;
 import edu.brown.catalog.CatalogUtil;
+import edu.brown.markov.containers.MarkovGraphsBinaryFile;
 import edu.brown.markov.containers.MarkovGraphsContainer;
+import edu.brown.markov.containers.MarkovGraphsContainerUtil;
+import edu.brown.utils.CollectionUtil;
 import edu.brown.utils.FileUtil;
+import edu.brown.utils.PartitionSet;
 import edu.brown.utils.ProjectType;
 
 public class TestMarkovGraphsContainer extends BaseTestCase {
@@ -58,4 +65,43 @@ public class TestMarkovGraphsContainer extends BaseTestCase {
         } // FOR
     }
     
+    /**
+     * testBinarySerialization
+     */
+    public void testBinarySerialization() throws Exception {
+        Statement catalog_stmt = CollectionUtil.first(catalog_proc.getStatements());
+        Map<Integer, MarkovGraphsContainer> markovs = new HashMap<Integer, MarkovGraphsContainer>();
+        for (Integer p : CatalogUtil.getAllPartitionIds(catalog_db)) {
+            MarkovGraphsContainer m = new MarkovGraphsContainer();
+            MarkovGraph markov = m.getOrCreate(p, catalog_proc, true);
+            MarkovVertex v = new MarkovVertex(catalog_stmt, MarkovVertex.Type.QUERY, 0, new PartitionSet(p), new PartitionSet());
+            v.totalhits = 5;
+            markov.addVertex(v);
+            markov.addToEdge(markov.getStartVertex(), v).totalhits = 5;
+            markov.addToEdge(v, markov.getCommitVertex()).totalhits = 5;
+            markovs.put(p, m);
+        } // FOR
+        
+        tempFile = FileUtil.getTempFile("markovs", false);
+        MarkovGraphsContainerUtil.saveBinary(markovs, tempFile);
+        assertTrue(MarkovGraphsBinaryFile.isBinaryFile(tempFile));
+        
+        // Make sure that we get the same graphs back
+        Map<Integer, MarkovGraphsContainer> clone = MarkovGraphsContainerUtil.load(catalogContext, tempFile);
+        assertEquals(markovs.keySet(), clone.keySet());
+        for (Integer p : markovs.keySet()) {
+            MarkovGraph markov = markovs.get(p).get(p, catalog_proc);
+            MarkovGraph clone_m = clone.get(p).get(p, catalog_proc);
+            assertNotNull(clone_m);
+            assertEquals(markov.getGraphId(), clone_m.getGraphId());
+            assertEquals(markov.getVertexCount(), clone_m.getVertexCount());
+            assertEquals(markov.getEdgeCount(), clone_m.getEdgeCount());
+            
+            MarkovVertex clone_v = clone_m.getVertex(catalog_stmt, new PartitionSet(p), new PartitionSet(), 0);
+            assertNotNull(clone_v);
+            assertEquals(5, clone_v.getTotalHits());
+            assertEquals(new PartitionSet(p), clone_v.getPartitions());
+            assertEquals(1, clone_m.getSuccessors(clone_m.getStartVertex()).size());
+        } // FOR
+    }
 }
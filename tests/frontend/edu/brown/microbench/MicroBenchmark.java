@@ -0,0 +1,50 @@
+package edu.brown.microbench;
+
+/**
+ * A single microbenchmark that can be executed by the MicroBenchmarkRunner.
+ * The runner calls setUpIteration() before every warm-up and measurement
+ * iteration (this is not timed) and then calls run() getOperationsPerIteration()
+ * times. If the benchmark is executed with more than one thread, then run()
+ * is called concurrently and every thread gets its own range of operation offsets.
+ * <P>
+ * Whatever run() returns is folded into a sink by the runner so that the JIT
+ * cannot throw away the work that the benchmark is supposed to measure.
+ * @author pavlo
+ */
+public abstract class MicroBenchmark {
+
+    private final String name;
+
+    public MicroBenchmark(String name) {
+        this.name = name;
+    }
+
+    public final String getName() {
+        return (this.name);
+    }
+
+    /**
+     * The number of times that run() is called per iteration (across all threads)
+     * @return
+     */
+    public int getOperationsPerIteration() {
+        return (100000);
+    }
+
+    /**
+     * Prepare the benchmark for the next iteration.
+     * This is not included in the measurement.
+     * @throws Exception
+     */
+    public void setUpIteration() throws Exception {
+        // Nothing by default
+    }
+
+    /**
+     * Execute one operation
+     * @param op The offset of this operation in the current iteration
+     * @return
+     * @throws Exception
+     */
+    public abstract Object run(int op) throws Exception;
+}
@@ -0,0 +1,270 @@
+package edu.brown.microbench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestFailure;
+import junit.framework.TestResult;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.utils.MathUtil;
+
+/**
+ * Executes MicroBenchmarks with warm-up iterations followed by measured
+ * iterations and reports the average time per operation.
+ * <P>
+ * The benchmark classes are not part of the regular test suite. Use this class's main()
+ * to run them, passing the names of the classes to execute (e.g., "QueueMicroBenchmarks").
+ * If no classes are given, then all of them are executed.
+ * <P>
+ * The following system properties control the runner:
+ * <UL>
+ *  <LI><B>microbench.warmup</B> - Number of warm-up iterations (default 3)
+ *  <LI><B>microbench.iterations</B> - Number of measured iterations (default 5)
+ *  <LI><B>microbench.output</B> - If set, every result is appended to this CSV file so that
+ *      the numbers from different builds can be compared
+ * </UL>
+ * @author pavlo
+ */
+public class MicroBenchmarkRunner {
+    private static final Logger LOG = Logger.getLogger(MicroBenchmarkRunner.class);
+
+    public static final String PROPERTY_WARMUP = "microbench.warmup";
+    public static final String PROPERTY_ITERATIONS = "microbench.iterations";
+    public static final String PROPERTY_OUTPUT = "microbench.output";
+
+    private static final Class<?> BENCHMARKS[] = {
+        SerializationMicroBenchmarks.class,
+        PlannerMicroBenchmarks.class,
+        QueueMicroBenchmarks.class,
+    };
+
+    private static final String CSV_HEADER = "TIMESTAMP,BENCHMARK,THREADS,OPERATIONS,NS_PER_OP,STDEV,OPS_PER_SEC";
+
+    /**
+     * Everything returned by MicroBenchmark.run() is folded into here
+     */
+    private static volatile int sink = 0;
+
+    /**
+     * The measurements for a single benchmark
+     */
+    public static class Result {
+        public final String name;
+        public final int threads;
+        public final long operations;
+        /** Average nanoseconds per operation across all measured iterations */
+        public final double nsPerOp;
+        /** Standard deviation of the per-iteration ns/op */
+        public final double stdev;
+
+        private Result(String name, int threads, long operations, double nsPerOp, double stdev) {
+            this.name = name;
+            this.threads = threads;
+            this.operations = operations;
+            this.nsPerOp = nsPerOp;
+            this.stdev = stdev;
+        }
+
+        public double getOperationsPerSecond() {
+            return (this.nsPerOp > 0 ? 1000000000d / this.nsPerOp : 0d);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s threads=%-2d %12.1f ns/op (+/- %.1f) %14.1f ops/sec",
+                                 this.name, this.threads, this.nsPerOp, this.stdev,
+                                 this.getOperationsPerSecond());
+        }
+    }
+
+    private final int warmup;
+    private final int iterations;
+    private final File output;
+    private final List<Result> results = new ArrayList<Result>();
+
+    public MicroBenchmarkRunner() {
+        this(Integer.getInteger(PROPERTY_WARMUP, 3),
+             Integer.getInteger(PROPERTY_ITERATIONS, 5),
+             System.getProperty(PROPERTY_OUTPUT));
+    }
+
+    public MicroBenchmarkRunner(int warmup, int iterations, String output) {
+        assert(iterations > 0);
+        this.warmup = Math.max(0, warmup);
+        this.iterations = iterations;
+        this.output = (output != null && output.isEmpty() == false ? new File(output) : null);
+    }
+
+    public List<Result> getResults() {
+        return (this.results);
+    }
+
+    // ----------------------------------------------------------------------------
+    // EXECUTION
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Execute the given benchmark with a single thread
+     * @param bench
+     * @return
+     * @throws Exception
+     */
+    public Result run(MicroBenchmark bench) throws Exception {
+        return (this.run(bench, 1));
+    }
+
+    /**
+     * Execute the given benchmark with the given number of threads
+     * @param bench
+     * @param threads
+     * @return
+     * @throws Exception
+     */
+    public Result run(MicroBenchmark bench, int threads) throws Exception {
+        assert(threads > 0);
+        for (int i = 0; i < this.warmup; i++) {
+            bench.setUpIteration();
+            this.execute(bench, threads);
+        } // FOR
+
+        double nsPerOp[] = new double[this.iterations];
+        long ops = 0;
+        for (int i = 0; i < this.iterations; i++) {
+            bench.setUpIteration();
+            long elapsed = this.execute(bench, threads);
+            nsPerOp[i] = elapsed / (double)bench.getOperationsPerIteration();
+            ops += bench.getOperationsPerIteration();
+        } // FOR
+
+        Result r = new Result(bench.getName(), threads, ops,
+                              MathUtil.arithmeticMean(nsPerOp),
+                              MathUtil.stdev(nsPerOp));
+        this.results.add(r);
+        LOG.info(r);
+        if (this.output != null) this.write(r);
+        return (r);
+    }
+
+    /**
+     * Execute one iteration of the given benchmark and return the elapsed nanoseconds
+     */
+    private long execute(final MicroBenchmark bench, int threads) throws Exception {
+        final int num_ops = bench.getOperationsPerIteration();
+        if (threads == 1) {
+            int local = 0;
+            long start = System.nanoTime();
+            for (int op = 0; op < num_ops; op++) {
+                Object o = bench.run(op);
+                if (o != null) local ^= o.hashCode();
+            } // FOR
+            long stop = System.nanoTime();
+            sink ^= local;
+            return (stop - start);
+        }
+
+        final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        final AtomicReference<Exception> error = new AtomicReference<Exception>();
+        final int ops_per_thread = num_ops / threads;
+        Thread workers[] = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int first = t * ops_per_thread;
+            final int last = (t + 1 == threads ? num_ops : first + ops_per_thread);
+            workers[t] = new Thread(bench.getName() + "-" + t) {
+                @Override
+                public void run() {
+                    int local = 0;
+                    try {
+                        barrier.await();
+                        for (int op = first; op < last; op++) {
+                            Object o = bench.run(op);
+                            if (o != null) local ^= o.hashCode();
+                        } // FOR
+                        barrier.await();
+                    } catch (Exception ex) {
+                        error.compareAndSet(null, ex);
+                        barrier.reset();
+                    }
+                    sink ^= local;
+                }
+            };
+            workers[t].setDaemon(true);
+            workers[t].start();
+        } // FOR
+
+        long start = -1;
+        long stop = -1;
+        try {
+            barrier.await();
+            start = System.nanoTime();
+            barrier.await();
+            stop = System.nanoTime();
+        } catch (BrokenBarrierException ex) {
+            // One of the workers failed. We'll throw its error below
+        }
+        for (Thread t : workers) {
+            t.join();
+        } // FOR
+        if (error.get() != null) throw error.get();
+        return (stop - start);
+    }
+
+    // ----------------------------------------------------------------------------
+    // OUTPUT
+    // ----------------------------------------------------------------------------
+
+    private synchronized void write(Result r) throws IOException {
+        boolean header = (this.output.exists() == false || this.output.length() == 0);
+        FileWriter writer = new FileWriter(this.output, true);
+        try {
+            if (header) writer.write(CSV_HEADER + "\n");
+            writer.write(String.format("%d,%s,%d,%d,%.2f,%.2f,%.2f\n",
+                                       System.currentTimeMillis(), r.name, r.threads,
+                                       r.operations, r.nsPerOp, r.stdev,
+                                       r.getOperationsPerSecond()));
+        } finally {
+            writer.close();
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // MAIN
+    // ----------------------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception {
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (String name : args) {
+            if (name.contains(".") == false) {
+                name = MicroBenchmarkRunner.class.getPackage().getName() + "." + name;
+            }
+            classes.add(Class.forName(name));
+        } // FOR
+        if (classes.isEmpty()) {
+            for (Class<?> clazz : BENCHMARKS) classes.add(clazz);
+        }
+
+        int failures = 0;
+        for (Class<?> clazz : classes) {
+            LOG.info("Executing " + clazz.getSimpleName());
+            TestResult result = new TestResult();
+            new TestSuite(clazz).run(result);
+            for (TestFailure f : Collections.list(result.errors())) {
+                LOG.error(f.failedTest() + " failed", f.thrownException());
+            } // FOR
+            for (TestFailure f : Collections.list(result.failures())) {
+                LOG.error(f.failedTest() + " failed", f.thrownException());
+            } // FOR
+            failures += result.errorCount() + result.failureCount();
+        } // FOR
+        if (failures > 0) System.exit(1);
+    }
+}
@@ -0,0 +1,116 @@
+package edu.brown.microbench;
+
+import org.voltdb.ParameterSet;
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltProcedure;
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.PlanFragment;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+
+import edu.brown.BaseTestCase;
+import edu.brown.benchmark.tm1.procedures.GetAccessData;
+import edu.brown.benchmark.tm1.procedures.UpdateLocation;
+import edu.brown.hashing.DefaultHasher;
+import edu.brown.hstore.BatchPlanner;
+import edu.brown.statistics.FastIntHistogram;
+import edu.brown.utils.PartitionEstimator;
+import edu.brown.utils.PartitionSet;
+import edu.brown.utils.ProjectType;
+
+/**
+ * Microbenchmarks for the code that figures out where a txn's queries need to go.
+ * These only use the catalog, so they do not need an EE.
+ * These are not part of the regular test suite. Use MicroBenchmarkRunner to execute them.
+ * @author pavlo
+ */
+public class PlannerMicroBenchmarks extends BaseTestCase {
+
+    private static final int NUM_PARTITIONS = 10;
+    private static final int LOCAL_PARTITION = 1;
+    private static final Long TXN_ID = 1000l;
+    
+    private static final Object SINGLESITE_PROCEDURE_ARGS[] = {
+        new Long(1), // S_ID
+        new Long(1), // SF_TYPE
+    };
+    private static final Object MULTISITE_PROCEDURE_ARGS[] = {
+        new Long(1),        // VLR_LOCATION
+        new String("XXX"),  // SUB_NBR
+    };
+
+    private final MicroBenchmarkRunner runner = new MicroBenchmarkRunner();
+    private final FastIntHistogram touched_partitions = new FastIntHistogram();
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TM1);
+        this.addPartitions(NUM_PARTITIONS);
+        p_estimator = new PartitionEstimator(catalogContext, new DefaultHasher(catalogContext, NUM_PARTITIONS));
+    }
+    
+    private SQLStmt[] createBatch(Class<? extends VoltProcedure> volt_proc, String stmt_name, boolean multisite) {
+        Procedure catalog_proc = this.getProcedure(volt_proc);
+        Statement catalog_stmt = catalog_proc.getStatements().get(stmt_name);
+        assertNotNull(catalog_stmt);
+        CatalogMap<PlanFragment> fragments = (multisite ? catalog_stmt.getMs_fragments() : catalog_stmt.getFragments());
+        return new SQLStmt[] { new SQLStmt(catalog_stmt, fragments) };
+    }
+    
+    /**
+     * testGetBasePartition
+     */
+    public void testGetBasePartition() throws Exception {
+        final Procedure catalog_proc = this.getProcedure(GetAccessData.class);
+        final Object params[] = new Object[SINGLESITE_PROCEDURE_ARGS.length];
+        MicroBenchmark bench = new MicroBenchmark("PartitionEstimator.getBasePartition") {
+            @Override
+            public Object run(int op) throws Exception {
+                params[0] = Long.valueOf(op);
+                params[1] = SINGLESITE_PROCEDURE_ARGS[1];
+                return (p_estimator.getBasePartition(catalog_proc, params));
+            }
+        };
+        this.runner.run(bench);
+    }
+    
+    /**
+     * testBatchPlannerSinglePartition
+     */
+    public void testBatchPlannerSinglePartition() throws Exception {
+        SQLStmt batch[] = this.createBatch(GetAccessData.class, "GetData", false);
+        final BatchPlanner planner = new BatchPlanner(batch, this.getProcedure(GetAccessData.class), p_estimator);
+        final ParameterSet args[] = { VoltProcedure.getCleanParams(batch[0], SINGLESITE_PROCEDURE_ARGS) };
+        final PartitionSet partitions = PartitionSet.singleton(LOCAL_PARTITION);
+        MicroBenchmark bench = new MicroBenchmark("BatchPlanner.plan[single]") {
+            @Override
+            public Object run(int op) throws Exception {
+                touched_partitions.clear();
+                return (planner.plan(TXN_ID, LOCAL_PARTITION, partitions, touched_partitions, args));
+            }
+        };
+        this.runner.run(bench);
+    }
+    
+    /**
+     * testBatchPlannerMultiPartition
+     */
+    public void testBatchPlannerMultiPartition() throws Exception {
+        SQLStmt batch[] = this.createBatch(UpdateLocation.class, "update", true);
+        final BatchPlanner planner = new BatchPlanner(batch, this.getProcedure(UpdateLocation.class), p_estimator);
+        final ParameterSet args[] = { VoltProcedure.getCleanParams(batch[0], MULTISITE_PROCEDURE_ARGS) };
+        final PartitionSet partitions = catalogContext.getAllPartitionIds();
+        MicroBenchmark bench = new MicroBenchmark("BatchPlanner.plan[multi]") {
+            @Override
+            public int getOperationsPerIteration() {
+                return (10000);
+            }
+            @Override
+            public Object run(int op) throws Exception {
+                touched_partitions.clear();
+                return (planner.plan(TXN_ID, LOCAL_PARTITION, partitions, touched_partitions, args));
+            }
+        };
+        this.runner.run(bench);
+    }
+}
@@ -0,0 +1,122 @@
+package edu.brown.microbench;
+
+import org.voltdb.TransactionIdManager;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Site;
+
+import edu.brown.BaseTestCase;
+import edu.brown.benchmark.tm1.procedures.DeleteCallForwarding;
+import edu.brown.hstore.MockHStoreSite;
+import edu.brown.hstore.PartitionLockQueue;
+import edu.brown.hstore.PartitionMessageQueue;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.hstore.internal.InternalMessage;
+import edu.brown.hstore.internal.StartTxnMessage;
+import edu.brown.hstore.internal.WorkFragmentMessage;
+import edu.brown.hstore.txns.LocalTransaction;
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.PartitionSet;
+import edu.brown.utils.ProjectType;
+
+/**
+ * Microbenchmarks for the queues that every txn passes through before
+ * it gets executed at a partition. The txns are created with a MockHStoreSite,
+ * so these do not need an EE.
+ * These are not part of the regular test suite. Use MicroBenchmarkRunner to execute them.
+ * @author pavlo
+ */
+public class QueueMicroBenchmarks extends BaseTestCase {
+
+    private static final int NUM_TXNS = 10000;
+    private static final int NUM_MESSAGES = 1024;
+    private static final int NUM_THREADS = 4;
+    private static final int BASE_PARTITION = 0;
+
+    private final MicroBenchmarkRunner runner = new MicroBenchmarkRunner();
+    private MockHStoreSite hstore_site;
+    private TransactionIdManager idManager;
+    private Procedure catalog_proc;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TM1);
+        Site catalog_site = CollectionUtil.first(catalogContext.sites);
+        assertNotNull(catalog_site);
+        this.hstore_site = new MockHStoreSite(catalog_site.getId(), catalogContext, HStoreConf.singleton());
+        this.idManager = this.hstore_site.getTransactionIdManager(BASE_PARTITION);
+        this.catalog_proc = this.getProcedure(DeleteCallForwarding.class);
+    }
+
+    private LocalTransaction createTransaction() {
+        LocalTransaction ts = new LocalTransaction(this.hstore_site);
+        ts.testInit(this.idManager.getNextUniqueTransactionId(),
+                    BASE_PARTITION, new PartitionSet(BASE_PARTITION), this.catalog_proc);
+        return (ts);
+    }
+
+    /**
+     * testPartitionLockQueue
+     */
+    public void testPartitionLockQueue() throws Exception {
+        MicroBenchmark bench = new MicroBenchmark("PartitionLockQueue.offerPoll") {
+            final LocalTransaction txns[] = new LocalTransaction[NUM_TXNS];
+            PartitionLockQueue queue;
+
+            @Override
+            public int getOperationsPerIteration() {
+                return (NUM_TXNS);
+            }
+            @Override
+            public void setUpIteration() throws Exception {
+                // The queue will only release txns in order, so every iteration
+                // needs a fresh queue and a new batch of txn ids
+                this.queue = new PartitionLockQueue(BASE_PARTITION, 0, Integer.MAX_VALUE, 1.0);
+                for (int i = 0; i < this.txns.length; i++) {
+                    this.txns[i] = createTransaction();
+                } // FOR
+            }
+            @Override
+            public Object run(int op) throws Exception {
+                LocalTransaction ts = this.txns[op];
+                this.queue.noteTransactionRecievedAndReturnLastSafeTxnId(ts.getTransactionId());
+                this.queue.offer(ts, false);
+                return (this.queue.poll());
+            }
+        };
+        this.runner.run(bench);
+    }
+
+    /**
+     * testPartitionMessageQueue
+     */
+    public void testPartitionMessageQueue() throws Exception {
+        final InternalMessage messages[] = new InternalMessage[NUM_MESSAGES];
+        for (int i = 0; i < messages.length; i++) {
+            LocalTransaction ts = this.createTransaction();
+            if (i % 2 == 0) {
+                messages[i] = new StartTxnMessage(ts);
+            } else {
+                messages[i] = new WorkFragmentMessage(ts, null);
+            }
+        } // FOR
+
+        MicroBenchmark bench = new MicroBenchmark("PartitionMessageQueue.offerPoll") {
+            final PartitionMessageQueue queue = new PartitionMessageQueue();
+
+            @Override
+            public void setUpIteration() throws Exception {
+                this.queue.clear();
+            }
+            @Override
+            public Object run(int op) throws Exception {
+                this.queue.offer(messages[op % NUM_MESSAGES]);
+                return (this.queue.poll());
+            }
+        };
+
+        // Run it once by itself and then with multiple threads
+        // pounding on the same queue
+        this.runner.run(bench);
+        this.runner.run(bench, NUM_THREADS);
+    }
+}
@@ -0,0 +1,169 @@
+package edu.brown.microbench;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.voltdb.ParameterSet;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
+
+/**
+ * Microbenchmarks for the serialization code that every txn goes through
+ * on its way in and out of the system.
+ * These are not part of the regular test suite. Use MicroBenchmarkRunner to execute them.
+ * @author pavlo
+ */
+public class SerializationMicroBenchmarks extends TestCase {
+
+    private static final int NUM_ROWS = 100;
+    private static final Object PROC_PARAMS[] = {
+        new Long(1234), "ABCDEFGHIJKLMNOPQRSTUVWXYZ", new Integer(99), new Double(1.5),
+        new long[]{ 1, 2, 3, 4, 5, 6, 7, 8 },
+    };
+    private static final VoltTable.ColumnInfo COLUMNS[] = {
+        new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+        new VoltTable.ColumnInfo("NAME", VoltType.STRING),
+        new VoltTable.ColumnInfo("VALUE", VoltType.FLOAT),
+    };
+
+    private final MicroBenchmarkRunner runner = new MicroBenchmarkRunner();
+
+    /**
+     * testFastSerializer
+     */
+    public void testFastSerializer() throws Exception {
+        MicroBenchmark bench = new MicroBenchmark("FastSerializer") {
+            final FastSerializer fs = new FastSerializer();
+            @Override
+            public Object run(int op) throws Exception {
+                this.fs.clear();
+                this.fs.writeLong(op);
+                this.fs.writeInt(op);
+                this.fs.writeString("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+                this.fs.writeDouble(op);
+                return (this.fs.size());
+            }
+        };
+        this.runner.run(bench);
+    }
+
+    /**
+     * testFastDeserializer
+     */
+    public void testFastDeserializer() throws Exception {
+        FastSerializer fs = new FastSerializer();
+        fs.writeLong(1234);
+        fs.writeInt(99);
+        fs.writeString("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        fs.writeDouble(1.5);
+        final byte bytes[] = fs.getBytes();
+
+        MicroBenchmark bench = new MicroBenchmark("FastDeserializer") {
+            final FastDeserializer fds = new FastDeserializer();
+            @Override
+            public Object run(int op) throws Exception {
+                this.fds.setBuffer(ByteBuffer.wrap(bytes));
+                long l = this.fds.readLong();
+                int i = this.fds.readInt();
+                String s = this.fds.readString();
+                double d = this.fds.readDouble();
+                return (l + i + s.length() + d);
+            }
+        };
+        this.runner.run(bench);
+    }
+
+    /**
+     * testParameterSetRoundTrip
+     */
+    public void testParameterSetRoundTrip() throws Exception {
+        MicroBenchmark bench = new MicroBenchmark("ParameterSet.roundTrip") {
+            final ParameterSet params = new ParameterSet(PROC_PARAMS);
+            final FastSerializer fs = new FastSerializer();
+            final FastDeserializer fds = new FastDeserializer();
+            @Override
+            public Object run(int op) throws Exception {
+                this.fs.clear();
+                this.params.writeExternal(this.fs);
+                this.fds.setBuffer(this.fs.getBuffer());
+                return (this.fds.readObject(ParameterSet.class));
+            }
+        };
+        this.runner.run(bench);
+    }
+
+    /**
+     * testVoltTableBuild
+     */
+    public void testVoltTableBuild() throws Exception {
+        MicroBenchmark bench = new MicroBenchmark("VoltTable.build") {
+            @Override
+            public int getOperationsPerIteration() {
+                return (10000);
+            }
+            @Override
+            public Object run(int op) throws Exception {
+                VoltTable vt = new VoltTable(COLUMNS);
+                for (int i = 0; i < NUM_ROWS; i++) {
+                    vt.addRow(i, "ROW", i * 1.5);
+                } // FOR
+                return (vt.getRowCount());
+            }
+        };
+        this.runner.run(bench);
+    }
+
+    /**
+     * testVoltTableIterate
+     */
+    public void testVoltTableIterate() throws Exception {
+        final VoltTable vt = new VoltTable(COLUMNS);
+        for (int i = 0; i < NUM_ROWS; i++) {
+            vt.addRow(i, "ROW", i * 1.5);
+        } // FOR
+
+        MicroBenchmark bench = new MicroBenchmark("VoltTable.iterate") {
+            @Override
+            public int getOperationsPerIteration() {
+                return (10000);
+            }
+            @Override
+            public Object run(int op) throws Exception {
+                long sum = 0;
+                vt.resetRowPosition();
+                while (vt.advanceRow()) {
+                    sum += vt.getLong(0) + vt.getString(1).length();
+                } // WHILE
+                return (sum);
+            }
+        };
+        this.runner.run(bench);
+    }
+
+    /**
+     * testStoredProcedureInvocationParse
+     */
+    public void testStoredProcedureInvocationParse() throws Exception {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation(1234l, "GetSubscriberData", PROC_PARAMS);
+        final byte bytes[] = FastSerializer.serialize(invocation);
+
+        // This is the same thing that HStoreSite does for every new txn request
+        MicroBenchmark bench = new MicroBenchmark("StoredProcedureInvocation.parse") {
+            final FastDeserializer fds = new FastDeserializer();
+            @Override
+            public Object run(int op) throws Exception {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                String procName = StoredProcedureInvocation.getProcedureName(this.fds.setBuffer(buffer));
+                long clientHandle = StoredProcedureInvocation.getClientHandle(buffer);
+                this.fds.setBuffer(StoredProcedureInvocation.getParameterSet(buffer));
+                ParameterSet params = this.fds.readObject(ParameterSet.class);
+                return (procName.length() + clientHandle + params.size());
+            }
+        };
+        this.runner.run(bench);
+    }
+}
@@ -0,0 +1,193 @@
+package edu.brown.profilers;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+import edu.brown.profilers.TransactionTracer.Phase;
+import edu.brown.statistics.LatencyHistogram;
+
+/**
+ * Simple tests for TransactionTracer
+ * @author pavlo
+ */
+public class TestTransactionTracer extends TestCase {
+
+    private static final int SAMPLE_RATE = 10;
+    private static final int BUFFER_SIZE = 64;
+
+    final TransactionTracer tracer = new TransactionTracer(SAMPLE_RATE, BUFFER_SIZE);
+
+    /**
+     * testSample
+     */
+    @Test
+    public void testSample() throws Exception {
+        int num_sampled = 0;
+        for (int i = 0; i < SAMPLE_RATE * 100; i++) {
+            if (tracer.sample(false)) num_sampled++;
+        } // FOR
+        assertEquals(100, num_sampled);
+        assertEquals(100, tracer.getSampledCount());
+
+        // Forced samples should always be traced
+        for (int i = 0; i < 5; i++) {
+            assertTrue(tracer.sample(true));
+        } // FOR
+        assertEquals(5, tracer.getForcedCount());
+        assertEquals(100, tracer.getSampledCount());
+    }
+
+    /**
+     * testRecordAndDrain
+     */
+    @Test
+    public void testRecordAndDrain() throws Exception {
+        Phase phases[] = { Phase.INIT, Phase.QUEUE, Phase.START, Phase.FINISH, Phase.DELETE };
+        int num_txns = 5;
+        for (long txn_id = 0; txn_id < num_txns; txn_id++) {
+            for (Phase phase : phases) {
+                tracer.record(txn_id, phase, 0);
+            } // FOR
+        } // FOR
+        assertEquals(num_txns * phases.length, tracer.drain());
+        assertEquals(0, tracer.drain());
+        assertEquals(0, tracer.getDroppedCount());
+        assertEquals(1, tracer.getThreadBufferCount());
+
+        for (Phase phase : phases) {
+            assertEquals(phase.toString(), num_txns, tracer.getEventCount(phase));
+            LatencyHistogram h = tracer.getPhaseLatencies(phase);
+            // We don't know how long it took to get to the first phase
+            if (phase == Phase.INIT) {
+                assertTrue(h.isEmpty());
+            } else {
+                assertEquals(phase.toString(), num_txns, h.getSampleCount());
+            }
+        } // FOR
+        assertEquals(0, tracer.getEventCount(Phase.RESTART));
+    }
+
+    /**
+     * testOverwrite
+     */
+    @Test
+    public void testOverwrite() throws Exception {
+        int num_events = BUFFER_SIZE * 3;
+        for (long txn_id = 0; txn_id < num_events; txn_id++) {
+            tracer.record(txn_id, Phase.INIT, 0);
+        } // FOR
+        int drained = tracer.drain();
+        assertTrue(drained > 0);
+        assertTrue(drained <= BUFFER_SIZE);
+        assertEquals(num_events, drained + tracer.getDroppedCount());
+    }
+
+    /**
+     * testMultipleThreads
+     */
+    @Test
+    public void testMultipleThreads() throws Exception {
+        final int num_threads = 4;
+        final int num_events = BUFFER_SIZE / 2;
+        Thread threads[] = new Thread[num_threads];
+        for (int i = 0; i < num_threads; i++) {
+            final int partition = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (long txn_id = 0; txn_id < num_events; txn_id++) {
+                        tracer.record((partition * num_events) + txn_id, Phase.START, partition);
+                    } // FOR
+                }
+            };
+            threads[i].start();
+        } // FOR
+        for (Thread t : threads) {
+            t.join();
+        } // FOR
+        assertEquals(num_threads, tracer.getThreadBufferCount());
+        assertEquals(num_threads * num_events, tracer.drain());
+        assertEquals(num_threads * num_events, tracer.getEventCount(Phase.START));
+    }
+
+    /**
+     * testMergeThreads
+     */
+    @Test
+    public void testMergeThreads() throws Exception {
+        // The txn's phases are recorded by two different threads. The main thread's
+        // buffer is drained first, but the drainer still needs to measure each phase
+        // from the one that came right before it.
+        final long txn_id = 1000;
+        final Phase execPhases[] = { Phase.START, Phase.PREPARE, Phase.FINISH };
+        tracer.record(txn_id - 1, Phase.INIT, 1);
+        assertEquals(1, tracer.drain());
+
+        tracer.record(txn_id, Phase.INIT, 0);
+        tracer.record(txn_id, Phase.QUEUE, 0);
+        Thread.sleep(10);
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                for (Phase phase : execPhases) {
+                    tracer.record(txn_id, phase, 0);
+                } // FOR
+            }
+        };
+        t.start();
+        t.join();
+        tracer.record(txn_id, Phase.RESPONSE, 0);
+        tracer.record(txn_id, Phase.DELETE, 0);
+
+        assertEquals(2 + execPhases.length + 2, tracer.drain());
+        for (Phase phase : new Phase[]{ Phase.QUEUE, Phase.START, Phase.PREPARE,
+                                        Phase.FINISH, Phase.RESPONSE, Phase.DELETE }) {
+            assertEquals(phase.toString(), 1, tracer.getPhaseLatencies(phase).getSampleCount());
+        } // FOR
+
+        // RESPONSE should have been measured from FINISH, not from QUEUE
+        assertTrue(tracer.getPhaseLatencies(Phase.RESPONSE).getMax() < 10000);
+        assertTrue(tracer.getPhaseLatencies(Phase.START).getMax() >= 10000);
+        // Only the first txn is still being tracked because it was never deleted
+        assertEquals(1, tracer.getTrackedTxnCount());
+    }
+
+    /**
+     * testOutputFile
+     */
+    @Test
+    public void testOutputFile() throws Exception {
+        File f = File.createTempFile("tracer", ".bin");
+        f.deleteOnExit();
+        tracer.setOutputFile(f);
+        tracer.record(1234l, Phase.INIT, 1);
+        tracer.record(1234l, Phase.DELETE, 1);
+        tracer.shutdown();
+
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        try {
+            assertEquals(TransactionTracer.TRACE_FILE_MAGIC, in.readInt());
+            assertEquals(Phase.values().length, in.readInt());
+            for (Phase phase : Phase.values()) {
+                assertEquals(phase.name(), in.readUTF());
+            } // FOR
+            long last = -1;
+            for (Phase phase : new Phase[]{ Phase.INIT, Phase.DELETE }) {
+                assertEquals(1234l, in.readLong());
+                long timestamp = in.readLong();
+                assertTrue(timestamp >= last);
+                last = timestamp;
+                assertEquals(phase.ordinal(), in.readByte());
+                assertEquals(1, in.readInt());
+            } // FOR
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/***************************************************************************
+ *  Copyright (C) 2012 by H-Store Project                                  *
+ *  Brown University                                                       *
+ *  Massachusetts Institute of Technology                                  *
+ *  Yale University                                                        *
+ *                                                                         *
+ *  http://hstore.cs.brown.edu/                                            *
+ *                                                                         *
+ *  Permission is hereby granted, free of charge, to any person obtaining  *
+ *  a copy of this software and associated documentation files (the        *
+ *  "Software"), to deal in the Software without restriction, including    *
+ *  without limitation the rights to use, copy, modify, merge, publish,    *
+ *  distribute, sublicense, and/or sell copies of the Software, and to     *
+ *  permit persons to whom the Software is furnished to do so, subject to  *
+ *  the following conditions:                                              *
+ *                                                                         *
+ *  The above copyright notice and this permission notice shall be         *
+ *  included in all copies or substantial portions of the Software.        *
+ *                                                                         *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,        *
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF     *
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. *
+ *  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR      *
+ *  OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,  *
+ *  ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR  *
+ *  OTHER DEALINGS IN THE SOFTWARE.                                        *
+ ***************************************************************************/
+package edu.brown.statistics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.json.JSONObject;
+
+import edu.brown.BaseTestCase;
+
+/**
+ * 
+ * @author pavlo
+ */
+public class TestLatencyHistogram extends BaseTestCase {
+
+    private static final int NUM_SAMPLES = 10000;
+    
+    private final LatencyHistogram h = new LatencyHistogram(true);
+    private final long values[] = new long[NUM_SAMPLES];
+    private final Random rand = new Random(1);
+    
+    protected void setUp() throws Exception {
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            // Mostly a couple of milliseconds with a long tail
+            long val = (rand.nextInt(100) < 99 ? 500 + rand.nextInt(2000) : 10000 + rand.nextInt(1000000));
+            this.values[i] = val;
+            this.h.record(val);
+        } // FOR
+        Arrays.sort(this.values);
+    }
+    
+    /**
+     * testBuckets
+     */
+    public void testBuckets() {
+        int last = -1;
+        for (long val = 0; val < 100000; val++) {
+            int bucket = LatencyHistogram.getBucket(val);
+            assert(bucket == last || bucket == last + 1) : val + " -> " + bucket;
+            assertTrue(LatencyHistogram.getBucketLowerBound(bucket) <= val);
+            last = bucket;
+        } // FOR
+        assertEquals(LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.getBucket(LatencyHistogram.MAX_VALUE));
+        assertEquals(LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+        assertEquals(0, LatencyHistogram.getBucket(-1));
+    }
+    
+    /**
+     * testPercentiles
+     */
+    public void testPercentiles() {
+        assertEquals(NUM_SAMPLES, h.getSampleCount());
+        assertEquals(this.values[NUM_SAMPLES-1], h.getMax());
+        assertEquals(this.values[NUM_SAMPLES-1], h.getValueAtPercentile(100));
+        for (double p : new double[]{ 50, 90, 99, 99.9 }) {
+            long expected = this.values[(int)Math.ceil(p / 100d * NUM_SAMPLES) - 1];
+            long actual = h.getValueAtPercentile(p);
+            assert(Math.abs(actual - expected) <= expected * 0.02) : p + ": " + expected + " != " + actual;
+        } // FOR
+    }
+    
+    /**
+     * testPut
+     */
+    public void testPut() throws Exception {
+        LatencyHistogram other = new LatencyHistogram();
+        other.put(h);
+        other.put(h);
+        assertEquals(NUM_SAMPLES * 2, other.getSampleCount());
+        assertEquals(h.getSum() * 2, other.getSum());
+        assertEquals(h.getMax(), other.getMax());
+        assertEquals(h.getValueAtPercentile(50), other.getValueAtPercentile(50));
+    }
+    
+    /**
+     * testClear
+     */
+    public void testClear() {
+        assertFalse(h.isEmpty());
+        h.clear();
+        assertTrue(h.isEmpty());
+        assertEquals(0, h.getSampleCount());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getValueAtPercentile(99));
+    }
+    
+    /**
+     * testToMillisHistogram
+     */
+    public void testToMillisHistogram() {
+        ObjectHistogram<Integer> ms = h.toMillisHistogram();
+        assertEquals(NUM_SAMPLES, ms.getSampleCount());
+        assertEquals(Math.round(h.getMax() / 1000d), ms.getMaxValue().intValue(), 10);
+    }
+    
+    /**
+     * testSerialization
+     */
+    public void testSerialization() throws Exception {
+        String json = h.toJSONString();
+        assertFalse(json.isEmpty());
+        LatencyHistogram clone = new LatencyHistogram();
+        clone.fromJSON(new JSONObject(json), null);
+        assertEquals(h.getSampleCount(), clone.getSampleCount());
+        assertEquals(h.getSum(), clone.getSum());
+        assertEquals(h.getMax(), clone.getMax());
+        for (int i = 0; i < LatencyHistogram.NUM_BUCKETS; i++) {
+            assertEquals(h.getBucketCount(i), clone.getBucketCount(i));
+        } // FOR
+    }
+}
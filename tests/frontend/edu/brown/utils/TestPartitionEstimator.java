@@ -415,6 +415,38 @@ public class TestPartitionEstimator extends BaseTestCase {
         assertEquals(w_id, (int)CollectionUtil.first(partitions));
     }
     
+    /**
+     * testGetAllFragmentPartitions
+     */
+    public void testGetAllFragmentPartitions() throws Exception {
+        // Make sure that the routes that we compile for the PlanFragments
+        // give us the right partitions when we invoke them multiple times
+        Procedure catalog_proc = this.getProcedure("neworder");
+        Statement catalog_stmt = catalog_proc.getStatements().get("createOrder");
+        assertNotNull(catalog_stmt);
+        PlanFragment fragments[] = catalog_stmt.getFragments().values();
+        assertTrue(fragments.length > 0);
+
+        PartitionEstimator estimator = new PartitionEstimator(catalogContext, hasher);
+        Map<PlanFragment, PartitionSet> frag_partitions = new HashMap<PlanFragment, PartitionSet>();
+        Object params[] = new Object[catalog_stmt.getParameters().size()];
+        for (int i = 0; i < params.length; i++) {
+            StmtParameter catalog_param = catalog_stmt.getParameters().get(i);
+            VoltType type = VoltType.get((byte)catalog_param.getJavatype());
+            params[i] = VoltTypeUtil.getRandomValue(type);
+        } // FOR
+        for (int w_id = 0; w_id < NUM_PARTITIONS; w_id++) {
+            params[2] = w_id;
+            partitions.clear();
+            estimator.getAllFragmentPartitions(frag_partitions, partitions, fragments, params, BASE_PARTITION);
+            assertEquals(partitions.toString(), 1, partitions.size());
+            assertEquals(w_id, partitions.get());
+            for (PlanFragment catalog_frag : fragments) {
+                assertEquals(partitions, frag_partitions.get(catalog_frag));
+            } // FOR
+        } // FOR
+    }
+
     /**
      * testReplicatedSelect
      */
@@ -39,6 +39,39 @@ import org.voltdb.utils.BuildDirectoryUtils;
 import edu.brown.hstore.HStoreConstants;
 
 public class TestHSQLBackend extends TestCase {
+
+    public void testLoadTable() throws Exception {
+        HsqlBackend backend = new HsqlBackend(12345);
+        backend.runDDL("CREATE TABLE LOADTEST (" +
+                       "ID INTEGER NOT NULL, " +
+                       "NAME VARCHAR(16) DEFAULT NULL, " +
+                       "PRIMARY KEY (ID));");
+
+        // More rows than fit in a single batch
+        int num_rows = 2500;
+        VoltTable vt = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.INTEGER),
+                                     new VoltTable.ColumnInfo("NAME", VoltType.STRING));
+        for (int i = 0; i < num_rows; i++) {
+            vt.addRow(i, (i % 10 == 0 ? null : "name_" + i));
+        } // FOR
+        backend.loadTable("LOADTEST", vt);
+
+        VoltTable result = backend.runDML("SELECT COUNT(*) FROM LOADTEST");
+        assertTrue(result.advanceRow());
+        assertEquals(num_rows, result.getLong(0));
+        result = backend.runDML("SELECT COUNT(*) FROM LOADTEST WHERE NAME IS NULL");
+        assertTrue(result.advanceRow());
+        assertEquals(num_rows / 10, result.getLong(0));
+
+        // Loading the same rows again should violate the primary key
+        try {
+            backend.loadTable("LOADTEST", vt);
+            fail();
+        } catch (RuntimeException ex) {
+            // Expected
+        }
+        backend.shutdown();
+    }
 //
 //    public void testMilestoneOneHSQL() throws InterruptedException, IOException, ProcCallException {
 //        String ddl =
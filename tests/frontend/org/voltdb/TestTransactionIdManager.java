@@ -23,7 +23,13 @@
 
 package org.voltdb;
 
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.voltdb.utils.EstTimeUpdater;
 
 import junit.framework.TestCase;
 
@@ -33,6 +39,7 @@ public class TestTransactionIdManager extends TestCase {
 
     @Override
     public void setUp() {
+        EstTimeUpdater.update(System.currentTimeMillis());
         tim = new TransactionIdManager(VoltDB.INITIATOR_SITE_ID);
     }
 
@@ -99,6 +106,7 @@ public class TestTransactionIdManager extends TestCase {
 
     public void testTimestampFromId() {
         long then = System.currentTimeMillis();
+        EstTimeUpdater.update(System.currentTimeMillis());
         long tid = tim.getNextUniqueTransactionId();
         long now = System.currentTimeMillis();
 
@@ -106,6 +114,75 @@ public class TestTransactionIdManager extends TestCase {
         assertTrue(now >= TransactionIdManager.getDateFromTransactionId(tid).getTime());
     }
 
+    /** the counter should carry over into the timestamp instead of wrapping. */
+    public void testCounterOverflow() {
+        long first = tim.getNextUniqueTransactionId();
+        long lastid = first;
+        for (int i = 0; i <= TransactionIdManager.COUNTER_MAX_VALUE; ++i) {
+            long id = tim.getNextUniqueTransactionId();
+            assertTrue(id > lastid);
+            assertEquals(VoltDB.INITIATOR_SITE_ID, TransactionIdManager.getInitiatorIdFromTransactionId(id));
+            lastid = id;
+        }
+        assertTrue(TransactionIdManager.getTimestampFromTransactionId(lastid) >
+                   TransactionIdManager.getTimestampFromTransactionId(first));
+    }
+
+    public void testReserveTransactionIds() {
+        long before = tim.getNextUniqueTransactionId();
+        TransactionIdManager.Block block = tim.reserveTransactionIds(100);
+        long after = tim.getNextUniqueTransactionId();
+        assertEquals(100, block.getSize());
+
+        long lastid = before;
+        for (int i = 0; i < 100; i++) {
+            assertFalse(block.isEmpty());
+            Long id = block.next();
+            assertNotNull(id);
+            assertTrue(id > lastid);
+            assertTrue(id < after);
+            assertEquals(VoltDB.INITIATOR_SITE_ID, TransactionIdManager.getInitiatorIdFromTransactionId(id));
+            lastid = id;
+        }
+        assertTrue(block.isEmpty());
+        assertNull(block.next());
+    }
+
+    public void testConcurrentGetNextUniqueId() throws Exception {
+        final int numThreads = 8;
+        final int numIds = 20000;
+        final Set<Long> generatedIds = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        final CountDownLatch latch = new CountDownLatch(numThreads);
+        final Throwable errors[] = new Throwable[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int thread_id = t;
+            new Thread() {
+                public void run() {
+                    try {
+                        long lastid = 0;
+                        for (int i = 0; i < numIds; i++) {
+                            long id = (i % 10 == 0 ? tim.reserveTransactionIds(5).next() :
+                                                     tim.getNextUniqueTransactionId());
+                            // Each thread should still see its ids go up
+                            assertTrue(id > lastid);
+                            assertTrue(generatedIds.add(id));
+                            lastid = id;
+                        } // FOR
+                    } catch (Throwable ex) {
+                        errors[thread_id] = ex;
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }.start();
+        } // FOR
+        latch.await();
+        for (Throwable ex : errors) {
+            if (ex != null) throw new Exception(ex);
+        } // FOR
+        assertEquals(numThreads * numIds, generatedIds.size());
+    }
+
     public void testInAndOut() {
         long ts1 = 1267732596224L;
         //long ts1 = TransactionIdManager.VOLT_EPOCH;
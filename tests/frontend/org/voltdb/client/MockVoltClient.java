@@ -284,6 +284,11 @@ public class MockVoltClient implements Client {
         return null;
     }
 
+    @Override
+    public void refreshRoutingTable() throws IOException, ProcCallException {
+        // TODO Auto-generated method stub
+    }
+
     @Override
     public VoltTable getProcedureStats() {
         // TODO Auto-generated method stub
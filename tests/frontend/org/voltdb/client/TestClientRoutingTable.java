@@ -0,0 +1,61 @@
+package org.voltdb.client;
+
+import org.junit.Test;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.benchmark.tpcc.procedures.slev;
+import org.voltdb.catalog.Procedure;
+
+import edu.brown.BaseTestCase;
+import edu.brown.catalog.CatalogUtil;
+import edu.brown.hstore.HStoreConstants;
+import edu.brown.utils.ProjectType;
+
+/**
+ *
+ * @author pavlo
+ */
+public class TestClientRoutingTable extends BaseTestCase {
+
+    private static final int NUM_PARTITIONS = 8;
+
+    private ClientRoutingTable routing;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+        // Make sure that we can rebuild everything from what @GetCatalog sends back
+        this.routing = ClientRoutingTable.fromSerializedCatalog(catalog.serialize());
+    }
+
+    /**
+     * testGetBasePartition
+     */
+    @Test
+    public void testGetBasePartition() throws Exception {
+        Procedure catalog_proc = this.getProcedure(slev.class);
+        assertEquals(catalog_proc.getId(), this.routing.getProcedure(catalog_proc.getName()).getId());
+        assertEquals(NUM_PARTITIONS, this.routing.getPartitionCount());
+
+        int partitionSiteXref[] = CatalogUtil.getPartitionSiteXrefArray(catalog);
+        for (short w_id = 1; w_id <= NUM_PARTITIONS * 2; w_id++) {
+            Object params[] = { w_id, (byte)1, 10 };
+            StoredProcedureInvocation invocation = new StoredProcedureInvocation(1, catalog_proc.getName(), params);
+            int expected = p_estimator.getBasePartition(invocation);
+            int partition = this.routing.getBasePartition(invocation);
+            assertEquals(expected, partition);
+            assertEquals(partitionSiteXref[partition], this.routing.getSiteId(partition).intValue());
+            assertTrue(this.routing.hasSite(partitionSiteXref[partition]));
+        } // FOR
+    }
+
+    /**
+     * testInvalidPartition
+     */
+    @Test
+    public void testInvalidPartition() throws Exception {
+        assertNull(this.routing.getSiteId(HStoreConstants.NULL_PARTITION_ID));
+        assertNull(this.routing.getSiteId(NUM_PARTITIONS));
+        assertNull(this.routing.getProcedure("ThisProcedureDoesNotExist"));
+    }
+}
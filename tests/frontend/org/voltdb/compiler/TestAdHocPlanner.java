@@ -0,0 +1,138 @@
+package org.voltdb.compiler;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import edu.brown.BaseTestCase;
+import edu.brown.utils.ProjectType;
+
+/**
+ * Tests for how the AdHocPlanner handles statements that get stuck in the planner
+ * @author pavlo
+ */
+public class TestAdHocPlanner extends BaseTestCase {
+
+    private static final long TIMEOUT = 5000; // ms
+    private static final String SQL = "SELECT * FROM WAREHOUSE WHERE W_ID = 1";
+
+    /**
+     * A planner whose worker won't stop until we let it, no matter how many times
+     * it gets interrupted. This is what a planner stuck in the QueryPlanner looks like.
+     */
+    private class StuckPlanner extends AdHocPlanner {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile boolean stuck = true;
+
+        StuckPlanner() {
+            super(catalogContext, TIMEOUT, "TestAdHocPlanner");
+        }
+
+        @Override
+        Result plan(String sql) {
+            if (this.stuck) {
+                this.started.countDown();
+                while (true) {
+                    try {
+                        this.release.await();
+                        break;
+                    } catch (InterruptedException ex) {
+                        // Ignore
+                    }
+                } // WHILE
+                return (new Result());
+            }
+            return (super.plan(sql));
+        }
+    }
+
+    private StuckPlanner planner;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.planner = new StuckPlanner();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Make sure that our stuck workers are out of the planner before the next test
+        this.planner.release.countDown();
+        this.planner.shutdown();
+        long stop = System.currentTimeMillis() + TIMEOUT;
+        while (this.planner.getAbandonedCount() > 0 && System.currentTimeMillis() < stop) {
+            Thread.sleep(10);
+        } // WHILE
+        super.tearDown();
+    }
+
+    /**
+     * testTimeout
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        AdHocPlanner.Result result = this.planner.planSql(SQL);
+        assertNotNull(result.getErrors());
+        assertNull(result.getOnePlan());
+        assertEquals(1, this.planner.getTimeoutCount());
+        assertEquals(1, this.planner.getAbandonedCount());
+
+        // The stuck worker still owns the planner even though we gave up on it
+        assertEquals(0, this.planner.started.getCount());
+        assertTrue(AdHocPlanner.PLANNER_LOCK.isLocked());
+        assertFalse(AdHocPlanner.PLANNER_LOCK.isHeldByCurrentThread());
+    }
+
+    /**
+     * testMaxAbandonedWorkers
+     */
+    @Test
+    public void testMaxAbandonedWorkers() throws Exception {
+        for (int i = 0; i < AdHocPlanner.MAX_ABANDONED_WORKERS; i++) {
+            AdHocPlanner.Result result = this.planner.planSql(SQL);
+            assertNotNull(result.getErrors());
+        } // FOR
+        int timeouts = this.planner.getTimeoutCount();
+        assertEquals(AdHocPlanner.MAX_ABANDONED_WORKERS, this.planner.getAbandonedCount());
+
+        // We shouldn't start another worker while the others are still stuck
+        AdHocPlanner.Result result = this.planner.planSql(SQL);
+        assertNotNull(result.getErrors());
+        assertEquals(timeouts, this.planner.getTimeoutCount());
+        assertEquals(AdHocPlanner.MAX_ABANDONED_WORKERS, this.planner.getAbandonedCount());
+
+        // Once the stuck workers exit we can plan again
+        this.planner.stuck = false;
+        this.planner.release.countDown();
+        result = this.planner.planSql(SQL);
+        assertNull(result.toString(), result.getErrors());
+        assertNotNull(result.getOnePlan());
+        assertEquals(0, this.planner.getAbandonedCount());
+        assertFalse(AdHocPlanner.PLANNER_LOCK.isLocked());
+    }
+
+    /**
+     * testWaitForPlannerLock
+     */
+    @Test
+    public void testWaitForPlannerLock() throws Exception {
+        this.planner.stuck = false;
+
+        // Another thread is in the planner, so our worker times out waiting for it.
+        // It should give up when we interrupt it instead of planning later on.
+        AdHocPlanner.PLANNER_LOCK.lock();
+        try {
+            AdHocPlanner.Result result = this.planner.planSql(SQL);
+            assertNotNull(result.getErrors());
+            assertEquals(1, this.planner.getTimeoutCount());
+        } finally {
+            AdHocPlanner.PLANNER_LOCK.unlock();
+        }
+
+        AdHocPlanner.Result result = this.planner.planSql(SQL);
+        assertNull(result.toString(), result.getErrors());
+        assertNotNull(result.getOnePlan());
+        assertEquals(0, this.planner.getAbandonedCount());
+    }
+}
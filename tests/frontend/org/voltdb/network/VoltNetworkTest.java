@@ -31,6 +31,7 @@ import java.nio.channels.Selector;
 import java.nio.channels.spi.SelectorProvider;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.List;
 import junit.framework.*;
 
 public class VoltNetworkTest extends TestCase {
@@ -62,6 +63,12 @@ public class VoltNetworkTest extends TestCase {
 
         }
 
+        @Override
+        public void handleMessages(List<ByteBuffer> messages, Connection c) {
+            // TODO Auto-generated method stub
+
+        }
+
         @Override
         public ByteBuffer retrieveNextMessage(Connection c) {
             // TODO Auto-generated method stub
@@ -0,0 +1,61 @@
+package org.voltdb.planner;
+
+import org.junit.Test;
+import org.voltdb.compiler.AdHocPlanner;
+
+import edu.brown.BaseTestCase;
+import edu.brown.utils.ProjectType;
+
+/**
+ * Simple tests for planning ad hoc SQL with the in-process AdHocPlanner
+ * @author pavlo
+ */
+public class TestInProcessPlanning extends BaseTestCase {
+
+    private AdHocPlanner planner;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.planner = new AdHocPlanner(catalogContext, 10000, "TestInProcessPlanning");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.planner.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * testPlanSql
+     */
+    @Test
+    public void testPlanSql() throws Exception {
+        AdHocPlanner.Result result = this.planner.planSql("SELECT * FROM WAREHOUSE WHERE W_ID = 1");
+        assertNotNull(result);
+        assertNull(result.toString(), result.getErrors());
+        assertNotNull(result.getOnePlan());
+        assertNotNull(result.getOnePlanJSON());
+
+        // Make sure that we can still plan after the worker thread is thrown away
+        this.planner.reset();
+        result = this.planner.planSql("SELECT * FROM WAREHOUSE, DISTRICT WHERE W_ID = D_W_ID");
+        assertNull(result.toString(), result.getErrors());
+        assertNotNull(result.getOnePlan());
+        assertEquals(0, this.planner.getTimeoutCount());
+    }
+
+    /**
+     * testInvalidSql
+     */
+    @Test
+    public void testInvalidSql() throws Exception {
+        AdHocPlanner.Result result = this.planner.planSql("ryan likes the yankees");
+        assertNotNull(result.getErrors());
+        assertNull(result.getOnePlan());
+        assertNull(result.getAllPlan());
+
+        result = this.planner.planSql("   ");
+        assertNotNull(result.getErrors());
+    }
+}
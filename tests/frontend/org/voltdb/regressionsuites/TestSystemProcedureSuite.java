@@ -33,6 +33,7 @@ import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
 import org.voltdb.client.Client;
+import org.voltdb.client.PartitionedBulkLoader;
 import org.voltdb.client.ProcCallException;
 import org.voltdb.utils.VoltTableUtil;
 
@@ -260,6 +261,52 @@ public class TestSystemProcedureSuite extends RegressionSuite {
         }
     }
 
+    
+    private VoltTable createNewOrderTable(int num_rows) {
+        VoltTable vt = new VoltTable(new VoltTable.ColumnInfo("NO_O_ID", VoltType.INTEGER),
+                                     new VoltTable.ColumnInfo("NO_D_ID", VoltType.TINYINT),
+                                     new VoltTable.ColumnInfo("NO_W_ID", VoltType.SMALLINT));
+        for (int i = 0; i < num_rows; i++) {
+            vt.addRow(i, (byte)1, (short)(i % 4));
+        } // FOR
+        return (vt);
+    }
+
+    public void testLoadPartitionTable_WrongPartition() throws IOException {
+        Client client = getClient();
+        // W_ID #1 does not belong to partition #0
+        VoltTable vt = new VoltTable(new VoltTable.ColumnInfo("NO_O_ID", VoltType.INTEGER),
+                                     new VoltTable.ColumnInfo("NO_D_ID", VoltType.TINYINT),
+                                     new VoltTable.ColumnInfo("NO_W_ID", VoltType.SMALLINT));
+        vt.addRow(1, (byte)1, (short)1);
+        try {
+            client.callProcedure("@LoadPartitionTable", 0, "NEW_ORDER", vt);
+        } catch (ProcCallException ex) {
+            assertTrue(true);
+            return;
+        }
+        fail();
+    }
+
+    public void testPartitionedBulkLoader() throws Exception {
+        Client client = getClient();
+        int num_rows = 1000;
+        // Use a tiny chunk size so that each partition gets more than one load txn
+        PartitionedBulkLoader loader = new PartitionedBulkLoader(client, getCatalogContext(), 4, 1024);
+        loader.load("NEW_ORDER", this.createNewOrderTable(num_rows));
+        loader.drain();
+        assertEquals(num_rows, loader.getRowsLoaded());
+        assertTrue(loader.getTransactionsSent() > getCatalogContext().numberOfPartitions);
+
+        VoltTable results[] = client.callProcedure("@Statistics", "table", 0).getResults();
+        long total = 0;
+        while (results[0].advanceRow()) {
+            if (results[0].getString("TABLE_NAME").equals("NEW_ORDER")) {
+                total += results[0].getLong("TUPLE_COUNT");
+            }
+        } // WHILE
+        assertEquals(num_rows, total);
+    }
 
     /**
      * Build a list of the tests to be run. Use the regression suite
@@ -0,0 +1,94 @@
+package org.voltdb.sysprocs.saverestore;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.voltdb.sysprocs.saverestore.SnapshotChangeTracker.Marker;
+
+/**
+ * Simple tests for SnapshotChangeTracker
+ * @author pavlo
+ */
+public class TestSnapshotChangeTracker extends TestCase {
+
+    private static final int PARTITION = 1;
+    private static final int OTHER_PARTITION = 2;
+    private static final int TABLE_ID = 5;
+    private static final int OTHER_TABLE_ID = 6;
+    private static final String TABLE_NAME = "SUBSCRIBER";
+
+    @Override
+    protected void setUp() throws Exception {
+        SnapshotChangeTracker.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SnapshotChangeTracker.clear();
+    }
+
+    private Marker createMarker(int partition) {
+        return (new Marker("/tmp", "nonce", "nonce-" + TABLE_NAME + ".vpt",
+                           SnapshotChangeTracker.getVersion(partition)));
+    }
+
+    /**
+     * testUnmodified
+     */
+    @Test
+    public void testUnmodified() throws Exception {
+        Marker marker = this.createMarker(PARTITION);
+        assertFalse(SnapshotChangeTracker.isModified(PARTITION, TABLE_ID, marker));
+
+        // Writes to other tables or other partitions don't count
+        SnapshotChangeTracker.markTablesWritten(PARTITION, OTHER_TABLE_ID);
+        SnapshotChangeTracker.markTablesWritten(OTHER_PARTITION, TABLE_ID);
+        SnapshotChangeTracker.markAllTablesWritten(OTHER_PARTITION);
+        assertFalse(SnapshotChangeTracker.isModified(PARTITION, TABLE_ID, marker));
+    }
+
+    /**
+     * testMarkTablesWritten
+     */
+    @Test
+    public void testMarkTablesWritten() throws Exception {
+        SnapshotChangeTracker.markTablesWritten(PARTITION, TABLE_ID);
+        Marker marker = this.createMarker(PARTITION);
+        // The write happened before the snapshot, so it's already in there
+        assertFalse(SnapshotChangeTracker.isModified(PARTITION, TABLE_ID, marker));
+
+        SnapshotChangeTracker.markTablesWritten(PARTITION, OTHER_TABLE_ID, TABLE_ID);
+        assertTrue(SnapshotChangeTracker.isModified(PARTITION, TABLE_ID, marker));
+        assertTrue(SnapshotChangeTracker.isModified(PARTITION, OTHER_TABLE_ID, marker));
+
+        // A new snapshot starts over
+        marker = this.createMarker(PARTITION);
+        assertFalse(SnapshotChangeTracker.isModified(PARTITION, TABLE_ID, marker));
+    }
+
+    /**
+     * testMarkAllTablesWritten
+     */
+    @Test
+    public void testMarkAllTablesWritten() throws Exception {
+        Marker marker = this.createMarker(PARTITION);
+        SnapshotChangeTracker.markAllTablesWritten(PARTITION);
+        assertTrue(SnapshotChangeTracker.isModified(PARTITION, TABLE_ID, marker));
+        assertTrue(SnapshotChangeTracker.isModified(PARTITION, OTHER_TABLE_ID, marker));
+    }
+
+    /**
+     * testMarkers
+     */
+    @Test
+    public void testMarkers() throws Exception {
+        assertNull(SnapshotChangeTracker.getMarker(PARTITION, TABLE_NAME));
+        Marker marker = this.createMarker(PARTITION);
+        SnapshotChangeTracker.recordMarker(PARTITION, TABLE_NAME, marker);
+        assertSame(marker, SnapshotChangeTracker.getMarker(PARTITION, TABLE_NAME));
+        assertNull(SnapshotChangeTracker.getMarker(OTHER_PARTITION, TABLE_NAME));
+
+        SnapshotChangeTracker.invalidate(PARTITION, TABLE_NAME);
+        assertNull(SnapshotChangeTracker.getMarker(PARTITION, TABLE_NAME));
+    }
+}
@@ -0,0 +1,183 @@
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.voltdb.catalog.Table;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil.SnapshotLink;
+
+import edu.brown.BaseTestCase;
+import edu.brown.benchmark.tm1.TM1Constants;
+import edu.brown.utils.FileUtil;
+import edu.brown.utils.ProjectType;
+
+/**
+ * Tests for the incremental snapshot links in SnapshotUtil
+ * @author pavlo
+ */
+public class TestSnapshotUtil extends BaseTestCase {
+
+    private static final String NONCE_PREFIX = "snapshot";
+    private static final String FILE_SUFFIX = "-SUBSCRIBER-host_0-site_0-partition_0.vpt";
+
+    private File snapshot_dir;
+    private String path;
+    private List<Table> tables;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TM1);
+        this.snapshot_dir = FileUtil.getTempDirectory();
+        this.path = this.snapshot_dir.getAbsolutePath();
+        this.tables = new ArrayList<Table>();
+        this.tables.add(this.getTable(TM1Constants.TABLENAME_SUBSCRIBER));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.deleteDirectory(this.snapshot_dir);
+    }
+
+    private static String nonce(int i) {
+        return (NONCE_PREFIX + i);
+    }
+
+    private static String fileName(int i) {
+        return (nonce(i) + FILE_SUFFIX);
+    }
+
+    /**
+     * Write out a real table file for the first snapshot and then create
+     * the given number of incremental snapshots that each link to the one before it.
+     */
+    private void createChain(int length) throws Exception {
+        SnapshotUtil.recordSnapshotTableList(0, this.path, nonce(0), this.tables);
+        FileUtil.writeStringToFile(new File(this.snapshot_dir, fileName(0)), "DATA");
+        for (int i = 1; i <= length; i++) {
+            SnapshotUtil.recordSnapshotTableList(i, this.path, nonce(i), this.tables);
+            List<SnapshotLink> links = new ArrayList<SnapshotLink>();
+            links.add(new SnapshotLink(fileName(i), nonce(i-1)));
+            SnapshotUtil.recordSnapshotLinks(this.path, nonce(i), links);
+        } // FOR
+    }
+
+    /**
+     * testSnapshotLinks
+     */
+    @Test
+    public void testSnapshotLinks() throws Exception {
+        String nonce = nonce(1);
+        SnapshotUtil.recordSnapshotTableList(1, this.path, nonce, this.tables);
+        List<SnapshotLink> links = new ArrayList<SnapshotLink>();
+        links.add(new SnapshotLink(nonce + "-SUBSCRIBER.vpt", nonce(0)));
+        links.add(new SnapshotLink(nonce + "-ACCESS_INFO.vpt", nonce(0)));
+        SnapshotUtil.recordSnapshotLinks(this.path, nonce, links);
+
+        File digest = new File(this.snapshot_dir, SnapshotUtil.constructDigestFilenameForNonce(nonce));
+        Map<String, SnapshotLink> retrieved = SnapshotUtil.retrieveSnapshotLinks(digest);
+        assertEquals(links.size(), retrieved.size());
+        for (SnapshotLink expected : links) {
+            SnapshotLink link = retrieved.get(expected.fileName);
+            assertNotNull(expected.fileName, link);
+            assertEquals(expected.baseNonce, link.baseNonce);
+        } // FOR
+        assertEquals(nonce(0) + "-SUBSCRIBER.vpt", retrieved.get(nonce + "-SUBSCRIBER.vpt").getBaseFileName(nonce));
+
+        // The links should not interfere with reading the table list
+        List<String> tableNames = SnapshotUtil.retrieveRelevantTableNames(this.path, nonce);
+        assertEquals(1, tableNames.size());
+        assertEquals(TM1Constants.TABLENAME_SUBSCRIBER, tableNames.get(0));
+    }
+
+    /**
+     * testSnapshotLinksBadCRC
+     */
+    @Test
+    public void testSnapshotLinksBadCRC() throws Exception {
+        String nonce = nonce(1);
+        SnapshotUtil.recordSnapshotTableList(1, this.path, nonce, this.tables);
+        File digest = new File(this.snapshot_dir, SnapshotUtil.constructDigestFilenameForNonce(nonce));
+        FileOutputStream fos = new FileOutputStream(digest, true);
+        try {
+            fos.write("12345,XXX,YYY\n".getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+        try {
+            SnapshotUtil.retrieveSnapshotLinks(digest);
+            fail("Failed to detect invalid link CRC");
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
+
+    /**
+     * testSnapshotLinksMissingDigest
+     */
+    @Test
+    public void testSnapshotLinksMissingDigest() throws Exception {
+        List<SnapshotLink> links = new ArrayList<SnapshotLink>();
+        links.add(new SnapshotLink(fileName(1), nonce(0)));
+        try {
+            SnapshotUtil.recordSnapshotLinks(this.path, nonce(1), links);
+            fail("Appended links to a digest that doesn't exist");
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
+
+    /**
+     * testResolveSnapshotFile
+     */
+    @Test
+    public void testResolveSnapshotFile() throws Exception {
+        int length = 5;
+        this.createChain(length);
+        File expected = new File(this.snapshot_dir, fileName(0));
+        for (int i = 0; i <= length; i++) {
+            assertEquals(expected, SnapshotUtil.resolveSnapshotFile(this.path, nonce(i), fileName(i)));
+        } // FOR
+    }
+
+    /**
+     * testResolveSnapshotFileMaxDepth
+     */
+    @Test
+    public void testResolveSnapshotFileMaxDepth() throws Exception {
+        int length = SnapshotUtil.MAX_LINK_DEPTH + 1;
+        this.createChain(length);
+
+        // We should be able to follow exactly MAX_LINK_DEPTH links but no more
+        File expected = new File(this.snapshot_dir, fileName(0));
+        int last = SnapshotUtil.MAX_LINK_DEPTH;
+        assertEquals(expected, SnapshotUtil.resolveSnapshotFile(this.path, nonce(last), fileName(last)));
+        File tooDeep = new File(this.snapshot_dir, fileName(length));
+        assertEquals(tooDeep, SnapshotUtil.resolveSnapshotFile(this.path, nonce(length), fileName(length)));
+    }
+
+    /**
+     * testResolveSnapshotFileMissingDigest
+     */
+    @Test
+    public void testResolveSnapshotFileMissingDigest() throws Exception {
+        int length = 3;
+        this.createChain(length);
+
+        // If one of the digests in the middle of the chain is gone, then we
+        // just get back the file that we asked for
+        File digest = new File(this.snapshot_dir, SnapshotUtil.constructDigestFilenameForNonce(nonce(2)));
+        assertTrue(digest.delete());
+        File missing = new File(this.snapshot_dir, fileName(length));
+        assertEquals(missing, SnapshotUtil.resolveSnapshotFile(this.path, nonce(length), fileName(length)));
+        assertFalse(missing.exists());
+
+        // But the links below it still work
+        File expected = new File(this.snapshot_dir, fileName(0));
+        assertEquals(expected, SnapshotUtil.resolveSnapshotFile(this.path, nonce(1), fileName(1)));
+    }
+}
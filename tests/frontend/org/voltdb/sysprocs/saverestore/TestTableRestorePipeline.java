@@ -0,0 +1,175 @@
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.voltdb.DefaultSnapshotDataTarget;
+import org.voltdb.catalog.Table;
+import org.voltdb.utils.CatalogUtil;
+
+import edu.brown.BaseTestCase;
+import edu.brown.benchmark.tm1.TM1Constants;
+import edu.brown.utils.FileUtil;
+import edu.brown.utils.ProjectType;
+
+/**
+ * Tests for the prefetching and teardown of TableRestorePipelines.
+ * The save files only have a header, so the pipelines don't need the EE to read them.
+ * @author pavlo
+ */
+public class TestTableRestorePipeline extends BaseTestCase {
+
+    private static final int READ_AHEAD = 2;
+    private static final int PARTITION = 0;
+    private static final int OTHER_PARTITION = 1;
+    private static final long CLOSE_TIMEOUT = 5000; // ms
+
+    private File snapshot_dir;
+    private Table catalog_tbl;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TM1);
+        this.snapshot_dir = FileUtil.getTempDirectory();
+        this.catalog_tbl = this.getTable(TM1Constants.TABLENAME_SUBSCRIBER);
+        TableRestorePipeline.clearPrefetched();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TableRestorePipeline.clearPrefetched();
+        FileUtil.deleteDirectory(this.snapshot_dir);
+    }
+
+    /**
+     * Write out a save file for our table that does not have any chunks
+     */
+    private File createSaveFile(String name) throws Exception {
+        File f = new File(this.snapshot_dir, name + "-" + this.catalog_tbl.getName() + ".vpt");
+        DefaultSnapshotDataTarget target = new DefaultSnapshotDataTarget(f, 0,
+                                                   catalogContext.cluster.getTypeName(),
+                                                   catalog_db.getTypeName(),
+                                                   this.catalog_tbl.getName(),
+                                                   1, false, new int[]{ PARTITION },
+                                                   CatalogUtil.getVoltTable(this.catalog_tbl),
+                                                   System.currentTimeMillis());
+        target.close();
+        return (f);
+    }
+
+    /**
+     * The pipeline closes its file from a pool thread, so give it a moment
+     */
+    private void waitForClosed(TableRestorePipeline pipeline) throws Exception {
+        long stop = System.currentTimeMillis() + CLOSE_TIMEOUT;
+        while (pipeline.isClosed() == false && System.currentTimeMillis() < stop) {
+            Thread.sleep(10);
+        } // WHILE
+        assertTrue(pipeline.getFile().toString(), pipeline.isClosed());
+    }
+
+    /**
+     * testOpen
+     */
+    @Test
+    public void testOpen() throws Exception {
+        File f = this.createSaveFile("snapshot0");
+        TableRestorePipeline pipeline = TableRestorePipeline.open(PARTITION, f, this.catalog_tbl, READ_AHEAD);
+        assertNotNull(pipeline);
+        assertEquals(f, pipeline.getFile());
+        assertNull(pipeline.next());
+        assertEquals(0, pipeline.getLastChunkBytes());
+        // Once it's done, it doesn't block
+        assertNull(pipeline.next());
+        pipeline.close();
+        this.waitForClosed(pipeline);
+        assertEquals(0, TableRestorePipeline.getPrefetchedCount());
+    }
+
+    /**
+     * testPrefetch
+     */
+    @Test
+    public void testPrefetch() throws Exception {
+        File f = this.createSaveFile("snapshot0");
+        TableRestorePipeline.prefetch(PARTITION, f, this.catalog_tbl, READ_AHEAD);
+        assertEquals(1, TableRestorePipeline.getPrefetchedCount());
+        TableRestorePipeline prefetched = TableRestorePipeline.getPrefetched(PARTITION);
+        assertNotNull(prefetched);
+
+        // Prefetching the same file again should not replace it
+        TableRestorePipeline.prefetch(PARTITION, f, this.catalog_tbl, READ_AHEAD);
+        assertSame(prefetched, TableRestorePipeline.getPrefetched(PARTITION));
+
+        // Opening the file should hand us back the running pipeline
+        TableRestorePipeline pipeline = TableRestorePipeline.open(PARTITION, f, this.catalog_tbl, READ_AHEAD);
+        assertSame(prefetched, pipeline);
+        assertEquals(0, TableRestorePipeline.getPrefetchedCount());
+        assertNull(pipeline.next());
+        pipeline.close();
+        this.waitForClosed(pipeline);
+    }
+
+    /**
+     * testPrefetchMissingFile
+     */
+    @Test
+    public void testPrefetchMissingFile() throws Exception {
+        File f = new File(this.snapshot_dir, "missing.vpt");
+        TableRestorePipeline.prefetch(PARTITION, f, this.catalog_tbl, READ_AHEAD);
+        assertEquals(0, TableRestorePipeline.getPrefetchedCount());
+    }
+
+    /**
+     * testPrefetchReplace
+     */
+    @Test
+    public void testPrefetchReplace() throws Exception {
+        File f0 = this.createSaveFile("snapshot0");
+        File f1 = this.createSaveFile("snapshot1");
+        TableRestorePipeline.prefetch(PARTITION, f0, this.catalog_tbl, READ_AHEAD);
+        TableRestorePipeline first = TableRestorePipeline.getPrefetched(PARTITION);
+        assertNotNull(first);
+
+        // A new prefetch for the same partition throws away the old one
+        TableRestorePipeline.prefetch(PARTITION, f1, this.catalog_tbl, READ_AHEAD);
+        assertEquals(1, TableRestorePipeline.getPrefetchedCount());
+        TableRestorePipeline second = TableRestorePipeline.getPrefetched(PARTITION);
+        assertNotSame(first, second);
+        assertEquals(f1, second.getFile());
+        this.waitForClosed(first);
+
+        // Opening a different file also throws away what was prefetched
+        TableRestorePipeline pipeline = TableRestorePipeline.open(PARTITION, f0, this.catalog_tbl, READ_AHEAD);
+        assertNotSame(second, pipeline);
+        assertEquals(0, TableRestorePipeline.getPrefetchedCount());
+        this.waitForClosed(second);
+        pipeline.close();
+        this.waitForClosed(pipeline);
+    }
+
+    /**
+     * testClearPrefetched
+     */
+    @Test
+    public void testClearPrefetched() throws Exception {
+        File f0 = this.createSaveFile("snapshot0");
+        File f1 = this.createSaveFile("snapshot1");
+        TableRestorePipeline.prefetch(PARTITION, f0, this.catalog_tbl, READ_AHEAD);
+        TableRestorePipeline.prefetch(OTHER_PARTITION, f1, this.catalog_tbl, READ_AHEAD);
+        assertEquals(2, TableRestorePipeline.getPrefetchedCount());
+        TableRestorePipeline p0 = TableRestorePipeline.getPrefetched(PARTITION);
+        TableRestorePipeline p1 = TableRestorePipeline.getPrefetched(OTHER_PARTITION);
+
+        // Clearing one partition leaves the other one alone
+        TableRestorePipeline.clearPrefetched(PARTITION);
+        assertEquals(1, TableRestorePipeline.getPrefetchedCount());
+        assertNull(TableRestorePipeline.getPrefetched(PARTITION));
+        assertSame(p1, TableRestorePipeline.getPrefetched(OTHER_PARTITION));
+        this.waitForClosed(p0);
+
+        TableRestorePipeline.clearPrefetched();
+        assertEquals(0, TableRestorePipeline.getPrefetchedCount());
+        this.waitForClosed(p1);
+    }
+}
@@ -9,6 +9,8 @@ import org.voltdb.types.SortDirectionType;
 
 import junit.framework.TestCase;
 
+import com.google.protobuf.ByteString;
+
 /**
  * @author pavlo
  */
@@ -94,4 +96,31 @@ public class TestVoltTableUtil extends TestCase {
             } // WHILE
         } // FOR
     }
-}
\ No newline at end of file
+    
+    /**
+     * testByteString
+     */
+    @Test
+    public void testByteString() throws Exception {
+        ByteString bs = VoltTableUtil.toByteString(this.table);
+        assertFalse(bs.isEmpty());
+        assertEquals(this.table.getUnderlyingBufferSize(), bs.size());
+        
+        VoltTable clone = VoltTableUtil.fromByteString(bs);
+        assertNotNull(clone);
+        assertEquals(this.table.getColumnCount(), clone.getColumnCount());
+        assertEquals(this.table.getRowCount(), clone.getRowCount());
+        assertTrue(this.table.hasSameContents(clone));
+        
+        // Make sure that every row made it across
+        this.table.resetRowPosition();
+        clone.resetRowPosition();
+        while (this.table.advanceRow()) {
+            assertTrue(clone.advanceRow());
+            for (int i = 0; i < SCHEMA.length; i++) {
+                assertEquals(this.table.get(i), clone.get(i));
+            } // FOR
+        } // WHILE
+        assertFalse(clone.advanceRow());
+    }
+}